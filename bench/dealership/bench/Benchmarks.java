@@ -0,0 +1,172 @@
+package dealership.bench;
+
+import dealership.Car;
+import dealership.InventoryStore;
+import dealership.Sale;
+import dealership.SalesAnalytics;
+import dealership.utils.DealershipDB;
+import dealership.utils.IOHelper;
+import dealership.utils.Utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the loading, parsing, lookup and reporting paths against
+ * synthetic datasets, with JMH.
+ *
+ * Datasets are generated by {@link SyntheticData} on first use under the data
+ * directory, one database directory per size, with the same number of users,
+ * cars and sales. Run from the root of the repository:
+ *       gradle :jmh:jmh [-Pjmh="options"]
+ * Options are the JMH ones, e.g.:
+ *       -p size=1K,100K,10M      dataset sizes (default 1K,100K)
+ *       Benchmarks.vinLookup     benchmarks to run, as regular expressions (default all)
+ *       -l                       list the benchmarks and exit
+ *       -jvmArgsAppend -Ddealership.bench.data=dir   where datasets are generated (default bench-data)
+ * Results are written as JSON to bench/build/results/jmh/results.json; compare
+ * two result files with {@link CompareResults}. Comparing a run with
+ * -jvmArgsAppend -Ddealership.metrics=true to one without measures the cost of
+ * the metrics.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class Benchmarks {
+    private static final int LOOKUPS_PER_RUN = 10_000;
+
+    @Param({"1K", "100K"})
+    public String size;
+
+    private File dataDir;
+    private IOHelper io;
+    private List<String> lines;
+    private InventoryStore store;
+    private String[] vins;
+    private SalesAnalytics analytics;
+    private List<Sale> sales;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = dataset(new File(System.getProperty("dealership.bench.data", "bench-data")), size, parseSize(size));
+        io = new IOHelper(dataDir.getPath());
+        lines = io.readFileContent(DealershipDB.INVENTORY_FILE_NAME, true, true);
+        DealershipDB db = new DealershipDB(dataDir.getPath(), false);
+        List<Car> cars = db.loadInventory();
+        store = new InventoryStore(cars);
+        Random random = new Random(7);
+        vins = new String[LOOKUPS_PER_RUN];
+        for (int i = 0; i < vins.length; i++) {
+            vins[i] = new String(cars.get(random.nextInt(cars.size())).getVin());
+        }
+        analytics = new SalesAnalytics(store);
+        sales = db.loadSales();
+    }
+
+    @Benchmark
+    public int readFileContent() throws IOException {
+        return io.readFileContent(DealershipDB.INVENTORY_FILE_NAME, true, true).size();
+    }
+
+    @Benchmark
+    public void csvScan(Blackhole blackhole) throws IOException {
+        io.parseFileContent(DealershipDB.INVENTORY_FILE_NAME, true, true,
+                row -> blackhole.consume(row.getFieldCount()));
+    }
+
+    @Benchmark
+    public void tokenizeSplit(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(Utils.parseCSV(line, true));
+        }
+    }
+
+    @Benchmark
+    public List<Car> loadInventory() throws IOException {
+        return new DealershipDB(dataDir.getPath(), false).loadInventory();
+    }
+
+    @Benchmark
+    public int loadUsers() throws IOException {
+        return new DealershipDB(dataDir.getPath(), false).loadUsers().size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS_PER_RUN)
+    public void vinLookup(Blackhole blackhole) {
+        for (String vin : vins) {
+            blackhole.consume(store.getByVin(vin));
+        }
+    }
+
+    @Benchmark
+    public void inventoryDisplay(Blackhole blackhole) {
+        // Same formatting as Menu.displayInventory
+        for (Car car : store.getCars()) {
+            blackhole.consume(String.format(Locale.ROOT, "%-10s %-10s %-10s %-6d %-10d %-10s $%-9.2f %-12s%n",
+                    car.getVin(), car.getMake(), car.getModel(),
+                    car.getYear(), car.getMileage(), car.getColor(),
+                    car.getPrice(), car.getStatus()));
+        }
+    }
+
+    @Benchmark
+    public long salesAggregation() {
+        return analytics.analyze(sales).getOverall().getCount();
+    }
+
+    /**
+     * Return the database directory of a dataset, generating it if needed.
+     */
+    static File dataset(File dataRoot, String size, int rows) throws IOException {
+        File dir = new File(dataRoot, size);
+        File done = new File(dir, ".complete");
+        if (!done.isFile()) {
+            System.out.println("Generating " + size + " dataset in " + dir + "...");
+            SyntheticData.writeDatabase(dir, rows, rows, rows);
+            if (!done.createNewFile() && !done.isFile()) {
+                throw new IOException("Can't create " + done);
+            }
+        }
+        return dir;
+    }
+
+    /**
+     * Parse a size such as 1K, 100K or 10M.
+     */
+    static int parseSize(String size) {
+        String s = size.trim().toUpperCase();
+        int multiplier = 1;
+        if (s.endsWith("K")) {
+            multiplier = 1_000;
+        } else if (s.endsWith("M")) {
+            multiplier = 1_000_000;
+        }
+        if (multiplier > 1) {
+            s = s.substring(0, s.length() - 1);
+        }
+        return Math.multiplyExact(Integer.parseInt(s), multiplier);
+    }
+}
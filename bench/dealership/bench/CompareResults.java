@@ -0,0 +1,70 @@
+package dealership.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares two JMH result files written by {@link Benchmarks} and reports, for
+ * each benchmark and size found in both, the change in time per operation.
+ * Exits with status 2 if any benchmark got slower by more than the threshold.
+ * Usage:
+ *       java dealership.bench.CompareResults <baseline.json> <candidate.json> [threshold %, default 10]
+ */
+public class CompareResults {
+    // The score of a JMH result is the mean time per operation, give or take its error
+    private static final Pattern RESULT = Pattern.compile(
+            "\"benchmark\" : \"[^\"]*\\.([^\".]+)\".*?\"size\" : \"([^\"]+)\".*?"
+                    + "\"score\" : ([0-9.E-]+),\\s*\"scoreError\" : \"?([0-9.E-]+|NaN)\"?", Pattern.DOTALL);
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java dealership.bench.CompareResults <baseline.json> <candidate.json> [threshold %]");
+            System.exit(1);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        Map<String, double[]> baseline = read(args[0]);
+        Map<String, double[]> candidate = read(args[1]);
+
+        boolean regression = false;
+        System.out.printf("%-30s %15s %15s %9s%n", "benchmark/size", "baseline ns/op", "candidate ns/op", "change");
+        for (Map.Entry<String, double[]> e : baseline.entrySet()) {
+            double[] after = candidate.get(e.getKey());
+            if (after == null) {
+                continue;
+            }
+            double before = e.getValue()[0];
+            double change = 100 * (after[0] - before) / before;
+            // Only flag changes larger than the noise of both runs
+            boolean significant = Math.abs(after[0] - before) > e.getValue()[1] + after[1];
+            String flag = "";
+            if (significant && change > threshold) {
+                flag = "  REGRESSION";
+                regression = true;
+            } else if (significant && change < -threshold) {
+                flag = "  improvement";
+            }
+            System.out.printf("%-30s %15.1f %15.1f %+8.1f%%%s%n", e.getKey(), before, after[0], change, flag);
+        }
+        if (regression) {
+            System.exit(2);
+        }
+    }
+
+    private static Map<String, double[]> read(String file) throws IOException {
+        Map<String, double[]> results = new LinkedHashMap<>();
+        String json = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        Matcher m = RESULT.matcher(json);
+        while (m.find()) {
+            double error = Double.parseDouble(m.group(4)); // NaN when too few iterations ran
+            results.put(m.group(1) + "/" + m.group(2),
+                    new double[]{Double.parseDouble(m.group(3)), Double.isNaN(error) ? 0 : error});
+        }
+        return results;
+    }
+}
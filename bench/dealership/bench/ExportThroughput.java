@@ -0,0 +1,81 @@
+package dealership.bench;
+
+import dealership.Car;
+import dealership.Exporter;
+import dealership.utils.DealershipDB;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Measures the throughput of the exports of the inventory, in each format,
+ * against a baseline building a String per row (DealershipDB.formatCar) and
+ * writing it through a BufferedWriter. Also reports the bytes allocated per
+ * row, which should stay near zero for the exports whatever the number of cars.
+ * Usage:
+ *       java dealership.bench.ExportThroughput [number of cars] [repetitions]
+ */
+public class ExportThroughput {
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        List<Car> cars = SyntheticData.cars(count, 42);
+        Path dir = Files.createTempDirectory("export-bench");
+        try (Exporter exporter = new Exporter()) {
+            measure("String per row", count, repetitions, () -> baseline(cars, dir.resolve("baseline.csv")));
+            for (Exporter.Format format : Exporter.Format.values()) {
+                Path file = dir.resolve("inventory." + format.getExtension());
+                measure(format.name(), count, repetitions, () -> {
+                    exporter.exportInventory(cars, format, file);
+                    return exporter.getBytesWritten();
+                });
+            }
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    interface Export {
+        long run() throws IOException;
+    }
+
+    static void measure(String name, int rows, int repetitions, Export export) throws IOException {
+        long best = Long.MAX_VALUE;
+        long bytes = 0;
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < repetitions; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            bytes = export.run();
+            best = Math.min(best, System.nanoTime() - start);
+            allocated = Math.min(allocated, allocatedBytes() - allocatedBefore);
+        }
+        double seconds = best / 1e9;
+        System.out.printf("%-15s %,12.0f rows/s  %8.1f MB/s  %6.1f bytes/row  %8.1f allocated bytes/row%n",
+                name, rows / seconds, bytes / seconds / 1e6, (double) bytes / rows, (double) allocated / rows);
+    }
+
+    static long baseline(List<Car> cars, Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Car car : cars) {
+                writer.write(DealershipDB.formatCar(car));
+                writer.newLine();
+            }
+        }
+        return Files.size(file);
+    }
+
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
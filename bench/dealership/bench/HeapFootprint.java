@@ -0,0 +1,45 @@
+package dealership.bench;
+
+import dealership.Car;
+import dealership.ColumnarInventory;
+
+import java.util.List;
+
+/**
+ * Compares the heap retained by an inventory held as a List<Car> with the
+ * same inventory held as a ColumnarInventory.
+ * Usage:
+ *       java -Xmx4g dealership.bench.HeapFootprint [number of cars]
+ */
+public class HeapFootprint {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long baseline = usedHeap();
+        List<Car> cars = SyntheticData.cars(count, 42);
+        long listBytes = usedHeap() - baseline;
+
+        ColumnarInventory columnar = ColumnarInventory.of(cars);
+        cars = null;
+        long columnarBytes = usedHeap() - baseline;
+
+        System.out.printf("cars:              %,d%n", columnar.size());
+        System.out.printf("List<Car>:         %,d bytes (%.1f bytes/car)%n", listBytes, (double) listBytes / count);
+        System.out.printf("ColumnarInventory: %,d bytes (%.1f bytes/car), estimated %,d%n",
+                columnarBytes, (double) columnarBytes / count, columnar.estimatedHeapBytes());
+        System.out.printf("ratio:             %.2fx%n", (double) listBytes / columnarBytes);
+    }
+
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,147 @@
+package dealership.bench;
+
+import dealership.Car;
+import dealership.CarStatus;
+import dealership.Dealership;
+import dealership.HoldManager;
+import dealership.InventoryStore;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Puts cars of a shared {@link Dealership} on hold from many threads and
+ * checks the holds:
+ * - Salespersons all try to hold the same cars, in the same order. Each car
+ *   must be held exactly once, by the salesperson the hold names, and be
+ *   available again once released.
+ * - Then every car is held, with a hold expiring within a few seconds. The
+ *   holds must all expire on time, and every car be available again.
+ * Usage:
+ *       java dealership.bench.HoldStressTest [cars] [threads] [seconds until the last hold expires]
+ * Exits with status 1 if a check fails.
+ */
+public class HoldStressTest {
+    private static final int CONTENDED_CARS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int carCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        List<Car> cars = new ArrayList<>();
+        for (Car car : SyntheticData.cars(carCount, 1)) {
+            cars.add(car.withStatus(CarStatus.AVAILABLE));
+        }
+        Dealership dealership = new Dealership(new ArrayList<>(), cars);
+        dealership.enableHolds(Duration.ofHours(1));
+        HoldManager holds = dealership.getHoldManager();
+        InventoryStore store = dealership.getInventoryStore();
+        List<String> failures = new CopyOnWriteArrayList<>();
+
+        // Conflicting holds
+        int contended = Math.min(CONTENDED_CARS, carCount);
+        AtomicLong held = new AtomicLong();
+        long start = System.nanoTime();
+        run(threads, id -> {
+            for (int i = 0; i < contended; i++) {
+                if (holds.hold(SyntheticData.vin(i), "seller" + id, Duration.ofHours(1)) != null) {
+                    held.incrementAndGet();
+                }
+            }
+        }, failures);
+        long contendedNanos = System.nanoTime() - start;
+        int onHold = store.findByStatus(CarStatus.ON_HOLD.getLabel()).size();
+        if (held.get() != contended || holds.size() != contended || onHold != contended) {
+            failures.add("conflicting holds: " + held.get() + " successful holds, " + holds.size() + " holds, "
+                    + onHold + " cars on hold, expected " + contended);
+        }
+        for (int i = 0; i < contended; i++) {
+            HoldManager.Hold hold = holds.getHold(SyntheticData.vin(i));
+            if (hold == null || !holds.release(hold.getVin(), hold.getSalesperson())) {
+                failures.add("unable to release the hold on " + SyntheticData.vin(i));
+            }
+        }
+        if (holds.size() != 0 || store.findByStatus(CarStatus.AVAILABLE.getLabel()).size() != carCount) {
+            failures.add("released holds: " + holds.size() + " holds left, "
+                    + store.findByStatus(CarStatus.ON_HOLD.getLabel()).size() + " cars on hold");
+        }
+        System.out.printf("%d threads holding the same %,d cars: %,d ms, each car held once: %s%n",
+                threads, contended, contendedNanos / 1_000_000, held.get() == contended);
+
+        // Expiring holds, spread over the next few seconds
+        start = System.nanoTime();
+        AtomicLong placed = new AtomicLong();
+        run(threads, id -> {
+            Random random = new Random(id);
+            for (int i = id; i < carCount; i += threads) {
+                Duration ttl = Duration.ofMillis(500 + random.nextInt(seconds * 1000));
+                if (holds.hold(SyntheticData.vin(i), "seller" + id, ttl) == null) {
+                    failures.add("unable to hold " + SyntheticData.vin(i));
+                }
+                placed.incrementAndGet();
+            }
+        }, failures);
+        long holdNanos = System.nanoTime() - start;
+        // No hold is due later than this
+        long lastDue = System.currentTimeMillis() + 500 + seconds * 1000L;
+        System.out.printf("%,d holds placed by %d threads in %,d ms (%,.0f holds/s), %,d still held%n",
+                placed.get(), threads, holdNanos / 1_000_000, placed.get() * 1e9 / holdNanos, holds.size());
+        while (holds.size() > 0 && System.currentTimeMillis() < lastDue + 10_000) {
+            Thread.sleep(10);
+        }
+        long lastExpiry = System.currentTimeMillis();
+        if (holds.size() != 0) {
+            failures.add(holds.size() + " holds not expired " + (lastExpiry - lastDue) + " ms after the last was due");
+        }
+        int available = store.findByStatus(CarStatus.AVAILABLE.getLabel()).size();
+        if (available != carCount) {
+            failures.add("expired holds: " + available + " cars available, expected " + carCount);
+        }
+        System.out.printf("every hold expired %,d ms after the last was due at the latest%n",
+                Math.max(0, lastExpiry - lastDue));
+        dealership.closeHolds();
+
+        if (failures.isEmpty()) {
+            System.out.println("OK: no conflicting holds, every hold released or expired on time");
+        } else {
+            failures.forEach(f -> System.out.println("FAILED: " + f));
+            System.exit(1);
+        }
+    }
+
+    private interface Work {
+        void run(int id) throws IOException;
+    }
+
+    /**
+     * Runs some work on several threads at once, and waits for them to finish.
+     */
+    private static void run(int threads, Work work, List<String> failures) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    work.run(id);
+                } catch (Throwable e) {
+                    failures.add("worker failed: " + e);
+                }
+            }, "holds-" + t);
+            workers.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : workers) {
+            thread.join();
+        }
+    }
+}
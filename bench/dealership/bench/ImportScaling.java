@@ -0,0 +1,48 @@
+package dealership.bench;
+
+import dealership.BulkImporter;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how the parsing and validation of a bulk import scales with the
+ * number of threads, by parsing the same feed on pools of 1, 2, 4... threads
+ * up to the number of available processors.
+ * Usage:
+ *       java dealership.bench.ImportScaling <feed> [repetitions]
+ * A feed can be generated with {@link StartupTime} (the inventory.csv of a
+ * generated database).
+ */
+public class ImportScaling {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java dealership.bench.ImportScaling <feed> [repetitions]");
+            System.exit(1);
+        }
+        File feed = new File(args[0]);
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int processors = Runtime.getRuntime().availableProcessors();
+        double baseline = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            BulkImporter importer = new BulkImporter(pool, true);
+            long best = Long.MAX_VALUE;
+            int rows = 0;
+            for (int i = 0; i < repetitions; i++) {
+                long start = System.nanoTime();
+                rows = importer.parseFeed(feed).size();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            pool.shutdown();
+            double rate = rows / (best / 1e9);
+            if (threads == 1) {
+                baseline = rate;
+            }
+            System.out.printf("%3d threads: %,12.0f rows/s  (%.2fx)%n", threads, rate, rate / baseline);
+            if (threads == processors) {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package dealership.bench;
+
+import dealership.Car;
+import dealership.CarStatus;
+import dealership.Dealership;
+import dealership.InventoryStore;
+import dealership.Sale;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hammers a shared {@link Dealership} from many threads and checks that no
+ * update was lost:
+ * - Repricers raise the prices of a few hot cars by one dollar at a time,
+ *   half of them through {@link InventoryStore#update(String, java.util.function.UnaryOperator)},
+ *   half through optimistic {@link InventoryStore#replace(Car, Car)} retries.
+ *   Every car must end up priced at its initial price plus the raises it got.
+ * - Sellers all try to sell the same available cars. Each car must be sold
+ *   exactly once, with exactly one sale recorded.
+ * - Readers keep iterating and querying the indexes meanwhile.
+ * At the end, every index and report view must agree with the cars.
+ * Usage:
+ *       java dealership.bench.InventoryStressTest [threads] [seconds]
+ * Exits with status 1 if a check fails.
+ */
+public class InventoryStressTest {
+    private static final int CARS = 10_000;
+    private static final int HOT_CARS = 8;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        List<Car> cars = new ArrayList<>();
+        for (Car car : SyntheticData.cars(CARS, 1)) {
+            cars.add(car.withStatus(CarStatus.AVAILABLE));
+        }
+        Dealership dealership = new Dealership(new ArrayList<>(), cars);
+        InventoryStore store = dealership.getInventoryStore();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong[] raises = new AtomicLong[HOT_CARS];
+        for (int i = 0; i < HOT_CARS; i++) {
+            raises[i] = new AtomicLong();
+        }
+        AtomicLong sold = new AtomicLong();
+        AtomicLong reads = new AtomicLong();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Runnable work;
+            switch (t % 4) {
+                case 0:
+                    work = () -> { // locked read-modify-write
+                        Random random = new Random(id);
+                        while (running.get()) {
+                            int hot = random.nextInt(HOT_CARS);
+                            store.update(SyntheticData.vin(hot), c -> c.withPrice(c.getPrice() + 1));
+                            raises[hot].incrementAndGet();
+                        }
+                    };
+                    break;
+                case 1:
+                    work = () -> { // optimistic read-modify-write
+                        Random random = new Random(id);
+                        while (running.get()) {
+                            int hot = random.nextInt(HOT_CARS);
+                            Car current;
+                            do {
+                                current = store.getByVin(SyntheticData.vin(hot));
+                            } while (!store.replace(current, current.withPrice(current.getPrice() + 1)));
+                            raises[hot].incrementAndGet();
+                        }
+                    };
+                    break;
+                case 2:
+                    work = () -> { // everyone sells the same cars, in the same order
+                        int next = HOT_CARS;
+                        while (running.get() && next < CARS) {
+                            String vin = SyntheticData.vin(next++);
+                            Sale sale = new Sale(LocalDate.of(2025, 1, 1), vin, 0, 1, "Seller " + id, "Customer");
+                            try {
+                                if (dealership.sellCar(sale)) {
+                                    sold.incrementAndGet();
+                                }
+                            } catch (IOException e) {
+                                errors.add(e);
+                            }
+                        }
+                    };
+                    break;
+                default:
+                    work = () -> {
+                        while (running.get()) {
+                            long n = 0;
+                            for (Car car : store.getCars()) {
+                                n += car.getYear();
+                            }
+                            n += store.findByStatus("Available").size();
+                            n += store.findByPriceRange(10_000, 20_000).size();
+                            n += dealership.getReportViews().getCountsByStatus().size();
+                            reads.addAndGet(n > 0 ? 1 : 0);
+                        }
+                    };
+            }
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    work.run();
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }, "stress-" + t);
+            workers.add(thread);
+            thread.start();
+        }
+
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread thread : workers) {
+            thread.join();
+        }
+
+        List<String> failures = new ArrayList<>();
+        for (Throwable e : errors) {
+            failures.add("worker failed: " + e);
+        }
+        long totalRaises = 0;
+        for (int i = 0; i < HOT_CARS; i++) {
+            Car initial = cars.get(i);
+            Car current = store.getByVin(initial.getVin());
+            totalRaises += raises[i].get();
+            if (current.getPrice() != initial.getPrice() + raises[i].get()) {
+                failures.add("lost update on " + initial.getVin() + ": price " + current.getPrice()
+                        + ", expected " + (initial.getPrice() + raises[i].get()));
+            }
+        }
+        long soldCars = store.findByStatus("Sold").size();
+        int sales = dealership.getSales().size();
+        if (soldCars != sold.get() || sales != sold.get()) {
+            failures.add("double sale: " + sold.get() + " successful sales, " + soldCars + " cars sold, "
+                    + sales + " sales recorded");
+        }
+        failures.addAll(checkIndexes(store));
+        failures.addAll(dealership.verifyReportViews());
+
+        System.out.printf("%d threads, %d s: %,d raises, %,d cars sold, %,d reader passes%n",
+                threads, seconds, totalRaises, sold.get(), reads.get());
+        if (failures.isEmpty()) {
+            System.out.println("OK: no lost updates, no double sales, indexes consistent");
+        } else {
+            failures.forEach(f -> System.out.println("FAILED: " + f));
+            System.exit(1);
+        }
+    }
+
+    private static List<String> checkIndexes(InventoryStore store) {
+        List<String> failures = new ArrayList<>();
+        int indexed = 0;
+        for (CarStatus status : CarStatus.values()) {
+            indexed += store.findByStatus(status.getLabel()).size();
+        }
+        if (indexed != store.size()) {
+            failures.add("status index holds " + indexed + " cars, store holds " + store.size());
+        }
+        for (Car car : store.getCars()) {
+            if (!contains(store.findByStatus(car.getStatus()), car)
+                    || !contains(store.findByMakeAndModel(car.getMake(), car.getModel()), car)
+                    || !contains(store.findByPriceRange(car.getPrice(), car.getPrice()), car)
+                    || !contains(store.findByMileageRange(car.getMileage(), car.getMileage()), car)) {
+                failures.add("indexes out of date for " + car);
+            }
+        }
+        return failures;
+    }
+
+    private static boolean contains(Collection<Car> cars, Car car) {
+        for (Car c : cars) {
+            if (c == car) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
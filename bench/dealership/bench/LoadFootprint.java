@@ -0,0 +1,155 @@
+package dealership.bench;
+
+import dealership.Car;
+import dealership.Role;
+import dealership.Sale;
+import dealership.User;
+import dealership.utils.CsvParser;
+import dealership.utils.CsvRow;
+import dealership.utils.CsvSchema;
+import dealership.utils.DealershipDB;
+import dealership.utils.StringPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Measures how long loading the users, cars and sales of a generated database
+ * takes, and the heap they retain, with the low-cardinality fields (makes,
+ * models, colors, statuses, roles and salespersons) shared through string
+ * pools, against a baseline building a String for every field of every row
+ * and cleaning up roles with a regular expression, as loading did before.
+ * Usage:
+ *       java -Xmx4g dealership.bench.LoadFootprint [number of cars] [number of sales] [repetitions]
+ */
+public class LoadFootprint {
+    public static void main(String[] args) throws IOException {
+        int carCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int saleCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        Path dir = Files.createTempDirectory("load-bench");
+        try {
+            SyntheticData.writeDatabase(dir.toFile(), 10_000, carCount, saleCount);
+            measure("String per field", dir.toFile(), false, repetitions);
+            measure("string pools", dir.toFile(), true, repetitions);
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    static final class Loaded {
+        List<User> users;
+        List<Car> cars;
+        List<Sale> sales;
+
+        int rows() {
+            return users.size() + cars.size() + sales.size();
+        }
+
+        /**
+         * @return the number of distinct String instances held by the low-cardinality fields.
+         */
+        int distinctStrings() {
+            Set<String> strings = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Car car : cars) {
+                strings.add(car.getMake());
+                strings.add(car.getModel());
+                strings.add(car.getColor());
+                strings.add(car.getStatus());
+            }
+            for (Sale sale : sales) {
+                strings.add(sale.getSalesperson());
+            }
+            return strings.size();
+        }
+    }
+
+    static void measure(String name, File dir, boolean pooled, int repetitions) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < repetitions; i++) {
+            long start = System.nanoTime();
+            load(dir, pooled);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        long before = HeapFootprint.usedHeap();
+        Loaded loaded = load(dir, pooled);
+        long retained = HeapFootprint.usedHeap() - before;
+        System.out.printf("%-17s loaded in %,6d ms  retained %,13d bytes (%5.1f bytes/row)  %,9d distinct strings%n",
+                name, best / 1_000_000, retained, (double) retained / loaded.rows(), loaded.distinctStrings());
+    }
+
+    static Loaded load(File dir, boolean pooled) throws IOException {
+        Loaded loaded = new Loaded();
+        loaded.users = parse(new File(dir, DealershipDB.USERS_FILE_NAME), DealershipDB.USERS_SCHEMA,
+                layout -> userMapper(layout, pooled));
+        loaded.cars = parse(new File(dir, DealershipDB.INVENTORY_FILE_NAME), DealershipDB.INVENTORY_SCHEMA,
+                pooled ? DealershipDB::carMapper : LoadFootprint::baselineCarMapper);
+        loaded.sales = parse(new File(dir, DealershipDB.SALES_FILE_NAME), DealershipDB.SALES_SCHEMA,
+                pooled ? DealershipDB::saleMapper : LoadFootprint::baselineSaleMapper);
+        return loaded;
+    }
+
+    static <T> List<T> parse(File file, CsvSchema schema, Function<CsvSchema.Layout, CsvSchema.RowMapper<T>> mappers)
+            throws IOException {
+        CsvSchema.Layout layout = schema.resolve(file);
+        CsvSchema.RowMapper<T> mapper = mappers.apply(layout);
+        List<T> rows = new ArrayList<>();
+        new CsvParser(DealershipDB.DROP_COMMENT_LINES, DealershipDB.DROP_EMPTY_LINES).parse(file,
+                row -> rows.add(mapper.map(row)));
+        return rows;
+    }
+
+    static CsvSchema.RowMapper<User> userMapper(CsvSchema.Layout layout, boolean pooled) {
+        Function<CsvRow, String> username = layout.string("username");
+        Function<CsvRow, String> password = layout.string("password");
+        if (pooled) {
+            Function<CsvRow, String> role = layout.string("role", new StringPool());
+            return row -> new User(username.apply(row), password.apply(row), Role.of(role.apply(row)));
+        }
+        Function<CsvRow, String> role = layout.string("role");
+        return row -> new User(username.apply(row), password.apply(row), role.apply(row).replaceAll("[^a-zA-Z]", ""));
+    }
+
+    static CsvSchema.RowMapper<Car> baselineCarMapper(CsvSchema.Layout layout) {
+        Function<CsvRow, String> vin = layout.string("vin");
+        Function<CsvRow, LocalDate> acquisitionDate = layout.optionalDate("acquisition date");
+        Function<CsvRow, String> make = layout.string("make");
+        Function<CsvRow, String> model = layout.string("model");
+        ToIntFunction<CsvRow> year = layout.intValue("year");
+        ToIntFunction<CsvRow> mileage = layout.intValue("mileage");
+        Function<CsvRow, String> color = layout.string("color");
+        ToDoubleFunction<CsvRow> cost = layout.doubleValue("cost", Double.NaN);
+        ToDoubleFunction<CsvRow> price = layout.doubleValue("price");
+        Function<CsvRow, String> status = layout.string("status");
+        return row -> new Car(vin.apply(row), acquisitionDate.apply(row), make.apply(row), model.apply(row),
+                year.applyAsInt(row), mileage.applyAsInt(row), color.apply(row), cost.applyAsDouble(row),
+                price.applyAsDouble(row), status.apply(row));
+    }
+
+    static CsvSchema.RowMapper<Sale> baselineSaleMapper(CsvSchema.Layout layout) {
+        Function<CsvRow, LocalDate> date = layout.date("date");
+        Function<CsvRow, String> vin = layout.string("vin");
+        ToDoubleFunction<CsvRow> cost = layout.doubleValue("cost");
+        ToDoubleFunction<CsvRow> price = layout.doubleValue("price");
+        Function<CsvRow, String> salesperson = layout.string("salesperson");
+        Function<CsvRow, String> customer = layout.string("customer");
+        return row -> new Sale(date.apply(row), vin.apply(row), cost.applyAsDouble(row), price.applyAsDouble(row),
+                salesperson.apply(row), customer.apply(row));
+    }
+}
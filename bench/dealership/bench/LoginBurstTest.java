@@ -0,0 +1,86 @@
+package dealership.bench;
+
+import dealership.CredentialStore;
+import dealership.DealershipServer;
+import dealership.User;
+import dealership.utils.PasswordHasher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntPredicate;
+
+/**
+ * Measures login latency under concurrent bursts, as at shift change, for a
+ * growing number of users. Every user shares one precomputed hash, so stores
+ * of millions of users are built instantly; lookups still go through the
+ * username index. Each round logs in a burst of users concurrently:
+ * - first logins, which pay the full hash,
+ * - repeated logins, served by the verified session cache,
+ * - logins of unknown usernames, which must cost as much as first logins,
+ * - wrong passwords, until the users are throttled.
+ * Usage:
+ *       java dealership.bench.LoginBurstTest [users,...] [burst] [iterations]
+ * Defaults: 1000,100000,1000000 users, bursts of 200 logins, 10000 hash iterations.
+ */
+public class LoginBurstTest {
+    private static final String PASSWORD = "shift-change";
+
+    public static void main(String[] args) throws Exception {
+        int[] userCounts = Arrays.stream((args.length > 0 ? args[0] : "1000,100000,1000000").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        int burst = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+
+        PasswordHasher hasher = new PasswordHasher(iterations);
+        String hash = hasher.hash(PASSWORD);
+        ExecutorService executor = DealershipServer.newSessionExecutor("login");
+        for (int count : userCounts) {
+            List<User> users = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                users.add(new User("user" + i, hash, "salesperson"));
+            }
+            CredentialStore store = new CredentialStore(users, hasher);
+            int step = Math.max(1, count / burst);
+            System.out.printf("%,d users, bursts of %d logins, %d iterations%n", count, burst, iterations);
+            report("first login", executor, burst, i -> store.authenticate("user" + i * step, PASSWORD) != null);
+            report("repeat login", executor, burst, i -> store.authenticate("user" + i * step, PASSWORD) != null);
+            report("unknown user", executor, burst, i -> store.authenticate("nobody" + i, PASSWORD) == null);
+            report("wrong password", executor, burst * 8,
+                    i -> store.authenticate("user" + (i % burst) * step, "guess" + i) == null);
+            int throttled = 0;
+            for (int i = 0; i < burst; i++) {
+                throttled += store.getRetryDelayMillis("user" + i * step) > 0 ? 1 : 0;
+            }
+            System.out.printf("  %d of %d users throttled%n", throttled, burst);
+        }
+        executor.shutdown();
+    }
+
+    private static void report(String name, ExecutorService executor, int logins, IntPredicate login)
+            throws Exception {
+        long[] latencies = new long[logins];
+        List<Future<Boolean>> results = new ArrayList<>(logins);
+        long start = System.nanoTime();
+        for (int i = 0; i < logins; i++) {
+            int n = i;
+            results.add(executor.submit(() -> {
+                long t = System.nanoTime();
+                boolean ok = login.test(n);
+                latencies[n] = System.nanoTime() - t;
+                return ok;
+            }));
+        }
+        int failed = 0;
+        for (Future<Boolean> result : results) {
+            failed += result.get() ? 0 : 1;
+        }
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        System.out.printf("  %-15s %,8.0f logins/s   p50 %8.3f ms   p99 %8.3f ms%s%n", name,
+                logins / (elapsed / 1e9), latencies[logins / 2] / 1e6, latencies[logins * 99 / 100] / 1e6,
+                failed > 0 ? "   " + failed + " unexpected results" : "");
+    }
+}
@@ -0,0 +1,176 @@
+package dealership.bench;
+
+import dealership.Car;
+import dealership.Dealership;
+import dealership.DealershipServer;
+import dealership.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives many simulated sessions against a {@link DealershipServer} running in
+ * the same JVM over a synthetic dealership. Each session logs in as a manager,
+ * opens the inventory or the sales report, and exits. Meanwhile, writer threads
+ * keep recording sales and repricing cars through the shared dealership.
+ * Usage:
+ *       java dealership.bench.ServerLoadTest [options]
+ * Options:
+ *       --sessions n      number of sessions (default 2000)
+ *       --concurrency n   sessions open at the same time (default 500)
+ *       --cars n          cars in the dealership (default 200)
+ *       --sales n         sales in the dealership (default 10000)
+ *       --writers n       threads changing the dealership during the test (default 2)
+ */
+public class ServerLoadTest {
+    private static final int USERS = 100;
+    private static final int SOCKET_TIMEOUT_MILLIS = 60_000;
+
+    public static void main(String[] args) throws Exception {
+        int sessions = 2000;
+        int concurrency = 500;
+        int carCount = 200;
+        int saleCount = 10_000;
+        int writers = 2;
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--sessions": sessions = Integer.parseInt(value); i++; break;
+                case "--concurrency": concurrency = Integer.parseInt(value); i++; break;
+                case "--cars": carCount = Integer.parseInt(value); i++; break;
+                case "--sales": saleCount = Integer.parseInt(value); i++; break;
+                case "--writers": writers = Integer.parseInt(value); i++; break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        List<User> users = SyntheticData.users(USERS, 1);
+        List<Car> cars = SyntheticData.cars(carCount, 2);
+        Dealership dealership = new Dealership(users, cars, SyntheticData.sales(saleCount, carCount, 3), null);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong writes = new AtomicLong();
+        Thread[] writerThreads = new Thread[writers];
+        for (int w = 0; w < writers; w++) {
+            Random random = new Random(100 + w);
+            int count = carCount;
+            writerThreads[w] = new Thread(() -> {
+                while (running.get()) {
+                    try {
+                        if (random.nextBoolean()) {
+                            dealership.recordSale(SyntheticData.sale(count, random));
+                        } else {
+                            Car car = SyntheticData.car(random.nextInt(count), random);
+                            dealership.updateCar(car);
+                        }
+                        writes.incrementAndGet();
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }, "load-writer-" + w);
+            writerThreads[w].start();
+        }
+
+        long[] latencies = new long[sessions];
+        AtomicInteger failures = new AtomicInteger();
+        try (DealershipServer server = new DealershipServer(dealership, 0)) {
+            Thread acceptor = new Thread(() -> {
+                try {
+                    server.serve();
+                } catch (IOException e) {
+                    System.err.println("ERROR: Server stopped: " + e.getMessage());
+                }
+            }, "load-acceptor");
+            acceptor.start();
+
+            ExecutorService clients = DealershipServer.newSessionExecutor("load-client");
+            Semaphore open = new Semaphore(concurrency);
+            CountDownLatch done = new CountDownLatch(sessions);
+            long start = System.nanoTime();
+            for (int i = 0; i < sessions; i++) {
+                int session = i;
+                open.acquire();
+                clients.execute(() -> {
+                    try {
+                        latencies[session] = runSession(server.getPort(), users.get((session * 2) % USERS), session % 2 == 0);
+                    } catch (IOException | RuntimeException e) {
+                        latencies[session] = -1;
+                    } finally {
+                        if (latencies[session] < 0) {
+                            failures.incrementAndGet();
+                        }
+                        open.release();
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+            long elapsed = System.nanoTime() - start;
+            clients.shutdown();
+            running.set(false);
+            for (Thread t : writerThreads) {
+                t.join();
+            }
+
+            long[] ok = Arrays.stream(latencies).filter(l -> l >= 0).sorted().toArray();
+            System.out.printf("%,d sessions (%,d at a time) in %,d ms: %.1f sessions/s, %,d failed%n",
+                    sessions, concurrency, elapsed / 1_000_000, sessions / (elapsed / 1e9), failures.get());
+            if (ok.length > 0) {
+                System.out.printf("session latency: p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                        percentile(ok, 0.50), percentile(ok, 0.90), percentile(ok, 0.99), ok[ok.length - 1] / 1e6);
+            }
+            System.out.printf("%,d concurrent writes, %,d sales at the end%n", writes.get(), dealership.getSales().size());
+            List<String> differences = dealership.verifyReportViews();
+            System.out.println(differences.isEmpty() ? "report views consistent" : "VIEW MISMATCH: " + differences);
+        }
+    }
+
+    /**
+     * Runs one session and checks that it ended normally.
+     *
+     * @return the duration of the session in nanoseconds, or -1 if it failed
+     */
+    private static long runSession(int port, User user, boolean inventory) throws IOException {
+        // login as manager, open a report, return to the login menu and exit
+        String script = "1\n" + user.getUsername() + "\n" + user.getPassword() + "\n"
+                + "3\n" + (inventory ? "1" : "3") + "\n\n6\n4\n3\n";
+        long start = System.nanoTime();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+            OutputStream out = socket.getOutputStream();
+            out.write(script.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                received.write(buffer, 0, n);
+            }
+            String output = received.toString(StandardCharsets.UTF_8);
+            boolean ok = output.contains("Successfully logged in") && output.endsWith("Exiting the system...\n");
+            return ok ? System.nanoTime() - start : -1;
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1e6;
+    }
+}
@@ -0,0 +1,76 @@
+package dealership.bench;
+
+import dealership.Car;
+import dealership.Dealership;
+import dealership.Sale;
+import dealership.User;
+import dealership.utils.DealershipDB;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Measures the time it takes to load a database directory into a Dealership,
+ * as CarDealership does on start. Run each mode in a fresh JVM to measure a
+ * cold start. The first start on a generated database hashes its plain text
+ * passwords and checkpoints the database, so run each mode once before
+ * measuring (or lower -Ddealership.passwordIterations).
+ *
+ * The lazy mode builds the Dealership without loading anything, as
+ * CarDealership does, and measures the time to the first login, then to load
+ * the sales of the last 30 days alone against loading all of them.
+ * Usage:
+ *       java dealership.bench.StartupTime generate <dir> <users> <cars> <sales>
+ *       java dealership.bench.StartupTime csv|binary|lazy <dir>
+ */
+public class StartupTime {
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 5 && args[0].equals("generate")) {
+            SyntheticData.writeDatabase(new File(args[1]), Integer.parseInt(args[2]),
+                    Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+            return;
+        }
+        if (args.length < 2) {
+            System.err.println("Usage: java dealership.bench.StartupTime csv|binary|lazy <dir>");
+            System.exit(1);
+        }
+        if (args[0].equals("lazy")) {
+            lazy(args[1]);
+            return;
+        }
+        boolean binary = args[0].equals("binary");
+        long start = System.nanoTime();
+        try (DealershipDB db = new DealershipDB(args[1], binary)) {
+            List<User> users = db.loadUsers();
+            List<Car> cars = db.loadInventory();
+            List<Sale> sales = db.loadSales();
+            long loaded = System.nanoTime();
+            Dealership dealership = new Dealership(users, cars, sales, db);
+            long built = System.nanoTime();
+            System.out.printf("%s: %,d users, %,d cars, %,d sales loaded in %,d ms, dealership built in %,d ms%n",
+                    args[0], dealership.getUsers().size(), dealership.getInventoryStore().size(), sales.size(),
+                    (loaded - start) / 1_000_000, (built - loaded) / 1_000_000);
+        }
+    }
+
+    static void lazy(String dir) throws IOException {
+        long start = System.nanoTime();
+        try (DealershipDB db = new DealershipDB(dir, true)) {
+            Dealership dealership = new Dealership(db);
+            long built = System.nanoTime();
+            dealership.authenticate("user0", "not the password");
+            long authenticated = System.nanoTime();
+            LocalDate to = SyntheticData.FIRST_SALE_DATE.plusDays(SyntheticData.SALE_DAYS - 1);
+            List<Sale> recent = dealership.getSales(to.minusDays(29), to);
+            long range = System.nanoTime();
+            List<Sale> all = dealership.getSales();
+            long loaded = System.nanoTime();
+            System.out.printf("lazy: built in %,d ms, first login in %,d ms, %,d sales of the last 30 days in %,d ms, "
+                            + "all %,d sales in %,d ms%n",
+                    (built - start) / 1_000_000, (authenticated - built) / 1_000_000, recent.size(),
+                    (range - authenticated) / 1_000_000, all.size(), (loaded - range) / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package dealership.bench;
+
+import dealership.Car;
+import dealership.Role;
+import dealership.Sale;
+import dealership.User;
+import dealership.utils.DealershipDB;
+import dealership.utils.Utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic dealership data for benchmarks. Generation is seeded,
+ * so a given size always produces the same data. Rows are generated one at a
+ * time, so database directories with millions of rows can be written without
+ * holding them in memory.
+ */
+public class SyntheticData {
+    static final String[][] MAKES_AND_MODELS = {
+            {"Toyota", "Camry", "Corolla", "RAV4", "Highlander"},
+            {"Honda", "Accord", "Civic", "CR-V", "Pilot"},
+            {"Ford", "F-150", "Escape", "Explorer", "Mustang"},
+            {"BMW", "X3", "X5", "330i", "M4"},
+            {"Audi", "A4", "A6", "Q5", "Q7"},
+            {"Nissan", "Altima", "Sentra", "Rogue", "Frontier"},
+            {"Chevrolet", "Silverado", "Malibu", "Equinox", "Tahoe"},
+            {"Dodge", "Ram", "Charger", "Durango", "Challenger"},
+    };
+    static final String[] COLORS = {"White", "Black", "Silver", "Grey", "Blue", "Red", "Green"};
+    static final String[] STATUSES = {"Available", "Available", "Available", "Sold", "In-Service", "In-Transit"};
+    static final LocalDate FIRST_SALE_DATE = LocalDate.of(2015, 1, 1);
+    static final int SALE_DAYS = 3652; // ten years
+    static final LocalDate FIRST_ACQUISITION_DATE = LocalDate.of(2024, 1, 1);
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Generate cars. Every string is a distinct instance, as it would be when
+     * read from a file.
+     *
+     * @param count number of cars
+     * @param seed  random seed
+     * @return the generated cars
+     */
+    public static List<Car> cars(int count, long seed) {
+        Random random = new Random(seed);
+        List<Car> cars = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            cars.add(car(i, random));
+        }
+        return cars;
+    }
+
+    /**
+     * Generate the car with the given sequence number. The acquisition date
+     * and cost are derived from the sequence number and price, so they don't
+     * change the other fields generated for a seed.
+     *
+     * @param i      sequence number, which determines the VIN and acquisition date
+     * @param random source of the other fields
+     * @return the generated car
+     */
+    public static Car car(int i, Random random) {
+        String[] makeAndModels = MAKES_AND_MODELS[random.nextInt(MAKES_AND_MODELS.length)];
+        String make = new String(makeAndModels[0]);
+        String model = new String(makeAndModels[1 + random.nextInt(makeAndModels.length - 1)]);
+        int year = 2005 + random.nextInt(20);
+        int mileage = random.nextInt(200_000);
+        String color = new String(COLORS[random.nextInt(COLORS.length)]);
+        int price = 5_000 + random.nextInt(60_000);
+        String status = new String(STATUSES[random.nextInt(STATUSES.length)]);
+        return new Car(vin(i), FIRST_ACQUISITION_DATE.plusDays(i * 7919L % 365), make, model, year, mileage, color,
+                Math.round(price * 0.85), price, status);
+    }
+
+    /**
+     * @param i sequence number
+     * @return a unique, fixed-width VIN for the sequence number
+     */
+    public static String vin(int i) {
+        return String.format("V%09d", i);
+    }
+
+    /**
+     * Generate users, half of them managers.
+     *
+     * @param count number of users
+     * @param seed  random seed
+     * @return the generated users
+     */
+    public static List<User> users(int count, long seed) {
+        Random random = new Random(seed);
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(user(i, random));
+        }
+        return users;
+    }
+
+    /**
+     * Generate the user with the given sequence number.
+     *
+     * @param i      sequence number, which determines the username and role
+     * @param random source of the password
+     * @return the generated user
+     */
+    public static User user(int i, Random random) {
+        return new User("user" + i, Long.toHexString(random.nextLong()), i % 2 == 0 ? "manager" : "salesperson");
+    }
+
+    /**
+     * Generate sales spread over the ten years preceding 2025.
+     *
+     * @param count    number of sales
+     * @param carCount number of cars the VINs are taken from
+     * @param seed     random seed
+     * @return the generated sales
+     */
+    public static List<Sale> sales(int count, int carCount, long seed) {
+        Random random = new Random(seed);
+        List<Sale> sales = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sales.add(sale(carCount, random));
+        }
+        return sales;
+    }
+
+    /**
+     * Generate one sale.
+     *
+     * @param carCount number of cars the VIN is taken from
+     * @param random   source of the fields
+     * @return the generated sale
+     */
+    public static Sale sale(int carCount, Random random) {
+        int cost = 5_000 + random.nextInt(50_000);
+        return new Sale(
+                FIRST_SALE_DATE.plusDays(random.nextInt(SALE_DAYS)),
+                vin(random.nextInt(Math.max(carCount, 1))),
+                cost,
+                cost + random.nextInt(8_000),
+                "Seller " + random.nextInt(40),
+                "Customer " + random.nextInt(1_000_000));
+    }
+
+    /**
+     * Write a database directory holding the given number of users, cars and
+     * sales. The inventory has the layout of the sample inventory.csv, and the
+     * sales are in date order.
+     *
+     * @param dir   target directory, created if needed
+     * @param users number of users
+     * @param cars  number of cars
+     * @param sales number of sales
+     * @throws IOException if a file can't be written
+     */
+    public static void writeDatabase(File dir, int users, int cars, int sales) throws IOException {
+        Files.createDirectories(dir.toPath());
+        try (BufferedWriter out = Files.newBufferedWriter(new File(dir, DealershipDB.USERS_FILE_NAME).toPath(), StandardCharsets.UTF_8)) {
+            out.write("# id, first name, last name, email, phone, role, username, password\n");
+            Random random = new Random(1);
+            for (int i = 0; i < users; i++) {
+                User user = user(i, random);
+                out.write(Utils.formatCSV(String.valueOf(100 + i), "First", "Last", user.getUsername() + "@bestcars.com",
+                        "617-800-1000", Role.labelOf(user.getRole()), user.getUsername(), user.getPassword()));
+                out.write('\n');
+            }
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(new File(dir, DealershipDB.INVENTORY_FILE_NAME).toPath(), StandardCharsets.UTF_8)) {
+            Random random = new Random(2);
+            for (int i = 0; i < cars; i++) {
+                Car car = car(i, random);
+                out.write(Utils.formatCSV(car.getVin(), car.getAcquisitionDate().toString(), car.getMake(),
+                        car.getModel(), String.valueOf(car.getYear()), String.valueOf(car.getMileage()), car.getColor(),
+                        String.valueOf((long) car.getCost()), String.valueOf((long) car.getPrice()), car.getStatus()));
+                out.write('\n');
+            }
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(new File(dir, DealershipDB.SALES_FILE_NAME).toPath(), StandardCharsets.UTF_8)) {
+            // In date order, as sales are recorded
+            List<Sale> generated = sales(sales, cars, 3);
+            generated.sort(Comparator.comparing(Sale::getDate));
+            for (Sale sale : generated) {
+                out.write(Utils.formatCSV(sale.getDate().toString(), sale.getVin(), String.valueOf((long) sale.getCost()),
+                        String.valueOf((long) sale.getPrice()), sale.getSalesperson(), sale.getCustomer()));
+                out.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+#!/bin/sh
+# Runs the JMH benchmarks with the Gradle build. Arguments are passed to JMH, e.g.:
+#     bench/run-benchmarks.sh -p size=1K,100K Benchmarks.vinLookup
+# Results are written to bench/build/results/jmh/results.json.
+set -e
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+exec gradle -p "$ROOT" --console=plain :jmh:jmh -Pjmh="$*"
@@ -0,0 +1,378 @@
+package dealership;
+
+import dealership.utils.CsvParser;
+import dealership.utils.CsvSchema;
+import dealership.utils.DealershipDB;
+import dealership.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The BulkImporter class merges large inventory feeds (e.g., from auctions or
+ * other lots) into a dealership:
+ * 1. The feed is split into byte ranges that start at line boundaries, which
+ *    are parsed in parallel on a fork/join pool.
+ * 2. Each row is validated: number of fields, VIN, dates, year, mileage, cost,
+ *    price and status.
+ * 3. Rows are deduplicated by VIN: the first row of a VIN wins.
+ * 4. The cars are merged into the inventory in parallel, then the database is
+ *    checkpointed once.
+ * Rows that fail any step are not printed: they are collected, with their
+ * offset and the reason why, in the returned {@link ImportReport}.
+ *
+ * The columns of a feed are resolved once, from its header or its number of
+ * columns, like those of an inventory file (see {@link DealershipDB#INVENTORY_SCHEMA}).
+ * Quoted fields may not contain line breaks: a row split by one is rejected.
+ * Usage:
+ *       java dealership.BulkImporter <database directory path> <feed> [rejects file]
+ */
+public class BulkImporter {
+    private static final long DEFAULT_MIN_CHUNK_SIZE = 4L * 1024 * 1024;
+    private static final int ALIGN_BUFFER_SIZE = 64 * 1024;
+    private static final int MIN_YEAR = 1886; // first car
+
+    private final ForkJoinPool pool;
+    private final long minChunkSize;
+    private final boolean updateExisting;
+
+    /**
+     * A valid row of the feed.
+     */
+    private static final class FeedCar {
+        final long offset;
+        final Car car;
+
+        FeedCar(long offset, Car car) {
+            this.offset = offset;
+            this.car = car;
+        }
+    }
+
+    /**
+     * The result of parsing a range of the feed: its valid rows and its rejects, in file order.
+     */
+    private static final class Chunk {
+        final List<FeedCar> cars;
+        final List<ImportReport.Reject> rejects;
+        final long rows;
+
+        Chunk(List<FeedCar> cars, List<ImportReport.Reject> rejects, long rows) {
+            this.cars = cars;
+            this.rejects = rejects;
+            this.rows = rows;
+        }
+
+        Chunk merge(Chunk next) {
+            List<FeedCar> allCars = new ArrayList<>(cars.size() + next.cars.size());
+            allCars.addAll(cars);
+            allCars.addAll(next.cars);
+            List<ImportReport.Reject> allRejects = new ArrayList<>(rejects);
+            allRejects.addAll(next.rejects);
+            return new Chunk(allCars, allRejects, rows + next.rows);
+        }
+    }
+
+    /**
+     * Parses a range of the feed, splitting it in two at a line boundary
+     * while it is larger than the minimum chunk size.
+     */
+    private final class ParseTask extends RecursiveTask<Chunk> {
+        private static final long serialVersionUID = 1L;
+
+        private final File feed;
+        private final FileChannel channel;
+        private final CsvSchema.Layout layout;
+        private final long from;
+        private final long to;
+
+        ParseTask(File feed, FileChannel channel, CsvSchema.Layout layout, long from, long to) {
+            this.feed = feed;
+            this.channel = channel;
+            this.layout = layout;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Chunk compute() {
+            try {
+                if (to - from > minChunkSize) {
+                    long middle = alignToLine(channel, from + (to - from) / 2, to);
+                    if (middle > from && middle < to) {
+                        ParseTask second = new ParseTask(feed, channel, layout, middle, to);
+                        second.fork();
+                        Chunk first = new ParseTask(feed, channel, layout, from, middle).compute();
+                        return first.merge(second.join());
+                    }
+                }
+                return parseRange(feed, layout, from, to);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Constructs an importer running on the common fork/join pool, which adds
+     * new cars and updates the cars already in the inventory.
+     */
+    public BulkImporter() {
+        this(ForkJoinPool.commonPool(), true);
+    }
+
+    /**
+     * Constructs an importer.
+     *
+     * @param pool           The pool the feed is parsed and merged on.
+     * @param updateExisting {true} to update the cars already in the inventory,
+     *                       {false} to reject them.
+     */
+    public BulkImporter(ForkJoinPool pool, boolean updateExisting) {
+        this(pool, updateExisting, DEFAULT_MIN_CHUNK_SIZE);
+    }
+
+    BulkImporter(ForkJoinPool pool, boolean updateExisting, long minChunkSize) {
+        if (minChunkSize < 1) {
+            throw new IllegalArgumentException("Invalid chunk size: " + minChunkSize);
+        }
+        this.pool = pool;
+        this.updateExisting = updateExisting;
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * Imports a feed into a dealership.
+     *
+     * @param feed       The feed.
+     * @param dealership The dealership the cars are merged into.
+     * @return The report of the import.
+     * @throws IOException If the feed can't be read or the database can't be checkpointed.
+     */
+    public ImportReport importFeed(File feed, Dealership dealership) throws IOException {
+        long start = System.nanoTime();
+        Chunk parsed = parse(feed);
+        List<ImportReport.Reject> rejects = new ArrayList<>(parsed.rejects);
+        List<FeedCar> unique = dedupe(parsed.cars, rejects);
+
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger updated = new AtomicInteger();
+        Queue<ImportReport.Reject> mergeRejects = new ConcurrentLinkedQueue<>();
+        dealership.changeInBulk(store -> run(() -> unique.parallelStream().forEach(row -> {
+            Car car = row.car;
+            if (store.add(car)) {
+                added.incrementAndGet();
+                return;
+            }
+            String reason = updateExisting ? null : "VIN already in inventory";
+            if (reason == null) {
+                Car replaced = store.update(car.getVin(), current ->
+                        current.getCarStatus() == CarStatus.SOLD ? null : car);
+                reason = replaced == car ? null : "car already sold";
+            }
+            if (reason == null) {
+                updated.incrementAndGet();
+            } else {
+                mergeRejects.add(new ImportReport.Reject(row.offset, reason, DealershipDB.formatCar(car)));
+            }
+        })));
+        rejects.addAll(mergeRejects);
+        dealership.audit("inventory.import", feed.getName(), added.get() + " added, " + updated.get() + " updated, "
+                + rejects.size() + " rejected");
+        return new ImportReport(feed, parsed.rows, added.get(), updated.get(), rejects, System.nanoTime() - start);
+    }
+
+    /**
+     * Parses and validates a feed without importing it.
+     *
+     * @param feed The feed.
+     * @return The valid cars of the feed, in file order, duplicates included.
+     * @throws IOException If the feed can't be read.
+     */
+    public List<Car> parseFeed(File feed) throws IOException {
+        List<Car> cars = new ArrayList<>();
+        for (FeedCar row : parse(feed).cars) {
+            cars.add(row.car);
+        }
+        return cars;
+    }
+
+    private Chunk parse(File feed) throws IOException {
+        CsvSchema.Layout layout = DealershipDB.INVENTORY_SCHEMA.resolve(feed);
+        try (FileChannel channel = FileChannel.open(feed.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            return run(() -> pool.invoke(new ParseTask(feed, channel, layout, 0, size)));
+        }
+    }
+
+    private static Chunk parseRange(File feed, CsvSchema.Layout layout, long from, long to) throws IOException {
+        CsvSchema.RowMapper<Car> mapper = DealershipDB.carMapper(layout); // one per task, for its string pool
+        List<FeedCar> cars = new ArrayList<>();
+        List<ImportReport.Reject> rejects = new ArrayList<>();
+        int thisYear = Year.now().getValue();
+        int columns = layout.getColumnCount();
+        long rows = new CsvParser(true, true).parse(feed, from, to, row -> {
+            String reason;
+            if (row.getFieldCount() != columns) {
+                reason = "expected " + columns + " fields, found " + row.getFieldCount();
+            } else {
+                try {
+                    Car car = mapper.map(row);
+                    reason = validate(car, thisYear);
+                    if (reason == null) {
+                        cars.add(new FeedCar(row.getOffset(), car));
+                        return;
+                    }
+                } catch (NumberFormatException e) {
+                    reason = "invalid number: " + e.getMessage();
+                } catch (DateTimeException e) {
+                    reason = "invalid date: " + e.getMessage();
+                }
+            }
+            rejects.add(new ImportReport.Reject(row.getOffset(), reason, Utils.formatCSV(row.toArray())));
+        });
+        return new Chunk(cars, rejects, rows);
+    }
+
+    /**
+     * @return why the car is invalid, or null if it is valid.
+     */
+    private static String validate(Car car, int thisYear) {
+        if (car.getVin().isEmpty()) {
+            return "missing VIN";
+        }
+        if (car.getYear() < MIN_YEAR || car.getYear() > thisYear + 1) {
+            return "invalid year " + car.getYear();
+        }
+        if (car.getMileage() < 0) {
+            return "negative mileage";
+        }
+        if (car.getCost() < 0) {
+            return "negative cost"; // unknown costs are NaN
+        }
+        if (!(car.getPrice() >= 0)) {
+            return "invalid price " + car.getPrice();
+        }
+        if (car.getCarStatus() == null) {
+            return "unknown status \"" + car.getStatus() + "\"";
+        }
+        return null;
+    }
+
+    /**
+     * Keeps the first row of each VIN and rejects the others.
+     */
+    private static List<FeedCar> dedupe(List<FeedCar> rows, List<ImportReport.Reject> rejects) {
+        Map<String, FeedCar> first = new HashMap<>(rows.size() * 2);
+        List<FeedCar> unique = new ArrayList<>(rows.size());
+        for (FeedCar row : rows) {
+            FeedCar seen = first.putIfAbsent(row.car.getVin(), row);
+            if (seen == null) {
+                unique.add(row);
+            } else {
+                rejects.add(new ImportReport.Reject(row.offset, "duplicate VIN, first seen at offset " + seen.offset,
+                        DealershipDB.formatCar(row.car)));
+            }
+        }
+        return Collections.unmodifiableList(unique);
+    }
+
+    /**
+     * Returns the offset following the first line break at or after the given
+     * offset, or the end of the range if there is none.
+     */
+    private static long alignToLine(FileChannel channel, long offset, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ALIGN_BUFFER_SIZE);
+        long position = offset;
+        while (position < to) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n && position + i < to; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return to;
+    }
+
+    /**
+     * Runs a task on the pool, so parallel streams inside it use the pool too,
+     * and rethrows what it throws.
+     */
+    private <T> T run(Callable<T> task) throws IOException {
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            run(() -> {
+                task.run();
+                return null;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Imports a feed into a database directory and prints the report.
+     *
+     * @param args The database directory path, the feed, and optionally the file the rejects are written to.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java dealership.BulkImporter <database directory path> <feed> [rejects file]");
+            System.exit(1);
+        }
+        try (DealershipDB db = new DealershipDB(args[0])) {
+            Dealership dealership = new Dealership(db.loadUsers(), db.loadInventory(), db.loadSales(), db);
+            ImportReport report = new BulkImporter().importFeed(new File(args[1]), dealership);
+            System.out.println(report);
+            if (args.length > 2) {
+                report.writeRejects(new File(args[2]));
+            } else {
+                report.getRejects().stream().limit(20).forEach(r -> System.out.println("  " + r));
+            }
+        } catch (IOException e) {
+            System.err.println("Error importing feed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
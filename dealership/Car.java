@@ -1,20 +1,27 @@
 package dealership;
 
+import java.time.LocalDate;
+
 /**
  * The Car class represents a single car in the dealership inventory.
+ * Cars are immutable: a change of status or price makes a new version of the
+ * car, which can be shared between threads without synchronization.
  */
 public class Car {
-    private String vin;
-    private String make;
-    private String model;
-    private int year;
-    private int mileage;
-    private String color;
-    private double price;
-    private String status;
+    private final String vin;
+    private final LocalDate acquisitionDate;
+    private final String make;
+    private final String model;
+    private final int year;
+    private final int mileage;
+    private final String color;
+    private final double cost;
+    private final double price;
+    private final String status;
+    private final CarStatus carStatus; // null if the status is not a known one
 
     /**
-     * Constructs a Car object with all attributes.
+     * Constructs a Car object whose acquisition date and cost are unknown.
      *
      * @param vin     Vehicle Identification Number
      * @param make    Car make (e.g., Toyota)
@@ -26,14 +33,57 @@ public class Car {
      * @param status  Availability status (Available/Sold/In-Service)
      */
     public Car(String vin, String make, String model, int year, int mileage, String color, double price, String status) {
+        this(vin, null, make, model, year, mileage, color, Double.NaN, price, status);
+    }
+
+    /**
+     * Constructs a Car object with all attributes.
+     *
+     * @param vin             Vehicle Identification Number
+     * @param acquisitionDate Date the dealership acquired the car, or null if unknown
+     * @param make            Car make (e.g., Toyota)
+     * @param model           Car model (e.g., Camry)
+     * @param year            Manufacture year
+     * @param mileage         Mileage in miles
+     * @param color           Car color
+     * @param cost            Price paid by the dealership in USD, or NaN if unknown
+     * @param price           Car price in USD
+     * @param status          Availability status (Available/Sold/In-Service)
+     */
+    public Car(String vin, LocalDate acquisitionDate, String make, String model, int year, int mileage, String color,
+               double cost, double price, String status) {
         this.vin = vin;
+        this.acquisitionDate = acquisitionDate;
         this.make = make;
         this.model = model;
         this.year = year;
         this.mileage = mileage;
         this.color = color;
+        this.cost = cost;
         this.price = price;
-        this.status = status;
+        this.carStatus = CarStatus.of(status);
+        // Known statuses written as their label share the label
+        this.status = carStatus != null && carStatus.getLabel().equals(status) ? carStatus.getLabel() : status;
+    }
+
+    /**
+     * Returns a copy of this car with another status.
+     *
+     * @param status The new status.
+     * @return The new version of the car.
+     */
+    public Car withStatus(CarStatus status) {
+        return new Car(vin, acquisitionDate, make, model, year, mileage, color, cost, price, status.getLabel());
+    }
+
+    /**
+     * Returns a copy of this car with another price.
+     *
+     * @param price The new price in USD.
+     * @return The new version of the car.
+     */
+    public Car withPrice(double price) {
+        return new Car(vin, acquisitionDate, make, model, year, mileage, color, cost, price, status);
     }
 
     /** Returns a formatted string representation of the car.
@@ -45,11 +95,14 @@ public class Car {
 
     // Add getter methods so other classes can access car details
     public String getVin() { return vin; }
+    public LocalDate getAcquisitionDate() { return acquisitionDate; }
     public String getMake() { return make; }
     public String getModel() { return model; }
     public int getYear() { return year; }
     public int getMileage() { return mileage; }
     public String getColor() { return color; }
+    public double getCost() { return cost; }
     public double getPrice() { return price; }
     public String getStatus() { return status; }
+    public CarStatus getCarStatus() { return carStatus; }
 }
@@ -1,40 +1,171 @@
 package dealership;
 
+import dealership.utils.AuditLog;
 import dealership.utils.DealershipDB;
+import dealership.utils.Metrics;
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 
 /**
  * The CarDealership class is the main entry point for the dealership system.
  * Usage:
- *       java dealership.CarDealership <database directory path>
+ *       java dealership.CarDealership <database directory path> [--server <port>]
+ *
+ * Without options, the menus are shown on the terminal. With --server, the
+ * menus are served to any number of simultaneous sessions on the given local
+ * port (see {@link DealershipServer}) until the process is stopped.
+ *
+ * The login prompt is shown before any data is read: the users, inventory
+ * and sales are loaded on first use, and meanwhile in the background, unless
+ * the system property dealership.preload is false. They are read from the
+ * binary snapshot kept in the database directory when it is current, and from
+ * the csv files otherwise. Setting the system property dealership.binarySnapshot
+ * to false always reads the csv files.
+ * While running, the users, inventory and sales files changed by another
+ * process are reloaded (see {@link DatabaseReloader}), unless the system
+ * property dealership.reload is false.
+ *
+ * The history of the status, price and mileage of the cars is kept in the
+ * history.bin file of the database directory, so the inventory can be looked
+ * at as it was on any day (see {@link InventoryHistory}), unless the system
+ * property dealership.history is false.
+ *
+ * Salespersons can put cars on hold for a customer for a number of hours,
+ * after which the cars are made available again (see {@link HoldManager}),
+ * unless the system property dealership.holds is false. A car still on hold
+ * after a restart stays on hold for another {@link #RESTORED_HOLD_TTL}.
+ *
+ * Logins and changes are recorded, with the user who made them, in the audit
+ * log kept in the audit subdirectory of the database directory (see
+ * {@link AuditLog}), unless the system property dealership.audit is false.
+ *
+ * The lots of a dealership group, each with its own database directory, are
+ * reported on together by {@link DealershipGroup}.
+ *
+ * The inventory and sales of a database are exported to csv, JSON lines or a
+ * compressed columnar format by {@link Exporter}.
+ *
+ * Setting the system property dealership.metrics to true records how long
+ * loading, logins, queries and reports take (see {@link Metrics}). The metrics
+ * can then be read through JMX, and are written every dealership.metrics.period
+ * seconds to the file named by dealership.metrics.dump, as JSON if its name
+ * ends with .json.
  */
 public class CarDealership {
+    public static final String HISTORY_FILE_NAME = "history.bin";
+    public static final Duration RESTORED_HOLD_TTL = Duration.ofHours(24);
+
     /**
      * The main method starts the dealership system.
      * It expects a command-line argument specifying the database directory path.
      * If the argument is missing, an error message is displayed, and the program exits.
      *
-     * @param args Command-line arguments, where args[0] should be the database directory path.
+     * @param args Command-line arguments, where args[0] should be the database directory path,
+     *             optionally followed by --server and a port number.
      */
     public static void main(String[] args) {
-        if (args.length < 1) {
-            System.err.println("Usage: java dealership.CarDealership <database directory path>");
+        int port = -1;
+        if (args.length == 3 && args[1].equals("--server")) {
+            try {
+                port = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                port = -1;
+            }
+        }
+        if (args.length < 1 || (args.length > 1 && (port < 0 || port > 65535))) {
+            System.err.println("Usage: java dealership.CarDealership <database directory path> [--server <port>]");
             System.exit(1); // Exit with an error code
         }
 
-        try {
-            // Initialize the dealership database with the provided path
-            DealershipDB db = new DealershipDB(args[0]);
+        Metrics.configure();
 
-            // Load users and inventory from the database into a Dealership object
-            Dealership dealership = new Dealership(db.loadUsers(), db.loadInventory());
+        // Initialize the dealership database with the provided path
+        boolean useBinarySnapshot = Boolean.parseBoolean(System.getProperty("dealership.binarySnapshot", "true"));
+        try (DealershipDB db = new DealershipDB(args[0], useBinarySnapshot)) {
+            // Users, inventory and sales are loaded from the database on first use.
+            // Changes made from the menus are persisted to the database.
+            Dealership dealership = new Dealership(db);
+            // Files changed by other processes are reloaded while running
+            DatabaseReloader reloader = Boolean.parseBoolean(System.getProperty("dealership.reload", "true"))
+                    ? new DatabaseReloader(dealership, new File(args[0])) : null;
+            AuditLog auditLog = Boolean.parseBoolean(System.getProperty("dealership.audit", "true"))
+                    ? new AuditLog(new File(args[0], "audit")) : null;
+            dealership.setAuditLog(auditLog);
+            if (Boolean.parseBoolean(System.getProperty("dealership.history", "true"))) {
+                dealership.keepHistory(new File(args[0], HISTORY_FILE_NAME));
+            }
+            if (Boolean.parseBoolean(System.getProperty("dealership.holds", "true"))) {
+                dealership.enableHolds(RESTORED_HOLD_TTL);
+            }
 
-            // Start the interactive menu system
-            Menu menu = new Menu(dealership);
-            menu.showLoginMenu();
+            try {
+                if (Boolean.parseBoolean(System.getProperty("dealership.preload", "true"))) {
+                    preload(dealership);
+                }
+                if (port >= 0) {
+                    serve(dealership, db, auditLog, port);
+                } else {
+                    // Start the interactive menu system
+                    Menu menu = new Menu(dealership);
+                    menu.showLoginMenu();
+                }
+            } finally {
+                dealership.closeHolds();
+                if (reloader != null) {
+                    reloader.close();
+                }
+                if (auditLog != null) {
+                    auditLog.close();
+                }
+                dealership.closeHistory();
+            }
         } catch (IOException e) {
             // Handle errors related to loading the database
             System.err.println("Error loading database: " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            // Loaded on first use
+            System.err.println("Error loading database: " + e.getCause().getMessage());
         }
     }
+
+    /**
+     * Loads the users, inventory and sales on a background thread, while the
+     * login prompt waits for the first user.
+     */
+    private static void preload(Dealership dealership) {
+        Thread loader = new Thread(() -> dealership.preload(Runnable::run).whenComplete((done, e) -> {
+            if (e != null) {
+                // Reported again on first use
+                System.err.println("WARNING: Unable to load the database in the background -> "
+                        + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+            }
+        }), "dealership-preload");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Serves the menus over local sockets until the process is stopped. Pending
+     * changes, audit events and history are flushed on shutdown.
+     */
+    private static void serve(Dealership dealership, DealershipDB db, AuditLog auditLog, int port) throws IOException {
+        DealershipServer server = new DealershipServer(dealership, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                dealership.closeHolds();
+                if (auditLog != null) {
+                    auditLog.close();
+                }
+                dealership.closeHistory();
+                db.close();
+            } catch (IOException e) {
+                System.err.println("ERROR: Failed to shut down cleanly: " + e.getMessage());
+            }
+        }));
+        System.out.println("Serving dealership sessions on localhost:" + server.getPort());
+        server.serve();
+    }
 }
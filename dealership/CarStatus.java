@@ -0,0 +1,86 @@
+package dealership;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The CarStatus enum lists the statuses a car can have, and the changes of
+ * status allowed between them:
+ * - Available cars can be sold, sent to service, shipped or put on hold.
+ * - Cars in service or in transit can be made available again, and a car in
+ *   transit can go to service on arrival.
+ * - Cars on hold for a customer (see {@link HoldManager}) can be sold, or made
+ *   available again when the hold is released or expires.
+ * - Sold cars never change status again, so a car can't be sold twice.
+ */
+public enum CarStatus {
+    AVAILABLE("Available"),
+    SOLD("Sold"),
+    IN_SERVICE("In-Service"),
+    IN_TRANSIT("In-Transit"),
+    ON_HOLD("On-Hold");
+
+    private static final CarStatus[] VALUES = values();
+
+    private final String label;
+
+    CarStatus(String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return The status as written in the inventory file (e.g., In-Service).
+     */
+    public String getLabel() { return label; }
+
+    /**
+     * @param next The status to change to.
+     * @return {true} if a car having this status may change to the given status.
+     */
+    public boolean canChangeTo(CarStatus next) {
+        return allowedChanges().contains(next);
+    }
+
+    private Set<CarStatus> allowedChanges() {
+        switch (this) {
+            case AVAILABLE:
+                return EnumSet.of(SOLD, IN_SERVICE, IN_TRANSIT, ON_HOLD);
+            case IN_SERVICE:
+                return EnumSet.of(AVAILABLE);
+            case IN_TRANSIT:
+                return EnumSet.of(AVAILABLE, IN_SERVICE);
+            case ON_HOLD:
+                return EnumSet.of(AVAILABLE, SOLD);
+            default:
+                return EnumSet.noneOf(CarStatus.class);
+        }
+    }
+
+    /**
+     * Finds the status matching a label, ignoring case and surrounding whitespaces.
+     *
+     * @param label The label (e.g., "in-service").
+     * @return The matching status, or null if the label is not a known status.
+     */
+    public static CarStatus of(String label) {
+        if (label == null) {
+            return null;
+        }
+        for (CarStatus status : VALUES) {
+            if (status.label.equals(label)) {
+                return status; // the usual case, without copying the label
+            }
+        }
+        String key = label.trim().toLowerCase(Locale.ROOT);
+        for (CarStatus status : VALUES) {
+            if (status.label.toLowerCase(Locale.ROOT).equals(key)) {
+                return status;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() { return label; }
+}
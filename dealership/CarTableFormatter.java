@@ -0,0 +1,161 @@
+package dealership;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The CarTableFormatter class writes cars as the rows of a fixed-width text
+ * table (VIN, acquisition date, make, model, year, mileage, color, price and
+ * status). The layout is set up once: writing a row only appends the values
+ * and padding to a reused buffer, instead of parsing a format string for every
+ * row the way printf does. Rows should be written to a buffered Writer.
+ *
+ * The table looks the same as one written with
+ * {@code printf("%-10s %-11s %-10s %-10s %-6d %-10d %-10s $%-9.2f %-12s%n", ...)}.
+ * A formatter is not thread-safe.
+ */
+public class CarTableFormatter {
+    private static final String[] HEADERS = {"VIN", "Acquired", "Make", "Model", "Year", "Mileage", "Color", "Price", "Status"};
+    private static final int[] WIDTHS = {10, 11, 10, 10, 6, 10, 10, 10, 12};
+
+    private final String lineSeparator = System.lineSeparator();
+    private final String rule;
+    private final char[] spaces;
+    private final StringBuilder line = new StringBuilder(128);
+
+    /**
+     * Constructs a formatter.
+     */
+    public CarTableFormatter() {
+        int width = WIDTHS.length - 1;
+        int widest = 0;
+        for (int w : WIDTHS) {
+            width += w;
+            widest = Math.max(widest, w);
+        }
+        char[] dashes = new char[width];
+        Arrays.fill(dashes, '-');
+        this.rule = new String(dashes);
+        this.spaces = new char[widest];
+        Arrays.fill(spaces, ' ');
+    }
+
+    /**
+     * @return A line of dashes as wide as the table, without line separator.
+     */
+    public String getRule() { return rule; }
+
+    /**
+     * Writes the column titles and a rule below them.
+     *
+     * @param writer The writer.
+     * @throws IOException If the writer fails.
+     */
+    public void writeHeader(Writer writer) throws IOException {
+        line.setLength(0);
+        for (int i = 0; i < HEADERS.length; i++) {
+            if (i > 0) {
+                line.append(' ');
+            }
+            int start = line.length();
+            line.append(HEADERS[i]);
+            pad(start, WIDTHS[i]);
+        }
+        line.append(lineSeparator).append(rule).append(lineSeparator);
+        writer.append(line);
+    }
+
+    /**
+     * Writes a car as a row.
+     *
+     * @param writer The writer.
+     * @param car    The car.
+     * @throws IOException If the writer fails.
+     */
+    public void writeRow(Writer writer, Car car) throws IOException {
+        writer.append(format(car)).append(lineSeparator);
+    }
+
+    /**
+     * Formats a car as a row. The returned buffer is reused by the next call.
+     *
+     * @param car The car.
+     * @return The row, without line separator.
+     */
+    public CharSequence format(Car car) {
+        line.setLength(0);
+        int start = 0;
+        line.append(car.getVin());
+        pad(start, WIDTHS[0]);
+        start = column();
+        if (car.getAcquisitionDate() == null) {
+            line.append('-');
+        } else {
+            line.append(car.getAcquisitionDate());
+        }
+        pad(start, WIDTHS[1]);
+        start = column();
+        line.append(car.getMake());
+        pad(start, WIDTHS[2]);
+        start = column();
+        line.append(car.getModel());
+        pad(start, WIDTHS[3]);
+        start = column();
+        line.append(car.getYear());
+        pad(start, WIDTHS[4]);
+        start = column();
+        line.append(car.getMileage());
+        pad(start, WIDTHS[5]);
+        start = column();
+        line.append(car.getColor());
+        pad(start, WIDTHS[6]);
+        start = column();
+        line.append('$');
+        appendAmount(car.getPrice());
+        pad(start, WIDTHS[7]);
+        start = column();
+        line.append(car.getStatus());
+        pad(start, WIDTHS[8]);
+        return line;
+    }
+
+    /**
+     * Starts a new column.
+     *
+     * @return The start of the column.
+     */
+    private int column() {
+        line.append(' ');
+        return line.length();
+    }
+
+    private void pad(int start, int width) {
+        int missing = start + width - line.length();
+        if (missing > 0) {
+            line.append(spaces, 0, missing);
+        }
+    }
+
+    /**
+     * Appends an amount with two decimals, rounded half up like %.2f.
+     */
+    private void appendAmount(double amount) {
+        double magnitude = Math.abs(amount);
+        if (!(magnitude < 1e13)) { // too large for exact cents, or not a number
+            line.append(String.format(Locale.ROOT, "%.2f", amount));
+            return;
+        }
+        long cents = Math.round(magnitude * 100);
+        if (amount < 0 && cents != 0) {
+            line.append('-');
+        }
+        line.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) {
+            line.append('0');
+        }
+        line.append(fraction);
+    }
+}
@@ -0,0 +1,220 @@
+package dealership;
+
+import dealership.utils.StringDictionary;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The ColumnarInventory class is a compact, read-mostly representation of an
+ * inventory snapshot. Instead of one object per car, it keeps one array per
+ * field:
+ * - year, mileage, acquisition date (as an epoch day), cost and price are
+ *   stored in primitive arrays.
+ * - make, model, color and status are dictionary-encoded into int codes, so a
+ *   value such as "Toyota" or "Available" is stored once for the whole snapshot.
+ * - VINs, being unique, are kept as strings.
+ *
+ * Cars are handed out on demand by {@link #get(int)} or through the {@link #asList()}
+ * view, so code written against {@code Car} (e.g., Menu) keeps working. The
+ * cars built this way share the dictionary strings and are cheap to create.
+ */
+public class ColumnarInventory {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    private final StringDictionary makes = new StringDictionary();
+    private final StringDictionary models = new StringDictionary();
+    private final StringDictionary colors = new StringDictionary();
+    private final StringDictionary statuses = new StringDictionary();
+
+    private int size;
+    private String[] vins;
+    private int[] makeCodes;
+    private int[] modelCodes;
+    private int[] colorCodes;
+    private int[] statusCodes;
+    private int[] years;
+    private int[] mileages;
+    private int[] acquisitionDays;
+    private double[] costs;
+    private double[] prices;
+
+    /**
+     * Constructs an empty columnar inventory.
+     */
+    public ColumnarInventory() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty columnar inventory sized for the given number of cars.
+     *
+     * @param capacity The expected number of cars.
+     */
+    public ColumnarInventory(int capacity) {
+        capacity = Math.max(capacity, 1);
+        vins = new String[capacity];
+        makeCodes = new int[capacity];
+        modelCodes = new int[capacity];
+        colorCodes = new int[capacity];
+        statusCodes = new int[capacity];
+        years = new int[capacity];
+        mileages = new int[capacity];
+        acquisitionDays = new int[capacity];
+        costs = new double[capacity];
+        prices = new double[capacity];
+    }
+
+    /**
+     * Builds a columnar copy of a collection of cars.
+     *
+     * @param cars The cars to copy.
+     * @return A columnar inventory holding the same cars, in the same order.
+     */
+    public static ColumnarInventory of(Collection<Car> cars) {
+        ColumnarInventory inventory = new ColumnarInventory(cars.size());
+        for (Car car : cars) {
+            inventory.add(car);
+        }
+        return inventory;
+    }
+
+    /**
+     * Appends a car.
+     *
+     * @param car The car to append.
+     * @return The row index of the car.
+     */
+    public int add(Car car) {
+        int row = add(car.getVin(), car.getMake(), car.getModel(), car.getYear(),
+                car.getMileage(), car.getColor(), car.getPrice(), car.getStatus());
+        if (car.getAcquisitionDate() != null) {
+            acquisitionDays[row] = (int) car.getAcquisitionDate().toEpochDay();
+        }
+        costs[row] = car.getCost();
+        return row;
+    }
+
+    /**
+     * Appends a car from its individual fields. Its acquisition date and cost are unknown.
+     *
+     * @return The row index of the car.
+     */
+    public int add(String vin, String make, String model, int year, int mileage, String color,
+                   double price, String status) {
+        if (size == vins.length) {
+            grow();
+        }
+        int row = size++;
+        vins[row] = vin;
+        makeCodes[row] = makes.encode(make);
+        modelCodes[row] = models.encode(model);
+        colorCodes[row] = colors.encode(color);
+        statusCodes[row] = statuses.encode(status);
+        years[row] = year;
+        mileages[row] = mileage;
+        acquisitionDays[row] = NO_DATE;
+        costs[row] = Double.NaN;
+        prices[row] = price;
+        return row;
+    }
+
+    /**
+     * @return The number of cars.
+     */
+    public int size() { return size; }
+
+    /**
+     * Builds a Car for a row. Its string fields are shared with the dictionaries.
+     *
+     * @param row The row index.
+     * @return The car stored at this row.
+     */
+    public Car get(int row) {
+        checkRow(row);
+        return new Car(vins[row], getAcquisitionDate(row), makes.decode(makeCodes[row]),
+                models.decode(modelCodes[row]), years[row], mileages[row], colors.decode(colorCodes[row]),
+                costs[row], prices[row], statuses.decode(statusCodes[row]));
+    }
+
+    /**
+     * @return A read-only list view of the cars. Elements are built on access.
+     */
+    public List<Car> asList() {
+        return new AbstractList<Car>() {
+            @Override
+            public Car get(int index) { return ColumnarInventory.this.get(index); }
+
+            @Override
+            public int size() { return size; }
+        };
+    }
+
+    // Column accessors, for reports that only need a few fields
+    public String getVin(int row) { checkRow(row); return vins[row]; }
+    public int getYear(int row) { checkRow(row); return years[row]; }
+    public int getMileage(int row) { checkRow(row); return mileages[row]; }
+    public double getCost(int row) { checkRow(row); return costs[row]; }
+    public double getPrice(int row) { checkRow(row); return prices[row]; }
+    public int getMakeCode(int row) { checkRow(row); return makeCodes[row]; }
+    public int getModelCode(int row) { checkRow(row); return modelCodes[row]; }
+    public int getColorCode(int row) { checkRow(row); return colorCodes[row]; }
+    public int getStatusCode(int row) { checkRow(row); return statusCodes[row]; }
+
+    public LocalDate getAcquisitionDate(int row) {
+        checkRow(row);
+        return acquisitionDays[row] == NO_DATE ? null : LocalDate.ofEpochDay(acquisitionDays[row]);
+    }
+
+    public StringDictionary getMakes() { return makes; }
+    public StringDictionary getModels() { return models; }
+    public StringDictionary getColors() { return colors; }
+    public StringDictionary getStatuses() { return statuses; }
+
+    /**
+     * Estimates the heap retained by the column arrays and VIN strings,
+     * assuming compressed object pointers. Dictionary contents are ignored
+     * since they don't grow with the number of cars.
+     *
+     * @return The estimated number of bytes.
+     */
+    public long estimatedHeapBytes() {
+        long capacity = vins.length;
+        long arrays = 8 * (16 + capacity * 4)   // VIN references and int columns
+                + 2 * (16 + capacity * 8);      // costs and prices
+        long vinStrings = 0;
+        for (int i = 0; i < size; i++) {
+            // String header and fields + backing byte[] (Latin-1)
+            vinStrings += 24 + align(16 + vins[i].length());
+        }
+        return arrays + vinStrings;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private void grow() {
+        int capacity = vins.length * 2;
+        vins = Arrays.copyOf(vins, capacity);
+        makeCodes = Arrays.copyOf(makeCodes, capacity);
+        modelCodes = Arrays.copyOf(modelCodes, capacity);
+        colorCodes = Arrays.copyOf(colorCodes, capacity);
+        statusCodes = Arrays.copyOf(statusCodes, capacity);
+        years = Arrays.copyOf(years, capacity);
+        mileages = Arrays.copyOf(mileages, capacity);
+        acquisitionDays = Arrays.copyOf(acquisitionDays, capacity);
+        costs = Arrays.copyOf(costs, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of " + size);
+        }
+    }
+}
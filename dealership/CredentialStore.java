@@ -0,0 +1,305 @@
+package dealership;
+
+import dealership.utils.PasswordHasher;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The CredentialStore class holds the users of a dealership, indexed by username,
+ * and checks their credentials:
+ * - Passwords are kept as salted PBKDF2 hashes (see {@link PasswordHasher}).
+ *   Plain text passwords are hashed when users are added.
+ * - A successful login is remembered for a while, so logging in again with
+ *   the same password only costs a keyed digest instead of a full hash.
+ * - After a few failed attempts, each further attempt for the same user must
+ *   wait longer. The attempt state is a single atomic value per user, so
+ *   concurrent logins never lock.
+ * - Logins for unknown usernames are checked against a dummy hash, so they
+ *   take as long as logins for known ones.
+ *
+ * Usernames are unique: when users are loaded, later users having a username
+ * already seen are reported and skipped. The store is thread-safe.
+ */
+public class CredentialStore {
+    static final int FREE_ATTEMPTS = 5;
+    static final long BASE_DELAY_MILLIS = 1_000;
+    static final long MAX_DELAY_MILLIS = 5 * 60_000;
+    static final long SESSION_TTL_MILLIS = 15 * 60_000;
+    private static final long TIME_MASK = (1L << 48) - 1;
+    private static final String DIGEST_ALGORITHM = "HmacSHA256";
+
+    /**
+     * A user with its login attempt state: the number of consecutive failed
+     * attempts (high 16 bits) and the time of the last one (low 48 bits).
+     */
+    private static final class Account {
+        final User user;
+        final AtomicLong attempts = new AtomicLong();
+
+        Account(User user) {
+            this.user = user;
+        }
+    }
+
+    /**
+     * A verified login: a keyed digest of the password, valid until a given time.
+     */
+    private static final class Session {
+        final User user;
+        final byte[] digest;
+        final long expiresAt;
+
+        Session(User user, byte[] digest, long expiresAt) {
+            this.user = user;
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final PasswordHasher hasher;
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecretKeySpec sessionKey;
+    private final ThreadLocal<Mac> macs;
+    private final Queue<User> hashedOnLoad = new ConcurrentLinkedQueue<>();
+    private volatile String dummyHash;
+
+    /**
+     * Constructs a store holding the given users, hashing with the default iteration count.
+     *
+     * @param users The users to add.
+     */
+    public CredentialStore(Collection<User> users) {
+        this(users, new PasswordHasher());
+    }
+
+    /**
+     * Constructs a store holding the given users. Plain text passwords are
+     * hashed in parallel.
+     *
+     * @param users  The users to add.
+     * @param hasher The hasher of new passwords.
+     */
+    public CredentialStore(Collection<User> users, PasswordHasher hasher) {
+        this.hasher = hasher;
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.sessionKey = new SecretKeySpec(key, DIGEST_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+
+        List<User> unique = new ArrayList<>(users.size());
+        Set<String> seen = new HashSet<>();
+        for (User user : users) {
+            if (!seen.add(user.getUsername())) {
+                System.err.println("ERROR: Duplicate username in users -> " + user.getUsername());
+            } else {
+                unique.add(user);
+            }
+        }
+        unique.parallelStream().forEach(user -> {
+            User hashed = hashPassword(user);
+            if (hashed != user) {
+                hashedOnLoad.add(hashed);
+            }
+            accounts.put(hashed.getUsername(), new Account(hashed));
+        });
+    }
+
+    /**
+     * Checks the credentials of a user.
+     *
+     * @param username The username.
+     * @param password The password.
+     * @return The user, or null if the credentials don't match or the user must
+     * wait before trying again (see {@link #getRetryDelayMillis(String)}).
+     */
+    public User authenticate(String username, String password) {
+        return authenticate(username, password, null);
+    }
+
+    /**
+     * Checks the credentials of a user logging in with a given role. Logging
+     * in with a role other than the role of the user counts as a failed attempt.
+     *
+     * @param username The username.
+     * @param password The password.
+     * @param role     The role the user logs in with, or null for any role.
+     * @return The user, or null if the credentials or the role don't match or
+     * the user must wait before trying again (see {@link #getRetryDelayMillis(String)}).
+     */
+    public User authenticate(String username, String password, Role role) {
+        Account account = username == null ? null : accounts.get(username);
+        if (account == null) {
+            PasswordHasher.verify(password, dummyHash()); // same cost as a known user
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (!tryAttempt(account, now)) {
+            return null;
+        }
+        if (role != null && account.user.getRole() != role) {
+            PasswordHasher.verify(password, dummyHash()); // same cost as a matching role
+            return null; // the attempt stays counted as failed
+        }
+        byte[] digest = digest(username, password);
+        Session session = sessions.get(username);
+        if (session != null && session.user == account.user && session.expiresAt > now
+                && MessageDigest.isEqual(session.digest, digest)) {
+            account.attempts.set(0);
+            return account.user;
+        }
+        if (!account.user.authenticate(password)) {
+            return null; // the attempt stays counted as failed
+        }
+        account.attempts.set(0);
+        sessions.put(username, new Session(account.user, digest, now + SESSION_TTL_MILLIS));
+        return account.user;
+    }
+
+    /**
+     * @param username The username.
+     * @return How long the user must wait before the next login attempt is
+     * checked, in milliseconds, or 0 if an attempt can be made now.
+     */
+    public long getRetryDelayMillis(String username) {
+        Account account = accounts.get(username);
+        return account == null ? 0 : retryDelay(account.attempts.get(), System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the given user with a hashed password, hashing it if it is in plain text.
+     *
+     * @param user The user.
+     * @return The user, or a copy of it with its password hashed.
+     */
+    public User hashPassword(User user) {
+        if (PasswordHasher.isHash(user.getPassword())) {
+            return user;
+        }
+        return user.withPassword(hasher.hash(user.getPassword()));
+    }
+
+    /**
+     * Adds a user, replacing any user having the same username. The password
+     * is hashed if needed, and remembered logins of the previous user are forgotten.
+     *
+     * @param user The user.
+     * @return The user as stored, with its password hashed.
+     */
+    public User put(User user) {
+        User hashed = hashPassword(user);
+        accounts.put(hashed.getUsername(), new Account(hashed));
+        sessions.remove(hashed.getUsername());
+        return hashed;
+    }
+
+    /**
+     * Removes a user.
+     *
+     * @param username The username.
+     * @return {true} if a user was removed.
+     */
+    public boolean remove(String username) {
+        sessions.remove(username);
+        return accounts.remove(username) != null;
+    }
+
+    /**
+     * @param username The username.
+     * @return The user having the given username, or null if there is none.
+     */
+    public User get(String username) {
+        Account account = accounts.get(username);
+        return account == null ? null : account.user;
+    }
+
+    /**
+     * @return A copy of the list of users.
+     */
+    public List<User> getUsers() {
+        List<User> users = new ArrayList<>(accounts.size());
+        for (Account account : accounts.values()) {
+            users.add(account.user);
+        }
+        return users;
+    }
+
+    /**
+     * @return The number of users.
+     */
+    public int size() { return accounts.size(); }
+
+    /**
+     * @return The users whose password was in plain text when the store was
+     * constructed, with their password hashed.
+     */
+    public List<User> getHashedOnLoad() { return new ArrayList<>(hashedOnLoad); }
+
+    /**
+     * Counts an attempt as failed up front, unless the user must wait, so
+     * concurrent attempts can't get past the limit. A successful attempt then
+     * resets the count.
+     */
+    private static boolean tryAttempt(Account account, long now) {
+        while (true) {
+            long state = account.attempts.get();
+            if (retryDelay(state, now) > 0) {
+                return false;
+            }
+            long failures = Math.min((state >>> 48) + 1, 0xFFFF);
+            if (account.attempts.compareAndSet(state, (failures << 48) | (now & TIME_MASK))) {
+                return true;
+            }
+        }
+    }
+
+    private static long retryDelay(long state, long now) {
+        long failures = state >>> 48;
+        if (failures < FREE_ATTEMPTS) {
+            return 0;
+        }
+        long delay = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(failures - FREE_ATTEMPTS, 20));
+        return Math.max(0, (state & TIME_MASK) + delay - now);
+    }
+
+    private String dummyHash() {
+        String hash = dummyHash;
+        if (hash == null) {
+            hash = hasher.hash("");
+            dummyHash = hash;
+        }
+        return hash;
+    }
+
+    private byte[] digest(String username, String password) {
+        Mac mac = macs.get();
+        mac.update(username.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(password == null ? new byte[0] : password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(DIGEST_ALGORITHM);
+            mac.init(sessionKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not available", e);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package dealership;
+
+import dealership.utils.DealershipDB;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the database directory of a dealership and reloads the users,
+ * inventory or sales files changed by another process, so the dealership
+ * doesn't have to be restarted to see them (see {@link Dealership#reloadChangedFiles()}).
+ *
+ * Changes are reported by a {@link WatchService}. Writing a file usually
+ * raises several events, so the files are only reloaded once the directory
+ * has been quiet for {@link #QUIET_MILLIS}. The files the dealership writes
+ * itself (snapshots, change log) raise events too, but are recognized as
+ * unchanged and not read again.
+ */
+public class DatabaseReloader implements AutoCloseable {
+    public static final long QUIET_MILLIS = 200;
+    private static final Set<String> WATCHED_FILE_NAMES = Set.of(
+            DealershipDB.USERS_FILE_NAME, DealershipDB.USERS_SNAPSHOT_FILE_NAME,
+            DealershipDB.INVENTORY_FILE_NAME, DealershipDB.INVENTORY_SNAPSHOT_FILE_NAME,
+            DealershipDB.SALES_FILE_NAME, DealershipDB.SALES_SNAPSHOT_FILE_NAME);
+
+    private final Dealership dealership;
+    private final WatchService watchService;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * Starts watching a database directory, from a background thread.
+     *
+     * @param dealership The dealership loaded from the directory.
+     * @param dir        The database directory.
+     * @throws IOException If the directory can't be watched.
+     */
+    public DatabaseReloader(Dealership dealership, File dir) throws IOException {
+        this.dealership = dealership;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        dir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        this.thread = new Thread(this::watch, "database-reloader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Waits for changes to the watched files, and reloads them once the
+     * directory is quiet, until closed.
+     */
+    private void watch() {
+        try {
+            while (!closed) {
+                boolean changed = drain(watchService.take());
+                // Gather the events of the same writes
+                WatchKey key;
+                while ((key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drain(key);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    /**
+     * Consumes the events of a key.
+     *
+     * @return {true} if a watched file may have changed.
+     */
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed = true; // events were lost
+            } else if (WATCHED_FILE_NAMES.contains(((Path) event.context()).getFileName().toString())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private void reload() {
+        try {
+            List<String> reloaded = dealership.reloadChangedFiles();
+            if (!reloaded.isEmpty()) {
+                System.err.println("INFO: Reloaded " + String.join(", ", reloaded));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("ERROR: Unable to reload the database -> " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops watching the directory.
+     *
+     * @throws IOException If the watch service can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+        thread.interrupt();
+    }
+}
@@ -1,13 +1,129 @@
 package dealership;
 
+import dealership.utils.AuditLog;
+import dealership.utils.DealershipDB;
+import dealership.utils.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 /**
- * The Dealership class represents a dealership that contains users and cars.
+ * The Dealership class represents a dealership that contains users, cars and sales.
+ * Cars are kept in an {@link InventoryStore} so they can be looked up by VIN,
+ * make, status, year, price or mileage without scanning the whole inventory.
+ *
+ * When a database is attached, every change made through this class is
+ * written to the database change log before it is applied, and the log is
+ * compacted into snapshots once it grows large enough.
+ *
+ * A dealership can be shared by several sessions. Reads never lock. Changes
+ * to a car are persisted and applied under the lock the inventory store keeps
+ * for its VIN, so changes to different cars don't wait for each other, and a
+ * change of status is checked against the current status of the car: a car
+ * can't be sold twice. Checkpoints wait for the changes in progress and hold
+ * off new ones, so a snapshot never misses a change that was already logged.
+ *
+ * When an audit log is set, every change made through this class is also
+ * recorded in it, with the user who made it (see {@link AuditLog}).
+ *
+ * Database files changed by another process can be reloaded without a restart
+ * (see {@link #reloadChangedFiles()}). The users, inventory, sales and report
+ * views are held together by a {@link State}: the reloaded ones are built
+ * aside and published in one new state, so a reader holding a state sees the
+ * old or the new version of all of them, never a mix.
+ *
+ * A dealership built on a database alone ({@link #Dealership(DealershipDB)})
+ * loads the users, the inventory and the sales each on first use, so it is
+ * ready at once whatever the size of the database: logging in only reads the
+ * users. They can also be loaded in the background meanwhile (see
+ * {@link #preload(Executor)}). Changes wait for everything to be loaded.
  */
 public class Dealership {
-    private List<User> users;
-    private List<Car> inventory;
+    private static final Metrics.Timer QUERY = Metrics.timer("inventory.query");
+    private static final Metrics.Timer SEARCH = Metrics.timer("inventory.search");
+    private static final Metrics.Timer RELOAD = Metrics.timer("db.reload");
+
+    // Replaced when a part is loaded, under stateLock, and when the database
+    // files are reloaded, with no change in progress
+    private volatile State state = new State(null, null, null, null);
+    private final Object stateLock = new Object();
+    private final FutureTask<CredentialStore> usersLoad;
+    private final FutureTask<InventoryStore> inventoryLoad;
+    private final FutureTask<List<Sale>> salesLoad;
+    private volatile SearchIndex searchIndex; // built on first use, guarded by searchIndexLock
+    private final Object searchIndexLock = new Object();
+    private volatile ValuationEngine valuations; // built on first use, with no change in progress
+    private volatile InventoryHistory history; // null when not kept
+    private volatile File pendingHistoryFile; // opened once the inventory and sales are loaded
+    private volatile HoldManager holds; // null when holds are not enabled
+    private volatile Duration pendingHoldTtl; // set until holds are enabled, once everything is loaded
+    private DealershipDB db; // null when changes are not persisted
+    private volatile AuditLog auditLog; // null when changes are not audited
+    // Held shared by changes and exclusively by checkpoints
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    /**
+     * The users, inventory, sales and report views of a dealership, published
+     * together. The parts of a state are replaced by publishing a new state,
+     * never changed in place: the stores and the list of sales change, but
+     * stay the same objects. The parts of the state returned by
+     * {@link Dealership#getState()} are all loaded.
+     */
+    public static final class State {
+        private final CredentialStore users; // changed under its own monitor, null until loaded
+        private final InventoryStore inventory; // null until loaded
+        private final List<Sale> sales; // guarded by its own monitor, null until loaded
+        private final ReportViews views; // over the inventory and the sales, loaded with the sales
+
+        State(CredentialStore users, InventoryStore inventory, List<Sale> sales, ReportViews views) {
+            this.users = users;
+            this.inventory = inventory;
+            this.sales = sales;
+            this.views = views;
+        }
+
+        public CredentialStore getUsers() { return users; }
+
+        public InventoryStore getInventoryStore() { return inventory; }
+
+        /**
+         * @return A read-only copy of the list of sales, in the order they were recorded.
+         */
+        public List<Sale> getSales() {
+            synchronized (sales) {
+                return Collections.unmodifiableList(new ArrayList<>(sales));
+            }
+        }
+
+        /**
+         * @return The report views, over this inventory and these sales.
+         */
+        public ReportViews getReportViews() { return views; }
+
+        boolean isLoaded() { return users != null && inventory != null && sales != null; }
+    }
+
+    /**
+     * A change to persist and apply.
+     */
+    private interface Change<T> {
+        T apply() throws IOException;
+    }
 
     /**
      * Constructs a Dealership object with a list of users and a list of cars.
@@ -16,21 +132,1083 @@ public class Dealership {
      * @param inventory The list of cars available in inventory.
      */
     public Dealership(List<User> users, List<Car> inventory) {
-        this.users = users;
-        this.inventory = inventory;
+        this(users, inventory, new ArrayList<>(), null);
+    }
+
+    /**
+     * Constructs a Dealership object whose changes are persisted to a database.
+     *
+     * @param users     The list of users in the dealership.
+     * @param inventory The list of cars available in inventory.
+     * @param sales     The list of past sales.
+     * @param db        The database changes are written to, or null.
+     */
+    public Dealership(List<User> users, List<Car> inventory, List<Sale> sales, DealershipDB db) {
+        CredentialStore userStore = new CredentialStore(users);
+        InventoryStore store = new InventoryStore(inventory);
+        List<Sale> allSales = new ArrayList<>(sales);
+        ReportViews views = ReportViews.of(store.getCars(), allSales);
+        store.addListener(views);
+        this.state = new State(userStore, store, allSales, views);
+        this.db = db;
+        this.usersLoad = null;
+        this.inventoryLoad = null;
+        this.salesLoad = null;
+        if (db != null) {
+            saveHashedPasswords(userStore);
+        }
+    }
+
+    /**
+     * Constructs a Dealership object over a database, without reading it: the
+     * users, the inventory and the sales are each loaded from the database on
+     * first use. Changes are persisted to the database.
+     *
+     * @param db The database to load from and write changes to.
+     */
+    public Dealership(DealershipDB db) {
+        this.db = db;
+        this.usersLoad = new FutureTask<>(() -> {
+            CredentialStore loaded = new CredentialStore(db.loadUsers());
+            // Before any change to the users, which all wait for this load
+            saveHashedPasswords(loaded);
+            publish(s -> new State(loaded, s.inventory, s.sales, s.views));
+            return loaded;
+        });
+        this.inventoryLoad = new FutureTask<>(() -> {
+            InventoryStore loaded = new InventoryStore(db.loadInventory());
+            publish(s -> new State(s.users, loaded, s.sales, s.views));
+            return loaded;
+        });
+        this.salesLoad = new FutureTask<>(() -> {
+            List<Sale> loaded = new ArrayList<>(db.loadSales());
+            InventoryStore store = inventory();
+            ReportViews loadedViews = ReportViews.of(store.getCars(), loaded);
+            store.addListener(loadedViews);
+            publish(s -> new State(s.users, s.inventory, loaded, loadedViews));
+            return loaded;
+        });
+    }
+
+    /**
+     * Logs the users whose password was hashed when a store was constructed,
+     * so plain text passwords are never read again. Only the users are
+     * written: the inventory and the sales are left as they are.
+     */
+    private void saveHashedPasswords(CredentialStore store) {
+        try {
+            for (User user : store.getHashedOnLoad()) {
+                db.logUserPut(user);
+            }
+        } catch (IOException e) {
+            System.err.println("ERROR: Unable to save hashed passwords -> " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the users, then the inventory, then the sales, in the background,
+     * if they are not loaded yet. A thread needing one of them meanwhile waits
+     * for it rather than loading it again.
+     *
+     * @param executor Where to load them.
+     * @return Completed once everything is loaded, or exceptionally if the database can't be read.
+     */
+    public CompletableFuture<Void> preload(Executor executor) {
+        return CompletableFuture.runAsync(this::ensureLoaded, executor);
+    }
+
+    /**
+     * @return {true} if the users, the inventory and the sales are loaded.
+     */
+    public boolean isLoaded() {
+        return state.isLoaded();
+    }
+
+    /**
+     * Retrieves the users, inventory, sales and report views together, loading
+     * them first if needed. Unlike separate calls to {@link #getInventory()}
+     * and {@link #getReportViews()}, they are all of the same version, even if
+     * files are reloaded meanwhile.
+     *
+     * @return The current state of the dealership.
+     */
+    public State getState() {
+        State current = state;
+        if (!current.isLoaded()) {
+            users();
+            inventory();
+            sales();
+            current = state;
+        }
+        return current;
+    }
+
+    private void publish(UnaryOperator<State> update) {
+        synchronized (stateLock) {
+            state = update.apply(state);
+        }
+    }
+
+    private CredentialStore users() {
+        CredentialStore loaded = state.users;
+        return loaded != null ? loaded : load(usersLoad);
+    }
+
+    private InventoryStore inventory() {
+        InventoryStore loaded = state.inventory;
+        return loaded != null ? loaded : load(inventoryLoad);
+    }
+
+    private List<Sale> sales() {
+        List<Sale> loaded = state.sales;
+        return loaded != null ? loaded : load(salesLoad);
+    }
+
+    private ReportViews views() {
+        ReportViews loaded = state.views;
+        if (loaded == null) {
+            load(salesLoad);
+            loaded = state.views;
+        }
+        return loaded;
+    }
+
+    /**
+     * Runs a load in the calling thread, or waits for the thread already running it.
+     *
+     * @throws UncheckedIOException If the database can't be read.
+     */
+    private static <T> T load(FutureTask<T> task) {
+        task.run(); // does nothing if it already ran or is running
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading the database", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) e.getCause());
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Loads whatever is not loaded yet, then opens the pending history. Called
+     * before taking the checkpoint lock: loading never takes it, but opening
+     * the history does.
+     */
+    private void ensureLoaded() {
+        users();
+        inventory();
+        sales();
+        if (pendingHistoryFile != null) {
+            checkpointLock.writeLock().lock();
+            try {
+                File file = pendingHistoryFile;
+                if (file != null) {
+                    pendingHistoryFile = null;
+                    openHistory(file);
+                }
+            } catch (IOException e) {
+                System.err.println("ERROR: Unable to open the inventory history -> " + e.getMessage());
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+        }
+        if (pendingHoldTtl != null) {
+            checkpointLock.writeLock().lock();
+            try {
+                Duration ttl = pendingHoldTtl;
+                if (ttl != null && holds == null) {
+                    HoldManager opened = new HoldManager(this, ttl.toMillis(), HoldManager.TICK_MILLIS);
+                    InventoryStore store = state.inventory;
+                    opened.reconcile(store);
+                    store.addListener(opened);
+                    holds = opened;
+                }
+                pendingHoldTtl = null;
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+        }
     }
 
     /**
      * Retrieves the list of users in the dealership.
      *
-     * @return A list of users (managers and salespersons).
+     * @return A copy of the list of users (managers and salespersons).
+     */
+    public List<User> getUsers() { return users().getUsers(); }
+
+    /**
+     * Looks up the user having the given username and password.
+     *
+     * @param username The username.
+     * @param password The password.
+     * @return The matching user, or null if no user has these credentials.
      */
-    public List<User> getUsers() { return users; }
+    public User authenticate(String username, String password) { return users().authenticate(username, password); }
+
+    /**
+     * Looks up the user having the given username, password and role.
+     *
+     * @param username The username.
+     * @param password The password.
+     * @param role     The role the user logs in with.
+     * @return The matching user, or null if no user has these credentials and this role.
+     */
+    public User authenticate(String username, String password, Role role) {
+        return users().authenticate(username, password, role);
+    }
+
+    /**
+     * Retrieves the credential store, for lookups by username and login throttling.
+     * Changes should go through this class so they are persisted.
+     *
+     * @return The credential store of the dealership.
+     */
+    public CredentialStore getCredentialStore() { return users(); }
 
     /**
      * Retrieves the list of cars in the dealership inventory.
      *
-     * @return A list of cars available in inventory.
+     * @return A copy of the list of cars available in inventory.
+     */
+    public List<Car> getInventory() { return new ArrayList<>(inventory().getCars()); }
+
+    /**
+     * Retrieves the indexed inventory store, for lookups.
+     * Changes should go through this class so they are persisted.
+     *
+     * @return The inventory store of the dealership.
+     */
+    public InventoryStore getInventoryStore() { return inventory(); }
+
+    /**
+     * Retrieves the sales of the dealership, in the order they were recorded.
+     *
+     * @return A read-only copy of the list of sales.
+     */
+    public List<Sale> getSales() {
+        sales();
+        return state.getSales();
+    }
+
+    /**
+     * Retrieves the sales made between two dates. Until every sale is loaded,
+     * only the part of the sales file holding those dates is read.
+     *
+     * @param from The first date, or null to start with the oldest sale.
+     * @param to   The last date, inclusive, or null to end with the latest sale.
+     * @return A read-only list of the sales, in the order they were recorded.
+     * @throws IOException If the sales can't be read from the database.
+     */
+    public List<Sale> getSales(LocalDate from, LocalDate to) throws IOException {
+        if (state.sales == null && db != null) {
+            return Collections.unmodifiableList(db.loadSales(from, to));
+        }
+        List<Sale> selected = new ArrayList<>();
+        for (Sale sale : getSales()) {
+            if ((from == null || !sale.getDate().isBefore(from)) && (to == null || !sale.getDate().isAfter(to))) {
+                selected.add(sale);
+            }
+        }
+        return Collections.unmodifiableList(selected);
+    }
+
+    /**
+     * Computes the sales report over every sale recorded so far.
+     *
+     * @param topSales The number of sales with the highest margins to report.
+     * @return The sales report.
+     */
+    public SalesReport analyzeSales(int topSales) {
+        State current = getState();
+        return new SalesAnalytics(current.inventory, topSales).analyze(current.getSales());
+    }
+
+    /**
+     * Returns a page of the cars matching a query. Queries read the inventory
+     * indexes without locking.
+     *
+     * @param query  The query.
+     * @param cursor The cursor returned with the previous page, or null for the first page.
+     * @return The page.
+     */
+    public InventoryQuery.Page searchInventory(InventoryQuery query, String cursor) {
+        Metrics.Sample sample = QUERY.time();
+        try {
+            return query.execute(inventory(), cursor);
+        } finally {
+            sample.close();
+        }
+    }
+
+    /**
+     * Finds the cars best matching a few words of their make, model or color,
+     * or the start of their VIN, tolerating typos. See {@link SearchIndex}.
+     *
+     * @param text The words to search for, e.g. "tyota cam".
+     * @return The best matching cars, most relevant first.
+     */
+    public List<SearchIndex.Hit> search(String text) {
+        SearchIndex index = getSearchIndex(); // building it is not part of the search
+        Metrics.Sample sample = SEARCH.time();
+        try {
+            return index.search(text);
+        } finally {
+            sample.close();
+        }
+    }
+
+    /**
+     * Retrieves the full-text search index, building it on first use. The
+     * index then follows the changes to the inventory.
+     *
+     * @return The search index of the dealership.
+     */
+    public SearchIndex getSearchIndex() {
+        SearchIndex index = searchIndex;
+        if (index == null) {
+            inventory(); // loaded before, as a reload replaces it under searchIndexLock
+            synchronized (searchIndexLock) {
+                index = searchIndex;
+                if (index == null) {
+                    index = SearchIndex.of(state.inventory);
+                    searchIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Retrieves the valuation engine, building it on first use and again every
+     * day, so the ages of the cars stay current. The engine then follows the
+     * changes to the inventory and the sales.
+     *
+     * @return The valuation engine of the dealership.
+     */
+    public ValuationEngine getValuationEngine() {
+        ValuationEngine engine = valuations;
+        LocalDate today = LocalDate.now();
+        if (engine == null || !engine.getDate().equals(today)) {
+            ensureLoaded();
+            // Built while no change is made, so no sale is missed
+            checkpointLock.writeLock().lock();
+            try {
+                engine = valuations;
+                if (engine == null || !engine.getDate().equals(today)) {
+                    if (engine != null) {
+                        state.inventory.removeListener(engine);
+                    }
+                    engine = ValuationEngine.of(state.inventory, state.getSales(), today);
+                    valuations = engine;
+                }
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Sets the price of every car not sold to its suggested price (see
+     * {@link ValuationEngine}), in parallel. Cars whose make, model or the
+     * whole dealership has too few sales keep their price. Like an import, the
+     * new prices are not logged one by one but persisted by a checkpoint.
+     *
+     * @return The number of cars repriced.
+     * @throws IOException If the checkpoint fails.
+     */
+    public int repriceInventory() throws IOException {
+        ValuationEngine engine = getValuationEngine();
+        AtomicInteger repriced = new AtomicInteger();
+        changeInBulk(store -> new ArrayList<>(store.getCars()).parallelStream().forEach(car -> {
+            ValuationEngine.Valuation valuation = engine.value(car);
+            if (valuation.getBasis() != ValuationEngine.Basis.NONE
+                    && car.getCarStatus() != CarStatus.SOLD
+                    && valuation.getSuggestedPrice() != car.getPrice()
+                    && store.replace(car, car.withPrice(valuation.getSuggestedPrice()))) {
+                repriced.incrementAndGet();
+            }
+        }));
+        audit("inventory.reprice", null, repriced.get() + " cars repriced");
+        return repriced.get();
+    }
+
+    /**
+     * Retrieves the report aggregates, kept up to date as cars and sales change.
+     *
+     * @return The report views of the dealership.
+     */
+    public ReportViews getReportViews() { return views(); }
+
+    /**
+     * Compares the report views with a full recomputation. No change can be
+     * made while the comparison runs.
+     *
+     * @return A description of each difference, empty if the views are correct.
+     */
+    public List<String> verifyReportViews() {
+        ensureLoaded();
+        checkpointLock.writeLock().lock();
+        try {
+            State current = state;
+            return current.views.verify(current.inventory.getCars(), current.getSales());
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Starts keeping the history of the inventory in a file, created from the
+     * current inventory and sales the first time (see {@link InventoryHistory}).
+     *
+     * @param file The history file.
+     * @return The history, which follows the changes to the inventory until closed.
+     * @throws IOException If the file can't be read or written.
+     */
+    public InventoryHistory openHistory(File file) throws IOException {
+        users(); // not under the lock: loading may checkpoint
+        inventory();
+        sales();
+        checkpointLock.writeLock().lock();
+        try {
+            State current = state;
+            InventoryHistory opened = InventoryHistory.open(file, current.inventory.getCars(), current.getSales());
+            current.inventory.addListener(opened);
+            history = opened;
+            return opened;
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Keeps the history of the inventory in a file, like {@link #openHistory(File)},
+     * but without loading anything: the history is opened once the inventory
+     * and the sales are loaded, before any change is made.
+     *
+     * @param file The history file.
+     * @throws IOException If the file can't be read or written, when everything is already loaded.
+     */
+    public void keepHistory(File file) throws IOException {
+        if (isLoaded()) {
+            openHistory(file);
+        } else {
+            pendingHistoryFile = file;
+        }
+    }
+
+    /**
+     * Retrieves the history of the inventory, loading the inventory and the
+     * sales first if its opening waits for them.
+     *
+     * @return The history, or null if it is not kept.
+     */
+    public InventoryHistory getHistory() {
+        if (pendingHistoryFile != null) {
+            ensureLoaded();
+        }
+        return history;
+    }
+
+    /**
+     * Closes the history of the inventory if it was opened, and stops waiting
+     * to open it otherwise.
+     *
+     * @throws IOException If the end of the history can't be written.
+     */
+    public void closeHistory() throws IOException {
+        pendingHistoryFile = null;
+        InventoryHistory h = history;
+        if (h != null) {
+            h.close();
+        }
+    }
+
+    /**
+     * Lets salespeople put cars on hold (see {@link HoldManager}), once the
+     * inventory is loaded.
+     *
+     * @param restoredTtl How long the cars found on hold without a hold, such
+     *                    as after a restart, stay on hold.
+     */
+    public void enableHolds(Duration restoredTtl) {
+        if (holds == null) {
+            pendingHoldTtl = restoredTtl;
+        }
+    }
+
+    /**
+     * Retrieves the holds on cars, loading the inventory first if needed.
+     *
+     * @return The holds, or null if they are not enabled.
+     */
+    public HoldManager getHoldManager() {
+        if (pendingHoldTtl != null) {
+            ensureLoaded();
+        }
+        return holds;
+    }
+
+    /**
+     * Stops expiring the holds. The cars on hold stay on hold, and get a new
+     * hold when holds are enabled again.
+     */
+    public void closeHolds() {
+        pendingHoldTtl = null;
+        HoldManager h = holds;
+        if (h != null) {
+            h.close();
+        }
+    }
+
+    /**
+     * Sets the audit log the changes made through this class are recorded in,
+     * attributed to the user the calling thread acts for (see {@link AuditLog#setActor(String)}).
+     *
+     * @param auditLog The audit log, or null to stop auditing.
+     */
+    public void setAuditLog(AuditLog auditLog) { this.auditLog = auditLog; }
+
+    /**
+     * Records an event in the audit log, if there is one. Never waits for the disk.
+     *
+     * @param action  What was done, e.g. login.
+     * @param subject What it was done to, e.g. a VIN or a username, or null.
+     * @param detail  Anything else worth recording, or null.
+     */
+    public void audit(String action, String subject, String detail) {
+        AuditLog log = auditLog;
+        if (log != null) {
+            log.record(action, subject, detail);
+        }
+    }
+
+    /**
+     * Adds a car to the inventory.
+     *
+     * @param car The car to add.
+     * @return {true} if the car was added, {false} if a car with the same VIN already exists.
+     * @throws IOException If the change can't be persisted.
+     */
+    public boolean addCar(Car car) throws IOException {
+        boolean added = change(() -> {
+            InventoryStore inventory = state.inventory;
+            synchronized (inventory.lockFor(car.getVin())) {
+                if (inventory.contains(car.getVin())) {
+                    return false;
+                }
+                if (db != null) {
+                    db.logCarPut(car);
+                }
+                return inventory.add(car);
+            }
+        });
+        if (added) {
+            audit("car.add", car.getVin(), DealershipDB.formatCar(car));
+        }
+        return added;
+    }
+
+    /**
+     * Replaces the car having the same VIN as the given car.
+     *
+     * @param car The new version of the car.
+     * @return The previous version of the car, or null if no car has this VIN.
+     * @throws IOException If the change can't be persisted.
+     */
+    public Car updateCar(Car car) throws IOException {
+        Car previous = change(() -> {
+            InventoryStore inventory = state.inventory;
+            synchronized (inventory.lockFor(car.getVin())) {
+                if (!inventory.contains(car.getVin())) {
+                    return null;
+                }
+                if (db != null) {
+                    db.logCarPut(car);
+                }
+                return inventory.update(car);
+            }
+        });
+        if (previous != null) {
+            audit("car.update", car.getVin(), DealershipDB.formatCar(car));
+        }
+        return previous;
+    }
+
+    /**
+     * Removes a car from the inventory.
+     *
+     * @param vin The VIN of the car to remove.
+     * @return The removed car, or null if no car has this VIN.
+     * @throws IOException If the change can't be persisted.
+     */
+    public Car removeCar(String vin) throws IOException {
+        Car removed = change(() -> {
+            InventoryStore inventory = state.inventory;
+            synchronized (inventory.lockFor(vin)) {
+                if (!inventory.contains(vin)) {
+                    return null;
+                }
+                if (db != null) {
+                    db.logCarRemoved(vin);
+                }
+                return inventory.remove(vin);
+            }
+        });
+        if (removed != null) {
+            audit("car.remove", vin, null);
+        }
+        return removed;
+    }
+
+    /**
+     * Changes the status of a car, if its current status allows it
+     * (see {@link CarStatus}).
+     *
+     * @param vin    The VIN of the car.
+     * @param status The new status.
+     * @return The previous version of the car, or null if no car has this VIN or
+     * its current status can't change to the given one.
+     * @throws IOException If the change can't be persisted.
+     */
+    public Car changeCarStatus(String vin, CarStatus status) throws IOException {
+        return changeCarStatus(vin, null, status);
+    }
+
+    /**
+     * Changes the status of a car, if it still has the expected status and
+     * its current status allows the change (see {@link CarStatus}).
+     *
+     * @param vin      The VIN of the car.
+     * @param expected The status the car must have, or null for any status.
+     * @param status   The new status.
+     * @return The previous version of the car, or null if no car has this VIN,
+     * it doesn't have the expected status or its current status can't change to
+     * the given one.
+     * @throws IOException If the change can't be persisted.
+     */
+    public Car changeCarStatus(String vin, CarStatus expected, CarStatus status) throws IOException {
+        Car previous = change(() -> {
+            InventoryStore inventory = state.inventory;
+            synchronized (inventory.lockFor(vin)) {
+                Car current = inventory.getByVin(vin);
+                if (current == null || (expected != null && current.getCarStatus() != expected)
+                        || !InventoryStore.canChangeStatus(current, status)) {
+                    return null;
+                }
+                return putCar(current.withStatus(status));
+            }
+        });
+        if (previous != null) {
+            audit("car.status", vin, previous.getStatus() + " -> " + status.getLabel());
+        }
+        return previous;
+    }
+
+    /**
+     * Changes the price of a car.
+     *
+     * @param vin   The VIN of the car.
+     * @param price The new price.
+     * @return The previous version of the car, or null if no car has this VIN.
+     * @throws IOException If the change can't be persisted.
+     */
+    public Car repriceCar(String vin, double price) throws IOException {
+        Car previous = change(() -> {
+            InventoryStore inventory = state.inventory;
+            synchronized (inventory.lockFor(vin)) {
+                Car current = inventory.getByVin(vin);
+                return current == null ? null : putCar(current.withPrice(price));
+            }
+        });
+        if (previous != null) {
+            audit("car.price", vin, previous.getPrice() + " -> " + price);
+        }
+        return previous;
+    }
+
+    /**
+     * Sells a car: marks it as sold and records the sale, provided it is
+     * available. When several sessions try to sell the same car at the same
+     * time, only one of them succeeds.
+     *
+     * @param sale The sale, whose VIN is the car sold.
+     * @return {true} if the car was sold, {false} if no car has this VIN or it is neither available nor on hold.
+     * @throws IOException If the sale can't be persisted.
+     */
+    public boolean sellCar(Sale sale) throws IOException {
+        boolean sold = change(() -> {
+            InventoryStore inventory = state.inventory;
+            synchronized (inventory.lockFor(sale.getVin())) {
+                Car current = inventory.getByVin(sale.getVin());
+                if (current == null || !InventoryStore.canChangeStatus(current, CarStatus.SOLD)) {
+                    return false;
+                }
+                putCar(current.withStatus(CarStatus.SOLD));
+                addSale(sale);
+                return true;
+            }
+        });
+        if (sold) {
+            audit("car.sell", sale.getVin(), sale.toString());
+        }
+        return sold;
+    }
+
+    /**
+     * Adds a user, replacing any user having the same username. A plain text
+     * password is hashed before the user is persisted.
+     *
+     * @param user The user to add.
+     * @throws IOException If the change can't be persisted.
+     */
+    public void putUser(User user) throws IOException {
+        change(() -> {
+            CredentialStore users = state.users;
+            User hashed = users.hashPassword(user);
+            synchronized (users) {
+                if (db != null) {
+                    db.logUserPut(hashed);
+                }
+                users.put(hashed);
+            }
+            return null;
+        });
+        audit("user.put", user.getUsername(), Role.labelOf(user.getRole()));
+    }
+
+    /**
+     * Removes the user having the given username.
+     *
+     * @param username The username of the user to remove.
+     * @return {true} if a user was removed.
+     * @throws IOException If the change can't be persisted.
+     */
+    public boolean removeUser(String username) throws IOException {
+        boolean removed = change(() -> {
+            CredentialStore users = state.users;
+            synchronized (users) {
+                if (users.get(username) == null) {
+                    return false;
+                }
+                if (db != null) {
+                    db.logUserRemoved(username);
+                }
+                return users.remove(username);
+            }
+        });
+        if (removed) {
+            audit("user.remove", username, null);
+        }
+        return removed;
+    }
+
+    /**
+     * Records a sale.
+     *
+     * @param sale The sale.
+     * @throws IOException If the sale can't be persisted.
+     */
+    public void recordSale(Sale sale) throws IOException {
+        change(() -> {
+            addSale(sale);
+            return null;
+        });
+        audit("sale", sale.getVin(), sale.toString());
+    }
+
+    /**
+     * Writes the current state to database snapshots and empties the change log.
+     *
+     * @throws IOException If a snapshot can't be written.
+     */
+    public void checkpoint() throws IOException {
+        ensureLoaded();
+        checkpointLock.writeLock().lock();
+        try {
+            if (db != null) {
+                State current = state;
+                db.compact(current.users.getUsers(), current.inventory.getCars(), current.sales);
+            }
+            InventoryHistory h = history;
+            if (h != null) {
+                h.flush();
+            }
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reloads the database files changed by another process since they were
+     * last read or written: the users, inventory or sales are read again from
+     * the changed file and the change log, and replace the current ones. When
+     * sales were only appended, only the new sales are read and added. No
+     * change can be made while files are reloaded.
+     *
+     * Once compacted, the users, inventory and sales are loaded from their
+     * snapshots and the change log only holds the changes made since, which
+     * reloading a csv file would lose. The rows of the users or inventory csv
+     * file changed since it was last read are then applied instead, like
+     * changes made here: a changed or added row replaces the user or car
+     * having its username or VIN, and a removed row removes it. Sales appended
+     * to the sales csv file are recorded like new sales; other changes to it
+     * are reported and ignored, as sales can't be told apart.
+     *
+     * The reloaded users, inventory and sales are published together in a new
+     * {@link State}. A reloaded inventory store replaces the previous one:
+     * listeners registered on the previous store are not called anymore, and
+     * the search index and the valuation engine are built again on next use.
+     *
+     * Until everything is loaded, nothing is reloaded: the files are read as
+     * they are when loaded, and changed files are reloaded from the next call.
+     *
+     * @return The names of the files reloaded, empty if none changed.
+     * @throws IOException If a file can't be read.
      */
-    public List<Car> getInventory() { return inventory; }
+    public List<String> reloadChangedFiles() throws IOException {
+        List<String> reloaded = new ArrayList<>();
+        if (db == null || !isLoaded()) {
+            return reloaded;
+        }
+        checkpointLock.writeLock().lock();
+        Metrics.Sample sample = RELOAD.time();
+        try {
+            boolean compact = false; // set when a csv file was read
+            boolean usersEdited = compactedFileChanged(DealershipDB.USERS_FILE_NAME);
+            boolean inventoryEdited = compactedFileChanged(DealershipDB.INVENTORY_FILE_NAME);
+            State current = state;
+            CredentialStore reloadedUsers = current.users;
+            String usersFile = changedFile(DealershipDB.USERS_FILE_NAME);
+            if (usersFile != null) {
+                reloadedUsers = new CredentialStore(db.reloadUsers(usersFile));
+                reloaded.add(usersFile);
+                saveHashedPasswords(reloadedUsers);
+                compact = usersFile.equals(DealershipDB.USERS_FILE_NAME);
+            }
+
+            String inventoryFile = changedFile(DealershipDB.INVENTORY_FILE_NAME);
+            String salesSource = db.getSourceFileName(DealershipDB.SALES_FILE_NAME);
+            DealershipDB.FileChange importedSalesChange = DealershipDB.FileChange.NONE;
+            if (!salesSource.equals(DealershipDB.SALES_FILE_NAME)) {
+                importedSalesChange = db.getChange(DealershipDB.SALES_FILE_NAME);
+                if (importedSalesChange == DealershipDB.FileChange.REPLACED) {
+                    System.err.println("WARNING: " + DealershipDB.SALES_FILE_NAME + " changed after it was compacted into "
+                            + salesSource + ", and is not reloaded: only appended sales are. Change " + salesSource
+                            + " instead.");
+                    db.markSeen(DealershipDB.SALES_FILE_NAME);
+                    importedSalesChange = DealershipDB.FileChange.NONE;
+                }
+            }
+            DealershipDB.FileChange salesChange = db.getChange(salesSource);
+            String salesFile = salesChange == DealershipDB.FileChange.REPLACED ? salesSource : null;
+            InventoryStore reloadedInventory = current.inventory;
+            List<Sale> reloadedSales = current.sales;
+            ReportViews reloadedViews = current.views;
+            if (inventoryFile != null || salesFile != null) {
+                if (inventoryFile != null) {
+                    reloadedInventory = new InventoryStore(db.reloadInventory(inventoryFile));
+                }
+                if (salesFile != null) {
+                    reloadedSales = new ArrayList<>(db.reloadSales(salesFile));
+                }
+                reloadedViews = ReportViews.of(reloadedInventory.getCars(), reloadedSales);
+                current.inventory.removeListener(current.views);
+                reloadedInventory.addListener(reloadedViews);
+                if (valuations != null) {
+                    current.inventory.removeListener(valuations);
+                    valuations = null; // fitted on the previous sales, rebuilt on next use
+                }
+                if (inventoryFile != null) {
+                    InventoryHistory h = history;
+                    if (h != null) {
+                        current.inventory.removeListener(h);
+                        h.reconcile(reloadedInventory.getCars(), System.currentTimeMillis());
+                        reloadedInventory.addListener(h);
+                    }
+                    HoldManager hm = holds;
+                    if (hm != null) {
+                        current.inventory.removeListener(hm);
+                        hm.reconcile(reloadedInventory);
+                        reloadedInventory.addListener(hm);
+                    }
+                    reloaded.add(inventoryFile);
+                    compact |= inventoryFile.equals(DealershipDB.INVENTORY_FILE_NAME);
+                }
+                if (salesFile != null) {
+                    reloaded.add(salesFile);
+                    compact |= salesFile.equals(DealershipDB.SALES_FILE_NAME);
+                }
+            }
+            State next = current;
+            if (usersFile != null || inventoryFile != null || salesFile != null) {
+                next = new State(reloadedUsers, reloadedInventory, reloadedSales, reloadedViews);
+                State published = next;
+                synchronized (searchIndexLock) {
+                    publish(s -> published);
+                    if (inventoryFile != null) {
+                        searchIndex = null; // of the previous store
+                    }
+                }
+            }
+
+            // Through the change methods, with the write lock held: the changes are logged,
+            // audited and seen by the inventory listeners, and nothing else changes meanwhile
+            if (usersEdited) {
+                DealershipDB.Difference<User> difference = db.loadUsersDifference();
+                for (User user : difference.getPut()) {
+                    putUser(user);
+                }
+                for (String username : difference.getRemoved()) {
+                    removeUser(username);
+                }
+                reloaded.add(DealershipDB.USERS_FILE_NAME);
+            }
+            if (inventoryEdited) {
+                DealershipDB.Difference<Car> difference = db.loadInventoryDifference();
+                for (Car car : difference.getPut()) {
+                    if (updateCar(car) == null) {
+                        addCar(car);
+                    }
+                }
+                for (String vin : difference.getRemoved()) {
+                    removeCar(vin);
+                }
+                reloaded.add(DealershipDB.INVENTORY_FILE_NAME);
+            }
+            if (importedSalesChange == DealershipDB.FileChange.APPENDED) {
+                // New sales, not in the snapshot: persisted like the sales recorded here
+                for (Sale sale : db.loadAppendedSales(DealershipDB.SALES_FILE_NAME)) {
+                    addSale(sale);
+                }
+                reloaded.add(DealershipDB.SALES_FILE_NAME);
+            }
+            if (salesFile == null && salesChange == DealershipDB.FileChange.APPENDED) {
+                List<Sale> appended = db.loadAppendedSales(salesSource);
+                synchronized (next.sales) {
+                    next.sales.addAll(appended);
+                }
+                ValuationEngine engine = valuations;
+                for (Sale sale : appended) {
+                    next.views.saleRecorded(sale);
+                    if (engine != null) {
+                        engine.saleRecorded(sale);
+                    }
+                }
+                reloaded.add(salesSource);
+            }
+            if (compact) {
+                checkpoint();
+            }
+            if (!reloaded.isEmpty()) {
+                audit("db.reload", null, String.join(" ", reloaded));
+            }
+        } finally {
+            sample.close();
+            checkpointLock.writeLock().unlock();
+        }
+        return reloaded;
+    }
+
+    /**
+     * Finds the file the users, inventory or sales must be read again from.
+     *
+     * @return The name of the changed file, or null if their files didn't change.
+     */
+    private String changedFile(String fileName) throws IOException {
+        String source = db.getSourceFileName(fileName);
+        return db.getChange(source) != DealershipDB.FileChange.NONE ? source : null;
+    }
+
+    /**
+     * @return {true} if a csv file changed while its snapshot is loaded instead.
+     */
+    private boolean compactedFileChanged(String fileName) throws IOException {
+        return !db.getSourceFileName(fileName).equals(fileName)
+                && db.getChange(fileName) != DealershipDB.FileChange.NONE;
+    }
+
+    /**
+     * Applies a bulk change directly to the inventory store while no other
+     * change can be made, then checkpoints the database. The cars changed are
+     * not written to the change log one by one: the change becomes durable with
+     * the checkpoint, which costs much less for a large import.
+     *
+     * @param change The change, which may update the store from several threads.
+     * @throws IOException If the checkpoint fails.
+     */
+    void changeInBulk(Consumer<InventoryStore> change) throws IOException {
+        ensureLoaded();
+        checkpointLock.writeLock().lock();
+        try {
+            change.accept(state.inventory);
+            checkpoint();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Persists and applies a new version of a car. The caller holds the lock of its VIN.
+     */
+    private Car putCar(Car car) throws IOException {
+        if (db != null) {
+            db.logCarPut(car);
+        }
+        return state.inventory.update(car);
+    }
+
+    private void addSale(Sale sale) throws IOException {
+        State current = state;
+        synchronized (current.sales) {
+            if (db != null) {
+                db.logSale(sale);
+            }
+            current.sales.add(sale);
+        }
+        current.views.saleRecorded(sale);
+        ValuationEngine engine = valuations;
+        if (engine != null) {
+            engine.saleRecorded(sale);
+        }
+    }
+
+    /**
+     * Runs a change while no checkpoint is in progress, then compacts the
+     * change log if it has grown large enough.
+     */
+    private <T> T change(Change<T> change) throws IOException {
+        T result;
+        ensureLoaded();
+        checkpointLock.readLock().lock();
+        try {
+            result = change.apply();
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        compactIfNeeded();
+        return result;
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (db != null && db.needsCompaction()) {
+            checkpointLock.writeLock().lock();
+            try {
+                // Another thread may have compacted the log while this one waited
+                if (db.needsCompaction()) {
+                    checkpoint();
+                }
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+        }
+    }
 }
@@ -0,0 +1,366 @@
+package dealership;
+
+import dealership.utils.DealershipDB;
+import dealership.utils.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * The DealershipGroup class runs the lots of a dealership group: each lot is
+ * loaded from its own database directory into its own {@link Dealership}, and
+ * queries across lots (find a VIN anywhere, inventory value, sales totals) are
+ * answered by every lot and merged.
+ *
+ * Lots are loaded in parallel, on a thread each, and a query is run on every
+ * lot in parallel too. A query waits for the answers until its timeout only:
+ * lots still loading, that failed to load, or too slow to answer are left out
+ * of the merged answer and listed in {@link Result#getUnavailable()}, so one
+ * slow or huge lot never holds up the others. A lot is identified by the name
+ * of its directory.
+ * Usage:
+ *       java dealership.DealershipGroup [--vin <VIN>] <database directory path>...
+ */
+public class DealershipGroup implements AutoCloseable {
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+    private static final String NAME_KEY = "Dealership Name";
+
+    private static final Metrics.Timer LOAD = Metrics.timer("group.load");
+    private static final Metrics.Timer QUERY = Metrics.timer("group.query");
+
+    private final Map<String, CompletableFuture<Lot>> lots = new LinkedHashMap<>();
+    private final ExecutorService executor = DealershipServer.newSessionExecutor("dealership-group");
+
+    /**
+     * A loaded lot.
+     */
+    public static final class Lot {
+        private final String id;
+        private final DealershipDB db;
+        private final Dealership dealership;
+        private final Map<String, String> info;
+
+        private Lot(String id, DealershipDB db, Dealership dealership, Map<String, String> info) {
+            this.id = id;
+            this.db = db;
+            this.dealership = dealership;
+            this.info = Collections.unmodifiableMap(info);
+        }
+
+        public String getId() { return id; }
+        public Dealership getDealership() { return dealership; }
+        public Map<String, String> getInfo() { return info; }
+
+        /**
+         * @return The name of the dealership found in its `dealerinfo.csv`, or the id of the lot.
+         */
+        public String getName() { return info.getOrDefault(NAME_KEY, id); }
+    }
+
+    /**
+     * The merged answers of the lots, and the lots that didn't answer.
+     */
+    public static final class Result<T> {
+        private final T value;
+        private final Map<String, String> unavailable;
+
+        Result(T value, Map<String, String> unavailable) {
+            this.value = value;
+            this.unavailable = Collections.unmodifiableMap(unavailable);
+        }
+
+        public T getValue() { return value; }
+
+        /**
+         * @return The reason each lot that didn't answer in time didn't, by lot id.
+         */
+        public Map<String, String> getUnavailable() { return unavailable; }
+
+        /**
+         * @return {true} if every lot answered.
+         */
+        public boolean isComplete() { return unavailable.isEmpty(); }
+
+        <U> Result<U> map(Function<T, U> merge) {
+            return new Result<>(merge.apply(value), unavailable);
+        }
+    }
+
+    /**
+     * Starts loading the lots of a group, in parallel. Queries can be run right
+     * away: lots are available as soon as they are loaded.
+     *
+     * @param dirs              The database directory of each lot.
+     * @param useBinarySnapshot Whether to load from, and maintain, the binary snapshots.
+     * @throws IllegalArgumentException If two directories have the same name.
+     */
+    public DealershipGroup(List<File> dirs, boolean useBinarySnapshot) {
+        for (File dir : dirs) {
+            String id = dir.getAbsoluteFile().toPath().normalize().getFileName().toString();
+            if (lots.containsKey(id)) {
+                executor.shutdown();
+                throw new IllegalArgumentException("Duplicate lot -> " + id);
+            }
+            lots.put(id, CompletableFuture.supplyAsync(() -> load(id, dir, useBinarySnapshot), executor));
+        }
+    }
+
+    private static Lot load(String id, File dir, boolean useBinarySnapshot) {
+        Metrics.Sample sample = LOAD.time();
+        DealershipDB db = new DealershipDB(dir.getPath(), useBinarySnapshot);
+        try {
+            Dealership dealership = new Dealership(db.loadUsers(), db.loadInventory(), db.loadSales(), db);
+            return new Lot(id, db, dealership, db.loadDealerInfo());
+        } catch (IOException e) {
+            closeQuietly(db);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            closeQuietly(db);
+            throw e;
+        } finally {
+            sample.close();
+        }
+    }
+
+    /**
+     * @return The id of each lot, in the order given.
+     */
+    public List<String> getLotIds() { return new ArrayList<>(lots.keySet()); }
+
+    /**
+     * Retrieves a lot if it is loaded, without waiting.
+     *
+     * @param id The id of the lot.
+     * @return The lot, or null if there is no such lot or it isn't loaded (yet).
+     */
+    public Lot getLot(String id) {
+        CompletableFuture<Lot> lot = lots.get(id);
+        return lot != null && lot.isDone() && !lot.isCompletedExceptionally() ? lot.join() : null;
+    }
+
+    /**
+     * Waits for the lots to be loaded.
+     *
+     * @param timeoutMillis How long to wait at most.
+     * @return The lots loaded, by lot id.
+     */
+    public Result<Map<String, Lot>> awaitLoaded(long timeoutMillis) {
+        return query(lot -> lot, timeoutMillis);
+    }
+
+    /**
+     * Runs a query on every lot in parallel.
+     *
+     * The query of a lot that doesn't answer in time is cancelled, but keeps
+     * running until it returns: queries should not block.
+     *
+     * @param query         The query, run once per lot.
+     * @param timeoutMillis How long to wait for the answers at most.
+     * @return The answer of each lot that answered in time, by lot id, in the order of the lots.
+     */
+    public <T> Result<Map<String, T>> query(Function<Lot, T> query, long timeoutMillis) {
+        Metrics.Sample sample = QUERY.time();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            Map<String, CompletableFuture<T>> answers = new LinkedHashMap<>();
+            lots.forEach((id, lot) -> answers.put(id, lot.thenApplyAsync(query, executor)));
+
+            Map<String, T> values = new LinkedHashMap<>();
+            Map<String, String> unavailable = new LinkedHashMap<>();
+            answers.forEach((id, answer) -> {
+                CompletableFuture<Lot> lot = lots.get(id);
+                try {
+                    values.put(id, answer.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    answer.cancel(true);
+                    unavailable.put(id, lot.isDone() ? "Timed out" : "Still loading");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                    unavailable.put(id, (lot.isCompletedExceptionally() ? "Failed to load -> " : "Failed -> ") + cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    answer.cancel(true);
+                    unavailable.put(id, "Interrupted");
+                }
+            });
+            return new Result<>(values, unavailable);
+        } finally {
+            sample.close();
+        }
+    }
+
+    /**
+     * Finds a car in every lot.
+     *
+     * @param vin           The VIN of the car.
+     * @param timeoutMillis How long to wait for the answers at most.
+     * @return The car found in each lot, by lot id; usually one at most.
+     */
+    public Result<Map<String, Car>> findByVin(String vin, long timeoutMillis) {
+        return query(lot -> lot.getDealership().getInventoryStore().getByVin(vin), timeoutMillis).map(cars -> {
+            cars.values().removeIf(car -> car == null);
+            return cars;
+        });
+    }
+
+    /**
+     * Retrieves the inventory value (sum of list prices of the cars not sold) of each lot.
+     *
+     * @param timeoutMillis How long to wait for the answers at most.
+     * @return The inventory value of each lot, by lot id.
+     */
+    public Result<Map<String, Double>> getInventoryValueByLot(long timeoutMillis) {
+        return query(lot -> lot.getDealership().getReportViews().getInventoryValue(), timeoutMillis);
+    }
+
+    /**
+     * Retrieves the inventory value of each make, across lots.
+     *
+     * @param timeoutMillis How long to wait for the answers at most.
+     * @return The inventory value of each make, sorted by make.
+     */
+    public Result<Map<String, Double>> getInventoryValueByMake(long timeoutMillis) {
+        return query(lot -> lot.getDealership().getReportViews().getInventoryValueByMake(), timeoutMillis).map(byLot -> {
+            Map<String, Double> values = new TreeMap<>();
+            for (Map<String, Double> byMake : byLot.values()) {
+                byMake.forEach((make, value) -> values.merge(make, value, Double::sum));
+            }
+            return values;
+        });
+    }
+
+    /**
+     * Retrieves the sales totals of each lot.
+     *
+     * @param timeoutMillis How long to wait for the answers at most.
+     * @return The sales totals of each lot, by lot id.
+     */
+    public Result<Map<String, SalesReport.Totals>> getSalesTotalsByLot(long timeoutMillis) {
+        return query(lot -> {
+            SalesReport.Totals totals = new SalesReport.Totals();
+            for (SalesReport.Totals t : lot.getDealership().getReportViews().getSalesBySalesperson().values()) {
+                totals.add(t);
+            }
+            return totals;
+        }, timeoutMillis);
+    }
+
+    /**
+     * Waits for the lots still loading, and closes the database of each lot so
+     * pending changes are persisted.
+     *
+     * @throws IOException If a database can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (CompletableFuture<Lot> lot : lots.values()) {
+            try {
+                lot.join().db.close();
+            } catch (CompletionException | CancellationException e) {
+                // Not loaded: nothing to close
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        executor.shutdown();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void closeQuietly(DealershipDB db) {
+        try {
+            db.close();
+        } catch (IOException e) {
+            // Already failing
+        }
+    }
+
+    /**
+     * Loads the lots of a group and prints the group report, or the lots a car is in.
+     *
+     * @param args Optionally --vin and a VIN, then the database directory path of each lot.
+     */
+    public static void main(String[] args) {
+        String vin = args.length >= 2 && args[0].equals("--vin") ? args[1] : null;
+        List<File> dirs = new ArrayList<>();
+        for (int i = vin != null ? 2 : 0; i < args.length; i++) {
+            dirs.add(new File(args[i]));
+        }
+        if (dirs.isEmpty()) {
+            System.err.println("Usage: java dealership.DealershipGroup [--vin <VIN>] <database directory path>...");
+            System.exit(1);
+        }
+        boolean useBinarySnapshot = Boolean.parseBoolean(System.getProperty("dealership.binarySnapshot", "true"));
+        try (DealershipGroup group = new DealershipGroup(dirs, useBinarySnapshot)) {
+            Map<String, String> unavailable = new LinkedHashMap<>();
+            if (vin != null) {
+                Result<Map<String, Car>> found = group.findByVin(vin, DEFAULT_TIMEOUT_MILLIS);
+                found.getValue().forEach((id, car) -> System.out.println(id + ": " + car));
+                if (found.getValue().isEmpty()) {
+                    System.out.println("No car with VIN " + vin + ".");
+                }
+                unavailable.putAll(found.getUnavailable());
+            } else {
+                printReport(group, unavailable);
+            }
+            unavailable.forEach((id, reason) -> System.err.println("WARNING: Lot " + id + " unavailable -> " + reason));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error loading dealership group: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void printReport(DealershipGroup group, Map<String, String> unavailable) {
+        Result<Map<String, Lot>> loaded = group.awaitLoaded(DEFAULT_TIMEOUT_MILLIS);
+        Result<Map<String, Double>> values = group.getInventoryValueByLot(DEFAULT_TIMEOUT_MILLIS);
+        Result<Map<String, SalesReport.Totals>> sales = group.getSalesTotalsByLot(DEFAULT_TIMEOUT_MILLIS);
+        Result<Map<String, Double>> byMake = group.getInventoryValueByMake(DEFAULT_TIMEOUT_MILLIS);
+        unavailable.putAll(loaded.getUnavailable());
+        unavailable.putAll(values.getUnavailable());
+        unavailable.putAll(sales.getUnavailable());
+        unavailable.putAll(byMake.getUnavailable());
+
+        System.out.printf("%-20s %-30s %-16s %-8s %-14s %-14s%n", "Lot", "Name", "Inventory value", "Sales",
+                "Revenue", "Margin");
+        double totalValue = 0;
+        SalesReport.Totals totalSales = new SalesReport.Totals();
+        for (Lot lot : loaded.getValue().values()) {
+            Double value = values.getValue().get(lot.getId());
+            SalesReport.Totals t = sales.getValue().get(lot.getId());
+            if (value == null || t == null) {
+                continue; // answered one query but not the other
+            }
+            totalValue += value;
+            totalSales.add(t);
+            System.out.printf("%-20s %-30s $%-15.2f %-8d $%-13.2f $%-13.2f%n", lot.getId(), lot.getName(), value,
+                    t.getCount(), t.getRevenue(), t.getMargin());
+        }
+        System.out.printf("%-51s $%-15.2f %-8d $%-13.2f $%-13.2f%n", "Group", totalValue, totalSales.getCount(),
+                totalSales.getRevenue(), totalSales.getMargin());
+        System.out.println();
+        for (Map.Entry<String, Double> e : byMake.getValue().entrySet()) {
+            System.out.printf("%-12s $%.2f%n", e.getKey() + ":", e.getValue());
+        }
+    }
+}
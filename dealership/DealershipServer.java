@@ -0,0 +1,163 @@
+package dealership;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves the dealership menus to many simultaneous sessions over local sockets.
+ *
+ * Each connection gets its own {@link Menu}, which reads the choices sent by the
+ * client and writes the menus and reports back, exactly as on the terminal, so
+ * a session can be opened with any line-based client (e.g., {@code nc localhost 4000}).
+ * Every session runs on its own thread: a virtual thread when the runtime has
+ * them (Java 21 and later), a pooled platform thread otherwise. All sessions
+ * share the same {@link Dealership}, which guards its own state.
+ *
+ * The server only listens on the loopback interface, as passwords are sent
+ * in clear text.
+ */
+public class DealershipServer implements AutoCloseable {
+    private static final int BACKLOG = 1024;
+
+    private final Dealership dealership;
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions;
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sessionCount = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Constructs a server for a dealership, listening on the loopback interface.
+     *
+     * @param dealership The dealership shared by every session.
+     * @param port       The port to listen on, or 0 for any free port.
+     * @throws IOException If the port can't be bound.
+     */
+    public DealershipServer(Dealership dealership, int port) throws IOException {
+        this.dealership = dealership;
+        this.serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+        this.sessions = newSessionExecutor("dealership-session");
+    }
+
+    /**
+     * @return The port the server listens on.
+     */
+    public int getPort() { return serverSocket.getLocalPort(); }
+
+    /**
+     * @return The number of sessions opened since the server started.
+     */
+    public long getSessionCount() { return sessionCount.get(); }
+
+    /**
+     * @return The number of sessions currently open.
+     */
+    public int getOpenSessionCount() { return openSockets.size(); }
+
+    /**
+     * Accepts connections and starts a session for each of them, until the
+     * server is closed.
+     *
+     * @throws IOException If accepting a connection fails for another reason than the server being closed.
+     */
+    public void serve() throws IOException {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (closed) {
+                    return;
+                }
+                throw e;
+            }
+            openSockets.add(socket);
+            sessionCount.incrementAndGet();
+            sessions.execute(() -> runSession(socket));
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes every open session.
+     *
+     * @throws IOException If the server socket can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : openSockets) {
+            closeQuietly(socket);
+        }
+        sessions.shutdown();
+        try {
+            sessions.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates an executor that runs each task on a thread of its own: a virtual
+     * thread when the runtime supports them, a platform daemon thread otherwise.
+     *
+     * @param name The prefix of the names of the platform threads.
+     * @return The executor.
+     */
+    public static ExecutorService newSessionExecutor(String name) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // No virtual threads before Java 21
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private void runSession(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), false,
+                    StandardCharsets.UTF_8);
+            new Menu(dealership, socket.getInputStream(), out, false).showLoginMenu();
+            out.flush();
+        } catch (NoSuchElementException e) {
+            // The client disconnected without exiting
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                System.err.println("ERROR: Session from " + socket.getRemoteSocketAddress() + " failed: " + e);
+            }
+        } finally {
+            openSockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do with this socket
+        }
+    }
+}
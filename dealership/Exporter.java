@@ -0,0 +1,1005 @@
+package dealership;
+
+import dealership.utils.DealershipDB;
+import dealership.utils.Metrics;
+import dealership.utils.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The Exporter class writes the inventory and the sales to files, for use
+ * outside the dealership (e.g., by the finance team), in one of three formats:
+ * - CSV: a header line, then one line per row, quoted as in the database files.
+ * - JSONL: one JSON object per line.
+ * - COLUMNAR: a compressed binary format, described below, read back by
+ *   {@link #readColumnar(Path, Consumer)}.
+ *
+ * Rows are encoded straight into a byte buffer, which is written to the file
+ * channel whenever full: numbers and dates are written digit by digit and
+ * strings char by char, so no String is built per row. The buffers are kept
+ * from one export to the next, and the memory used doesn't depend on the
+ * number of rows. Cars can be exported from the live inventory
+ * ({@link InventoryStore#getCars()}) without copying it first.
+ *
+ * Columnar layout (big-endian):
+ * <pre>
+ * header  magic "DLRC" (int), version (short), column count (short),
+ *         per column: type (byte), name length (short), name (UTF-8)
+ * blocks  row count (int), then per column: encoded length, deflated length (ints),
+ *         deflated bytes
+ * end     row count 0 (int), total row count (long)
+ * </pre>
+ * A block holds up to {@link #BLOCK_ROWS} rows, and each of its columns is
+ * deflated on its own. Within a block:
+ * - A number is the zigzag-encoded difference with the previous value of the
+ *   column + 1 (varint). Dates are epoch days and amounts cents.
+ * - A string column starts with a byte telling how its values are encoded.
+ *   Plain, a value is its UTF-8 length + 1 (varint) then its bytes. With a
+ *   dictionary, the distinct values of the block come first, as plain values
+ *   after their count (varint), then each value is its index + 1 (varint).
+ *   Makes, models, colors and statuses take a byte per row before deflating.
+ * - 0 stands for a missing value.
+ */
+public class Exporter implements AutoCloseable {
+    public static final int MAGIC = 0x444C5243; // "DLRC"
+    public static final short VERSION = 1;
+    public static final int BLOCK_ROWS = 8192;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int DICTIONARY_SIZE = 1024;
+    private static final byte PLAIN = 0;
+    private static final byte DICTIONARY = 1;
+    private static final long NULL = Long.MIN_VALUE;
+
+    private static final Metrics.Timer EXPORT = Metrics.timer("export");
+    private static final Metrics.Counter ROWS_EXPORTED = Metrics.counter("export.rows");
+
+    /**
+     * The formats rows can be exported to.
+     */
+    public enum Format {
+        CSV("csv"), JSONL("jsonl"), COLUMNAR("dcol");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * @return The extension of the files written in this format, without the dot.
+         */
+        public String getExtension() { return extension; }
+
+        /**
+         * Finds the format matching a name or an extension, ignoring case.
+         *
+         * @param name The name (e.g., "jsonl").
+         * @return The matching format, or null if there is none.
+         */
+        public static Format of(String name) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name) || format.extension.equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    private enum Type { STRING, INTEGER, DATE, DECIMAL }
+
+    /**
+     * A column of an export: its name, type, and how to read its value from a row.
+     * Numbers are read as longs (epoch days for dates, cents for amounts), {@link #NULL}
+     * standing for a missing value, so reading them allocates nothing.
+     */
+    private static final class Column<T> {
+        final String name;
+        final Type type;
+        final Function<T, String> text;
+        final ToLongFunction<T> number;
+        final byte[] csvName;
+        final byte[] jsonKey;
+
+        private Column(String name, Type type, Function<T, String> text, ToLongFunction<T> number) {
+            this.name = name;
+            this.type = type;
+            this.text = text;
+            this.number = number;
+            this.csvName = Utils.formatCSV(name).getBytes(StandardCharsets.UTF_8);
+            this.jsonKey = ("\"" + camelCase(name) + "\":").getBytes(StandardCharsets.UTF_8);
+        }
+
+        static <T> Column<T> text(String name, Function<T, String> text) {
+            return new Column<>(name, Type.STRING, text, null);
+        }
+
+        static <T> Column<T> number(String name, Type type, ToLongFunction<T> number) {
+            return new Column<>(name, type, null, number);
+        }
+    }
+
+    // Named as in the database files, so an exported csv can be imported back
+    private static final List<Column<Car>> CAR_COLUMNS = List.of(
+            Column.text("vin", Car::getVin),
+            Column.number("acquisition date", Type.DATE, car -> epochDay(car.getAcquisitionDate())),
+            Column.text("make", Car::getMake),
+            Column.text("model", Car::getModel),
+            Column.number("year", Type.INTEGER, Car::getYear),
+            Column.number("mileage", Type.INTEGER, Car::getMileage),
+            Column.text("color", Car::getColor),
+            Column.number("cost", Type.DECIMAL, car -> cents(car.getCost())),
+            Column.number("price", Type.DECIMAL, car -> cents(car.getPrice())),
+            Column.text("status", Car::getStatus));
+    private static final List<Column<Sale>> SALE_COLUMNS = List.of(
+            Column.number("date", Type.DATE, sale -> epochDay(sale.getDate())),
+            Column.text("vin", Sale::getVin),
+            Column.number("cost", Type.DECIMAL, sale -> cents(sale.getCost())),
+            Column.number("price", Type.DECIMAL, sale -> cents(sale.getPrice())),
+            Column.text("salesperson", Sale::getSalesperson),
+            Column.text("customer", Sale::getCustomer));
+
+    // Rows are encoded into the array, and written through the buffer wrapping it
+    private final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] buffer = out.array();
+    private int position;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private FileChannel channel;
+    private long bytesWritten;
+
+    // Columnar blocks being encoded, one buffer per column
+    private byte[][] blockColumns = new byte[0][];
+    private int[] blockLengths = new int[0];
+    private long[] previousValues = new long[0];
+    private boolean[] plain = new boolean[0];
+    private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+    private final List<List<String>> dictionaryEntries = new ArrayList<>();
+    private byte[] deflated = new byte[BUFFER_SIZE];
+
+    /**
+     * Exports cars, one row per car.
+     *
+     * @param cars   The cars, read once in iteration order.
+     * @param format The format to write.
+     * @param file   The file to write. It is replaced once every row is written.
+     * @return The number of rows written.
+     * @throws IOException If the file can't be written.
+     */
+    public long exportInventory(Iterable<Car> cars, Format format, Path file) throws IOException {
+        return export(cars, CAR_COLUMNS, format, file);
+    }
+
+    /**
+     * Exports sales, one row per sale.
+     *
+     * @param sales  The sales, read once in iteration order.
+     * @param format The format to write.
+     * @param file   The file to write. It is replaced once every row is written.
+     * @return The number of rows written.
+     * @throws IOException If the file can't be written.
+     */
+    public long exportSales(Iterable<Sale> sales, Format format, Path file) throws IOException {
+        return export(sales, SALE_COLUMNS, format, file);
+    }
+
+    /**
+     * @return The number of bytes written by the last export.
+     */
+    public long getBytesWritten() { return bytesWritten; }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    private <T> long export(Iterable<T> rows, List<Column<T>> columns, Format format, Path file) throws IOException {
+        Metrics.Sample sample = EXPORT.time();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long count;
+        try (FileChannel fc = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel = fc;
+            bytesWritten = 0;
+            position = 0;
+            switch (format) {
+                case CSV:
+                    count = writeCsv(rows, columns);
+                    break;
+                case JSONL:
+                    count = writeJsonLines(rows, columns);
+                    break;
+                default:
+                    count = writeColumnar(rows, columns);
+                    break;
+            }
+            drain();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            channel = null;
+            sample.close();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ROWS_EXPORTED.add(count);
+        return count;
+    }
+
+    private <T> long writeCsv(Iterable<T> rows, List<Column<T>> columns) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                put((byte) ',');
+            }
+            put(columns.get(i).csvName);
+        }
+        put((byte) '\n');
+        long count = 0;
+        for (T row : rows) {
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    put((byte) ',');
+                }
+                Column<T> column = columns.get(i);
+                if (column.type == Type.STRING) {
+                    putCsvString(column.text.apply(row));
+                } else {
+                    putNumber(column.type, column.number.applyAsLong(row));
+                }
+            }
+            put((byte) '\n');
+            count++;
+        }
+        return count;
+    }
+
+    private <T> long writeJsonLines(Iterable<T> rows, List<Column<T>> columns) throws IOException {
+        long count = 0;
+        for (T row : rows) {
+            put((byte) '{');
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    put((byte) ',');
+                }
+                Column<T> column = columns.get(i);
+                put(column.jsonKey);
+                if (column.type == Type.STRING) {
+                    putJsonString(column.text.apply(row));
+                } else {
+                    long value = column.number.applyAsLong(row);
+                    if (value == NULL) {
+                        putAscii("null");
+                    } else if (column.type == Type.DATE) {
+                        put((byte) '"');
+                        putNumber(column.type, value);
+                        put((byte) '"');
+                    } else {
+                        putNumber(column.type, value);
+                    }
+                }
+            }
+            put((byte) '}');
+            put((byte) '\n');
+            count++;
+        }
+        return count;
+    }
+
+    private <T> long writeColumnar(Iterable<T> rows, List<Column<T>> columns) throws IOException {
+        int n = columns.size();
+        // One buffer per column, and one more where the dictionaries are encoded
+        if (blockColumns.length < n + 1) {
+            blockColumns = Arrays.copyOf(blockColumns, n + 1);
+            blockLengths = new int[n + 1];
+            previousValues = new long[n + 1];
+            plain = new boolean[n + 1];
+            for (int i = 0; i <= n; i++) {
+                if (blockColumns[i] == null) {
+                    blockColumns[i] = new byte[BUFFER_SIZE];
+                }
+            }
+            while (dictionaries.size() <= n) {
+                dictionaries.add(new HashMap<>());
+                dictionaryEntries.add(new ArrayList<>());
+            }
+        }
+        // Left over if the previous export failed
+        Arrays.fill(blockLengths, 0);
+        Arrays.fill(previousValues, 0);
+        Arrays.fill(plain, false);
+        for (int i = 0; i <= n; i++) {
+            dictionaries.get(i).clear();
+            dictionaryEntries.get(i).clear();
+        }
+        putInt(MAGIC);
+        putShort(VERSION);
+        putShort(n);
+        for (Column<T> column : columns) {
+            byte[] name = column.name.getBytes(StandardCharsets.UTF_8);
+            put((byte) column.type.ordinal());
+            putShort(name.length);
+            put(name);
+        }
+        long count = 0;
+        int blockRows = 0;
+        for (T row : rows) {
+            for (int i = 0; i < n; i++) {
+                Column<T> column = columns.get(i);
+                if (column.type != Type.STRING) {
+                    encodeNumber(i, column.number.applyAsLong(row));
+                } else if (plain[i]) {
+                    encodeString(i, column.text.apply(row));
+                } else {
+                    encodeCode(i, column.text.apply(row));
+                }
+            }
+            count++;
+            if (++blockRows == BLOCK_ROWS) {
+                writeBlock(columns, blockRows);
+                blockRows = 0;
+            }
+        }
+        if (blockRows > 0) {
+            writeBlock(columns, blockRows);
+        }
+        putInt(0);
+        putLong(count);
+        return count;
+    }
+
+    /**
+     * Deflates and writes the columns of a block, then starts the next block.
+     * A string column starts with {@link #PLAIN}, or with {@link #DICTIONARY}
+     * then its dictionary, which are deflated with its values.
+     */
+    private <T> void writeBlock(List<Column<T>> columns, int rows) throws IOException {
+        int prefix = columns.size();
+        putInt(rows);
+        for (int i = 0; i < columns.size(); i++) {
+            blockLengths[prefix] = 0;
+            if (columns.get(i).type == Type.STRING) {
+                List<String> entries = dictionaryEntries.get(i);
+                if (plain[i]) {
+                    encodeByte(prefix, PLAIN);
+                } else {
+                    encodeByte(prefix, DICTIONARY);
+                    encodeVarint(prefix, entries.size());
+                    for (String entry : entries) {
+                        encodeString(prefix, entry);
+                    }
+                }
+                dictionaries.get(i).clear();
+                entries.clear();
+            }
+            deflater.reset();
+            int length = deflate(blockColumns[prefix], blockLengths[prefix], 0, false);
+            length = deflate(blockColumns[i], blockLengths[i], length, true);
+            putInt(blockLengths[prefix] + blockLengths[i]);
+            putInt(length);
+            put(deflated, 0, length);
+            blockLengths[i] = 0;
+            previousValues[i] = 0;
+        }
+    }
+
+    /**
+     * Deflates bytes into {@link #deflated}, after the given length.
+     *
+     * @param last Whether these are the last bytes of the column.
+     * @return The length deflated so far.
+     */
+    private int deflate(byte[] bytes, int count, int length, boolean last) {
+        deflater.setInput(bytes, 0, count);
+        if (last) {
+            deflater.finish();
+        }
+        while (last ? !deflater.finished() : !deflater.needsInput()) {
+            if (length == deflated.length) {
+                deflated = Arrays.copyOf(deflated, deflated.length * 2);
+            }
+            length += deflater.deflate(deflated, length, deflated.length - length);
+        }
+        return length;
+    }
+
+    /**
+     * Encodes a string as its code in the dictionary of the column in the block.
+     * Once the dictionary is full, the values of the column are too varied for
+     * one (e.g., VINs): the block is encoded again as plain strings, and so are
+     * the following blocks.
+     */
+    private void encodeCode(int column, String value) {
+        if (value == null) {
+            encodeVarint(column, 0);
+            return;
+        }
+        Map<String, Integer> dictionary = dictionaries.get(column);
+        Integer code = dictionary.get(value);
+        if (code == null) {
+            if (dictionary.size() == DICTIONARY_SIZE) {
+                toPlain(column);
+                encodeString(column, value);
+                return;
+            }
+            code = dictionary.size();
+            dictionary.put(value, code);
+            dictionaryEntries.get(column).add(value);
+        }
+        encodeVarint(column, code + 1L);
+    }
+
+    private void toPlain(int column) {
+        plain[column] = true;
+        ByteBuffer codes = ByteBuffer.wrap(Arrays.copyOf(blockColumns[column], blockLengths[column]));
+        List<String> entries = dictionaryEntries.get(column);
+        blockLengths[column] = 0;
+        while (codes.hasRemaining()) {
+            long code = readVarint(codes);
+            encodeString(column, code == 0 ? null : entries.get((int) code - 1));
+        }
+        dictionaries.get(column).clear();
+        entries.clear();
+    }
+
+    private void encodeByte(int column, byte value) {
+        room(column, 1)[blockLengths[column]++] = value;
+    }
+
+    private void encodeString(int column, String value) {
+        if (value == null) {
+            encodeVarint(column, 0);
+            return;
+        }
+        int length = utf8Length(value);
+        encodeVarint(column, length + 1L);
+        byte[] bytes = room(column, length);
+        int n = blockLengths[column];
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[n++] = (byte) c;
+                continue;
+            }
+            int cp = value.codePointAt(i);
+            if (cp < 0x800) {
+                bytes[n++] = (byte) (0xC0 | (cp >> 6));
+            } else if (cp < 0x10000) {
+                bytes[n++] = (byte) (0xE0 | (cp >> 12));
+                bytes[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            } else {
+                bytes[n++] = (byte) (0xF0 | (cp >> 18));
+                bytes[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                bytes[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                i++;
+            }
+            bytes[n++] = (byte) (0x80 | (cp & 0x3F));
+        }
+        blockLengths[column] = n;
+    }
+
+    private void encodeNumber(int column, long value) {
+        if (value == NULL) {
+            encodeVarint(column, 0);
+            return;
+        }
+        long delta = value - previousValues[column];
+        previousValues[column] = value;
+        encodeVarint(column, ((delta << 1) ^ (delta >> 63)) + 1);
+    }
+
+    private void encodeVarint(int column, long value) {
+        byte[] bytes = room(column, 10);
+        int n = blockLengths[column];
+        while ((value & ~0x7FL) != 0) {
+            bytes[n++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[n++] = (byte) value;
+        blockLengths[column] = n;
+    }
+
+    /**
+     * Grows the buffer of a column if need be, to make room for a number of bytes.
+     *
+     * @return The buffer.
+     */
+    private byte[] room(int column, int bytes) {
+        byte[] buffer = blockColumns[column];
+        int needed = blockLengths[column] + bytes;
+        if (needed > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(needed, buffer.length * 2));
+            blockColumns[column] = buffer;
+        }
+        return buffer;
+    }
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void putCsvString(String value) throws IOException {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        boolean quoted = Character.isWhitespace(value.charAt(0))
+                || Character.isWhitespace(value.charAt(value.length() - 1));
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        // At most 3 bytes per char: a doubled quote, or a char of the BMP in UTF-8
+        boolean room = reserve(3L * value.length() + 2);
+        if (quoted) {
+            put((byte) '"');
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!room) {
+                ensure(4);
+            }
+            char c = value.charAt(i);
+            if (c == '"') {
+                buffer[position++] = '"';
+            }
+            i = writeChar(value, i);
+        }
+        if (quoted) {
+            put((byte) '"');
+        }
+    }
+
+    private void putJsonString(String value) throws IOException {
+        if (value == null) {
+            putAscii("null");
+            return;
+        }
+        // At most 6 bytes per char, for an escaped control char
+        boolean room = reserve(6L * value.length() + 2);
+        put((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            if (!room) {
+                ensure(6);
+            }
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer[position++] = '\\';
+                buffer[position++] = (byte) c;
+            } else if (c < 0x20) {
+                buffer[position++] = '\\';
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = hexDigit(c >> 4);
+                buffer[position++] = hexDigit(c & 0xF);
+            } else {
+                i = writeChar(value, i);
+            }
+        }
+        put((byte) '"');
+    }
+
+    /**
+     * Writes the char at an index of a string as UTF-8, with the char after it
+     * if they form a surrogate pair. The buffer must have room for 4 bytes.
+     *
+     * @return The index of the last char written.
+     */
+    private int writeChar(String s, int i) {
+        char c = s.charAt(i);
+        if (c < 0x80) {
+            buffer[position++] = (byte) c;
+            return i;
+        }
+        int cp = s.codePointAt(i);
+        if (cp < 0x800) {
+            buffer[position++] = (byte) (0xC0 | (cp >> 6));
+        } else if (cp < 0x10000) {
+            buffer[position++] = (byte) (0xE0 | (cp >> 12));
+            buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+        } else {
+            buffer[position++] = (byte) (0xF0 | (cp >> 18));
+            buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+        }
+        buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+        return i + Character.charCount(cp) - 1;
+    }
+
+    /**
+     * Writes a number as text: nothing if missing, yyyy-mm-dd for a date, two
+     * decimals for an amount in cents.
+     */
+    private void putNumber(Type type, long value) throws IOException {
+        if (value == NULL) {
+            return;
+        }
+        // Room for any long, its sign and the decimal point
+        ensure(22);
+        if (type == Type.DATE) {
+            // Same conversion as LocalDate.ofEpochDay, without the LocalDate
+            long zeroDay = value + 719468;
+            long era = Math.floorDiv(zeroDay, 146097);
+            long dayOfEra = zeroDay - era * 146097;
+            long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            long mp = (5 * dayOfYear + 2) / 153;
+            long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+            long month = mp < 10 ? mp + 3 : mp - 9;
+            long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+            if (year < 0 || year > 9999) {
+                putAscii(LocalDate.ofEpochDay(value).toString());
+                return;
+            }
+            writeTwoDigits(year / 100);
+            writeTwoDigits(year % 100);
+            buffer[position++] = '-';
+            writeTwoDigits(month);
+            buffer[position++] = '-';
+            writeTwoDigits(day);
+        } else if (type == Type.DECIMAL) {
+            if (value < 0) {
+                buffer[position++] = '-';
+                value = -value;
+            }
+            writeLong(value / 100);
+            buffer[position++] = '.';
+            writeTwoDigits(value % 100);
+        } else {
+            if (value < 0) {
+                buffer[position++] = '-';
+                value = -value;
+            }
+            writeLong(value);
+        }
+    }
+
+    private void writeLong(long value) {
+        int end = position + digitCount(value);
+        int i = end;
+        do {
+            buffer[--i] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        position = end;
+    }
+
+    private static int digitCount(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private void writeTwoDigits(long value) {
+        buffer[position++] = (byte) ('0' + value / 10);
+        buffer[position++] = (byte) ('0' + value % 10);
+    }
+
+    private static byte hexDigit(int value) {
+        return (byte) (value < 10 ? '0' + value : 'a' + value - 10);
+    }
+
+    private void putAscii(String s) throws IOException {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buffer[position++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = b;
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        put(bytes, 0, bytes.length);
+    }
+
+    private void put(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (position == buffer.length) {
+                drain();
+            }
+            int n = Math.min(length, buffer.length - position);
+            System.arraycopy(bytes, offset, buffer, position, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    private void putShort(int value) throws IOException {
+        ensure(2);
+        out.putShort(position, (short) value);
+        position += 2;
+    }
+
+    private void putInt(int value) throws IOException {
+        ensure(4);
+        out.putInt(position, value);
+        position += 4;
+    }
+
+    private void putLong(long value) throws IOException {
+        ensure(8);
+        out.putLong(position, value);
+        position += 8;
+    }
+
+    /**
+     * Makes room for a number of bytes (at most the size of the buffer) in the buffer.
+     */
+    private void ensure(int bytes) throws IOException {
+        if (buffer.length - position < bytes) {
+            drain();
+        }
+    }
+
+    /**
+     * Makes room for a number of bytes in the buffer, if it can hold them.
+     *
+     * @return {true} if there is room, {false} if the bytes are larger than the buffer.
+     */
+    private boolean reserve(long bytes) throws IOException {
+        if (bytes > buffer.length) {
+            return false;
+        }
+        ensure((int) bytes);
+        return true;
+    }
+
+    private void drain() throws IOException {
+        out.limit(position).position(0);
+        while (out.hasRemaining()) {
+            bytesWritten += channel.write(out);
+        }
+        out.clear();
+        position = 0;
+    }
+
+    private static long epochDay(LocalDate date) {
+        return date == null ? NULL : date.toEpochDay();
+    }
+
+    private static long cents(double amount) {
+        return Double.isNaN(amount) ? NULL : Math.round(amount * 100);
+    }
+
+    private static String camelCase(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        boolean upper = false;
+        for (char c : name.toCharArray()) {
+            if (c == ' ') {
+                upper = true;
+            } else {
+                sb.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads a file written in the columnar format, block by block.
+     *
+     * @param file The file.
+     * @param rows Called with the values of each row, in file order: a String for
+     *             a string, a Long for an integer, a LocalDate for a date, a Double
+     *             for an amount, or null if missing.
+     * @return The names of the columns.
+     * @throws IOException If the file can't be read or is not in the columnar format.
+     */
+    public static List<String> readColumnar(Path file, Consumer<Object[]> rows) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("Not a columnar export: " + file);
+            }
+            int n = in.readShort();
+            Type[] types = new Type[n];
+            List<String> names = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int type = in.readByte();
+                if (type < 0 || type >= Type.values().length) {
+                    throw new IOException("Unknown column type " + type + " in " + file);
+                }
+                types[i] = Type.values()[type];
+                byte[] name = new byte[in.readShort()];
+                in.readFully(name);
+                names.add(new String(name, StandardCharsets.UTF_8));
+            }
+            Inflater inflater = new Inflater();
+            try {
+                long count = 0;
+                for (int blockRows = in.readInt(); blockRows > 0; blockRows = in.readInt()) {
+                    Object[][] block = new Object[blockRows][n];
+                    for (int i = 0; i < n; i++) {
+                        byte[] encoded = new byte[in.readInt()];
+                        byte[] compressed = new byte[in.readInt()];
+                        in.readFully(compressed);
+                        inflater.reset();
+                        inflater.setInput(compressed);
+                        if (inflater.inflate(encoded) != encoded.length || !inflater.finished()) {
+                            throw new IOException("Corrupted block in " + file);
+                        }
+                        decodeColumn(ByteBuffer.wrap(encoded), types[i], block, i);
+                    }
+                    for (Object[] row : block) {
+                        rows.accept(row);
+                    }
+                    count += blockRows;
+                }
+                if (in.readLong() != count) {
+                    throw new IOException("Row count mismatch in " + file);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupted block in " + file, e);
+            } finally {
+                inflater.end();
+            }
+            return names;
+        }
+    }
+
+    private static void decodeColumn(ByteBuffer encoded, Type type, Object[][] block, int column) {
+        String[] dictionary = null;
+        if (type == Type.STRING && encoded.get() == DICTIONARY) {
+            dictionary = new String[(int) readVarint(encoded)];
+            for (int i = 0; i < dictionary.length; i++) {
+                int length = (int) readVarint(encoded) - 1;
+                dictionary[i] = new String(encoded.array(), encoded.position(), length, StandardCharsets.UTF_8);
+                encoded.position(encoded.position() + length);
+            }
+        }
+        long previous = 0;
+        for (Object[] row : block) {
+            long varint = readVarint(encoded);
+            if (varint == 0) {
+                continue;
+            }
+            if (dictionary != null) {
+                row[column] = dictionary[(int) varint - 1];
+                continue;
+            }
+            if (type == Type.STRING) {
+                int length = (int) varint - 1;
+                row[column] = new String(encoded.array(), encoded.position(), length, StandardCharsets.UTF_8);
+                encoded.position(encoded.position() + length);
+                continue;
+            }
+            long zigzag = varint - 1;
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            switch (type) {
+                case DATE:
+                    row[column] = LocalDate.ofEpochDay(previous);
+                    break;
+                case DECIMAL:
+                    row[column] = previous / 100.0;
+                    break;
+                default:
+                    row[column] = previous;
+                    break;
+            }
+        }
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Exports the inventory and the sales of a database, or prints a columnar export as csv.
+     * Usage:
+     *       java dealership.Exporter database_directory_path output_directory_path [csv|jsonl|columnar ...]
+     *       java dealership.Exporter --read file.dcol
+     */
+    public static void main(String[] args) {
+        String usage = "Usage: java dealership.Exporter <database directory path> <output directory path>"
+                + " [csv|jsonl|columnar ...]\n       java dealership.Exporter --read <file.dcol>";
+        if (args.length == 2 && args[0].equals("--read")) {
+            try {
+                List<String> names = readColumnar(Path.of(args[1]), row -> {
+                    String[] fields = new String[row.length];
+                    for (int i = 0; i < row.length; i++) {
+                        fields[i] = row[i] == null ? null : row[i].toString();
+                    }
+                    System.out.println(Utils.formatCSV(fields));
+                });
+                System.err.println("Columns: " + String.join(", ", names));
+            } catch (IOException e) {
+                System.err.println("Error reading export: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        if (args.length < 2) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+        List<Format> formats = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            Format format = Format.of(args[i]);
+            if (format == null) {
+                System.err.println(usage);
+                System.exit(1);
+            }
+            formats.add(format);
+        }
+        if (formats.isEmpty()) {
+            formats.addAll(Arrays.asList(Format.values()));
+        }
+        File outputDir = new File(args[1]);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            System.err.println("Error creating " + outputDir);
+            System.exit(1);
+        }
+        try (DealershipDB db = new DealershipDB(args[0], false); Exporter exporter = new Exporter()) {
+            List<Car> cars = db.loadInventory();
+            List<Sale> sales = db.loadSales();
+            for (Format format : formats) {
+                String extension = "." + format.getExtension();
+                Path inventoryFile = outputDir.toPath().resolve("inventory" + extension);
+                long start = System.nanoTime();
+                long n = exporter.exportInventory(cars, format, inventoryFile);
+                report(inventoryFile, n, exporter.getBytesWritten(), start);
+                Path salesFile = outputDir.toPath().resolve("sales" + extension);
+                start = System.nanoTime();
+                n = exporter.exportSales(sales, format, salesFile);
+                report(salesFile, n, exporter.getBytesWritten(), start);
+            }
+        } catch (IOException e) {
+            System.err.println("Error exporting: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void report(Path file, long rows, long bytes, long start) {
+        System.out.println(String.format(Locale.ROOT, "%s: %,d rows, %,d bytes in %.1f ms",
+                file, rows, bytes, (System.nanoTime() - start) / 1e6));
+    }
+}
@@ -0,0 +1,295 @@
+package dealership;
+
+import dealership.utils.TimingWheel;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HoldManager class keeps the holds salespeople put on cars while a
+ * customer decides. A car on hold has the On-Hold status (see {@link CarStatus}),
+ * so no one else can hold it, send it to service or ship it; it can still be
+ * sold. A hold lasts until its salesperson releases it, until it expires, or
+ * until the car changes status some other way, e.g. when it is sold. A car
+ * whose hold is released or expires is made available again.
+ *
+ * Of several salespeople holding the same car at the same time, only one
+ * succeeds: the hold is claimed for the VIN in a concurrent map first, then
+ * the car changes from Available to On-Hold, atomically, or the claim is given up.
+ *
+ * Expirations are tracked by a hierarchical {@link TimingWheel}, advanced every
+ * tick by a background thread, so placing, releasing and expiring a hold cost
+ * the same whatever the number of holds, and the inventory is never scanned.
+ *
+ * Holds are kept in memory: the On-Hold status is persisted with the car, but
+ * not who holds it or until when. A car found on hold without a hold, e.g.
+ * after a restart or a reload, gets a new hold by no one for the restored
+ * duration given by {@link Dealership#enableHolds(Duration)}.
+ */
+public class HoldManager implements InventoryListener, AutoCloseable {
+    public static final long TICK_MILLIS = 1000;
+    public static final Duration MAX_TTL = Duration.ofDays(30);
+
+    /**
+     * A hold on a car.
+     */
+    public static final class Hold {
+        private final String vin;
+        private final String salesperson;
+        private final long placedAt;
+        private final long expiresAt;
+        private TimingWheel.Timeout<Hold> timeout; // guarded by the wheel
+
+        Hold(String vin, String salesperson, long placedAt, long expiresAt) {
+            this.vin = vin;
+            this.salesperson = salesperson;
+            this.placedAt = placedAt;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getVin() { return vin; }
+
+        /**
+         * @return The username of the salesperson holding the car, or null for a restored hold.
+         */
+        public String getSalesperson() { return salesperson; }
+
+        /**
+         * @return When the hold was placed, in milliseconds since the epoch.
+         */
+        public long getPlacedAt() { return placedAt; }
+
+        /**
+         * @return When the hold expires, in milliseconds since the epoch.
+         */
+        public long getExpiresAt() { return expiresAt; }
+    }
+
+    private final Dealership dealership;
+    private final long restoredTtlMillis;
+    private final ConcurrentMap<String, Hold> holds = new ConcurrentHashMap<>();
+    private final TimingWheel<Hold> wheel; // guarded by itself, taken after the locks of the inventory
+    private final ScheduledExecutorService ticker;
+
+    /**
+     * Constructs a HoldManager expiring the holds every tick. Built by
+     * {@link Dealership}, which makes it follow the changes to the inventory.
+     *
+     * @param dealership        The dealership whose cars are held.
+     * @param restoredTtlMillis How long the cars found on hold without a hold stay on hold.
+     * @param tickMillis        How often the holds are expired.
+     */
+    HoldManager(Dealership dealership, long restoredTtlMillis, long tickMillis) {
+        this.dealership = dealership;
+        this.restoredTtlMillis = restoredTtlMillis;
+        this.wheel = new TimingWheel<>(tickMillis, System.currentTimeMillis());
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "dealership-holds");
+            t.setDaemon(true);
+            return t;
+        });
+        this.ticker.scheduleAtFixedRate(() -> expireHolds(System.currentTimeMillis()), tickMillis, tickMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Puts an available car on hold for a salesperson.
+     *
+     * @param vin         The VIN of the car.
+     * @param salesperson The username of the salesperson.
+     * @param ttl         How long the hold lasts.
+     * @return The hold, or null if no car has this VIN, the car is not available, or it is already held.
+     * @throws IOException If the status of the car can't be persisted.
+     * @throws IllegalArgumentException If the hold would not last some time, or would last longer than {@link #MAX_TTL}.
+     */
+    public Hold hold(String vin, String salesperson, Duration ttl) throws IOException {
+        if (ttl.isNegative() || ttl.isZero() || ttl.compareTo(MAX_TTL) > 0) {
+            throw new IllegalArgumentException("A hold must last some time, and at most "
+                    + MAX_TTL.toHours() + " hours: " + ttl);
+        }
+        long now = System.currentTimeMillis();
+        Hold hold = new Hold(vin, salesperson, now, now + ttl.toMillis());
+        if (holds.putIfAbsent(vin, hold) != null) {
+            return null; // held by someone else
+        }
+        boolean held = false;
+        try {
+            held = dealership.changeCarStatus(vin, CarStatus.AVAILABLE, CarStatus.ON_HOLD) != null;
+        } finally {
+            if (!held) {
+                holds.remove(vin, hold);
+            }
+        }
+        if (!held) {
+            return null; // no such car, or not available
+        }
+        schedule(hold);
+        dealership.audit("car.hold", vin, "held by " + salesperson + " for " + ttl.toMinutes() + " minutes");
+        return hold;
+    }
+
+    /**
+     * Releases the hold on a car, which is made available again.
+     *
+     * @param vin         The VIN of the car.
+     * @param salesperson The username of the salesperson holding the car, or null to release any hold.
+     * @return {true} if the hold was released, {false} if the car is not held, or held by someone else.
+     * @throws IOException If the status of the car can't be persisted.
+     */
+    public boolean release(String vin, String salesperson) throws IOException {
+        Hold hold = holds.get(vin);
+        if (hold == null || (salesperson != null && !salesperson.equals(hold.salesperson))
+                || !holds.remove(vin, hold)) {
+            return false;
+        }
+        cancel(hold);
+        dealership.changeCarStatus(vin, CarStatus.ON_HOLD, CarStatus.AVAILABLE);
+        dealership.audit("car.hold.release", vin, "released by " + (salesperson != null ? salesperson : "manager"));
+        return true;
+    }
+
+    /**
+     * Expires the holds due by the given time, making their cars available
+     * again. Called every tick in the background.
+     *
+     * @param nowMillis The current time, in milliseconds since the epoch.
+     * @return The number of holds expired.
+     */
+    public int expireHolds(long nowMillis) {
+        List<Hold> expired = new ArrayList<>();
+        synchronized (wheel) {
+            wheel.advance(nowMillis, expired::add);
+        }
+        int count = 0;
+        for (Hold hold : expired) {
+            if (!holds.remove(hold.vin, hold)) {
+                continue; // released, or the car changed status, meanwhile
+            }
+            count++;
+            try {
+                dealership.changeCarStatus(hold.vin, CarStatus.ON_HOLD, CarStatus.AVAILABLE);
+                dealership.audit("car.hold.expired", hold.vin, "held by " + hold.salesperson);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("ERROR: Unable to release the expired hold on " + hold.vin + " -> " + e.getMessage());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param vin The VIN of a car.
+     * @return The hold on the car, or null if it is not held.
+     */
+    public Hold getHold(String vin) { return holds.get(vin); }
+
+    /**
+     * @param salesperson The username of a salesperson, or null for every salesperson.
+     * @return The holds of the salesperson, the soonest to expire first.
+     */
+    public List<Hold> getHolds(String salesperson) {
+        List<Hold> found = new ArrayList<>();
+        for (Hold hold : holds.values()) {
+            if (salesperson == null || salesperson.equals(hold.salesperson)) {
+                found.add(hold);
+            }
+        }
+        found.sort(Comparator.comparingLong(Hold::getExpiresAt));
+        return found;
+    }
+
+    /**
+     * @return The number of cars held.
+     */
+    public int size() { return holds.size(); }
+
+    /**
+     * Stops expiring the holds.
+     */
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Drops the holds of the cars no longer on hold in an inventory, and gives
+     * a restored hold to the cars on hold without one. Called with no change
+     * in progress.
+     *
+     * @param inventory The inventory.
+     */
+    void reconcile(InventoryStore inventory) {
+        for (Hold hold : new ArrayList<>(holds.values())) {
+            Car car = inventory.getByVin(hold.vin);
+            if (car == null || car.getCarStatus() != CarStatus.ON_HOLD) {
+                drop(hold.vin);
+            }
+        }
+        for (Car car : inventory.findByStatus(CarStatus.ON_HOLD.getLabel())) {
+            restore(car);
+        }
+    }
+
+    @Override
+    public void carAdded(Car car) {
+        if (car.getCarStatus() == CarStatus.ON_HOLD) {
+            restore(car);
+        }
+    }
+
+    @Override
+    public void carRemoved(Car car) {
+        drop(car.getVin());
+    }
+
+    @Override
+    public void carUpdated(Car previous, Car current) {
+        if (current.getCarStatus() == CarStatus.ON_HOLD) {
+            restore(current);
+        } else if (previous.getCarStatus() == CarStatus.ON_HOLD) {
+            drop(current.getVin()); // e.g. sold
+        }
+    }
+
+    /**
+     * Gives a hold by no one to a car on hold without one.
+     */
+    private void restore(Car car) {
+        long now = System.currentTimeMillis();
+        Hold hold = new Hold(car.getVin(), null, now, now + restoredTtlMillis);
+        if (holds.putIfAbsent(car.getVin(), hold) == null) {
+            schedule(hold);
+        }
+    }
+
+    private void drop(String vin) {
+        Hold hold = holds.remove(vin);
+        if (hold != null) {
+            cancel(hold);
+        }
+    }
+
+    private void schedule(Hold hold) {
+        synchronized (wheel) {
+            hold.timeout = wheel.schedule(hold, hold.expiresAt);
+        }
+        if (holds.get(hold.vin) != hold) {
+            cancel(hold); // dropped while being scheduled
+        }
+    }
+
+    private void cancel(Hold hold) {
+        synchronized (wheel) {
+            if (hold.timeout != null) {
+                wheel.cancel(hold.timeout);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package dealership;
+
+import dealership.utils.Utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The ImportReport class describes the outcome of a bulk import: how many rows
+ * were read, added and updated, and every row that was rejected with the
+ * reason why, in file order.
+ */
+public class ImportReport {
+    /**
+     * A rejected row.
+     */
+    public static class Reject {
+        private final long offset;
+        private final String reason;
+        private final String row;
+
+        /**
+         * @param offset The byte offset of the row in the feed.
+         * @param reason Why the row was rejected.
+         * @param row    The fields of the row, as csv.
+         */
+        public Reject(long offset, String reason, String row) {
+            this.offset = offset;
+            this.reason = reason;
+            this.row = row;
+        }
+
+        public long getOffset() { return offset; }
+        public String getReason() { return reason; }
+        public String getRow() { return row; }
+
+        @Override
+        public String toString() {
+            return "offset " + offset + ": " + reason + " -> " + row;
+        }
+    }
+
+    private final File feed;
+    private final long rowsRead;
+    private final int added;
+    private final int updated;
+    private final List<Reject> rejects;
+    private final long elapsedNanos;
+
+    /**
+     * Constructs a report.
+     *
+     * @param feed         The imported file.
+     * @param rowsRead     The number of rows read.
+     * @param added        The number of cars added to the inventory.
+     * @param updated      The number of cars of the inventory updated.
+     * @param rejects      The rejected rows, in any order.
+     * @param elapsedNanos The duration of the import.
+     */
+    public ImportReport(File feed, long rowsRead, int added, int updated, List<Reject> rejects, long elapsedNanos) {
+        List<Reject> sorted = new ArrayList<>(rejects);
+        sorted.sort(Comparator.comparingLong(Reject::getOffset));
+        this.feed = feed;
+        this.rowsRead = rowsRead;
+        this.added = added;
+        this.updated = updated;
+        this.rejects = Collections.unmodifiableList(sorted);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public File getFeed() { return feed; }
+    public long getRowsRead() { return rowsRead; }
+    public int getAdded() { return added; }
+    public int getUpdated() { return updated; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    /**
+     * @return The rejected rows, in file order.
+     */
+    public List<Reject> getRejects() { return rejects; }
+
+    /**
+     * Writes the rejected rows as csv: offset, reason, row.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file can't be written.
+     */
+    public void writeRejects(File file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write("# offset, reason, row\n");
+            for (Reject reject : rejects) {
+                out.write(Utils.formatCSV(String.valueOf(reject.getOffset()), reject.getReason(), reject.getRow()));
+                out.write('\n');
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %,d rows read, %,d cars added, %,d updated, %,d rejected in %,d ms",
+                feed.getName(), rowsRead, added, updated, rejects.size(), elapsedNanos / 1_000_000);
+    }
+}
@@ -0,0 +1,838 @@
+package dealership;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The InventoryHistory class keeps every version of the status, price and
+ * mileage of the cars, so the inventory can be looked at as it was at any
+ * time: which cars were on the lot, with which status and price.
+ *
+ * The versions of each car are kept in arrays ordered by time, and all the
+ * changes in one more array ordered by time: the state of the inventory at a
+ * time is found with a binary search per car, and the changes between two
+ * times with a binary search, without replaying the history.
+ *
+ * The history is persisted in a binary file. A car is described once, the
+ * first time it changes; then each change only takes the time elapsed since
+ * the previous change, the id of the car, the fields that changed and their
+ * differences with the previous version, as variable-length integers. A change
+ * of price typically takes 8 bytes, where copying the inventory file takes
+ * some 80 bytes per car. Changes are written by a background thread every
+ * second, and on {@link #flush()} and {@link #close()}. A record cut short by a
+ * crash is dropped when the file is opened.
+ *
+ * Recording a change never locks: the listener callbacks, called under the
+ * lock of the car in the inventory, only queue the change. The queue is
+ * applied to the history by the background thread, and by the queries before
+ * they read, so a query sees every change made before it started. The changes
+ * of a car are queued in order, under its lock.
+ *
+ * When a history is first created, it starts with the cars of the inventory:
+ * as available since they were acquired (when known), and as sold since the
+ * date of their sale.
+ */
+public class InventoryHistory implements InventoryListener, AutoCloseable {
+    private static final byte[] MAGIC = {'D', 'L', 'R', 'H', 1};
+    private static final int CAR_RECORD = 1;
+    private static final int STATUS_RECORD = 2;
+    private static final int CHANGE_RECORD = 3;
+    private static final int STATUS_CHANGED = 1;
+    private static final int PRICE_CHANGED = 2;
+    private static final int MILEAGE_CHANGED = 4;
+    private static final int REMOVED = -1; // status of a removed car
+    private static final long FLUSH_PERIOD_MILLIS = 1000;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final File file;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService flusher;
+    private final ConcurrentLinkedQueue<Change> queued = new ConcurrentLinkedQueue<>(); // not applied yet
+    private FileChannel channel; // guarded by this
+
+    // Guarded by lock
+    private final Map<String, Integer> carIds = new HashMap<>();
+    private final List<Timeline> timelines = new ArrayList<>();
+    private final Map<String, Integer> statusIds = new HashMap<>();
+    private final List<String> statuses = new ArrayList<>();
+    private long[] changeTimes = new long[INITIAL_CAPACITY];
+    private int[] changeCars = new int[INITIAL_CAPACITY];
+    private int[] changeVersions = new int[INITIAL_CAPACITY];
+    private int changeCount;
+    private long lastTime = Long.MIN_VALUE;
+    private long lastWrittenTime;
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+
+    /**
+     * The versions of one car, ordered by time, and its latest attributes.
+     */
+    private static final class Timeline {
+        Car car;
+        long[] times = new long[2];
+        int[] statuses = new int[2];
+        long[] prices = new long[2]; // in cents
+        int[] mileages = new int[2];
+        int count;
+
+        void add(long time, int status, long price, int mileage) {
+            if (count == times.length) {
+                int length = count * 2;
+                times = Arrays.copyOf(times, length);
+                statuses = Arrays.copyOf(statuses, length);
+                prices = Arrays.copyOf(prices, length);
+                mileages = Arrays.copyOf(mileages, length);
+            }
+            times[count] = time;
+            statuses[count] = status;
+            prices[count] = price;
+            mileages[count] = mileage;
+            count++;
+        }
+
+        /**
+         * @return The index of the version current at the given time, or -1 if the car was not known yet.
+         */
+        int versionAt(long time) {
+            return upperBound(times, count, time) - 1;
+        }
+    }
+
+    /**
+     * A change of status, price or mileage of a car, or its removal.
+     */
+    public static final class Change {
+        private final long time;
+        private final Car car;
+        private final boolean removed;
+
+        Change(long time, Car car, boolean removed) {
+            this.time = time;
+            this.car = car;
+            this.removed = removed;
+        }
+
+        /**
+         * @return The time of the change, in milliseconds since the epoch.
+         */
+        public long getTime() { return time; }
+
+        /**
+         * @return The car as it was after the change, or before its removal.
+         */
+        public Car getCar() { return car; }
+
+        /**
+         * @return {true} if the car was removed from the inventory.
+         */
+        public boolean isRemoved() { return removed; }
+
+        @Override
+        public String toString() {
+            return time + (removed ? " removed " : " ") + car;
+        }
+    }
+
+    /**
+     * The inventory as it was at a given time.
+     */
+    public static final class Snapshot {
+        private final long time;
+        private final List<Car> cars;
+
+        Snapshot(long time, List<Car> cars) {
+            this.time = time;
+            this.cars = cars;
+        }
+
+        /**
+         * @return The time of the snapshot, in milliseconds since the epoch.
+         */
+        public long getTime() { return time; }
+
+        /**
+         * @return The cars in inventory at the time, sold ones included.
+         */
+        public List<Car> getCars() { return cars; }
+
+        /**
+         * @return The inventory value at the time: the sum of the prices of the cars not sold.
+         */
+        public double getValue() {
+            double value = 0;
+            for (Car car : cars) {
+                if (car.getCarStatus() != CarStatus.SOLD) {
+                    value += car.getPrice();
+                }
+            }
+            return value;
+        }
+
+        /**
+         * @return The number of cars of each status at the time, sorted by status.
+         */
+        public Map<String, Long> getCountsByStatus() {
+            Map<String, Long> counts = new TreeMap<>();
+            for (Car car : cars) {
+                counts.merge(car.getStatus(), 1L, Long::sum);
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Opens the history kept in a file, creating it from the current
+     * inventory and sales if needed, and brings it up to date with the
+     * inventory: the cars changed or removed since it was last written get a
+     * new version, at the current time. The history should then listen to the
+     * changes of the inventory.
+     *
+     * @param file  The history file.
+     * @param cars  The cars currently in inventory.
+     * @param sales The sales recorded so far.
+     * @return The history.
+     * @throws IOException If the file can't be read or written.
+     */
+    public static InventoryHistory open(File file, Collection<Car> cars, Collection<Sale> sales) throws IOException {
+        InventoryHistory history = new InventoryHistory(file);
+        try {
+            if (history.load()) {
+                history.reconcile(cars, System.currentTimeMillis());
+            } else {
+                history.start(cars, sales);
+            }
+            history.flush();
+        } catch (IOException | RuntimeException e) {
+            history.close();
+            throw e;
+        }
+        return history;
+    }
+
+    private InventoryHistory(File file) {
+        this.file = file;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-history-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushInBackground, FLUSH_PERIOD_MILLIS, FLUSH_PERIOD_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void carAdded(Car car) {
+        queued.add(new Change(System.currentTimeMillis(), car, false));
+    }
+
+    @Override
+    public void carRemoved(Car car) {
+        queued.add(new Change(System.currentTimeMillis(), car, true));
+    }
+
+    @Override
+    public void carUpdated(Car previous, Car current) {
+        queued.add(new Change(System.currentTimeMillis(), current, false));
+    }
+
+    /**
+     * Records the changes between the history and the inventory, at a given
+     * time: after the inventory was reloaded, for instance.
+     *
+     * @param cars The cars currently in inventory.
+     * @param time The time of the changes, in milliseconds since the epoch.
+     */
+    public void reconcile(Collection<Car> cars, long time) {
+        lock.writeLock().lock();
+        try {
+            applyQueued();
+            Set<String> present = new HashSet<>();
+            for (Car car : cars) {
+                present.add(car.getVin());
+                record(car, false, time);
+            }
+            for (Timeline timeline : timelines) {
+                if (!present.contains(timeline.car.getVin())) {
+                    record(timeline.car, true, time);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Starts a new history from the inventory and the sales, sorted by time.
+     */
+    private void start(Collection<Car> cars, Collection<Sale> sales) {
+        long now = System.currentTimeMillis();
+        Map<String, LocalDate> saleDates = new HashMap<>();
+        for (Sale sale : sales) {
+            if (sale.getDate() != null) {
+                saleDates.merge(sale.getVin(), sale.getDate(), (a, b) -> a.isAfter(b) ? a : b);
+            }
+        }
+        List<Change> changes = new ArrayList<>();
+        for (Car car : cars) {
+            long acquired = car.getAcquisitionDate() == null ? now : startOf(car.getAcquisitionDate());
+            LocalDate sold = saleDates.get(car.getVin());
+            if (car.getCarStatus() == CarStatus.SOLD && sold != null) {
+                changes.add(new Change(Math.min(acquired, startOf(sold)), car.withStatus(CarStatus.AVAILABLE), false));
+                changes.add(new Change(startOf(sold), car, false));
+            } else {
+                changes.add(new Change(Math.min(acquired, now), car, false));
+            }
+        }
+        changes.sort((a, b) -> Long.compare(a.time, b.time)); // stable: a sale stays after the acquisition
+        lock.writeLock().lock();
+        try {
+            for (Change change : changes) {
+                record(change.car, false, change.time);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private long startOf(LocalDate date) {
+        return date.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Applies the queued changes, if any. Called before reading the history.
+     */
+    private void catchUp() {
+        if (!queued.isEmpty()) {
+            lock.writeLock().lock();
+            try {
+                applyQueued();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies the queued changes, in the order they were queued. Called with
+     * the write lock held.
+     */
+    private void applyQueued() {
+        Change change;
+        while ((change = queued.poll()) != null) {
+            record(change.car, change.removed, change.time);
+        }
+    }
+
+    /**
+     * Adds a version of a car, unless its status, price and mileage didn't
+     * change. Times never go backwards: a time before the previous change is
+     * recorded as the time of the previous change.
+     */
+    private void record(Car car, boolean removed, long time) {
+        lock.writeLock().lock();
+        try {
+            Integer id = carIds.get(car.getVin());
+            Timeline timeline = id == null ? null : timelines.get(id);
+            int status = removed ? REMOVED : statusId(car.getStatus());
+            long price = Math.round(car.getPrice() * 100);
+            int mileage = car.getMileage();
+            int last = timeline == null ? -1 : timeline.count - 1;
+            if (last >= 0 && timeline.statuses[last] == status && (removed
+                    || timeline.prices[last] == price && timeline.mileages[last] == mileage)) {
+                if (!removed) {
+                    timeline.car = car;
+                }
+                return;
+            }
+            if (removed && timeline == null) {
+                return;
+            }
+            if (removed) {
+                // Keep the price and mileage the car had, for the encoding of the next version
+                price = timeline.prices[last];
+                mileage = timeline.mileages[last];
+            }
+            if (timeline == null) {
+                id = timelines.size();
+                timeline = new Timeline();
+                timelines.add(timeline);
+                carIds.put(car.getVin(), id);
+                writeCar(car);
+            }
+            if (!removed) {
+                timeline.car = car;
+            }
+            time = Math.max(time, lastTime);
+            writeChange(time, id, timeline, status, price, mileage);
+            lastTime = time;
+            timeline.add(time, status, price, mileage);
+            addChange(time, id, timeline.count - 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int statusId(String status) {
+        Integer id = statusIds.get(status);
+        if (id == null) {
+            id = statuses.size();
+            statuses.add(status);
+            statusIds.put(status, id);
+            byte[] bytes = status.getBytes(StandardCharsets.UTF_8);
+            reserve(1 + 5 + bytes.length);
+            pending.put((byte) STATUS_RECORD);
+            putString(bytes);
+        }
+        return id;
+    }
+
+    private void addChange(long time, int car, int version) {
+        if (changeCount == changeTimes.length) {
+            int length = changeCount * 2;
+            changeTimes = Arrays.copyOf(changeTimes, length);
+            changeCars = Arrays.copyOf(changeCars, length);
+            changeVersions = Arrays.copyOf(changeVersions, length);
+        }
+        changeTimes[changeCount] = time;
+        changeCars[changeCount] = car;
+        changeVersions[changeCount] = version;
+        changeCount++;
+    }
+
+    /**
+     * Retrieves the inventory as it was at a given time.
+     *
+     * @param time The time, in milliseconds since the epoch.
+     * @return The cars in inventory at the time.
+     */
+    public Snapshot getSnapshot(long time) {
+        catchUp();
+        lock.readLock().lock();
+        try {
+            List<Car> cars = new ArrayList<>();
+            for (Timeline timeline : timelines) {
+                int version = timeline.versionAt(time);
+                if (version >= 0 && timeline.statuses[version] != REMOVED) {
+                    cars.add(carAt(timeline, version));
+                }
+            }
+            return new Snapshot(time, cars);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the inventory as it was at the end of a day.
+     *
+     * @param date The day.
+     * @return The cars in inventory at the end of the day.
+     */
+    public Snapshot getSnapshot(LocalDate date) {
+        return getSnapshot(startOf(date.plusDays(1)) - 1);
+    }
+
+    /**
+     * Retrieves a car as it was at a given time.
+     *
+     * @param vin  The VIN of the car.
+     * @param time The time, in milliseconds since the epoch.
+     * @return The car, or null if it was not in inventory at the time.
+     */
+    public Car getCarAt(String vin, long time) {
+        catchUp();
+        lock.readLock().lock();
+        try {
+            Integer id = carIds.get(vin);
+            if (id == null) {
+                return null;
+            }
+            Timeline timeline = timelines.get(id);
+            int version = timeline.versionAt(time);
+            return version < 0 || timeline.statuses[version] == REMOVED ? null : carAt(timeline, version);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the changes made to the inventory during a period.
+     *
+     * @param from The start of the period, in milliseconds since the epoch, included.
+     * @param to   The end of the period, excluded.
+     * @return The changes, oldest first.
+     */
+    public List<Change> getChanges(long from, long to) {
+        catchUp();
+        lock.readLock().lock();
+        try {
+            List<Change> changes = new ArrayList<>();
+            for (int i = upperBound(changeTimes, changeCount, from - 1); i < changeCount && changeTimes[i] < to; i++) {
+                changes.add(changeAt(timelines.get(changeCars[i]), changeVersions[i]));
+            }
+            return changes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the changes made to a car during a period.
+     *
+     * @param vin  The VIN of the car.
+     * @param from The start of the period, in milliseconds since the epoch, included.
+     * @param to   The end of the period, excluded.
+     * @return The changes, oldest first.
+     */
+    public List<Change> getChanges(String vin, long from, long to) {
+        catchUp();
+        lock.readLock().lock();
+        try {
+            List<Change> changes = new ArrayList<>();
+            Integer id = carIds.get(vin);
+            if (id != null) {
+                Timeline timeline = timelines.get(id);
+                for (int i = upperBound(timeline.times, timeline.count, from - 1);
+                     i < timeline.count && timeline.times[i] < to; i++) {
+                    changes.add(changeAt(timeline, i));
+                }
+            }
+            return changes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of changes in the history.
+     */
+    public int getChangeCount() {
+        catchUp();
+        lock.readLock().lock();
+        try {
+            return changeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Change changeAt(Timeline timeline, int version) {
+        boolean removed = timeline.statuses[version] == REMOVED;
+        Car car = removed && version > 0 ? carAt(timeline, version - 1) : carAt(timeline, version);
+        return new Change(timeline.times[version], car, removed);
+    }
+
+    private Car carAt(Timeline timeline, int version) {
+        Car car = timeline.car;
+        int status = timeline.statuses[version];
+        return new Car(car.getVin(), car.getAcquisitionDate(), car.getMake(), car.getModel(), car.getYear(),
+                timeline.mileages[version], car.getColor(), car.getCost(), timeline.prices[version] / 100.0,
+                status == REMOVED ? car.getStatus() : statuses.get(status));
+    }
+
+    /**
+     * @return The number of elements of the sorted array prefix that are at most the value.
+     */
+    private static int upperBound(long[] values, int count, long value) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Encoding. Called with the write lock held.
+
+    private void writeCar(Car car) {
+        byte[][] strings = {
+                car.getVin().getBytes(StandardCharsets.UTF_8), car.getMake().getBytes(StandardCharsets.UTF_8),
+                car.getModel().getBytes(StandardCharsets.UTF_8), car.getColor().getBytes(StandardCharsets.UTF_8)
+        };
+        int size = 1 + 5 + 5 + 10;
+        for (byte[] s : strings) {
+            size += 5 + s.length;
+        }
+        reserve(size);
+        pending.put((byte) CAR_RECORD);
+        for (byte[] s : strings) {
+            putString(s);
+        }
+        putVarLong(zigZag(car.getYear()));
+        putVarLong(car.getAcquisitionDate() == null ? 0 : zigZag(car.getAcquisitionDate().toEpochDay()) + 1);
+        putVarLong(Double.isNaN(car.getCost()) ? 0 : zigZag(Math.round(car.getCost() * 100)) + 1);
+    }
+
+    private void writeChange(long time, int id, Timeline timeline, int status, long price, int mileage) {
+        int last = timeline.count - 1;
+        int changed = 0;
+        if (last < 0 || timeline.statuses[last] != status) {
+            changed |= STATUS_CHANGED;
+        }
+        if (last < 0 || timeline.prices[last] != price) {
+            changed |= PRICE_CHANGED;
+        }
+        if (last < 0 || timeline.mileages[last] != mileage) {
+            changed |= MILEAGE_CHANGED;
+        }
+        reserve(1 + 10 + 5 + 1 + 5 + 10 + 10);
+        pending.put((byte) CHANGE_RECORD);
+        putVarLong(zigZag(time - lastWrittenTime));
+        lastWrittenTime = time;
+        putVarLong(id);
+        pending.put((byte) changed);
+        if ((changed & STATUS_CHANGED) != 0) {
+            putVarLong(status + 1L);
+        }
+        if ((changed & PRICE_CHANGED) != 0) {
+            putVarLong(zigZag(price - (last < 0 ? 0 : timeline.prices[last])));
+        }
+        if ((changed & MILEAGE_CHANGED) != 0) {
+            putVarLong(zigZag((long) mileage - (last < 0 ? 0 : timeline.mileages[last])));
+        }
+    }
+
+    private void reserve(int size) {
+        if (pending.remaining() < size) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+    }
+
+    private void putString(byte[] bytes) {
+        putVarLong(bytes.length);
+        pending.put(bytes);
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            pending.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        pending.put((byte) value);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Decoding
+
+    /**
+     * Reads the history file, if there is one, and drops a last record cut short.
+     *
+     * @return {false} if there was no history yet.
+     */
+    private boolean load() throws IOException {
+        synchronized (this) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long size = channel.size();
+            if (size < MAGIC.length) {
+                channel.truncate(0);
+                channel.write(ByteBuffer.wrap(MAGIC), 0);
+                channel.position(MAGIC.length);
+                return false;
+            }
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            byte[] magic = new byte[MAGIC.length];
+            in.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not an inventory history file: " + file);
+            }
+            long end = decode(in);
+            if (end < size) {
+                System.err.println("WARNING: Dropped an incomplete record at the end of " + file);
+                channel.truncate(end);
+            }
+            channel.position(end);
+            return true;
+        }
+    }
+
+    /**
+     * Decodes the records of the file into memory.
+     *
+     * @return The offset of the end of the last complete record.
+     */
+    private long decode(ByteBuffer in) {
+        lock.writeLock().lock();
+        try {
+            long time = 0;
+            int end = in.position();
+            try {
+                while (in.hasRemaining()) {
+                    int type = in.get();
+                    if (type == CAR_RECORD) {
+                        String vin = getString(in);
+                        String make = getString(in);
+                        String model = getString(in);
+                        String color = getString(in);
+                        int year = (int) unZigZag(getVarLong(in));
+                        long acquired = getVarLong(in);
+                        long cost = getVarLong(in);
+                        Timeline timeline = new Timeline();
+                        timeline.car = new Car(vin, acquired == 0 ? null : LocalDate.ofEpochDay(unZigZag(acquired - 1)),
+                                make, model, year, 0, color, cost == 0 ? Double.NaN : unZigZag(cost - 1) / 100.0,
+                                0, null);
+                        carIds.put(vin, timelines.size());
+                        timelines.add(timeline);
+                    } else if (type == STATUS_RECORD) {
+                        String status = getString(in);
+                        statusIds.put(status, statuses.size());
+                        statuses.add(status);
+                    } else if (type == CHANGE_RECORD) {
+                        time += unZigZag(getVarLong(in));
+                        int id = (int) getVarLong(in);
+                        int changed = in.get();
+                        Timeline timeline = timelines.get(id);
+                        int last = timeline.count - 1;
+                        int status = (changed & STATUS_CHANGED) != 0 ? (int) getVarLong(in) - 1 : timeline.statuses[last];
+                        long price = (changed & PRICE_CHANGED) != 0
+                                ? unZigZag(getVarLong(in)) + (last < 0 ? 0 : timeline.prices[last]) : timeline.prices[last];
+                        int mileage = (changed & MILEAGE_CHANGED) != 0
+                                ? (int) (unZigZag(getVarLong(in)) + (last < 0 ? 0 : timeline.mileages[last]))
+                                : timeline.mileages[last];
+                        timeline.add(time, status, price, mileage);
+                        addChange(time, id, timeline.count - 1);
+                    } else {
+                        break; // not written by this class: treated as cut short
+                    }
+                    end = in.position();
+                }
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+                // Cut short by a crash: a record only changes the history once read entirely
+            }
+            lastWrittenTime = changeCount == 0 ? 0 : changeTimes[changeCount - 1];
+            lastTime = changeCount == 0 ? Long.MIN_VALUE : lastWrittenTime;
+            // The cars as they were last in inventory
+            for (Timeline timeline : timelines) {
+                int version = timeline.count - 1;
+                while (version >= 0 && timeline.statuses[version] == REMOVED) {
+                    version--;
+                }
+                if (version >= 0) {
+                    timeline.car = carAt(timeline, version);
+                }
+            }
+            return end;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = (int) getVarLong(in);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IndexOutOfBoundsException("Malformed variable-length integer");
+    }
+
+    // File
+
+    /**
+     * Writes the changes recorded so far to the history file.
+     *
+     * @throws IOException If the file can't be written.
+     */
+    public void flush() throws IOException {
+        byte[] bytes;
+        synchronized (this) {
+            lock.writeLock().lock();
+            try {
+                applyQueued();
+                if (pending.position() == 0) {
+                    return;
+                }
+                pending.flip();
+                bytes = new byte[pending.remaining()];
+                pending.get(bytes);
+                pending.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (channel == null) {
+                throw new IOException("Inventory history closed: " + file);
+            }
+            ByteBuffer out = ByteBuffer.wrap(bytes);
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    private void flushInBackground() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("ERROR: Unable to write the inventory history -> " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the pending changes and closes the history file.
+     *
+     * @throws IOException If the changes can't be written.
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdownNow();
+        synchronized (this) {
+            if (channel == null) {
+                return;
+            }
+            try {
+                flush();
+                channel.force(false);
+            } finally {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+}
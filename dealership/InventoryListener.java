@@ -0,0 +1,29 @@
+package dealership;
+
+/**
+ * Receives the changes made to an {@link InventoryStore}. Listeners are called
+ * after the change has been applied to every index of the store.
+ */
+public interface InventoryListener {
+    /**
+     * Called when a car is added.
+     *
+     * @param car The added car.
+     */
+    void carAdded(Car car);
+
+    /**
+     * Called when a car is removed.
+     *
+     * @param car The removed car.
+     */
+    void carRemoved(Car car);
+
+    /**
+     * Called when a car is replaced by a new version of itself.
+     *
+     * @param previous The previous version of the car.
+     * @param current  The new version of the car.
+     */
+    void carUpdated(Car previous, Car current);
+}
@@ -0,0 +1,478 @@
+package dealership;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * The InventoryQuery class describes a search of the inventory: filters on
+ * make, model, year, price, mileage and status, an order, and a page size.
+ * Filters left unset match every car. Make and model match ignoring case.
+ *
+ * {@link #execute(InventoryStore, String)} returns one page of results and a
+ * cursor to the next page. A page is found in one of two ways:
+ * - When the order is kept by an index of the store (insertion, price or
+ *   mileage) and no filter on make, model, status or year narrows the cars down
+ *   enough, the index is read in order from the cursor on, and reading stops as
+ *   soon as the page is full.
+ * - Otherwise, the cars found by the most selective of those filters are checked
+ *   one by one and the page is kept in a heap of bounded size, so the matching
+ *   cars are never all sorted.
+ * A cursor holds the sort value and VIN of the last car of a page, so the next
+ * page starts right after that car even if cars were added, removed or changed
+ * in the meantime.
+ *
+ * Queries are built by chaining setters, e.g.
+ * {@code new InventoryQuery().make("Toyota").prices(10_000, 20_000).orderBy(Order.PRICE, false)}.
+ * A query is not thread-safe while being built, but can then be run by many
+ * threads at once.
+ */
+public class InventoryQuery {
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    /**
+     * The orders results can be sorted in. Cars having the same value are
+     * sorted by VIN.
+     */
+    public enum Order {
+        LISTED("listed"), // insertion order
+        PRICE("price"),
+        MILEAGE("mileage"),
+        YEAR("year"),
+        VIN("vin");
+
+        private final String label;
+
+        Order(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() { return label; }
+
+        /**
+         * @param label An order label (e.g., price), in any case.
+         * @return The order, or null if the label names none.
+         */
+        public static Order of(String label) {
+            for (Order order : values()) {
+                if (order.label.equalsIgnoreCase(label.trim())) {
+                    return order;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * One page of results.
+     */
+    public static final class Page {
+        private final List<Car> cars;
+        private final String nextCursor;
+
+        Page(List<Car> cars, String nextCursor) {
+            this.cars = Collections.unmodifiableList(cars);
+            this.nextCursor = nextCursor;
+        }
+
+        /**
+         * @return The cars of the page, in order.
+         */
+        public List<Car> getCars() { return cars; }
+
+        /**
+         * @return The cursor to pass to get the next page, or null if this is the last page.
+         */
+        public String getNextCursor() { return nextCursor; }
+
+        /**
+         * @return {true} if there are more results after this page.
+         */
+        public boolean hasMore() { return nextCursor != null; }
+    }
+
+    /**
+     * The place of a car in the order of a query: its sort value, then its VIN.
+     */
+    private static final class Position implements Comparable<Position> {
+        final double value;
+        final String vin;
+        final Car car;
+
+        Position(double value, String vin, Car car) {
+            this.value = value;
+            this.vin = vin;
+            this.car = car;
+        }
+
+        @Override
+        public int compareTo(Position other) {
+            int c = Double.compare(value, other.value);
+            return c != 0 ? c : vin.compareTo(other.vin);
+        }
+    }
+
+    private String make;
+    private String model;
+    private int minYear = Integer.MIN_VALUE;
+    private int maxYear = Integer.MAX_VALUE;
+    private double minPrice = Double.NEGATIVE_INFINITY;
+    private double maxPrice = Double.POSITIVE_INFINITY;
+    private int minMileage = Integer.MIN_VALUE;
+    private int maxMileage = Integer.MAX_VALUE;
+    private CarStatus status;
+    private Order order = Order.LISTED;
+    private boolean descending;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    /**
+     * @param make The make of the cars to find, or null for any make.
+     * @return This query.
+     */
+    public InventoryQuery make(String make) {
+        this.make = blankToNull(make);
+        return this;
+    }
+
+    /**
+     * @param model The model of the cars to find, or null for any model.
+     * @return This query.
+     */
+    public InventoryQuery model(String model) {
+        this.model = blankToNull(model);
+        return this;
+    }
+
+    /**
+     * @param min Lowest manufacture year, inclusive.
+     * @param max Highest manufacture year, inclusive.
+     * @return This query.
+     */
+    public InventoryQuery years(int min, int max) {
+        this.minYear = min;
+        this.maxYear = max;
+        return this;
+    }
+
+    /**
+     * @param min Lowest price, inclusive.
+     * @param max Highest price, inclusive.
+     * @return This query.
+     */
+    public InventoryQuery prices(double min, double max) {
+        this.minPrice = min;
+        this.maxPrice = max;
+        return this;
+    }
+
+    /**
+     * @param min Lowest mileage, inclusive.
+     * @param max Highest mileage, inclusive.
+     * @return This query.
+     */
+    public InventoryQuery mileages(int min, int max) {
+        this.minMileage = min;
+        this.maxMileage = max;
+        return this;
+    }
+
+    /**
+     * @param status The status of the cars to find, or null for any status.
+     * @return This query.
+     */
+    public InventoryQuery status(CarStatus status) {
+        this.status = status;
+        return this;
+    }
+
+    /**
+     * @param order      The order of the results.
+     * @param descending {true} for the highest values first.
+     * @return This query.
+     */
+    public InventoryQuery orderBy(Order order, boolean descending) {
+        if (order == null) {
+            throw new IllegalArgumentException("Order cannot be null");
+        }
+        this.order = order;
+        this.descending = descending;
+        return this;
+    }
+
+    /**
+     * @param pageSize The most cars returned in a page.
+     * @return This query.
+     */
+    public InventoryQuery pageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public int getPageSize() { return pageSize; }
+
+    /**
+     * Returns a page of the cars matching this query.
+     *
+     * @param store  The inventory to search.
+     * @param cursor The cursor returned with the previous page, or null for the first page.
+     * @return The page.
+     * @throws IllegalArgumentException If the cursor is malformed or was returned by a query
+     *                                  having another order.
+     */
+    public Page execute(InventoryStore store, String cursor) {
+        Position after = cursor == null ? null : parseCursor(cursor);
+        Predicate<Car> filter = filter();
+        Collection<Car> narrowed = narrowestIndex(store);
+        Collection<Car> ordered = orderedView(store, after);
+        int wanted = pageSize + 1; // one more, to know whether there is a next page
+        List<Position> positions;
+        if (ordered != null && (narrowed == null
+                || (double) narrowed.size() * narrowed.size() > (double) wanted * store.size())) {
+            // Reading the index in order until the page is full reads about
+            // wanted * size / matches cars, fewer than checking every match.
+            positions = new ArrayList<>(wanted);
+            for (Car car : ordered) {
+                Position position = filter.test(car) ? position(car, store) : null;
+                if (position != null) {
+                    positions.add(position);
+                    if (positions.size() == wanted) {
+                        break;
+                    }
+                }
+            }
+        } else {
+            positions = top(narrowed != null ? narrowed : candidates(store), filter, after, store, wanted);
+        }
+        List<Car> cars = new ArrayList<>(Math.min(positions.size(), pageSize));
+        for (int i = 0; i < positions.size() && i < pageSize; i++) {
+            cars.add(positions.get(i).car);
+        }
+        return new Page(cars, positions.size() < wanted ? null : cursor(positions.get(pageSize - 1)));
+    }
+
+    /**
+     * Returns all the cars matching this query, in order, ignoring the page
+     * size. When the order is kept by an index, cars are read from it as the
+     * stream is consumed.
+     *
+     * @param store The inventory to search.
+     * @return The matching cars.
+     */
+    public Stream<Car> stream(InventoryStore store) {
+        Predicate<Car> filter = filter();
+        Collection<Car> ordered = orderedView(store, null);
+        if (ordered != null) {
+            return ordered.stream().filter(filter);
+        }
+        Collection<Car> narrowed = narrowestIndex(store);
+        Comparator<Position> comparator = descending ? Comparator.reverseOrder() : Comparator.naturalOrder();
+        return (narrowed != null ? narrowed : candidates(store)).stream()
+                .filter(filter)
+                .map(car -> position(car, store))
+                .filter(p -> p != null)
+                .sorted(comparator)
+                .map(p -> p.car);
+    }
+
+    /**
+     * Combines the filters of this query into one predicate, skipping those left unset.
+     */
+    private Predicate<Car> filter() {
+        List<Predicate<Car>> filters = new ArrayList<>();
+        if (make != null) {
+            String key = InventoryStore.key(make);
+            filters.add(car -> car.getMake().trim().equalsIgnoreCase(key));
+        }
+        if (model != null) {
+            String key = InventoryStore.key(model);
+            filters.add(car -> car.getModel().trim().equalsIgnoreCase(key));
+        }
+        if (minYear != Integer.MIN_VALUE || maxYear != Integer.MAX_VALUE) {
+            filters.add(car -> car.getYear() >= minYear && car.getYear() <= maxYear);
+        }
+        if (minPrice != Double.NEGATIVE_INFINITY || maxPrice != Double.POSITIVE_INFINITY) {
+            filters.add(car -> car.getPrice() >= minPrice && car.getPrice() <= maxPrice);
+        }
+        if (minMileage != Integer.MIN_VALUE || maxMileage != Integer.MAX_VALUE) {
+            filters.add(car -> car.getMileage() >= minMileage && car.getMileage() <= maxMileage);
+        }
+        if (status != null) {
+            CarStatus wanted = status;
+            filters.add(car -> car.getCarStatus() == wanted);
+        }
+        return filters.stream().reduce(Predicate::and).orElse(car -> true);
+    }
+
+    /**
+     * @return The smallest set of cars found by a hash index for the make,
+     * model, status or year filters, or null if none of them is set.
+     */
+    private Collection<Car> narrowestIndex(InventoryStore store) {
+        Collection<Car> narrowest = null;
+        if (make != null) {
+            narrowest = model != null ? store.findByMakeAndModel(make, model) : store.findByMake(make);
+        }
+        if (status != null) {
+            narrowest = narrower(narrowest, store.findByStatus(status.getLabel()));
+        }
+        if (minYear == maxYear) {
+            narrowest = narrower(narrowest, store.findByYear(minYear));
+        }
+        return narrowest;
+    }
+
+    private static Collection<Car> narrower(Collection<Car> a, Collection<Car> b) {
+        return a == null || b.size() < a.size() ? b : a;
+    }
+
+    /**
+     * @return A view of the cars in the order of this query, starting after the
+     * given position, or null if no index keeps that order.
+     */
+    private Collection<Car> orderedView(InventoryStore store, Position after) {
+        String afterVin = after == null ? null : after.vin;
+        double afterValue = after == null ? 0 : after.value;
+        switch (order) {
+            case LISTED:
+                return store.sequenceView(after == null ? -1 : (long) after.value, descending);
+            case PRICE:
+                return store.rangeView(true, minPrice, maxPrice, afterValue, afterVin, descending);
+            case MILEAGE:
+                return store.rangeView(false, minMileage, maxMileage, afterValue, afterVin, descending);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return The cars to check when no hash index applies: those within the
+     * price or mileage range if one is set, all the cars otherwise.
+     */
+    private Collection<Car> candidates(InventoryStore store) {
+        if (minPrice != Double.NEGATIVE_INFINITY || maxPrice != Double.POSITIVE_INFINITY) {
+            return store.rangeView(true, minPrice, maxPrice, 0, null, false);
+        }
+        if (minMileage != Integer.MIN_VALUE || maxMileage != Integer.MAX_VALUE) {
+            return store.rangeView(false, minMileage, maxMileage, 0, null, false);
+        }
+        return store.getCars();
+    }
+
+    /**
+     * Keeps the first matching cars after a position in a heap whose head is
+     * the last of them.
+     */
+    private List<Position> top(Collection<Car> cars, Predicate<Car> filter, Position after, InventoryStore store,
+                               int wanted) {
+        Comparator<Position> comparator = descending ? Comparator.reverseOrder() : Comparator.naturalOrder();
+        PriorityQueue<Position> heap = new PriorityQueue<>(wanted + 1, comparator.reversed());
+        for (Car car : cars) {
+            if (!filter.test(car)) {
+                continue;
+            }
+            Position position = position(car, store);
+            if (position == null || (after != null && comparator.compare(position, after) <= 0)) {
+                continue;
+            }
+            if (heap.size() < wanted) {
+                heap.add(position);
+            } else if (comparator.compare(position, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(position);
+            }
+        }
+        List<Position> positions = new ArrayList<>(heap);
+        positions.sort(comparator);
+        return positions;
+    }
+
+    /**
+     * @return The position of a car in the order of this query, or null if the
+     * car was removed from the store meanwhile.
+     */
+    private Position position(Car car, InventoryStore store) {
+        double value;
+        switch (order) {
+            case LISTED:
+                value = store.sequenceOf(car.getVin());
+                if (value < 0) {
+                    return null;
+                }
+                break;
+            case PRICE:
+                value = car.getPrice();
+                break;
+            case MILEAGE:
+                value = car.getMileage();
+                break;
+            case YEAR:
+                value = car.getYear();
+                break;
+            default:
+                value = 0; // VIN only
+        }
+        return new Position(value, car.getVin(), car);
+    }
+
+    private String cursor(Position position) {
+        String value = order == Order.LISTED ? String.valueOf((long) position.value) : String.valueOf(position.value);
+        return order.getLabel() + (descending ? "-" : "+") + ':' + value + ':' + position.vin;
+    }
+
+    private Position parseCursor(String cursor) {
+        String[] parts = cursor.split(":", 3);
+        String prefix = order.getLabel() + (descending ? "-" : "+");
+        if (parts.length != 3 || !parts[0].equals(prefix)) {
+            throw new IllegalArgumentException("Invalid cursor for this query: " + cursor);
+        }
+        try {
+            return new Position(Double.parseDouble(parts[1]), parts[2], null);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor for this query: " + cursor, e);
+        }
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    @Override
+    public String toString() {
+        List<String> parts = new ArrayList<>();
+        if (make != null) {
+            parts.add("make " + make);
+        }
+        if (model != null) {
+            parts.add("model " + model);
+        }
+        if (minYear != Integer.MIN_VALUE || maxYear != Integer.MAX_VALUE) {
+            parts.add("year " + bound(minYear, Integer.MIN_VALUE) + " to " + bound(maxYear, Integer.MAX_VALUE));
+        }
+        if (minPrice != Double.NEGATIVE_INFINITY || maxPrice != Double.POSITIVE_INFINITY) {
+            parts.add(String.format(Locale.ROOT, "price %s to %s",
+                    minPrice == Double.NEGATIVE_INFINITY ? "any" : String.format(Locale.ROOT, "$%.2f", minPrice),
+                    maxPrice == Double.POSITIVE_INFINITY ? "any" : String.format(Locale.ROOT, "$%.2f", maxPrice)));
+        }
+        if (minMileage != Integer.MIN_VALUE || maxMileage != Integer.MAX_VALUE) {
+            parts.add("mileage " + bound(minMileage, Integer.MIN_VALUE) + " to " + bound(maxMileage, Integer.MAX_VALUE));
+        }
+        if (status != null) {
+            parts.add("status " + status.getLabel());
+        }
+        parts.add("by " + order.getLabel() + (descending ? " descending" : ""));
+        return String.join(", ", parts);
+    }
+
+    private static String bound(int value, int unset) {
+        return value == unset ? "any" : String.valueOf(value);
+    }
+}
@@ -0,0 +1,555 @@
+package dealership;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * The InventoryStore class holds the cars of a dealership and keeps them indexed
+ * for fast lookups:
+ * - A hash index by VIN.
+ * - Secondary hash indexes by make, by make and model, by status and by year.
+ * - Sorted range indexes by price and by mileage.
+ *
+ * Make, model and status lookups are case-insensitive. Every index is updated
+ * by {@link #add(Car)}, {@link #remove(String)} and {@link #update(Car)}, so they
+ * always agree with each other. Registered {@link InventoryListener}s are told
+ * about each change once the indexes are up to date.
+ *
+ * The store is thread-safe. Changes to a car are made under a lock chosen by
+ * its VIN among a fixed set of locks, so changes to different cars rarely wait
+ * for each other, and listeners are told about the changes of a car in the order
+ * they were made. Reads never lock: they see each index as it is at the time,
+ * so a car being changed may briefly be found under both its previous and its
+ * new values. {@link #replace(Car, Car)} and {@link #update(String, UnaryOperator)}
+ * change a car based on its current version without losing concurrent changes.
+ */
+public class InventoryStore {
+    private static final int LOCK_STRIPES = 64; // power of two
+    private static final String[] STATUS_KEYS = new String[CarStatus.values().length];
+
+    static {
+        for (CarStatus status : CarStatus.values()) {
+            STATUS_KEYS[status.ordinal()] = key(status.getLabel());
+        }
+    }
+
+    /**
+     * A car with the sequence number giving its place in insertion order.
+     */
+    private static final class Entry {
+        final long sequence;
+        final Car car;
+
+        Entry(long sequence, Car car) {
+            this.sequence = sequence;
+            this.car = car;
+        }
+    }
+
+    /**
+     * Key of the range indexes: a value, then the VIN to tell apart cars having
+     * the same value.
+     */
+    private static final class RangeKey implements Comparable<RangeKey> {
+        final double value;
+        final String vin;
+
+        RangeKey(double value, String vin) {
+            this.value = value;
+            this.vin = vin;
+        }
+
+        @Override
+        public int compareTo(RangeKey other) {
+            int c = Double.compare(value, other.value);
+            return c != 0 ? c : vin.compareTo(other.vin);
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> byVin = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, Car> bySequence = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Set<Car>> byMake = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<Car>> byMakeModel = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<Car>> byStatus = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Set<Car>> byYear = new ConcurrentHashMap<>();
+    private final NavigableMap<RangeKey, Car> byPrice = new ConcurrentSkipListMap<>();
+    private final NavigableMap<RangeKey, Car> byMileage = new ConcurrentSkipListMap<>();
+    private final List<InventoryListener> listeners = new CopyOnWriteArrayList<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    /**
+     * Constructs an empty store.
+     */
+    public InventoryStore() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Constructs a store holding the given cars. Cars whose VIN is already in
+     * the store are reported and skipped.
+     *
+     * @param cars The cars to add.
+     */
+    public InventoryStore(Collection<Car> cars) {
+        this();
+        // Bulk load: the hash indexes are filled with sets sized up front, and
+        // the range indexes in key order, which makes each insertion into their
+        // skip lists much cheaper.
+        Map<String, List<Car>> makes = new HashMap<>();
+        Map<String, List<Car>> makeModels = new HashMap<>();
+        Map<String, List<Car>> statuses = new HashMap<>();
+        Map<Integer, List<Car>> years = new HashMap<>();
+        Car[] added = new Car[cars.size()];
+        int count = 0;
+        for (Car car : cars) {
+            long sequence = nextSequence.get();
+            if (byVin.putIfAbsent(car.getVin(), new Entry(sequence, car)) != null) {
+                System.err.println("ERROR: Duplicate VIN in inventory -> " + car.getVin());
+                continue;
+            }
+            nextSequence.incrementAndGet();
+            bySequence.put(sequence, car);
+            makes.computeIfAbsent(key(car.getMake()), k -> new ArrayList<>()).add(car);
+            makeModels.computeIfAbsent(key(car.getMake(), car.getModel()), k -> new ArrayList<>()).add(car);
+            statuses.computeIfAbsent(statusKey(car), k -> new ArrayList<>()).add(car);
+            years.computeIfAbsent(car.getYear(), k -> new ArrayList<>()).add(car);
+            added[count++] = car;
+        }
+        putAll(byMake, makes);
+        putAll(byMakeModel, makeModels);
+        putAll(byStatus, statuses);
+        putAll(byYear, years);
+        Arrays.sort(added, 0, count, Comparator.comparingDouble(Car::getPrice).thenComparing(Car::getVin));
+        for (int i = 0; i < count; i++) {
+            byPrice.put(new RangeKey(added[i].getPrice(), added[i].getVin()), added[i]);
+        }
+        Arrays.sort(added, 0, count, Comparator.comparingInt(Car::getMileage).thenComparing(Car::getVin));
+        for (int i = 0; i < count; i++) {
+            byMileage.put(new RangeKey(added[i].getMileage(), added[i].getVin()), added[i]);
+        }
+    }
+
+    /**
+     * Adds a car to the store.
+     *
+     * @param car The car to add.
+     * @return {true} if the car was added, {false} if a car with the same VIN already exists.
+     */
+    public boolean add(Car car) {
+        synchronized (lockFor(car.getVin())) {
+            if (byVin.containsKey(car.getVin())) {
+                return false;
+            }
+            long sequence = nextSequence.getAndIncrement();
+            byVin.put(car.getVin(), new Entry(sequence, car));
+            bySequence.put(sequence, car);
+            index(car);
+            for (InventoryListener listener : listeners) {
+                listener.carAdded(car);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Removes the car with the given VIN.
+     *
+     * @param vin The VIN of the car to remove.
+     * @return The removed car, or null if no car has this VIN.
+     */
+    public Car remove(String vin) {
+        synchronized (lockFor(vin)) {
+            Entry entry = byVin.remove(vin);
+            if (entry == null) {
+                return null;
+            }
+            bySequence.remove(entry.sequence);
+            unindex(entry.car);
+            for (InventoryListener listener : listeners) {
+                listener.carRemoved(entry.car);
+            }
+            return entry.car;
+        }
+    }
+
+    /**
+     * Replaces the car having the same VIN as the given car.
+     *
+     * @param car The new version of the car.
+     * @return The previous version of the car, or null if no car has this VIN
+     * (in which case nothing is changed).
+     */
+    public Car update(Car car) {
+        synchronized (lockFor(car.getVin())) {
+            Entry entry = byVin.get(car.getVin());
+            if (entry != null) {
+                apply(entry, car);
+            }
+            return entry == null ? null : entry.car;
+        }
+    }
+
+    /**
+     * Replaces a car only if it is still the given version, e.g. the version a
+     * change was computed from.
+     *
+     * @param expected The version of the car the change was computed from.
+     * @param car      The new version of the car, with the same VIN.
+     * @return {true} if the car was replaced, {false} if it has been changed or
+     * removed since the expected version was read.
+     */
+    public boolean replace(Car expected, Car car) {
+        if (!expected.getVin().equals(car.getVin())) {
+            throw new IllegalArgumentException("VIN mismatch: " + expected.getVin() + " / " + car.getVin());
+        }
+        synchronized (lockFor(car.getVin())) {
+            Entry entry = byVin.get(car.getVin());
+            if (entry == null || entry.car != expected) {
+                return false;
+            }
+            apply(entry, car);
+            return true;
+        }
+    }
+
+    /**
+     * Replaces a car with a new version computed from its current version. No
+     * other change to the car can happen in between.
+     *
+     * @param vin    The VIN of the car to change.
+     * @param change Computes the new version of the car from the current one.
+     *               It may return the current version, or null, to leave the car unchanged.
+     * @return The new version of the car, or null if no car has this VIN.
+     */
+    public Car update(String vin, UnaryOperator<Car> change) {
+        synchronized (lockFor(vin)) {
+            Entry entry = byVin.get(vin);
+            if (entry == null) {
+                return null;
+            }
+            Car car = change.apply(entry.car);
+            if (car == null || car == entry.car) {
+                return entry.car;
+            }
+            if (!car.getVin().equals(vin)) {
+                throw new IllegalArgumentException("VIN mismatch: " + vin + " / " + car.getVin());
+            }
+            apply(entry, car);
+            return car;
+        }
+    }
+
+    /**
+     * Changes the status of a car, if its current status allows it. In particular,
+     * a sold car can't be sold again.
+     *
+     * @param vin    The VIN of the car.
+     * @param status The new status.
+     * @return The previous version of the car, or null if no car has this VIN or
+     * its current status can't change to the given one.
+     */
+    public Car changeStatus(String vin, CarStatus status) {
+        synchronized (lockFor(vin)) {
+            Car current = getByVin(vin);
+            if (current == null || !canChangeStatus(current, status)) {
+                return null;
+            }
+            update(current.withStatus(status));
+            return current;
+        }
+    }
+
+    /**
+     * Changes the price of a car.
+     *
+     * @param vin   The VIN of the car.
+     * @param price The new price.
+     * @return The previous version of the car, or null if no car has this VIN.
+     */
+    public Car reprice(String vin, double price) {
+        synchronized (lockFor(vin)) {
+            Car current = getByVin(vin);
+            if (current != null) {
+                update(current.withPrice(price));
+            }
+            return current;
+        }
+    }
+
+    /**
+     * @param car    A car.
+     * @param status A status.
+     * @return {true} if the current status of the car is known and may change to the given status.
+     */
+    public static boolean canChangeStatus(Car car, CarStatus status) {
+        CarStatus current = car.getCarStatus();
+        return current != null && current.canChangeTo(status);
+    }
+
+    /**
+     * Registers a listener to be told about every later change.
+     *
+     * @param listener The listener.
+     */
+    public void addListener(InventoryListener listener) { listeners.add(listener); }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener The listener.
+     */
+    public void removeListener(InventoryListener listener) { listeners.remove(listener); }
+
+    /**
+     * @param vin The VIN to look up.
+     * @return The car with the given VIN, or null if there is none.
+     */
+    public Car getByVin(String vin) {
+        Entry entry = byVin.get(vin);
+        return entry == null ? null : entry.car;
+    }
+
+    /**
+     * @param vin The VIN to look up.
+     * @return {true} if a car with the given VIN is in the store.
+     */
+    public boolean contains(String vin) { return byVin.containsKey(vin); }
+
+    /**
+     * @return The number of cars in the store.
+     */
+    public int size() { return byVin.size(); }
+
+    /**
+     * @return {true} if the store holds no cars.
+     */
+    public boolean isEmpty() { return byVin.isEmpty(); }
+
+    /**
+     * @return A read-only view of all the cars, in insertion order.
+     */
+    public Collection<Car> getCars() { return Collections.unmodifiableCollection(bySequence.values()); }
+
+    /**
+     * @param make The make to look up.
+     * @return The cars of the given make.
+     */
+    public Collection<Car> findByMake(String make) { return lookup(byMake, key(make)); }
+
+    /**
+     * @param make  The make to look up.
+     * @param model The model to look up.
+     * @return The cars of the given make and model.
+     */
+    public Collection<Car> findByMakeAndModel(String make, String model) {
+        return lookup(byMakeModel, key(make, model));
+    }
+
+    /**
+     * @param status The status to look up (e.g., Available).
+     * @return The cars having the given status.
+     */
+    public Collection<Car> findByStatus(String status) { return lookup(byStatus, key(status)); }
+
+    /**
+     * @param year The manufacture year to look up.
+     * @return The cars manufactured in the given year.
+     */
+    public Collection<Car> findByYear(int year) { return lookup(byYear, year); }
+
+    /**
+     * Finds the cars priced within a range, sorted by price.
+     *
+     * @param min Lowest price, inclusive.
+     * @param max Highest price, inclusive.
+     * @return The matching cars.
+     */
+    public List<Car> findByPriceRange(double min, double max) {
+        return range(byPrice, min, max);
+    }
+
+    /**
+     * Finds the cars whose mileage is within a range, sorted by mileage.
+     *
+     * @param min Lowest mileage, inclusive.
+     * @param max Highest mileage, inclusive.
+     * @return The matching cars.
+     */
+    public List<Car> findByMileageRange(int min, int max) {
+        return range(byMileage, min, max);
+    }
+
+    /**
+     * Returns a live view of the cars valued from min to max by price or by
+     * mileage, ordered by value then VIN, which starts after a given car.
+     * Nothing is copied, so a query can read as few cars as it needs.
+     *
+     * @param price      {true} to order by price, {false} by mileage.
+     * @param min        Lowest value, inclusive.
+     * @param max        Highest value, inclusive.
+     * @param afterValue Value of the car to start after.
+     * @param afterVin   VIN of the car to start after, or null to start at the first car.
+     * @param descending {true} to view the cars from the highest value down.
+     */
+    Collection<Car> rangeView(boolean price, double min, double max, double afterValue, String afterVin,
+                              boolean descending) {
+        NavigableMap<RangeKey, Car> index = price ? byPrice : byMileage;
+        if (min > max) {
+            return Collections.emptyList();
+        }
+        RangeKey low = new RangeKey(min, "");
+        RangeKey high = new RangeKey(Math.nextUp(max), "");
+        boolean lowInclusive = true;
+        if (afterVin != null) {
+            RangeKey after = new RangeKey(afterValue, afterVin);
+            if (!descending && after.compareTo(low) >= 0) {
+                low = after;
+                lowInclusive = false;
+            } else if (descending && after.compareTo(high) < 0) {
+                high = after;
+            }
+        }
+        if (low.compareTo(high) > 0) {
+            return Collections.emptyList();
+        }
+        NavigableMap<RangeKey, Car> view = index.subMap(low, lowInclusive, high, false);
+        return Collections.unmodifiableCollection(descending ? view.descendingMap().values() : view.values());
+    }
+
+    /**
+     * Returns a live view of the cars in insertion order, which starts after
+     * the car having a given sequence number (see {@link #sequenceOf(String)}).
+     *
+     * @param after      Sequence number of the car to start after, or -1 to start at the first car.
+     * @param descending {true} to view the cars from the last added one back.
+     */
+    Collection<Car> sequenceView(long after, boolean descending) {
+        NavigableMap<Long, Car> view;
+        if (after < 0) {
+            view = descending ? bySequence.descendingMap() : bySequence;
+        } else {
+            view = descending ? bySequence.headMap(after, false).descendingMap() : bySequence.tailMap(after, false);
+        }
+        return Collections.unmodifiableCollection(view.values());
+    }
+
+    /**
+     * @param vin The VIN to look up.
+     * @return The place of the car in insertion order, or -1 if there is no such car.
+     */
+    long sequenceOf(String vin) {
+        Entry entry = byVin.get(vin);
+        return entry == null ? -1 : entry.sequence;
+    }
+
+    /**
+     * Returns the lock guarding changes to the car with the given VIN. Holding
+     * it keeps the car from being changed by other threads, e.g. while a change
+     * is persisted before being applied. The lock is reentrant.
+     */
+    Object lockFor(String vin) {
+        int h = vin.hashCode();
+        return locks[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    private void apply(Entry entry, Car car) {
+        Car previous = entry.car;
+        byVin.put(car.getVin(), new Entry(entry.sequence, car));
+        bySequence.put(entry.sequence, car);
+        index(car);
+        unindex(previous);
+        for (InventoryListener listener : listeners) {
+            listener.carUpdated(previous, car);
+        }
+    }
+
+    private void index(Car car) {
+        put(byMake, key(car.getMake()), car);
+        put(byMakeModel, key(car.getMake(), car.getModel()), car);
+        put(byStatus, statusKey(car), car);
+        put(byYear, car.getYear(), car);
+        byPrice.put(new RangeKey(car.getPrice(), car.getVin()), car);
+        byMileage.put(new RangeKey(car.getMileage(), car.getVin()), car);
+    }
+
+    private void unindex(Car car) {
+        take(byMake, key(car.getMake()), car);
+        take(byMakeModel, key(car.getMake(), car.getModel()), car);
+        take(byStatus, statusKey(car), car);
+        take(byYear, car.getYear(), car);
+        byPrice.remove(new RangeKey(car.getPrice(), car.getVin()), car);
+        byMileage.remove(new RangeKey(car.getMileage(), car.getVin()), car);
+    }
+
+    private static <K> void put(ConcurrentMap<K, Set<Car>> index, K key, Car car) {
+        // compute() runs atomically for a key, so a set can't be dropped while a car is added to it
+        index.compute(key, (k, cars) -> {
+            Set<Car> set = cars != null ? cars : ConcurrentHashMap.newKeySet();
+            set.add(car);
+            return set;
+        });
+    }
+
+    private static <K> void putAll(ConcurrentMap<K, Set<Car>> index, Map<K, List<Car>> groups) {
+        for (Map.Entry<K, List<Car>> group : groups.entrySet()) {
+            Set<Car> set = ConcurrentHashMap.newKeySet(group.getValue().size());
+            set.addAll(group.getValue());
+            index.put(group.getKey(), set);
+        }
+    }
+
+    private static <K> void take(ConcurrentMap<K, Set<Car>> index, K key, Car car) {
+        index.computeIfPresent(key, (k, cars) -> {
+            cars.remove(car);
+            return cars.isEmpty() ? null : cars;
+        });
+    }
+
+    private static <K> Collection<Car> lookup(Map<K, Set<Car>> index, K key) {
+        Set<Car> cars = index.get(key);
+        return cars == null ? Collections.emptySet() : Collections.unmodifiableSet(cars);
+    }
+
+    private static List<Car> range(NavigableMap<RangeKey, Car> index, double min, double max) {
+        if (min > max) {
+            return Collections.emptyList();
+        }
+        // "" sorts before any VIN, so these bounds take in every car valued min to max
+        return new ArrayList<>(index.subMap(new RangeKey(min, ""), true,
+                new RangeKey(Math.nextUp(max), ""), false).values());
+    }
+
+    static String key(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    static String key(String make, String model) {
+        return key(make) + '\u0000' + key(model);
+    }
+
+    /**
+     * The key of the status of a car, without building it again for known statuses.
+     */
+    static String statusKey(Car car) {
+        CarStatus status = car.getCarStatus();
+        return status != null ? STATUS_KEYS[status.ordinal()] : key(car.getStatus());
+    }
+}
@@ -1,21 +1,60 @@
 package dealership;
 
+import dealership.utils.AuditLog;
+import dealership.utils.Metrics;
 import dealership.utils.Utils;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 /**
  * The Menu class handles user interactions, including:
- * - Login authentication for managers and salespersons.
+ * - Login authentication for managers and salespersons, recorded in the
+ *   audit log of the dealership along with the logouts.
  * - Displaying and handling the Manager Menu.
  * - Displaying and handling the Report Menu.
+ * - Searching the inventory, one page of results at a time.
+ * - Looking at the inventory as it was on a past date.
+ * - Putting cars on hold for salespersons, and releasing them.
  *
  * This class interacts with the `Dealership` object to access users and inventory.
+ * A menu reads its choices from an input stream and writes to an output
+ * stream, so several menus can serve several sessions over the same dealership.
  */
 public class Menu {
+    private static final Metrics.Timer LOGIN = Metrics.timer("menu.login");
+    private static final Metrics.Counter LOGIN_SUCCESS = Metrics.counter("menu.login.success");
+    private static final Metrics.Counter LOGIN_FAILURE = Metrics.counter("menu.login.failure");
+    private static final Metrics.Counter LOGIN_THROTTLED = Metrics.counter("menu.login.throttled");
+    private static final Metrics.Timer INVENTORY_REPORT = Metrics.timer("menu.report.inventory");
+    private static final Metrics.Timer SALES_REPORT = Metrics.timer("menu.report.sales");
+    private static final Metrics.Timer VALUATION_REPORT = Metrics.timer("menu.report.valuation");
+
     private Scanner scanner;
+    private PrintStream out;
+    private boolean interactive; // true when reading from the terminal, so passwords can be hidden
     private Dealership dealership; // Stores dealership data (users & inventory)
+    // When set, reports first check the precomputed views against a full recomputation
+    private final boolean verifyViews = Boolean.getBoolean("dealership.verifyViews");
+    private final CarTableFormatter table = new CarTableFormatter();
 
     /**
      * Constructs a Menu object with a given Dealership instance.
@@ -23,7 +62,22 @@ public class Menu {
      * @param dealership The Dealership object containing users and inventory.
      */
     public Menu(Dealership dealership) {
-        this.scanner = new Scanner(System.in);
+        this(dealership, System.in, System.out, true);
+    }
+
+    /**
+     * Constructs a Menu object reading from and writing to the given streams.
+     *
+     * @param dealership  The Dealership object containing users and inventory.
+     * @param in          The stream choices are read from.
+     * @param out         The stream menus and reports are written to.
+     * @param interactive {true} if the streams are those of the terminal, in which
+     *                    case passwords are read from the console without echo.
+     */
+    public Menu(Dealership dealership, InputStream in, PrintStream out, boolean interactive) {
+        this.scanner = new Scanner(in, StandardCharsets.UTF_8);
+        this.out = out;
+        this.interactive = interactive;
         this.dealership = dealership;
     }
 
@@ -31,58 +85,92 @@ public class Menu {
      * Displays the login menu and prompts the user to log in.
      * Users can log in as either a Manager or a Salesperson.
      * If authentication is successful, the corresponding menu is displayed.
+     *
+     * @throws NoSuchElementException If the input ends before the user exits.
      */
     public void showLoginMenu() {
         while (true) {
-            System.out.println("Welcome to Best Cars Dealership!");
-            System.out.println("================================");
-            System.out.println("1. Manager");
-            System.out.println("2. Salesperson");
-            System.out.println("3. Exit");
-            System.out.print("Please make a choice: ");
+            out.println("Welcome to Best Cars Dealership!");
+            out.println("================================");
+            out.println("1. Manager");
+            out.println("2. Salesperson");
+            out.println("3. Exit");
+            out.print("Please make a choice: ");
 
-            String choice = scanner.nextLine();
+            String choice = readLine();
 
             if (choice.equals("1") || choice.equals("2")) {
-                handleLogin(choice.equals("1") ? "Manager" : "Salesperson");
+                handleLogin(choice.equals("1") ? Role.MANAGER : Role.SALESPERSON);
             } else if (choice.equals("3")) {
-                System.out.println("Exiting the system...");
+                out.println("Exiting the system...");
                 break;
             } else {
-                System.out.println("Invalid choice. Please try again.");
+                out.println("Invalid choice. Please try again.");
             }
         }
     }
 
     /**
      * Handles user login authentication based on role (Manager or Salesperson).
-     * Checks credentials against the list of `User` objects stored in `Dealership`.
+     * Checks credentials against the users stored in `Dealership`, whose
+     * {@link CredentialStore} throttles repeated failed attempts. Logging in
+     * with a role other than the one of the account fails.
      *
-     * @param role The role of the user attempting to log in ("Manager" or "Salesperson").
+     * @param role The role of the user attempting to log in.
      */
-    private void handleLogin(String role) {
-        System.out.print("Username: ");
-        String username = scanner.nextLine().trim();
-        String password;
+    private void handleLogin(Role role) {
+        out.print("Username: ");
+        String username = readLine().trim();
+        String password = null;
+        if (interactive) {
+            try {
+                password = Utils.readPasswordFromConsole("Enter password: "); // Securely read password
+            } catch (RuntimeException e) {
+                // Console unavailable, e.g. input redirected
+            }
+        }
+        if (password == null) {
+            out.print("Enter password: ");
+            password = readLine().trim();
+        }
+        User user;
+        Metrics.Sample sample = LOGIN.time();
         try {
-            password = Utils.readPasswordFromConsole("Enter password: "); // Securely read password
-        } catch (RuntimeException e) {
-            System.out.print("Enter password: ");
-            password = scanner.nextLine().trim();  // Fallback if console is unavailable
-        }
-        for (User user : dealership.getUsers()) {
-            if (user.getUsername().equals(username) && user.authenticate(password)) {
-                System.out.println("Successfully logged in as " + role + ".");
-                if (role.equals("Manager")) {
+            // A user can only log in with the role of their account
+            user = dealership.authenticate(username, password, role);
+        } finally {
+            sample.close();
+        }
+        if (user != null) {
+            LOGIN_SUCCESS.increment();
+            // The changes made until logout are attributed to the user
+            AuditLog.setActor(user.getUsername());
+            dealership.audit("login", user.getUsername(), role.getTitle());
+            out.println("Successfully logged in as " + role.getTitle() + ".");
+            try {
+                if (role == Role.MANAGER) {
                     showManagerMenu();
                 } else {
-                    System.out.println("Salesperson functionality not implemented yet.");
+                    showSalespersonMenu(user);
                 }
-                return;
+                dealership.audit("logout", user.getUsername(), role.getTitle());
+            } finally {
+                AuditLog.setActor(null);
             }
+            return;
         }
 
-        System.out.println("Login failed. No matching username and password found.");
+        long retryDelay = dealership.getCredentialStore().getRetryDelayMillis(username);
+        if (retryDelay > 0) {
+            LOGIN_THROTTLED.increment();
+            dealership.audit("login.throttled", username, role.getTitle());
+            out.println("Login failed. Too many failed attempts, please try again in "
+                    + (retryDelay + 999) / 1000 + " seconds.");
+        } else {
+            LOGIN_FAILURE.increment();
+            dealership.audit("login.failed", username, role.getTitle());
+            out.println("Login failed. No matching username and password found.");
+        }
     }
 
     /**
@@ -95,55 +183,220 @@ public class Menu {
      */
     private void showManagerMenu() {
         while (true) {
-            System.out.println("================================");
-            System.out.println("=       Manager Main Menu      =");
-            System.out.println("================================");
-            System.out.println("1. Add a Car");
-            System.out.println("2. Delete a Car");
-            System.out.println("3. Generate Reports");
-            System.out.println("4. Log out");
-            System.out.print("Please make a choice: ");
+            out.println("================================");
+            out.println("=       Manager Main Menu      =");
+            out.println("================================");
+            out.println("1. Add a Car");
+            out.println("2. Delete a Car");
+            out.println("3. Generate Reports");
+            out.println("4. Log out");
+            out.print("Please make a choice: ");
 
-            String choice = scanner.nextLine();
+            String choice = readLine();
 
             switch (choice) {
                 case "3":
                     showReportMenu();
                     break;
                 case "4":
-                    System.out.println("Logging out...");
+                    out.println("Logging out...");
                     return;
                 default:
-                    System.out.println("I’m sorry, but option " + choice + " has not been implemented yet. Please pick option 3 or 4.");
+                    out.println("I’m sorry, but option " + choice + " has not been implemented yet. Please pick option 3 or 4.");
             }
         }
     }
 
+    /**
+     * Displays the Salesperson Menu and handles menu choices.
+     * Available options:
+     * 1. Quick Search
+     * 2. Hold a Car
+     * 3. Release a Hold
+     * 4. Log Out
+     *
+     * @param user The salesperson logged in.
+     */
+    private void showSalespersonMenu(User user) {
+        while (true) {
+            out.println("================================");
+            out.println("=    Salesperson Main Menu     =");
+            out.println("================================");
+            out.println("1. Quick search");
+            out.println("2. Hold a car");
+            out.println("3. Release a hold");
+            out.println("4. Log out");
+            out.print("Please make a choice: ");
+
+            String choice = readLine();
+
+            if (choice.equals("1")) {
+                quickSearch();
+            } else if (choice.equals("2")) {
+                holdCar(user);
+            } else if (choice.equals("3")) {
+                releaseHold(user);
+            } else if (choice.equals("4")) {
+                out.println("Logging out...");
+                return;
+            } else {
+                out.println("Invalid choice. Please try again.");
+            }
+        }
+    }
+
+    /**
+     * Lists the holds of a salesperson, then asks for a car to put on hold
+     * and for how many hours.
+     *
+     * @param user The salesperson.
+     */
+    private void holdCar(User user) {
+        HoldManager holds = dealership.getHoldManager();
+        if (holds == null) {
+            out.println("Holds are not enabled.");
+            return;
+        }
+        writeHolds(holds.getHolds(user.getUsername()));
+        String vin = prompt("VIN of the car to hold (press return to go back): ");
+        if (vin.isEmpty()) {
+            return;
+        }
+        Double hours = readNumber("Hours to hold it [24]: ");
+        if (hours == null) {
+            hours = 24.0;
+        }
+        // Checked before the conversion, which would overflow for huge answers
+        if (hours <= 0 || hours > HoldManager.MAX_TTL.toHours()) {
+            out.println("A hold must last some time, and at most " + HoldManager.MAX_TTL.toHours() + " hours.");
+            return;
+        }
+        try {
+            HoldManager.Hold hold = holds.hold(vin, user.getUsername(), Duration.ofMinutes(Math.round(hours * 60)));
+            if (hold != null) {
+                out.println("Car " + vin + " is on hold until " + formatTime(hold.getExpiresAt()) + ".");
+                return;
+            }
+            HoldManager.Hold other = holds.getHold(vin);
+            if (other != null) {
+                out.println("Car " + vin + " is already on hold until " + formatTime(other.getExpiresAt()) + ".");
+            } else {
+                out.println("No available car has the VIN " + vin + ".");
+            }
+        } catch (IllegalArgumentException e) {
+            out.println(e.getMessage());
+        } catch (IOException e) {
+            out.println("ERROR: Unable to save the hold -> " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lists the holds of a salesperson, then asks for the car whose hold to release.
+     *
+     * @param user The salesperson.
+     */
+    private void releaseHold(User user) {
+        HoldManager holds = dealership.getHoldManager();
+        if (holds == null) {
+            out.println("Holds are not enabled.");
+            return;
+        }
+        List<HoldManager.Hold> held = holds.getHolds(user.getUsername());
+        if (held.isEmpty()) {
+            out.println("You have no cars on hold.");
+            return;
+        }
+        writeHolds(held);
+        String vin = prompt("VIN of the car to release (press return to go back): ");
+        if (vin.isEmpty()) {
+            return;
+        }
+        try {
+            if (holds.release(vin, user.getUsername())) {
+                out.println("Car " + vin + " is available again.");
+            } else {
+                out.println("You have no hold on " + vin + ".");
+            }
+        } catch (IOException e) {
+            out.println("ERROR: Unable to save the release -> " + e.getMessage());
+        }
+    }
+
+    private void writeHolds(List<HoldManager.Hold> held) {
+        for (HoldManager.Hold hold : held) {
+            out.println("On hold: " + hold.getVin() + " until " + formatTime(hold.getExpiresAt()));
+        }
+    }
+
+    private static String formatTime(long millis) {
+        return DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+                .format(Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()));
+    }
+
+    /**
+     * Finds cars from a few words of their make, model or color, or the start
+     * of their VIN, tolerating typos, until an empty search is entered.
+     */
+    private void quickSearch() {
+        while (true) {
+            String text = prompt("Search (e.g. tyota cam, or the start of a VIN; press return to go back): ");
+            if (text.isEmpty()) {
+                return;
+            }
+            List<SearchIndex.Hit> hits = dealership.search(text);
+            if (hits.isEmpty()) {
+                out.println("No cars match: " + text + ".");
+                continue;
+            }
+            List<Car> cars = new ArrayList<>(hits.size());
+            for (SearchIndex.Hit hit : hits) {
+                cars.add(hit.getCar());
+            }
+            writeTable(cars);
+            out.println(table.getRule());
+            out.println(hits.size() == 1 ? "1 match." : hits.size() + " best matches.");
+        }
+    }
+
     /**
      * Displays the Report Menu and handles user choices.
      * Available options:
      * 1. View Inventory
-     * 2. View Sales (Not Implemented)
-     * 3. Return to Manager Menu
+     * 2. Search/Filter Inventory
+     * 3. View Sales
+     * 4. View Valuation
+     * 5. View Inventory on a Past Date
+     * 6. Return to Manager Menu
      */
     private void showReportMenu() {
         while (true) {
-            System.out.println("================================");
-            System.out.println("=          Report Menu         =");
-            System.out.println("================================");
-            System.out.println("1. Inventory");
-            System.out.println("2. Sales");
-            System.out.println("3. Main Menu");
-            System.out.print("Please make a choice: ");
+            out.println("================================");
+            out.println("=          Report Menu         =");
+            out.println("================================");
+            out.println("1. Inventory");
+            out.println("2. Search/Filter inventory");
+            out.println("3. Sales");
+            out.println("4. Valuation");
+            out.println("5. Inventory history");
+            out.println("6. Main Menu");
+            out.print("Please make a choice: ");
 
-            String choice = scanner.nextLine();
+            String choice = readLine();
 
             if (choice.equals("1")) {
                 displayInventory();
+            } else if (choice.equals("2")) {
+                searchInventory();
             } else if (choice.equals("3")) {
+                displaySales();
+            } else if (choice.equals("4")) {
+                displayValuation();
+            } else if (choice.equals("5")) {
+                displayInventoryHistory();
+            } else if (choice.equals("6")) {
                 return;
             } else {
-                System.out.println("I’m sorry, but option " + choice + " has not been implemented yet. Please pick option 1 or 3.");
+                out.println("Invalid choice. Please try again.");
             }
         }
     }
@@ -153,27 +406,340 @@ public class Menu {
      * This data is now stored as `Car` objects instead of raw strings.
      */
     private void displayInventory() {
-        List<Car> inventory = dealership.getInventory();
+        Metrics.Sample sample = INVENTORY_REPORT.time();
+        try {
+            verifyReportViews();
+            // The cars and the summary of the same version, even if the files are reloaded meanwhile
+            Dealership.State state = dealership.getState();
+            List<Car> inventory = new ArrayList<>(state.getInventoryStore().getCars());
+
+            if (inventory.isEmpty()) {
+                out.println("No cars available in inventory.");
+                return;
+            }
+
+            out.println("================================");
+            out.println("=          Inventory           =");
+            out.println("================================");
+            writeTable(inventory);
+
+            // Summary, read from the precomputed report views
+            ReportViews views = state.getReportViews();
+            out.println(table.getRule());
+            for (Map.Entry<String, Long> e : views.getCountsByStatus().entrySet()) {
+                out.printf("%-12s %d cars%n", e.getKey() + ":", e.getValue());
+            }
+            for (Map.Entry<String, Double> e : views.getInventoryValueByMake().entrySet()) {
+                out.printf("%-12s $%.2f%n", e.getKey() + ":", e.getValue());
+            }
+            out.printf("%-12s $%.2f%n", "Total value:", views.getInventoryValue());
+            out.println("Days on lot:");
+            for (Map.Entry<String, Long> e : views.getDaysOnLot(LocalDate.now()).entrySet()) {
+                out.printf("  %-14s %d cars%n", e.getKey() + ":", e.getValue());
+            }
+        } finally {
+            sample.close();
+        }
+        out.println("Press the return key to continue...");
+        readLine();
+    }
+
+    /**
+     * Asks for search criteria, then shows the matching cars one page at a
+     * time. An empty answer leaves a criterion unset.
+     */
+    private void searchInventory() {
+        out.println("================================");
+        out.println("=   Search/Filter Inventory    =");
+        out.println("================================");
+        out.println("Leave a criterion empty to skip it.");
+        InventoryQuery query = new InventoryQuery();
+        query.make(prompt("Make: "));
+        query.model(prompt("Model: "));
+        Double minYear = readNumber("Year from: ");
+        Double maxYear = readNumber("Year to: ");
+        if (minYear != null || maxYear != null) {
+            query.years(minYear == null ? Integer.MIN_VALUE : minYear.intValue(),
+                    maxYear == null ? Integer.MAX_VALUE : maxYear.intValue());
+        }
+        Double minPrice = readNumber("Price from: ");
+        Double maxPrice = readNumber("Price to: ");
+        if (minPrice != null || maxPrice != null) {
+            query.prices(minPrice == null ? Double.NEGATIVE_INFINITY : minPrice,
+                    maxPrice == null ? Double.POSITIVE_INFINITY : maxPrice);
+        }
+        Double maxMileage = readNumber("Max mileage: ");
+        if (maxMileage != null) {
+            query.mileages(Integer.MIN_VALUE, maxMileage.intValue());
+        }
+        while (true) {
+            String status = prompt("Status (Available, Sold, In-Service, In-Transit, On-Hold): ");
+            if (status.isEmpty() || CarStatus.of(status) != null) {
+                query.status(status.isEmpty() ? null : CarStatus.of(status));
+                break;
+            }
+            out.println("Unknown status: " + status);
+        }
+        while (true) {
+            String[] sort = prompt("Sort by (listed, price, mileage, year, vin; add \"desc\" for descending): ")
+                    .split("\\s+");
+            InventoryQuery.Order order = sort[0].isEmpty() ? InventoryQuery.Order.LISTED : InventoryQuery.Order.of(sort[0]);
+            if (order != null && sort.length <= 2 && (sort.length == 1 || sort[1].equalsIgnoreCase("desc"))) {
+                query.orderBy(order, sort.length == 2);
+                break;
+            }
+            out.println("Invalid order. Please try again.");
+        }
+        Double pageSize = readNumber("Results per page [" + InventoryQuery.DEFAULT_PAGE_SIZE + "]: ");
+        if (pageSize != null && pageSize >= 1) {
+            query.pageSize(pageSize.intValue());
+        }
+
+        String cursor = null;
+        int shown = 0;
+        while (true) {
+            InventoryQuery.Page page = dealership.searchInventory(query, cursor);
+            if (page.getCars().isEmpty() && cursor == null) {
+                out.println("No cars match: " + query + ".");
+                return;
+            }
+            writeTable(page.getCars());
+            shown += page.getCars().size();
+            if (!page.hasMore()) {
+                out.println("End of results (" + shown + " cars). Press the return key to continue...");
+                readLine();
+                return;
+            }
+            out.print("Cars " + (shown - page.getCars().size() + 1) + " to " + shown
+                    + ". Enter n for the next page, or press the return key to go back: ");
+            if (!readLine().trim().equalsIgnoreCase("n")) {
+                return;
+            }
+            cursor = page.getNextCursor();
+        }
+    }
 
-        if (inventory.isEmpty()) {
-            System.out.println("No cars available in inventory.");
+    /**
+     * Writes cars as a table, through a buffer, with the table formatter.
+     */
+    private void writeTable(Iterable<Car> cars) {
+        // Not closed: closing it would close the output stream of the menu
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        try {
+            table.writeHeader(writer);
+            for (Car car : cars) {
+                table.writeRow(writer, car);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a PrintStream doesn't throw, so this doesn't happen
+        }
+    }
+
+    /**
+     * Prints a prompt and reads the answer.
+     *
+     * @return The answer, trimmed.
+     */
+    private String prompt(String prompt) {
+        out.print(prompt);
+        return readLine().trim();
+    }
+
+    /**
+     * Asks for a number until a valid one, or nothing, is entered.
+     *
+     * @return The number, or null if the answer was empty.
+     */
+    private Double readNumber(String prompt) {
+        while (true) {
+            String answer = prompt(prompt);
+            if (answer.isEmpty()) {
+                return null;
+            }
+            try {
+                return Double.parseDouble(answer);
+            } catch (NumberFormatException e) {
+                out.println("Invalid number: " + answer);
+            }
+        }
+    }
+
+    /**
+     * Prints the differences between the precomputed report views and a full
+     * recomputation, when the consistency check is enabled.
+     */
+    private void verifyReportViews() {
+        if (!verifyViews) {
             return;
         }
+        List<String> differences = dealership.verifyReportViews();
+        if (differences.isEmpty()) {
+            out.println("Report views verified: no differences.");
+        }
+        for (String difference : differences) {
+            out.println("VIEW MISMATCH: " + difference);
+        }
+    }
 
-        System.out.println("================================");
-        System.out.println("=          Inventory           =");
-        System.out.println("================================");
-        System.out.printf("%-10s %-10s %-10s %-6s %-10s %-10s %-10s %-12s%n",
-                "VIN", "Make", "Model", "Year", "Mileage", "Color", "Price", "Status");
-        System.out.println("---------------------------------------------------------------------------");
+    /**
+     * Displays the sales report: overall totals, the last twelve months with
+     * their three-month rolling revenue, totals by salesperson and by make and
+     * model, and the sales with the highest margins.
+     */
+    private void displaySales() {
+        Metrics.Sample sample = SALES_REPORT.time();
+        try {
+            verifyReportViews();
+            SalesReport report = dealership.analyzeSales(5);
+            SalesReport.Totals overall = report.getOverall();
+            if (overall.getCount() == 0) {
+                out.println("No sales recorded.");
+                return;
+            }
+
+            out.println("================================");
+            out.println("=            Sales             =");
+            out.println("================================");
+            out.printf("Sales: %d   Revenue: $%.2f   Cost: $%.2f   Margin: $%.2f%n",
+                    overall.getCount(), overall.getRevenue(), overall.getCost(), overall.getMargin());
+
+            out.println("---------------------------------------------------------------------------");
+            out.printf("%-10s %-8s %-14s %-14s %-14s%n", "Month", "Sales", "Revenue", "Margin", "3-mo Revenue");
+            Map<YearMonth, SalesReport.Totals> rolling = report.getRolling(3);
+            int months = 0;
+            for (Map.Entry<YearMonth, SalesReport.Totals> e : report.getByMonth().descendingMap().entrySet()) {
+                if (months++ == 12) {
+                    break;
+                }
+                SalesReport.Totals t = e.getValue();
+                out.printf("%-10s %-8d $%-13.2f $%-13.2f $%-13.2f%n", e.getKey(), t.getCount(),
+                        t.getRevenue(), t.getMargin(), rolling.get(e.getKey()).getRevenue());
+            }
+            printTotals("Salesperson", dealership.getReportViews().getSalesBySalesperson());
+            printTotals("Make/Model", report.getByMakeModel());
+
+            out.println("---------------------------------------------------------------------------");
+            out.println("Top sales by margin:");
+            for (Sale sale : report.getTopSales()) {
+                out.printf("%-10s %-10s $%-9.2f %-15s %-15s%n", sale.getDate(), sale.getVin(),
+                        sale.getMargin(), sale.getSalesperson(), sale.getCustomer());
+            }
+        } finally {
+            sample.close();
+        }
+        out.println("Press the return key to continue...");
+        readLine();
+    }
+
+    /**
+     * Displays the suggested price and expected margin of every car not sold
+     * (see {@link ValuationEngine}), and offers to reprice them all.
+     */
+    private void displayValuation() {
+        Metrics.Sample sample = VALUATION_REPORT.time();
+        try {
+            List<ValuationEngine.Valuation> valuations = dealership.getValuationEngine().valueAll();
+            valuations.removeIf(v -> v.getCar().getCarStatus() == CarStatus.SOLD);
+            if (valuations.isEmpty()) {
+                out.println("No cars available in inventory.");
+                return;
+            }
+
+            out.println("================================");
+            out.println("=          Valuation           =");
+            out.println("================================");
+            out.printf("%-10s %-10s %-10s %-6s %-12s %-12s %-12s %-12s %-14s%n", "VIN", "Make", "Model", "Year",
+                    "Price", "Suggested", "Difference", "Exp. margin", "Based on");
+            double price = 0;
+            double suggested = 0;
+            double margin = 0;
+            for (ValuationEngine.Valuation v : valuations) {
+                Car car = v.getCar();
+                double expectedMargin = v.getExpectedMargin();
+                out.printf("%-10s %-10s %-10s %-6d $%-11.2f $%-11.2f $%-11.2f %-12s %-14s%n", car.getVin(),
+                        car.getMake(), car.getModel(), car.getYear(), car.getPrice(), v.getSuggestedPrice(),
+                        v.getPriceGap(), Double.isNaN(expectedMargin) ? "unknown" : String.format("$%.2f", expectedMargin),
+                        v.getBasis() == ValuationEngine.Basis.NONE ? "too few sales" : v.getSamples() + " sales");
+                price += car.getPrice();
+                suggested += v.getSuggestedPrice();
+                if (!Double.isNaN(expectedMargin)) {
+                    margin += expectedMargin;
+                }
+            }
+            out.println("---------------------------------------------------------------------------");
+            out.printf("Price: $%.2f   Suggested: $%.2f   Expected margin (known costs): $%.2f%n", price, suggested,
+                    margin);
+        } finally {
+            sample.close();
+        }
+
+        if (prompt("Reprice every car to its suggested price? (y/N): ").equalsIgnoreCase("y")) {
+            try {
+                out.println(dealership.repriceInventory() + " cars repriced.");
+            } catch (IOException e) {
+                out.println("ERROR: Unable to save the new prices -> " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Displays the inventory as it was at the end of a day, with its value
+     * and the number of changes made that day (see {@link InventoryHistory}).
+     */
+    private void displayInventoryHistory() {
+        InventoryHistory history = dealership.getHistory();
+        if (history == null) {
+            out.println("The inventory history is not kept.");
+            return;
+        }
+        String text = prompt("Date (yyyy-mm-dd): ");
+        LocalDate date;
+        try {
+            date = LocalDate.parse(text);
+        } catch (DateTimeParseException e) {
+            out.println("Invalid date: " + text + ".");
+            return;
+        }
+        InventoryHistory.Snapshot snapshot = history.getSnapshot(date);
+        if (snapshot.getCars().isEmpty()) {
+            out.println("No cars in inventory on " + date + ".");
+            return;
+        }
+
+        out.println("================================");
+        out.println("=   Inventory on " + date + "    =");
+        out.println("================================");
+        writeTable(snapshot.getCars());
+        out.println(table.getRule());
+        for (Map.Entry<String, Long> e : snapshot.getCountsByStatus().entrySet()) {
+            out.printf("%-12s %d cars%n", e.getKey() + ":", e.getValue());
+        }
+        out.printf("%-12s $%.2f%n", "Total value:", snapshot.getValue());
+        long dayStart = date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        out.println(history.getChanges(dayStart, snapshot.getTime() + 1).size() + " changes that day.");
+        out.println("Press the return key to continue...");
+        readLine();
+    }
+
+    /**
+     * Reads the next line of input, once everything written so far has been
+     * flushed so the user can see the prompt.
+     *
+     * @return The line, without its line terminator.
+     * @throws NoSuchElementException If the input has ended.
+     */
+    private String readLine() {
+        out.flush();
+        return scanner.nextLine();
+    }
 
-        for (Car car : inventory) {
-            System.out.printf("%-10s %-10s %-10s %-6d %-10d %-10s $%-9.2f %-12s%n",
-                    car.getVin(), car.getMake(), car.getModel(),
-                    car.getYear(), car.getMileage(), car.getColor(),
-                    car.getPrice(), car.getStatus());
+    private void printTotals(String title, Map<String, SalesReport.Totals> totals) {
+        out.println("---------------------------------------------------------------------------");
+        out.printf("%-20s %-8s %-14s %-14s%n", title, "Sales", "Revenue", "Margin");
+        for (Map.Entry<String, SalesReport.Totals> e : totals.entrySet()) {
+            SalesReport.Totals t = e.getValue();
+            out.printf("%-20s %-8d $%-13.2f $%-13.2f%n", e.getKey(), t.getCount(), t.getRevenue(), t.getMargin());
         }
-        System.out.println("Press the return key to continue...");
-        scanner.nextLine();
     }
 }
@@ -0,0 +1,240 @@
+package dealership;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ReportViews class keeps report aggregates up to date as the dealership
+ * changes, so reports read precomputed values instead of scanning the inventory
+ * and the sales:
+ * - Number of cars by status.
+ * - Inventory value (sum of list prices of the cars not sold) by make.
+ * - Days on lot histogram of the cars not sold.
+ * - Sales totals by salesperson.
+ *
+ * The days on lot of a car grow every day, so the histogram keeps the number
+ * of cars not sold by acquisition date, which only changes with the cars, and
+ * buckets them by age when read: reading it costs one step per acquisition
+ * date, whatever the number of cars.
+ *
+ * The views are updated by the {@link InventoryListener} callbacks and by
+ * {@link #saleRecorded(Sale)}. {@link #verify(Collection, Collection)} recomputes
+ * every view from scratch and reports where the incremental values differ.
+ */
+public class ReportViews implements InventoryListener {
+    private static final double TOLERANCE = 0.005;
+    // Upper bounds of the days on lot buckets, the last one being open
+    private static final int[] DAYS_ON_LOT_BOUNDS = {30, 60, 90, 180};
+    private static final String UNKNOWN_DAYS_ON_LOT = "unknown";
+
+    private final Map<String, LongAdder> countsByStatus = new ConcurrentHashMap<>();
+    private final Map<String, DoubleAdder> valueByMake = new ConcurrentHashMap<>();
+    private final Map<LocalDate, LongAdder> countsByAcquisitionDate = new ConcurrentHashMap<>();
+    private final LongAdder countWithoutAcquisitionDate = new LongAdder();
+    private final Map<String, SalesTotals> salesBySalesperson = new ConcurrentHashMap<>();
+
+    /**
+     * Sales totals of one salesperson, updated concurrently.
+     */
+    private static class SalesTotals {
+        final LongAdder count = new LongAdder();
+        final DoubleAdder revenue = new DoubleAdder();
+        final DoubleAdder cost = new DoubleAdder();
+
+        SalesReport.Totals snapshot() {
+            return new SalesReport.Totals(count.sum(), revenue.sum(), cost.sum());
+        }
+    }
+
+    /**
+     * Builds views over the given cars and sales.
+     *
+     * @param cars  The cars in inventory.
+     * @param sales The sales recorded so far.
+     * @return The views.
+     */
+    public static ReportViews of(Collection<Car> cars, Collection<Sale> sales) {
+        ReportViews views = new ReportViews();
+        for (Car car : cars) {
+            views.carAdded(car);
+        }
+        for (Sale sale : sales) {
+            views.saleRecorded(sale);
+        }
+        return views;
+    }
+
+    @Override
+    public void carAdded(Car car) {
+        apply(car, 1);
+    }
+
+    @Override
+    public void carRemoved(Car car) {
+        apply(car, -1);
+    }
+
+    @Override
+    public void carUpdated(Car previous, Car current) {
+        apply(previous, -1);
+        apply(current, 1);
+    }
+
+    /**
+     * Called when a sale is recorded.
+     *
+     * @param sale The recorded sale.
+     */
+    public void saleRecorded(Sale sale) {
+        SalesTotals totals = salesBySalesperson.computeIfAbsent(sale.getSalesperson(), k -> new SalesTotals());
+        totals.count.increment();
+        totals.revenue.add(sale.getPrice());
+        totals.cost.add(sale.getCost());
+    }
+
+    /**
+     * @return The number of cars of each status, sorted by status.
+     */
+    public Map<String, Long> getCountsByStatus() {
+        Map<String, Long> counts = new TreeMap<>();
+        countsByStatus.forEach((status, count) -> {
+            long n = count.sum();
+            if (n != 0) {
+                counts.put(status, n);
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * @return The inventory value of each make, sorted by make.
+     */
+    public Map<String, Double> getInventoryValueByMake() {
+        Map<String, Double> values = new TreeMap<>();
+        valueByMake.forEach((make, value) -> {
+            double v = value.sum();
+            if (Math.abs(v) > TOLERANCE) {
+                values.put(make, v);
+            }
+        });
+        return values;
+    }
+
+    /**
+     * @return The total inventory value.
+     */
+    public double getInventoryValue() {
+        double total = 0;
+        for (DoubleAdder value : valueByMake.values()) {
+            total += value.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Computes the days on lot histogram of the cars not sold: the number of
+     * cars acquired 0 to 30, 31 to 60, 61 to 90, 91 to 180 and more than 180
+     * days before a given day, then of the cars whose acquisition date is unknown.
+     * Cars acquired after the day count as acquired on the day.
+     *
+     * @param today The day the days on lot are counted to.
+     * @return The number of cars in each bucket, in bucket order.
+     */
+    public Map<String, Long> getDaysOnLot(LocalDate today) {
+        long[] counts = new long[DAYS_ON_LOT_BOUNDS.length + 1];
+        countsByAcquisitionDate.forEach((date, count) -> {
+            long days = Math.max(0, today.toEpochDay() - date.toEpochDay());
+            int bucket = 0;
+            while (bucket < DAYS_ON_LOT_BOUNDS.length && days > DAYS_ON_LOT_BOUNDS[bucket]) {
+                bucket++;
+            }
+            counts[bucket] += count.sum();
+        });
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            if (bucket < DAYS_ON_LOT_BOUNDS.length) {
+                int from = bucket == 0 ? 0 : DAYS_ON_LOT_BOUNDS[bucket - 1] + 1;
+                histogram.put(from + "-" + DAYS_ON_LOT_BOUNDS[bucket] + " days", counts[bucket]);
+            } else {
+                histogram.put("over " + DAYS_ON_LOT_BOUNDS[bucket - 1] + " days", counts[bucket]);
+            }
+        }
+        histogram.put(UNKNOWN_DAYS_ON_LOT, countWithoutAcquisitionDate.sum());
+        return histogram;
+    }
+
+    /**
+     * @return The sales totals of each salesperson, sorted by name.
+     */
+    public Map<String, SalesReport.Totals> getSalesBySalesperson() {
+        Map<String, SalesReport.Totals> totals = new TreeMap<>();
+        salesBySalesperson.forEach((name, t) -> totals.put(name, t.snapshot()));
+        return totals;
+    }
+
+    /**
+     * Consistency check: recomputes every view from scratch and compares the
+     * result with the incrementally maintained values.
+     *
+     * @param cars  The cars currently in inventory.
+     * @param sales The sales recorded so far.
+     * @return A description of each difference found; empty if the views are consistent.
+     */
+    public List<String> verify(Collection<Car> cars, Collection<Sale> sales) {
+        ReportViews expected = of(cars, sales);
+        List<String> differences = new ArrayList<>();
+        diff("count of status", expected.getCountsByStatus(), getCountsByStatus(),
+                (a, b) -> a.longValue() == b.longValue(), differences);
+        diff("inventory value of make", expected.getInventoryValueByMake(), getInventoryValueByMake(),
+                (a, b) -> Math.abs(a - b) <= TOLERANCE, differences);
+        LocalDate today = LocalDate.now();
+        diff("days on lot", expected.getDaysOnLot(today), getDaysOnLot(today),
+                (a, b) -> a.longValue() == b.longValue(), differences);
+        diff("sales of", expected.getSalesBySalesperson(), getSalesBySalesperson(),
+                (a, b) -> a.getCount() == b.getCount()
+                        && Math.abs(a.getRevenue() - b.getRevenue()) <= TOLERANCE
+                        && Math.abs(a.getCost() - b.getCost()) <= TOLERANCE, differences);
+        return differences;
+    }
+
+    private void apply(Car car, int sign) {
+        countsByStatus.computeIfAbsent(car.getStatus(), k -> new LongAdder()).add(sign);
+        if (car.getCarStatus() != CarStatus.SOLD) {
+            valueByMake.computeIfAbsent(car.getMake(), k -> new DoubleAdder()).add(sign * car.getPrice());
+            LocalDate acquired = car.getAcquisitionDate();
+            if (acquired == null) {
+                countWithoutAcquisitionDate.add(sign);
+            } else {
+                countsByAcquisitionDate.computeIfAbsent(acquired, k -> new LongAdder()).add(sign);
+            }
+        }
+    }
+
+    private interface Same<V> {
+        boolean test(V expected, V actual);
+    }
+
+    private static <V> void diff(String what, Map<String, V> expected, Map<String, V> actual, Same<V> same,
+                                 List<String> differences) {
+        Set<String> keys = new TreeSet<>(expected.keySet());
+        keys.addAll(actual.keySet());
+        for (String key : keys) {
+            V e = expected.get(key);
+            V a = actual.get(key);
+            if (e == null || a == null ? !Objects.equals(e, a) : !same.test(e, a)) {
+                differences.add(what + " " + key + ": expected " + e + ", found " + a);
+            }
+        }
+    }
+}
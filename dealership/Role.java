@@ -0,0 +1,79 @@
+package dealership;
+
+/**
+ * The Role enum lists the roles a user can have, each with its own menu.
+ */
+public enum Role {
+    MANAGER("manager", "Manager"),
+    SALESPERSON("salesperson", "Salesperson");
+
+    private static final Role[] VALUES = values();
+
+    private final String label;
+    private final String title;
+
+    Role(String label, String title) {
+        this.label = label;
+        this.title = title;
+    }
+
+    /**
+     * @return The role as written in the users file (e.g., manager).
+     */
+    public String getLabel() { return label; }
+
+    /**
+     * @return The role as shown to users (e.g., Manager).
+     */
+    public String getTitle() { return title; }
+
+    /**
+     * Finds the role matching a label, ignoring case and any character other
+     * than a letter, such as the stray digits of hand-edited users files.
+     *
+     * @param label The label (e.g., "Manager" or "1salesperson").
+     * @return The matching role, or null if the label is not a known role.
+     */
+    public static Role of(String label) {
+        if (label == null) {
+            return null;
+        }
+        for (Role role : VALUES) {
+            if (role.label.equals(label)) {
+                return role; // the usual case, without looking at each letter
+            }
+        }
+        for (Role role : VALUES) {
+            if (lettersMatch(label, role.label)) {
+                return role;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param role A role, or null if unknown.
+     * @return The label of the role, or "" if it is unknown.
+     */
+    public static String labelOf(Role role) {
+        return role == null ? "" : role.label;
+    }
+
+    private static boolean lettersMatch(String value, String label) {
+        int matched = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < 'a' || c > 'z') && (c < 'A' || c > 'Z')) {
+                continue;
+            }
+            if (matched == label.length() || Character.toLowerCase(c) != label.charAt(matched)) {
+                return false;
+            }
+            matched++;
+        }
+        return matched == label.length();
+    }
+
+    @Override
+    public String toString() { return title; }
+}
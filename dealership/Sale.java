@@ -0,0 +1,53 @@
+package dealership;
+
+import java.time.LocalDate;
+
+/**
+ * The Sale class represents a single car sale.
+ */
+public class Sale {
+    private LocalDate date;
+    private String vin;
+    private double cost;
+    private double price;
+    private String salesperson;
+    private String customer;
+
+    /**
+     * Constructs a Sale object with all attributes.
+     *
+     * @param date        Date of the sale
+     * @param vin         Vehicle Identification Number of the car sold
+     * @param cost        What the dealership paid for the car, in USD
+     * @param price       What the customer paid for the car, in USD
+     * @param salesperson Name of the salesperson
+     * @param customer    Name of the customer
+     */
+    public Sale(LocalDate date, String vin, double cost, double price, String salesperson, String customer) {
+        this.date = date;
+        this.vin = vin;
+        this.cost = cost;
+        this.price = price;
+        this.salesperson = salesperson;
+        this.customer = customer;
+    }
+
+    /** Returns a formatted string representation of the sale.
+     */
+    @Override
+    public String toString() {
+        return date + ", " + vin + ", cost $" + cost + ", price $" + price + ", sold by " + salesperson + " to " + customer;
+    }
+
+    public LocalDate getDate() { return date; }
+    public String getVin() { return vin; }
+    public double getCost() { return cost; }
+    public double getPrice() { return price; }
+    public String getSalesperson() { return salesperson; }
+    public String getCustomer() { return customer; }
+
+    /**
+     * @return The margin made on the sale (price minus cost).
+     */
+    public double getMargin() { return price - cost; }
+}
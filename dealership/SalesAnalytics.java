@@ -0,0 +1,180 @@
+package dealership;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * The SalesAnalytics class computes a {@link SalesReport} from a list of sales.
+ *
+ * Every aggregate is computed in a single pass over the sales. Monthly totals
+ * are accumulated in primitive arrays indexed by month, and per-group totals in
+ * mutable accumulators, so the pass allocates almost nothing per sale. Large
+ * histories are split into chunks that are aggregated in parallel and merged.
+ */
+public class SalesAnalytics {
+    public static final int DEFAULT_TOP_SALES = 10;
+    public static final int PARALLEL_THRESHOLD = 50_000;
+    static final String UNKNOWN = "Unknown";
+
+    // Months from January of FIRST_YEAR to December of LAST_YEAR get a slot
+    // in the monthly arrays. Sales outside that range are left out of the
+    // monthly totals only.
+    private static final int FIRST_YEAR = 1900;
+    private static final int LAST_YEAR = 2199;
+    private static final int MONTHS = (LAST_YEAR - FIRST_YEAR + 1) * 12;
+
+    private static final Comparator<Sale> BY_MARGIN = Comparator.comparingDouble(Sale::getMargin);
+
+    private final InventoryStore inventory;
+    private final int topSales;
+
+    /**
+     * Constructs an analytics engine.
+     *
+     * @param inventory The inventory used to find the make and model of the cars sold.
+     */
+    public SalesAnalytics(InventoryStore inventory) {
+        this(inventory, DEFAULT_TOP_SALES);
+    }
+
+    /**
+     * Constructs an analytics engine.
+     *
+     * @param inventory The inventory used to find the make and model of the cars sold.
+     * @param topSales  The number of sales to keep in the top sales list.
+     */
+    public SalesAnalytics(InventoryStore inventory, int topSales) {
+        this.inventory = inventory;
+        this.topSales = topSales;
+    }
+
+    /**
+     * Aggregates sales, in parallel when there are at least {@link #PARALLEL_THRESHOLD} of them.
+     *
+     * @param sales The sales to aggregate.
+     * @return The report.
+     */
+    public SalesReport analyze(List<Sale> sales) {
+        return analyze(sales, sales.size() >= PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Aggregates sales.
+     *
+     * @param sales    The sales to aggregate.
+     * @param parallel Whether to split the work across cores.
+     * @return The report.
+     */
+    public SalesReport analyze(List<Sale> sales, boolean parallel) {
+        List<Sale> list = sales instanceof RandomAccess ? sales : new ArrayList<>(sales);
+        Accumulator result;
+        if (!parallel || list.size() < 2) {
+            result = new Accumulator().addAll(list, 0, list.size());
+        } else {
+            int chunks = Math.min(list.size(), Runtime.getRuntime().availableProcessors() * 4);
+            int chunkSize = (list.size() + chunks - 1) / chunks;
+            result = IntStream.range(0, chunks).parallel()
+                    .mapToObj(i -> new Accumulator().addAll(list, i * chunkSize, Math.min(list.size(), (i + 1) * chunkSize)))
+                    .reduce(Accumulator::merge)
+                    .orElseGet(Accumulator::new);
+        }
+        return result.toReport();
+    }
+
+    /**
+     * Partial aggregates over a range of sales.
+     */
+    private class Accumulator {
+        final SalesReport.Totals overall = new SalesReport.Totals();
+        final long[] monthCounts = new long[MONTHS];
+        final double[] monthRevenue = new double[MONTHS];
+        final double[] monthCost = new double[MONTHS];
+        final Map<String, SalesReport.Totals> bySalesperson = new HashMap<>();
+        final Map<String, Map<String, SalesReport.Totals>> byMakeModel = new HashMap<>();
+        final PriorityQueue<Sale> top = new PriorityQueue<>(BY_MARGIN);
+
+        Accumulator addAll(List<Sale> sales, int from, int to) {
+            for (int i = from; i < to; i++) {
+                add(sales.get(i));
+            }
+            return this;
+        }
+
+        void add(Sale sale) {
+            overall.add(sale);
+
+            LocalDate date = sale.getDate();
+            int month = (date.getYear() - FIRST_YEAR) * 12 + date.getMonthValue() - 1;
+            if (month >= 0 && month < MONTHS) {
+                monthCounts[month]++;
+                monthRevenue[month] += sale.getPrice();
+                monthCost[month] += sale.getCost();
+            }
+
+            bySalesperson.computeIfAbsent(sale.getSalesperson(), k -> new SalesReport.Totals()).add(sale);
+
+            Car car = inventory.getByVin(sale.getVin());
+            String make = car != null ? car.getMake() : UNKNOWN;
+            String model = car != null ? car.getModel() : "";
+            byMakeModel.computeIfAbsent(make, k -> new HashMap<>())
+                    .computeIfAbsent(model, k -> new SalesReport.Totals()).add(sale);
+
+            if (topSales > 0) {
+                if (top.size() < topSales) {
+                    top.add(sale);
+                } else if (sale.getMargin() > top.peek().getMargin()) {
+                    top.poll();
+                    top.add(sale);
+                }
+            }
+        }
+
+        Accumulator merge(Accumulator other) {
+            overall.add(other.overall);
+            for (int m = 0; m < MONTHS; m++) {
+                monthCounts[m] += other.monthCounts[m];
+                monthRevenue[m] += other.monthRevenue[m];
+                monthCost[m] += other.monthCost[m];
+            }
+            other.bySalesperson.forEach((k, v) -> bySalesperson.computeIfAbsent(k, x -> new SalesReport.Totals()).add(v));
+            other.byMakeModel.forEach((make, models) -> {
+                Map<String, SalesReport.Totals> mine = byMakeModel.computeIfAbsent(make, x -> new HashMap<>());
+                models.forEach((model, v) -> mine.computeIfAbsent(model, x -> new SalesReport.Totals()).add(v));
+            });
+            for (Sale sale : other.top) {
+                if (top.size() < topSales) {
+                    top.add(sale);
+                } else if (sale.getMargin() > top.peek().getMargin()) {
+                    top.poll();
+                    top.add(sale);
+                }
+            }
+            return this;
+        }
+
+        SalesReport toReport() {
+            TreeMap<YearMonth, SalesReport.Totals> months = new TreeMap<>();
+            for (int m = 0; m < MONTHS; m++) {
+                if (monthCounts[m] > 0) {
+                    months.put(YearMonth.of(FIRST_YEAR + m / 12, m % 12 + 1),
+                            new SalesReport.Totals(monthCounts[m], monthRevenue[m], monthCost[m]));
+                }
+            }
+            TreeMap<String, SalesReport.Totals> makeModels = new TreeMap<>();
+            byMakeModel.forEach((make, models) -> models.forEach((model, totals) ->
+                    makeModels.put(model.isEmpty() ? make : make + " " + model, totals)));
+            List<Sale> best = new ArrayList<>(top);
+            best.sort(BY_MARGIN.reversed());
+            return new SalesReport(overall, months, new TreeMap<>(bySalesperson), makeModels, best);
+        }
+    }
+}
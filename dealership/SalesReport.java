@@ -0,0 +1,136 @@
+package dealership;
+
+import java.time.YearMonth;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * The SalesReport class holds the aggregates computed by {@link SalesAnalytics}:
+ * - Overall totals.
+ * - Totals by month, by salesperson and by make and model.
+ * - The sales with the highest margins.
+ * Rolling windows are derived from the monthly totals on request.
+ */
+public class SalesReport {
+    /**
+     * Number of sales, revenue and cost for a group of sales.
+     */
+    public static class Totals {
+        long count;
+        double revenue;
+        double cost;
+
+        public Totals() {
+        }
+
+        public Totals(long count, double revenue, double cost) {
+            this.count = count;
+            this.revenue = revenue;
+            this.cost = cost;
+        }
+
+        void add(Sale sale) {
+            count++;
+            revenue += sale.getPrice();
+            cost += sale.getCost();
+        }
+
+        void add(Totals other) {
+            count += other.count;
+            revenue += other.revenue;
+            cost += other.cost;
+        }
+
+        void subtract(Totals other) {
+            count -= other.count;
+            revenue -= other.revenue;
+            cost -= other.cost;
+        }
+
+        public long getCount() { return count; }
+        public double getRevenue() { return revenue; }
+        public double getCost() { return cost; }
+        public double getMargin() { return revenue - cost; }
+
+        @Override
+        public String toString() {
+            return count + " sales, revenue $" + revenue + ", margin $" + getMargin();
+        }
+    }
+
+    private final Totals overall;
+    private final NavigableMap<YearMonth, Totals> byMonth;
+    private final Map<String, Totals> bySalesperson;
+    private final Map<String, Totals> byMakeModel;
+    private final List<Sale> topSales;
+
+    SalesReport(Totals overall, NavigableMap<YearMonth, Totals> byMonth, Map<String, Totals> bySalesperson,
+                Map<String, Totals> byMakeModel, List<Sale> topSales) {
+        this.overall = overall;
+        this.byMonth = Collections.unmodifiableNavigableMap(byMonth);
+        this.bySalesperson = Collections.unmodifiableMap(bySalesperson);
+        this.byMakeModel = Collections.unmodifiableMap(byMakeModel);
+        this.topSales = Collections.unmodifiableList(topSales);
+    }
+
+    /**
+     * @return The totals over all sales.
+     */
+    public Totals getOverall() { return overall; }
+
+    /**
+     * @return The totals of each month having sales, in chronological order.
+     */
+    public NavigableMap<YearMonth, Totals> getByMonth() { return byMonth; }
+
+    /**
+     * @return The totals of each salesperson.
+     */
+    public Map<String, Totals> getBySalesperson() { return bySalesperson; }
+
+    /**
+     * @return The totals of each make and model (e.g., "Toyota Camry"), sorted by name.
+     * Sales of cars that are not in the inventory are grouped under "Unknown".
+     */
+    public Map<String, Totals> getByMakeModel() { return byMakeModel; }
+
+    /**
+     * @return The sales with the highest margins, highest first.
+     */
+    public List<Sale> getTopSales() { return topSales; }
+
+    /**
+     * Computes rolling totals: for each month from the first to the last month
+     * having sales, the totals over that month and the months preceding it.
+     *
+     * @param months The size of the window, in months.
+     * @return The rolling totals of each month, in chronological order.
+     */
+    public NavigableMap<YearMonth, Totals> getRolling(int months) {
+        if (months < 1) {
+            throw new IllegalArgumentException("Window must be at least one month");
+        }
+        NavigableMap<YearMonth, Totals> rolling = new TreeMap<>();
+        if (byMonth.isEmpty()) {
+            return rolling;
+        }
+        Totals window = new Totals();
+        Deque<Totals> inWindow = new ArrayDeque<>();
+        Totals none = new Totals();
+        for (YearMonth m = byMonth.firstKey(); !m.isAfter(byMonth.lastKey()); m = m.plusMonths(1)) {
+            Totals month = byMonth.getOrDefault(m, none);
+            window.add(month);
+            inWindow.addLast(month);
+            if (inWindow.size() > months) {
+                window.subtract(inWindow.removeFirst());
+            }
+            rolling.put(m, new Totals(window.count, window.revenue, window.cost));
+        }
+        return rolling;
+    }
+}
@@ -0,0 +1,486 @@
+package dealership;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * The SearchIndex class finds cars from free text, such as "tyota cam" or the
+ * start of a VIN, and ranks them by relevance.
+ *
+ * The text is split into words, and each word is matched against the make,
+ * model and color of the cars and against the start of their VIN:
+ * - VINs are kept sorted, so the cars whose VIN starts with a word are a
+ *   range of the index.
+ * - For each of make, model and color, the distinct values are kept sorted,
+ *   so the values starting with a word are a range too. The values are also
+ *   indexed by their trigrams, which finds the values close to a misspelled
+ *   word; those are then confirmed by their edit distance to the word. Values
+ *   are few compared to cars, so matching a word is cheap.
+ * A word scores {@link #EXACT} for a whole value, less for the start of one and
+ * less again for a close value. A car must match every word, and its relevance
+ * is the sum of its best score for each word.
+ *
+ * A search reads the cars matching its most selective word, best matching
+ * values first and each in VIN order, and stops as soon as the remaining cars
+ * can't rank among the results. The index follows the changes of the store it
+ * was built from as an {@link InventoryListener}, and is thread-safe: searches
+ * don't lock.
+ */
+public class SearchIndex implements InventoryListener {
+    public static final double EXACT = 1.0;
+    public static final int DEFAULT_LIMIT = 20;
+    private static final double PREFIX = 0.5; // plus up to PREFIX_LENGTH by the share of the value typed
+    private static final double PREFIX_LENGTH = 0.4;
+    private static final double FUZZY = 0.6;  // scaled down by the edit distance
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int MIN_FUZZY_LENGTH = 4;
+    private static final int VIN_LENGTH = 17;
+
+    /**
+     * A car found by a search, with its relevance.
+     */
+    public static final class Hit {
+        private final Car car;
+        private final double score;
+
+        Hit(Car car, double score) {
+            this.car = car;
+            this.score = score;
+        }
+
+        public Car getCar() { return car; }
+
+        /**
+         * @return The relevance of the car: the sum of its best score for each word.
+         */
+        public double getScore() { return score; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.2f %s", score, car);
+        }
+    }
+
+    /**
+     * The cars having a value, by VIN. Changed only under the lock of the
+     * value in {@link Field#postings}.
+     */
+    private static final class Postings {
+        final NavigableMap<String, Car> cars = new ConcurrentSkipListMap<>();
+        volatile int size;
+    }
+
+    /**
+     * The cars of a field (make, model or color) by value, the values in
+     * order, and the values by trigram.
+     */
+    private static final class Field {
+        final Function<Car, String> value;
+        final ConcurrentMap<String, Postings> postings = new ConcurrentHashMap<>();
+        final NavigableSet<String> vocabulary = new ConcurrentSkipListSet<>();
+        final ConcurrentMap<String, Set<String>> trigrams = new ConcurrentHashMap<>();
+
+        Field(Function<Car, String> value) {
+            this.value = value;
+        }
+
+        /**
+         * Adds a car, replacing the car having its VIN unless keepCurrent is set.
+         */
+        void add(Car car, boolean keepCurrent) {
+            postings.compute(InventoryStore.key(value.apply(car)), (term, p) -> {
+                if (p == null) {
+                    p = new Postings();
+                    vocabulary.add(term);
+                    for (String trigram : trigrams(term)) {
+                        trigrams.computeIfAbsent(trigram, k -> ConcurrentHashMap.newKeySet()).add(term);
+                    }
+                }
+                Car previous = keepCurrent ? p.cars.putIfAbsent(car.getVin(), car) : p.cars.put(car.getVin(), car);
+                if (previous == null) {
+                    p.size++;
+                }
+                return p;
+            });
+        }
+
+        /**
+         * Removes a car, unless it was replaced by another version.
+         */
+        void remove(Car car) {
+            postings.computeIfPresent(InventoryStore.key(value.apply(car)), (term, p) -> {
+                if (p.cars.remove(car.getVin(), car)) {
+                    p.size--;
+                }
+                if (p.size > 0) {
+                    return p;
+                }
+                vocabulary.remove(term);
+                for (String trigram : trigrams(term)) {
+                    trigrams.computeIfPresent(trigram, (k, terms) -> {
+                        terms.remove(term);
+                        return terms.isEmpty() ? null : terms;
+                    });
+                }
+                return null;
+            });
+        }
+
+        /**
+         * Scores the values of this field against a word.
+         *
+         * @return The score of each value matching the word.
+         */
+        Map<String, Double> match(String word) {
+            Map<String, Double> scores = new HashMap<>();
+            if (word.length() >= MIN_PREFIX_LENGTH) {
+                for (String term : vocabulary.subSet(word, true, word + Character.MAX_VALUE, false)) {
+                    scores.put(term, term.equals(word) ? EXACT : prefixScore(word, term.length()));
+                }
+            } else if (vocabulary.contains(word)) {
+                scores.put(word, EXACT);
+            }
+            if (word.length() >= MIN_FUZZY_LENGTH) {
+                int maxEdits = word.length() < 6 ? 1 : 2;
+                Set<String> candidates = new HashSet<>();
+                for (String trigram : trigrams(word)) {
+                    Set<String> terms = trigrams.get(trigram);
+                    if (terms != null) {
+                        candidates.addAll(terms);
+                    }
+                }
+                for (String term : candidates) {
+                    if (scores.containsKey(term) || Math.abs(term.length() - word.length()) > maxEdits) {
+                        continue;
+                    }
+                    int distance = editDistance(word, term, maxEdits);
+                    if (distance <= maxEdits) {
+                        scores.put(term, FUZZY * (1 - (double) distance / Math.max(word.length(), term.length())));
+                    }
+                }
+            }
+            return scores;
+        }
+    }
+
+    /**
+     * A group of cars matching a word with at most the same score.
+     */
+    private static final class Source {
+        final double score;
+        final Collection<Car> cars;
+
+        Source(double score, Collection<Car> cars) {
+            this.score = score;
+            this.cars = cars;
+        }
+    }
+
+    /**
+     * A word of a search, with the values it matches and their scores.
+     */
+    private final class Word {
+        final String vinPrefix; // null if too short to be matched against VINs
+        final double vinPrefixScore; // the same for every VIN, so a range of VINs is read in order
+        final List<Map<String, Double>> fieldScores = new ArrayList<>(fields.size());
+        double maxScore;
+        long matches; // number of cars matched, estimated for VIN prefixes
+
+        Word(String text) {
+            this.vinPrefix = text.length() >= MIN_PREFIX_LENGTH ? text.toUpperCase(Locale.ROOT) : null;
+            this.vinPrefixScore = prefixScore(text, Math.max(VIN_LENGTH, text.length() + 1));
+            for (Field field : fields) {
+                Map<String, Double> scores = field.match(text);
+                fieldScores.add(scores);
+                for (Map.Entry<String, Double> e : scores.entrySet()) {
+                    Postings p = field.postings.get(e.getKey());
+                    if (p != null) {
+                        maxScore = Math.max(maxScore, e.getValue());
+                        matches += p.size;
+                    }
+                }
+            }
+            if (vinPrefix != null) {
+                String first = byVin.ceilingKey(vinPrefix);
+                if (first != null && first.startsWith(vinPrefix)) {
+                    maxScore = Math.max(maxScore, byVin.containsKey(vinPrefix) ? EXACT : vinPrefixScore);
+                    // VINs are mostly digits and capital letters: each character narrows about 32 times
+                    matches += Math.max(1, size.get() >> (5 * Math.min(vinPrefix.length(), 6)));
+                }
+            }
+        }
+
+        /**
+         * @return The best score of a car for this word, 0 if the car doesn't match it.
+         */
+        double score(Car car, Map<String, String> keys) {
+            double best = 0;
+            for (int i = 0; i < fields.size(); i++) {
+                Map<String, Double> scores = fieldScores.get(i);
+                if (!scores.isEmpty()) {
+                    Double score = scores.get(keys.computeIfAbsent(fields.get(i).value.apply(car), InventoryStore::key));
+                    if (score != null) {
+                        best = Math.max(best, score);
+                    }
+                }
+            }
+            if (vinPrefix != null && car.getVin().regionMatches(true, 0, vinPrefix, 0, vinPrefix.length())) {
+                best = Math.max(best, car.getVin().length() == vinPrefix.length() ? EXACT : vinPrefixScore);
+            }
+            return best;
+        }
+
+        /**
+         * @return The groups of cars matching this word, best score first.
+         */
+        List<Source> sources() {
+            List<Source> sources = new ArrayList<>();
+            for (int i = 0; i < fields.size(); i++) {
+                for (Map.Entry<String, Double> e : fieldScores.get(i).entrySet()) {
+                    Postings p = fields.get(i).postings.get(e.getKey());
+                    if (p != null) {
+                        sources.add(new Source(e.getValue(), p.cars.values()));
+                    }
+                }
+            }
+            if (vinPrefix != null) {
+                Car exact = byVin.get(vinPrefix);
+                if (exact != null) {
+                    sources.add(new Source(EXACT, Collections.singletonList(exact)));
+                }
+                sources.add(new Source(vinPrefixScore,
+                        byVin.subMap(vinPrefix, false, vinPrefix + Character.MAX_VALUE, false).values()));
+            }
+            sources.sort(Comparator.comparingDouble((Source s) -> s.score).reversed());
+            return sources;
+        }
+    }
+
+    private final NavigableMap<String, Car> byVin = new ConcurrentSkipListMap<>(); // by upper-cased VIN
+    private final AtomicInteger size = new AtomicInteger(); // of byVin, whose size() walks the whole map
+    private final List<Field> fields = List.of(new Field(Car::getMake), new Field(Car::getModel), new Field(Car::getColor));
+
+    /**
+     * Builds an index of the cars of a store, which then follows the changes
+     * of the store. Changes made while the index is built are not lost.
+     *
+     * @param store The store.
+     * @return The index.
+     */
+    public static SearchIndex of(InventoryStore store) {
+        SearchIndex index = new SearchIndex();
+        store.addListener(index);
+        for (Car car : store.getCars()) {
+            // The listener may already have indexed a newer version of the car
+            index.add(car, true);
+            if (store.getByVin(car.getVin()) != car) {
+                index.carRemoved(car); // changed meanwhile
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public void carAdded(Car car) {
+        add(car, false);
+    }
+
+    @Override
+    public void carRemoved(Car car) {
+        if (byVin.remove(car.getVin().toUpperCase(Locale.ROOT), car)) {
+            size.decrementAndGet();
+        }
+        for (Field field : fields) {
+            field.remove(car);
+        }
+    }
+
+    @Override
+    public void carUpdated(Car previous, Car current) {
+        carAdded(current);
+        carRemoved(previous); // only removed from the values it no longer has
+    }
+
+    private void add(Car car, boolean keepCurrent) {
+        String vin = car.getVin().toUpperCase(Locale.ROOT);
+        if ((keepCurrent ? byVin.putIfAbsent(vin, car) : byVin.put(vin, car)) == null) {
+            size.incrementAndGet();
+        }
+        for (Field field : fields) {
+            field.add(car, keepCurrent);
+        }
+    }
+
+    /**
+     * Searches with the default number of results.
+     *
+     * @param text The words to search for, e.g. "tyota cam" or "1HGC".
+     * @return The best matching cars, most relevant first.
+     */
+    public List<Hit> search(String text) {
+        return search(text, DEFAULT_LIMIT);
+    }
+
+    /**
+     * Finds the cars matching every word of a text. Equally relevant cars are
+     * ranked by VIN.
+     *
+     * @param text  The words to search for, separated by spaces or punctuation.
+     * @param limit The most cars to return.
+     * @return The best matching cars, most relevant first.
+     */
+    public List<Hit> search(String text, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+        Set<String> texts = new LinkedHashSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}-]+")) {
+            if (!word.isEmpty()) {
+                texts.add(word);
+            }
+        }
+        if (texts.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Word> words = new ArrayList<>(texts.size());
+        Word driver = null;
+        for (String t : texts) {
+            Word word = new Word(t);
+            if (word.maxScore == 0) {
+                return Collections.emptyList(); // every word must match
+            }
+            words.add(word);
+            if (driver == null || word.matches < driver.matches) {
+                driver = word;
+            }
+        }
+
+        // Lowest ranked hit at the head
+        Comparator<Hit> ranking = Comparator.comparingDouble(Hit::getScore)
+                .thenComparing(h -> h.getCar().getVin(), Comparator.reverseOrder());
+        PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, ranking);
+        Set<String> seen = new HashSet<>();
+        Map<String, String> keys = new HashMap<>();
+        for (Source source : driver.sources()) {
+            // No car of this source or the next ones can score more than this
+            double bound = 0;
+            for (Word word : words) {
+                bound += word == driver ? source.score : word.maxScore;
+            }
+            if (top.size() == limit && top.peek().getScore() > bound) {
+                break;
+            }
+            for (Car car : source.cars) {
+                if (!seen.add(car.getVin())) {
+                    continue;
+                }
+                double total = 0;
+                for (Word word : words) {
+                    double score = word.score(car, keys);
+                    if (score == 0) {
+                        total = 0;
+                        break;
+                    }
+                    total += score;
+                }
+                if (total == 0) {
+                    continue;
+                }
+                Hit hit = new Hit(car, total);
+                if (top.size() < limit) {
+                    top.add(hit);
+                } else if (ranking.compare(hit, top.peek()) > 0) {
+                    top.poll();
+                    top.add(hit);
+                }
+                // The next cars of this source score no more and come later by VIN
+                if (top.size() == limit && top.peek().getScore() >= bound) {
+                    break;
+                }
+            }
+        }
+        List<Hit> hits = new ArrayList<>(top);
+        hits.sort(ranking.reversed());
+        return hits;
+    }
+
+    /**
+     * @return The number of cars in the index.
+     */
+    public int size() { return size.get(); }
+
+    private static double prefixScore(String prefix, int valueLength) {
+        return PREFIX + PREFIX_LENGTH * prefix.length() / valueLength;
+    }
+
+    /**
+     * @return The trigrams of a value, with its start and end marked so that
+     * short values have some too.
+     */
+    static List<String> trigrams(String value) {
+        String padded = '\u0002' + value + '\u0003';
+        List<String> trigrams = new ArrayList<>(padded.length() - 2);
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Computes the edit distance between two strings, counting insertions,
+     * deletions, substitutions and swaps of adjacent characters.
+     *
+     * @return The distance, or max + 1 if it is larger than max.
+     */
+    static int editDistance(String a, String b, int max) {
+        int m = b.length();
+        int[] previous2 = new int[m + 1];
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j;
+        }
+        int previousMin = 0;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= m; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d = Math.min(d, previous2[j - 2] + 1);
+                }
+                current[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            // A swap reaches back two rows, so both must already be over max
+            if (rowMin > max && previousMin >= max) {
+                return max + 1;
+            }
+            previousMin = rowMin;
+            int[] t = previous2;
+            previous2 = previous;
+            previous = current;
+            current = t;
+        }
+        return Math.min(previous[m], max + 1);
+    }
+}
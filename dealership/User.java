@@ -1,26 +1,114 @@
 package dealership;
 
+import dealership.utils.PasswordHasher;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
 /**
  * The User class represents a user (Manager or Salesperson) in the dealership system.
  */
 public class User {
+    private String id;
+    private String firstName;
+    private String lastName;
+    private String email;
+    private String phone;
     private String username;
     private String password;
-    private String role; // "Manager" or "Salesperson"
+    private Role role; // null if unknown
 
     /**
      * Constructs a User object.
      *
      * @param username Username of the user.
      * @param password Password of the user.
-     * @param role     Role of the user (Manager/Salesperson).
+     * @param role     Role of the user (manager/salesperson), as read by {@link Role#of(String)}.
      */
     public User(String username, String password, String role) {
+        this(username, password, Role.of(role));
+    }
+
+    /**
+     * Constructs a User object.
+     *
+     * @param username Username of the user.
+     * @param password Password of the user.
+     * @param role     Role of the user, or null if unknown.
+     */
+    public User(String username, String password, Role role) {
+        this("", "", "", "", "", username, password, role);
+    }
+
+    /**
+     * Constructs a User object with the contact details read from the users file.
+     *
+     * @param id        Id of the user, or "" if unknown.
+     * @param firstName First name of the user, or "" if unknown.
+     * @param lastName  Last name of the user, or "" if unknown.
+     * @param email     Email address of the user, or "" if unknown.
+     * @param phone     Phone number of the user, or "" if unknown.
+     * @param username  Username of the user.
+     * @param password  Password of the user.
+     * @param role      Role of the user, or null if unknown.
+     */
+    public User(String id, String firstName, String lastName, String email, String phone,
+                String username, String password, Role role) {
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.phone = phone;
         this.username = username;
         this.password = password;
         this.role = role;
     }
 
+    /**
+     * Returns a copy of this user having another password.
+     *
+     * @param password The password of the copy.
+     * @return The copy.
+     */
+    public User withPassword(String password) {
+        return new User(id, firstName, lastName, email, phone, username, password, role);
+    }
+
+    /**
+     * Retrieves the id of the user.
+     *
+     * @return The id of the user, or "" if unknown.
+     */
+    public String getId() { return id; }
+
+    /**
+     * Retrieves the first name of the user.
+     *
+     * @return The first name of the user, or "" if unknown.
+     */
+    public String getFirstName() { return firstName; }
+
+    /**
+     * Retrieves the last name of the user.
+     *
+     * @return The last name of the user, or "" if unknown.
+     */
+    public String getLastName() { return lastName; }
+
+    /**
+     * Retrieves the email address of the user.
+     *
+     * @return The email address of the user, or "" if unknown.
+     */
+    public String getEmail() { return email; }
+
+    /**
+     * Retrieves the phone number of the user.
+     *
+     * @return The phone number of the user, or "" if unknown.
+     */
+    public String getPhone() { return phone; }
+
     /**
      * Retrieves the username of the user.
      *
@@ -29,7 +117,8 @@ public class User {
     public String getUsername() { return username; }
 
     /**
-     * Retrieves the password of the user.
+     * Retrieves the password of the user, as stored: either a hash made by
+     * {@link PasswordHasher}, or plain text for users not yet migrated.
      *
      * @return The password of the user.
      */
@@ -38,9 +127,9 @@ public class User {
     /**
      * Retrieves the role of the user (e.g., Manager or Salesperson).
      *
-     * @return The role assigned to the user.
+     * @return The role assigned to the user, or null if unknown.
      */
-    public String getRole() { return role; }
+    public Role getRole() { return role; }
 
     /**
      * Authenticates the user by verifying the provided password.
@@ -49,6 +138,10 @@ public class User {
      * @return {true} if the provided password matches the stored password, otherwise {false}.
      */
     public boolean authenticate(String password) {
-        return this.password.equals(password);
+        if (PasswordHasher.isHash(this.password)) {
+            return PasswordHasher.verify(password, this.password);
+        }
+        return password != null && MessageDigest.isEqual(this.password.getBytes(StandardCharsets.UTF_8),
+                password.getBytes(StandardCharsets.UTF_8));
     }
 }
@@ -0,0 +1,302 @@
+package dealership;
+
+import dealership.utils.Metrics;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * The ValuationEngine class suggests a price for every car in inventory, from
+ * depreciation curves fitted on the sales history:
+ * - The price of a car is assumed to decay exponentially with its age:
+ *   ln(price) = a + b * age. The curve is fitted by least squares on the sales
+ *   of cars of the same make and model, or of the same make, or of all cars,
+ *   whichever is the most specific with at least {@link #MIN_SAMPLES} sales.
+ * - The suggested price of a car is the price the curve gives for its age
+ *   today, and its expected margin is the suggested price minus its cost.
+ *
+ * The sums the curves are fitted from are updated as sales are recorded
+ * ({@link #saleRecorded(Sale)}), so fitting a curve costs the same whatever the
+ * number of sales. Valuations are cached by VIN, with the version of each curve
+ * they depend on: a sale only invalidates the valuations of cars whose curve it
+ * changes, and a change to a car (e.g., its price) only invalidates its own
+ * valuation. Invalid valuations are recomputed when next read.
+ */
+public class ValuationEngine implements InventoryListener {
+    public static final int MIN_SAMPLES = 3;
+    private static final double DAYS_PER_YEAR = 365.25;
+    // Yearly log-depreciation allowed: between 0% and ~63% of the value lost per year
+    private static final double MIN_SLOPE = -1;
+    private static final double MAX_SLOPE = 0;
+
+    private static final Metrics.Counter COMPUTED = Metrics.counter("valuation.computed");
+    private static final Metrics.Timer VALUE_ALL = Metrics.timer("valuation.all");
+
+    /**
+     * Which sales the curve of a valuation was fitted on.
+     */
+    public enum Basis {
+        MAKE_AND_MODEL, MAKE, ALL_CARS,
+        NONE // too few sales: the list price is kept
+    }
+
+    private final InventoryStore inventory;
+    private final LocalDate today;
+    private final Curve allCars = new Curve();
+    private final Map<String, Curve> byMake = new ConcurrentHashMap<>();
+    private final Map<String, Curve> byMakeAndModel = new ConcurrentHashMap<>();
+    private final Map<String, Cached> valuations = new ConcurrentHashMap<>();
+    private final AtomicLong computed = new AtomicLong();
+
+    /**
+     * Sums of the ages and log prices of the sales of a group of cars, and a
+     * version incremented on every sale added.
+     */
+    private static final class Curve {
+        private long count;
+        private double sumX;
+        private double sumY;
+        private double sumXX;
+        private double sumXY;
+        private volatile long version;
+
+        synchronized void add(double age, double logPrice) {
+            count++;
+            sumX += age;
+            sumY += logPrice;
+            sumXX += age * age;
+            sumXY += age * logPrice;
+            version++;
+        }
+
+        synchronized long getCount() { return count; }
+
+        /**
+         * @return The intercept and the slope of the fitted line.
+         */
+        synchronized double[] fit() {
+            double variance = sumXX - sumX * sumX / count;
+            // Sales of cars of a single age give the level but not the slope
+            double slope = variance > 1e-9 ? (sumXY - sumX * sumY / count) / variance : 0;
+            slope = Math.max(MIN_SLOPE, Math.min(MAX_SLOPE, slope));
+            return new double[] {(sumY - slope * sumX) / count, slope};
+        }
+    }
+
+    /**
+     * A valuation, and the versions of the curves it was computed from.
+     */
+    private static final class Cached {
+        final Valuation valuation;
+        final Curve[] curves;
+        final long[] versions;
+
+        Cached(Valuation valuation, Curve[] curves, long[] versions) {
+            this.valuation = valuation;
+            this.curves = curves;
+            this.versions = versions;
+        }
+
+        boolean isCurrent(Car car) {
+            if (valuation.car != car) {
+                return false;
+            }
+            for (int i = 0; i < curves.length; i++) {
+                if (curves[i].version != versions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The suggested price of a car.
+     */
+    public static final class Valuation {
+        private final Car car;
+        private final double suggestedPrice;
+        private final Basis basis;
+        private final long samples;
+
+        Valuation(Car car, double suggestedPrice, Basis basis, long samples) {
+            this.car = car;
+            this.suggestedPrice = suggestedPrice;
+            this.basis = basis;
+            this.samples = samples;
+        }
+
+        public Car getCar() { return car; }
+        public double getSuggestedPrice() { return suggestedPrice; }
+        public Basis getBasis() { return basis; }
+        public long getSamples() { return samples; }
+
+        /**
+         * @return The suggested price minus the cost of the car, or NaN if its cost is unknown.
+         */
+        public double getExpectedMargin() { return suggestedPrice - car.getCost(); }
+
+        /**
+         * @return The suggested price minus the list price of the car.
+         */
+        public double getPriceGap() { return suggestedPrice - car.getPrice(); }
+
+        @Override
+        public String toString() {
+            return car.getVin() + ": $" + suggestedPrice + " (" + basis + ", " + samples + " sales)";
+        }
+    }
+
+    /**
+     * Builds an engine over an inventory, fitted on the sales recorded so far,
+     * and keeps it up to date with the changes of the inventory. Sales must then
+     * be passed to {@link #saleRecorded(Sale)} as they are recorded.
+     *
+     * @param inventory The inventory, where the cars sold are looked up.
+     * @param sales     The sales recorded so far.
+     * @param today     The date the ages of the cars in inventory are computed at.
+     * @return The engine.
+     */
+    public static ValuationEngine of(InventoryStore inventory, Collection<Sale> sales, LocalDate today) {
+        ValuationEngine engine = new ValuationEngine(inventory, today);
+        for (Sale sale : sales) {
+            engine.saleRecorded(sale);
+        }
+        inventory.addListener(engine);
+        return engine;
+    }
+
+    private ValuationEngine(InventoryStore inventory, LocalDate today) {
+        this.inventory = inventory;
+        this.today = today;
+    }
+
+    /**
+     * Adds a sale to the curves of the car sold. Sales of cars no longer in
+     * inventory, or without a price, are ignored.
+     *
+     * @param sale The sale.
+     */
+    public void saleRecorded(Sale sale) {
+        Car car = inventory.getByVin(sale.getVin());
+        if (car == null || sale.getDate() == null || !(sale.getPrice() > 0)) {
+            return;
+        }
+        double age = age(car, sale.getDate());
+        double logPrice = Math.log(sale.getPrice());
+        // Finest first: a valuation reading the versions in the same order sees every change
+        byMakeAndModel.computeIfAbsent(makeAndModelKey(car), k -> new Curve()).add(age, logPrice);
+        byMake.computeIfAbsent(makeKey(car), k -> new Curve()).add(age, logPrice);
+        allCars.add(age, logPrice);
+    }
+
+    @Override
+    public void carAdded(Car car) {
+    }
+
+    @Override
+    public void carRemoved(Car car) {
+        valuations.remove(car.getVin());
+    }
+
+    @Override
+    public void carUpdated(Car previous, Car current) {
+        valuations.remove(current.getVin());
+    }
+
+    /**
+     * Values a car, from the cache when none of the curves it depends on changed.
+     *
+     * @param car The car.
+     * @return The valuation.
+     */
+    public Valuation value(Car car) {
+        Cached cached = valuations.get(car.getVin());
+        if (cached != null && cached.isCurrent(car)) {
+            return cached.valuation;
+        }
+        cached = compute(car);
+        if (inventory.getByVin(car.getVin()) == car) {
+            valuations.put(car.getVin(), cached);
+        }
+        return cached.valuation;
+    }
+
+    /**
+     * Values every car in inventory, in parallel.
+     *
+     * @return The valuations, in inventory order.
+     */
+    public List<Valuation> valueAll() {
+        Metrics.Sample sample = VALUE_ALL.time();
+        try {
+            List<Car> cars = new ArrayList<>(inventory.getCars());
+            return cars.parallelStream().map(this::value).collect(Collectors.toList());
+        } finally {
+            sample.close();
+        }
+    }
+
+    /**
+     * @return The date the ages of the cars in inventory are computed at.
+     */
+    public LocalDate getDate() { return today; }
+
+    /**
+     * @return The number of valuations computed rather than read from the cache.
+     */
+    public long getComputedCount() { return computed.get(); }
+
+    /**
+     * Computes a valuation from the most specific curve with enough sales.
+     * The curves depended on are those tried, in order, up to the one used:
+     * a sale to any of them may change the result.
+     */
+    private Cached compute(Car car) {
+        computed.incrementAndGet();
+        COMPUTED.increment();
+        // Created if need be, so the first sale of a make or model invalidates the valuations
+        Curve[] curves = {
+                byMakeAndModel.computeIfAbsent(makeAndModelKey(car), k -> new Curve()),
+                byMake.computeIfAbsent(makeKey(car), k -> new Curve()),
+                allCars
+        };
+        Basis[] bases = {Basis.MAKE_AND_MODEL, Basis.MAKE, Basis.ALL_CARS};
+        long[] versions = new long[curves.length];
+        for (int i = 0; i < curves.length; i++) {
+            // Version read before the fit: a sale in between makes the result stale, never wrong
+            versions[i] = curves[i].version;
+            long count = curves[i].getCount();
+            if (count >= MIN_SAMPLES) {
+                double[] line = curves[i].fit();
+                double price = Math.exp(line[0] + line[1] * age(car, today));
+                Valuation valuation = new Valuation(car, Math.round(price * 100) / 100.0, bases[i], count);
+                return new Cached(valuation, Arrays.copyOf(curves, i + 1), Arrays.copyOf(versions, i + 1));
+            }
+        }
+        return new Cached(new Valuation(car, car.getPrice(), Basis.NONE, 0), curves, versions);
+    }
+
+    /**
+     * @return The age of a car in years at a date, assuming it was made at the start of its year.
+     */
+    private static double age(Car car, LocalDate date) {
+        double age = date.getYear() - car.getYear() + (date.getDayOfYear() - 1) / DAYS_PER_YEAR;
+        return Math.max(0, age);
+    }
+
+    private static String makeKey(Car car) {
+        return InventoryStore.key(car.getMake());
+    }
+
+    private static String makeAndModelKey(Car car) {
+        return InventoryStore.key(car.getMake(), car.getModel());
+    }
+}
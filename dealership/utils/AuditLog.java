@@ -0,0 +1,569 @@
+package dealership.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An audit trail of who did what: logins, and changes to the inventory, the
+ * sales and the users. Each event is a csv record: time, actor, action,
+ * subject (a VIN or a username) and detail. The actor is the user the
+ * recording thread acts for, see {@link #setActor(String)}.
+ *
+ * Recording an event never waits for the disk. Events are put in a bounded
+ * lock-free ring buffer, and a background thread writes them to the current
+ * file in batches. When the buffer is full, the {@link Overflow} policy
+ * applies: the recording thread waits for room, or the event is dropped.
+ * Either way, memory stays bounded. The number of events dropped is written
+ * to the log as an event of its own.
+ *
+ * A file is started every day, and another one whenever the current file
+ * exceeds the maximum size: audit-[date].log, then audit-[date].1.log, and so
+ * on. Queries ({@link #query(File, LocalDate, LocalDate, String, String, Consumer)})
+ * only read the files of the days asked for, and compare the fields of each
+ * record in place, without building strings for the records that don't match.
+ * Usage (query):
+ *       java dealership.utils.AuditLog <audit directory path> [--user <username>] [--vin <VIN>]
+ *            [--from <yyyy-mm-dd>] [--to <yyyy-mm-dd>]
+ */
+public class AuditLog implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final long DEFAULT_MAX_FILE_SIZE = 64L * 1024 * 1024;
+    public static final String DROPPED_ACTION = "audit.dropped";
+    private static final String NO_ACTOR = "-";
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final long IDLE_PARK_NANOS = 100_000_000L;
+    private static final long FULL_PARK_NANOS = 50_000L;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
+    private static final Pattern FILE_NAME = Pattern.compile("audit-(\\d{4}-\\d{2}-\\d{2})(?:\\.(\\d+))?\\.log");
+    private static final int TIME = 0;
+    private static final int ACTOR = 1;
+    private static final int ACTION = 2;
+    private static final int SUBJECT = 3;
+    private static final int DETAIL = 4;
+
+    private static final ThreadLocal<String> CURRENT_ACTOR = new ThreadLocal<>();
+    private static final Metrics.Counter EVENTS = Metrics.counter("audit.events");
+    private static final Metrics.Counter DROPPED = Metrics.counter("audit.dropped");
+    private static final Metrics.Timer WRITE = Metrics.timer("audit.write");
+
+    /**
+     * What recording an event does when the ring buffer is full.
+     */
+    public enum Overflow {
+        BLOCK, // wait until the writer makes room
+        DROP // drop the event, and count it
+    }
+
+    private final File dir;
+    private final Overflow overflow;
+    private final long maxFileSize;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final RingBuffer ring;
+    private final AtomicLong dropped = new AtomicLong(); // not reported in the log yet
+    private final AtomicLong droppedTotal = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+
+    // Owned by the writer thread
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private FileChannel channel;
+    private File file;
+    private LocalDate fileDate;
+    private int fileIndex;
+    private long fileSize;
+    private boolean failed;
+
+    /**
+     * An event recorded.
+     */
+    public static final class Event {
+        private final long time;
+        private final String actor;
+        private final String action;
+        private final String subject;
+        private final String detail;
+
+        Event(long time, String actor, String action, String subject, String detail) {
+            this.time = time;
+            this.actor = actor;
+            this.action = action;
+            this.subject = subject;
+            this.detail = detail;
+        }
+
+        /**
+         * @return the time of the event, in milliseconds since the epoch.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public String getActor() {
+            return actor;
+        }
+
+        public String getAction() {
+            return action;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        String format(ZoneId zone) {
+            String at = TIME_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), zone));
+            return Utils.formatCSV(at, actor, action, subject, detail);
+        }
+    }
+
+    /**
+     * A bounded multi-producer, single-consumer queue. Each slot carries a
+     * sequence number telling whether it is free for the producer claiming
+     * the position, or full for the consumer: producers only compete on the
+     * position they claim, with a compare-and-set, and never lock.
+     */
+    private static final class RingBuffer {
+        private final int mask;
+        private final AtomicReferenceArray<Event> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong();
+        private long head; // read by the consumer only
+
+        RingBuffer(int capacity) {
+            int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+            this.mask = size - 1;
+            this.slots = new AtomicReferenceArray<>(size);
+            this.sequences = new AtomicLongArray(size);
+            for(int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        boolean offer(Event event) {
+            while(true) {
+                long position = tail.get();
+                int index = (int) position & mask;
+                long available = sequences.get(index) - position;
+                if(available < 0) {
+                    return false; // the consumer hasn't freed this slot yet
+                }
+                if(available == 0 && tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, event);
+                    sequences.set(index, position + 1); // publishes the event
+                    return true;
+                }
+                // Another producer claimed the position first
+            }
+        }
+
+        Event poll() {
+            int index = (int) head & mask;
+            if(sequences.get(index) != head + 1) {
+                return null;
+            }
+            Event event = slots.get(index);
+            slots.lazySet(index, null);
+            sequences.set(index, head + mask + 1); // frees the slot for the next lap
+            head++;
+            return event;
+        }
+
+        boolean isEmpty() {
+            return sequences.get((int) head & mask) != head + 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+    }
+
+    /**
+     * Open an audit log with the default capacity and maximum file size, whose
+     * recording threads wait when the buffer is full.
+     *
+     * @param dir the directory of the audit files, created if needed
+     * @throws IOException if the directory can't be created
+     */
+    public AuditLog(File dir) throws IOException {
+        this(dir, DEFAULT_CAPACITY, Overflow.BLOCK, DEFAULT_MAX_FILE_SIZE);
+    }
+
+    /**
+     * Open an audit log. Events are appended to the latest file of the day, if any.
+     *
+     * @param dir         the directory of the audit files, created if needed
+     * @param capacity    the number of events the buffer holds, rounded up to a power of two
+     * @param overflow    what recording does when the buffer is full
+     * @param maxFileSize the size in bytes past which a new file is started
+     * @throws IOException if the directory can't be created
+     */
+    public AuditLog(File dir, int capacity, Overflow overflow, long maxFileSize) throws IOException {
+        if(capacity < 1 || maxFileSize < 1) {
+            throw new IllegalArgumentException("Capacity and file size must be positive");
+        }
+        if(!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create audit directory " + dir);
+        }
+        this.dir = dir;
+        this.overflow = overflow;
+        this.maxFileSize = maxFileSize;
+        this.ring = new RingBuffer(capacity);
+        this.writer = new Thread(this::writeEvents, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Set the user the current thread acts for, until cleared. Events recorded
+     * by the thread are attributed to this user.
+     *
+     * @param username the user, or null to clear it
+     */
+    public static void setActor(String username) {
+        if(username == null) {
+            CURRENT_ACTOR.remove();
+        } else {
+            CURRENT_ACTOR.set(username);
+        }
+    }
+
+    /**
+     * @return the user the current thread acts for, or null if none.
+     */
+    public static String getActor() {
+        return CURRENT_ACTOR.get();
+    }
+
+    /**
+     * @return the directory of the audit files
+     */
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * @return the number of events dropped because the buffer was full or the log failed.
+     */
+    public long getDroppedCount() {
+        return droppedTotal.get();
+    }
+
+    /**
+     * Record an event, attributed to the user the current thread acts for.
+     * Returns as soon as the event is buffered; with {@link Overflow#BLOCK}, waits
+     * for room first if the buffer is full.
+     *
+     * @param action  what was done, e.g. car.add
+     * @param subject what it was done to, e.g. a VIN, or null
+     * @param detail  anything else worth recording, or null
+     */
+    public void record(String action, String subject, String detail) {
+        String actor = CURRENT_ACTOR.get();
+        Event event = new Event(System.currentTimeMillis(), actor == null ? NO_ACTOR : actor, action, subject, detail);
+        if(closed || !ring.offer(event) && !waitForRoom(event)) {
+            dropped.incrementAndGet();
+            droppedTotal.incrementAndGet();
+            DROPPED.increment();
+            return;
+        }
+        EVENTS.increment();
+        if(sleeping) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private boolean waitForRoom(Event event) {
+        if(overflow == Overflow.DROP) {
+            return false;
+        }
+        do {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+            if(closed) {
+                return false;
+            }
+        } while(!ring.offer(event));
+        return true;
+    }
+
+    /**
+     * Write the events buffered so far, then stop the writer and close the current file.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Body of the writer thread: drains the buffer in batches, and sleeps
+     * when it is empty until an event is recorded.
+     */
+    private void writeEvents() {
+        List<Event> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while(true) {
+            long droppedEvents = dropped.getAndSet(0);
+            if(droppedEvents > 0) {
+                batch.add(new Event(System.currentTimeMillis(), NO_ACTOR, DROPPED_ACTION, null,
+                        Long.toString(droppedEvents)));
+            }
+            Event event;
+            while(batch.size() < MAX_BATCH_SIZE && (event = ring.poll()) != null) {
+                batch.add(event);
+            }
+            if(!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            } else if(closed) {
+                break;
+            } else {
+                // Recording threads unpark the writer when they see it sleeping:
+                // set the flag before looking at the buffer one last time
+                sleeping = true;
+                if(ring.isEmpty() && !closed) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                sleeping = false;
+            }
+        }
+        closeFile();
+    }
+
+    private void write(List<Event> batch) {
+        if(failed) {
+            droppedTotal.addAndGet(batch.size());
+            DROPPED.add(batch.size());
+            return;
+        }
+        Metrics.Sample sample = WRITE.time();
+        try {
+            for(Event event : batch) {
+                byte[] line = (event.format(zone) + '\n').getBytes(StandardCharsets.UTF_8);
+                LocalDate date = LocalDate.ofInstant(Instant.ofEpochMilli(event.time), zone);
+                if(channel == null || !date.equals(fileDate) || fileSize + buffer.position() >= maxFileSize) {
+                    flush();
+                    roll(date);
+                }
+                if(buffer.remaining() < line.length) {
+                    flush();
+                }
+                if(line.length > buffer.capacity()) {
+                    channel.write(ByteBuffer.wrap(line));
+                    fileSize += line.length;
+                } else {
+                    buffer.put(line);
+                }
+            }
+            flush();
+            channel.force(false);
+        } catch (IOException e) {
+            // Recording must not fail the actions audited: drop events from now on
+            failed = true;
+            System.err.println("ERROR: Unable to write the audit log " + file + " -> " + e.getMessage());
+        } finally {
+            sample.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            fileSize += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Close the current file and open the next one: the latest file of the
+     * date if it isn't full, a new one otherwise.
+     */
+    private void roll(LocalDate date) throws IOException {
+        int index = 0;
+        if(date.equals(fileDate)) {
+            index = fileIndex + 1;
+        } else {
+            File[] files = dir.listFiles();
+            for(File f : files == null ? new File[0] : files) {
+                Matcher m = FILE_NAME.matcher(f.getName());
+                if(m.matches() && m.group(1).equals(date.toString())) {
+                    index = Math.max(index, m.group(2) == null ? 0 : Integer.parseInt(m.group(2)));
+                }
+            }
+            if(new File(dir, fileName(date, index)).length() >= maxFileSize) {
+                index++;
+            }
+        }
+        closeFile();
+        file = new File(dir, fileName(date, index));
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        fileDate = date;
+        fileIndex = index;
+        fileSize = channel.size();
+    }
+
+    private void closeFile() {
+        if(channel == null) {
+            return;
+        }
+        try {
+            flush();
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("ERROR: Unable to close the audit log " + file + " -> " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    private static String fileName(LocalDate date, int index) {
+        return "audit-" + date + (index == 0 ? "" : "." + index) + ".log";
+    }
+
+    /**
+     * Find the events of a range of days, attributed to or about a user, and/or about a car.
+     * The files of the other days are not read.
+     *
+     * @param dir     the directory of the audit files
+     * @param from    the first day, or null for the earliest
+     * @param to      the last day, or null for the latest
+     * @param user    the actor or subject of the events, or null for any
+     * @param vin     the subject of the events, or null for any
+     * @param handler receives the matching events, in the order they were written
+     * @return the number of matching events
+     * @throws IOException if a file can't be read
+     */
+    public static long query(File dir, LocalDate from, LocalDate to, String user, String vin,
+                             Consumer<Event> handler) throws IOException {
+        File[] files = dir.listFiles();
+        if(files == null) {
+            throw new IOException("Can't list audit directory " + dir);
+        }
+        // Oldest first: by date, then by index
+        Map<String, File> selected = new TreeMap<>();
+        for(File f : files) {
+            Matcher m = FILE_NAME.matcher(f.getName());
+            if(m.matches()) {
+                LocalDate date = LocalDate.parse(m.group(1));
+                if((from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to))) {
+                    int index = m.group(2) == null ? 0 : Integer.parseInt(m.group(2));
+                    selected.put(String.format("%s.%010d", date, index), f);
+                }
+            }
+        }
+
+        byte[] userBytes = user == null ? null : user.getBytes(StandardCharsets.UTF_8);
+        byte[] vinBytes = vin == null ? null : vin.getBytes(StandardCharsets.UTF_8);
+        ZoneId zone = ZoneId.systemDefault();
+        long[] count = new long[1];
+        CsvParser parser = new CsvParser(false, true);
+        for(File f : selected.values()) {
+            parser.parse(f, row -> {
+                if(row.getFieldCount() <= DETAIL) {
+                    return; // truncated by a crash
+                }
+                if(userBytes != null && !row.fieldEquals(ACTOR, userBytes) && !row.fieldEquals(SUBJECT, userBytes)) {
+                    return;
+                }
+                if(vinBytes != null && !row.fieldEquals(SUBJECT, vinBytes)) {
+                    return;
+                }
+                long time;
+                try {
+                    time = LocalDateTime.parse(row.getString(TIME), TIME_FORMAT).atZone(zone).toInstant().toEpochMilli();
+                } catch (DateTimeParseException e) {
+                    return;
+                }
+                count[0]++;
+                handler.accept(new Event(time, row.getString(ACTOR), row.getString(ACTION),
+                        nullIfEmpty(row.getString(SUBJECT)), nullIfEmpty(row.getString(DETAIL))));
+            });
+        }
+        return count[0];
+    }
+
+    private static String nullIfEmpty(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Print the events of an audit directory matching the given options.
+     *
+     * @param args the audit directory path, then optionally --user, --vin, --from and --to, each followed by a value
+     */
+    public static void main(String[] args) {
+        String usage = "Usage: java dealership.utils.AuditLog <audit directory path> [--user <username>] [--vin <VIN>]"
+                + " [--from <yyyy-mm-dd>] [--to <yyyy-mm-dd>]";
+        if(args.length < 1 || args.length % 2 == 0) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+        String user = null;
+        String vin = null;
+        LocalDate from = null;
+        LocalDate to = null;
+        try {
+            for(int i = 1; i < args.length; i += 2) {
+                switch(args[i]) {
+                    case "--user":
+                        user = args[i + 1];
+                        break;
+                    case "--vin":
+                        vin = args[i + 1];
+                        break;
+                    case "--from":
+                        from = LocalDate.parse(args[i + 1]);
+                        break;
+                    case "--to":
+                        to = LocalDate.parse(args[i + 1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        try {
+            long n = query(new File(args[0]), from, to, user, vin, event -> System.out.println(event.format(zone)));
+            System.err.println(n + " events.");
+        } catch (IOException e) {
+            System.err.println("Error reading audit log: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package dealership.utils;
+
+import dealership.Car;
+import dealership.Role;
+import dealership.Sale;
+import dealership.User;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+
+/**
+ * A binary image of the users, inventory and sales loaded from the csv files,
+ * so they can be loaded again without parsing any text.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * header   magic "BCDS", version (short), flags (short),
+ *          length and last modification time of each source file (longs),
+ *          string count, user count, car count, sale count (ints), body CRC32 (int)
+ * body     string table: (string count + 1) end offsets (ints), then the UTF-8 bytes
+ *          users: username, password, role, id, first name, last name, email, phone
+ *                 string ids (ints)
+ *          cars:  vin, make, model, color, status string ids, year, mileage,
+ *                 acquisition date (epoch day, {@link #NO_DATE} if unknown) (ints),
+ *                 cost, price (doubles)
+ *          sales: date (epoch day, int), vin string id (int), cost, price (doubles),
+ *                 salesperson, customer string ids (ints)
+ * </pre>
+ * Every distinct string is stored once. The lengths and last modification
+ * times of the {@link #SOURCE_FILES} files the snapshot was built from (-1 for
+ * missing files) are kept, so a snapshot can tell whether it is still current.
+ *
+ * The file is memory-mapped for reading, and checked in full when read, but
+ * nothing is decoded then: the users, cars and sales of a snapshot read from a
+ * file are read-only views of the mapped records, decoding a record each time
+ * it is retrieved. Each string is decoded once, the first time a record needs
+ * it. Loading only the cars thus never decodes a sale, and the users, cars
+ * and sales can be decoded by different threads at once.
+ */
+public class BinarySnapshot {
+    public static final int MAGIC = 0x42434453; // "BCDS"
+    public static final short VERSION = 5;
+    public static final int NO_DATE = Integer.MIN_VALUE;
+    public static final int SOURCE_FILES = 3; // users, inventory, sales
+    private static final int HEADER_SIZE = 4 + 2 + 2 + 2 * 8 * SOURCE_FILES + 4 * 4 + 4;
+    private static final int USER_SIZE = 8 * 4;
+    private static final int CAR_SIZE = 8 * 4 + 2 * 8;
+    private static final int SALE_SIZE = 4 * 4 + 2 * 8;
+
+    private final long[] sources; // length, then last modification time, of each source file
+    private final List<User> users;
+    private final List<Car> cars;
+    private final List<Sale> sales;
+
+    /**
+     * The strings of a mapped snapshot, decoded on first use.
+     */
+    private static final class StringTable {
+        private final ByteBuffer body;
+        private final int bytesStart;
+        private final String[] strings; // racy: a string may be decoded twice, both equal
+
+        StringTable(ByteBuffer body, int bytesStart, int count) {
+            this.body = body;
+            this.bytesStart = bytesStart;
+            this.strings = new String[count];
+        }
+
+        String get(int id) {
+            String s = strings[id];
+            if(s == null) {
+                int start = body.getInt(4 * id);
+                byte[] bytes = new byte[body.getInt(4 * (id + 1)) - start];
+                body.get(bytesStart + start, bytes);
+                s = new String(bytes, StandardCharsets.UTF_8);
+                strings[id] = s;
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Decodes the record at an offset of the body.
+     */
+    private interface Decoder<T> {
+        T decode(ByteBuffer body, StringTable strings, int offset);
+    }
+
+    /**
+     * The records of one kind of a mapped snapshot, decoded each time one is retrieved.
+     */
+    private static final class Records<T> extends AbstractList<T> implements RandomAccess {
+        private final ByteBuffer body;
+        private final StringTable strings;
+        private final int start;
+        private final int count;
+        private final int recordSize;
+        private final Decoder<T> decoder;
+
+        Records(ByteBuffer body, StringTable strings, int start, int count, int recordSize, Decoder<T> decoder) {
+            this.body = body;
+            this.strings = strings;
+            this.start = start;
+            this.count = count;
+            this.recordSize = recordSize;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public T get(int index) {
+            Objects.checkIndex(index, count);
+            return decoder.decode(body, strings, start + index * recordSize);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+
+    /**
+     * Instantiate a snapshot from data held in memory.
+     *
+     * @param sources length, then last modification time, of each of the
+     *                {@link #SOURCE_FILES} source files
+     * @param users   users to store
+     * @param cars    cars to store
+     * @param sales   sales to store
+     * @throws IllegalArgumentException if sources doesn't hold two values per source file
+     */
+    public BinarySnapshot(long[] sources, List<User> users, List<Car> cars, List<Sale> sales) {
+        if(sources.length != 2 * SOURCE_FILES) {
+            throw new IllegalArgumentException("Expected " + 2 * SOURCE_FILES + " source values, got " + sources.length);
+        }
+        this.sources = sources.clone();
+        this.users = users;
+        this.cars = cars;
+        this.sales = sales;
+    }
+
+    /**
+     * @return the length, then the last modification time, of each source file.
+     */
+    public long[] getSources() {
+        return sources.clone();
+    }
+
+    /**
+     * @param current length, then last modification time, of each source file now
+     * @return true if the snapshot was built from files of these lengths and
+     * modification times.
+     */
+    public boolean isBuiltFrom(long[] current) {
+        return Arrays.equals(sources, current);
+    }
+
+    /**
+     * @return the users. For a snapshot read from a file, a read-only view
+     * decoding a new user each time one is retrieved.
+     */
+    public List<User> getUsers() {
+        return users;
+    }
+
+    /**
+     * @return the cars. For a snapshot read from a file, a read-only view
+     * decoding a new car each time one is retrieved.
+     */
+    public List<Car> getCars() {
+        return cars;
+    }
+
+    /**
+     * @return the sales. For a snapshot read from a file, a read-only view
+     * decoding a new sale each time one is retrieved.
+     */
+    public List<Sale> getSales() {
+        return sales;
+    }
+
+    /**
+     * Write the snapshot to a file. The content is written to a temporary file
+     * first, which is then renamed over the target.
+     *
+     * @param file the target file
+     * @throws IOException if the file can't be written
+     */
+    public void write(File file) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int[] userIds = new int[users.size() * 8];
+        int[] carIds = new int[cars.size() * 5];
+        int[] saleIds = new int[sales.size() * 3];
+        int n = 0;
+        for(User user : users) {
+            userIds[n++] = id(user.getUsername(), ids, strings);
+            userIds[n++] = id(user.getPassword(), ids, strings);
+            userIds[n++] = id(Role.labelOf(user.getRole()), ids, strings);
+            userIds[n++] = id(user.getId(), ids, strings);
+            userIds[n++] = id(user.getFirstName(), ids, strings);
+            userIds[n++] = id(user.getLastName(), ids, strings);
+            userIds[n++] = id(user.getEmail(), ids, strings);
+            userIds[n++] = id(user.getPhone(), ids, strings);
+        }
+        n = 0;
+        for(Car car : cars) {
+            carIds[n++] = id(car.getVin(), ids, strings);
+            carIds[n++] = id(car.getMake(), ids, strings);
+            carIds[n++] = id(car.getModel(), ids, strings);
+            carIds[n++] = id(car.getColor(), ids, strings);
+            carIds[n++] = id(car.getStatus(), ids, strings);
+        }
+        n = 0;
+        for(Sale sale : sales) {
+            saleIds[n++] = id(sale.getVin(), ids, strings);
+            saleIds[n++] = id(sale.getSalesperson(), ids, strings);
+            saleIds[n++] = id(sale.getCustomer(), ids, strings);
+        }
+
+        // Body, built in memory so its checksum can go in the header
+        List<byte[]> encoded = new ArrayList<>(strings.size());
+        int stringBytes = 0;
+        for(String s : strings) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            stringBytes += bytes.length;
+        }
+        long bodySize = 4L * (strings.size() + 1) + stringBytes
+                + (long) USER_SIZE * users.size() + (long) CAR_SIZE * cars.size() + (long) SALE_SIZE * sales.size();
+        if(bodySize > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot too large: " + bodySize + " bytes");
+        }
+        ByteBuffer body = ByteBuffer.allocate((int) bodySize);
+        int end = 0;
+        body.putInt(end);
+        for(byte[] bytes : encoded) {
+            end += bytes.length;
+            body.putInt(end);
+        }
+        for(byte[] bytes : encoded) {
+            body.put(bytes);
+        }
+        body.asIntBuffer().put(userIds);
+        body.position(body.position() + 4 * userIds.length);
+        n = 0;
+        for(Car car : cars) {
+            for(int i = 0; i < 5; i++) {
+                body.putInt(carIds[n++]);
+            }
+            body.putInt(car.getYear());
+            body.putInt(car.getMileage());
+            body.putInt(car.getAcquisitionDate() == null ? NO_DATE : (int) car.getAcquisitionDate().toEpochDay());
+            body.putDouble(car.getCost());
+            body.putDouble(car.getPrice());
+        }
+        n = 0;
+        for(Sale sale : sales) {
+            body.putInt((int) sale.getDate().toEpochDay());
+            body.putInt(saleIds[n++]);
+            body.putDouble(sale.getCost());
+            body.putDouble(sale.getPrice());
+            body.putInt(saleIds[n++]);
+            body.putInt(saleIds[n++]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, body.capacity());
+
+        File temp = new File(file.getPath() + ".tmp");
+        try(FileOutputStream fos = new FileOutputStream(temp);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            for(long value : sources) {
+                out.writeLong(value);
+            }
+            out.writeInt(strings.size());
+            out.writeInt(users.size());
+            out.writeInt(cars.size());
+            out.writeInt(sales.size());
+            out.writeInt((int) crc.getValue());
+            out.write(body.array());
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a snapshot from a file.
+     *
+     * @param file the snapshot file
+     * @return the snapshot, or null if the file is missing, was written by
+     * another version, or is corrupted
+     * @throws IOException if the file exists but can't be read
+     */
+    public static BinarySnapshot read(File file) throws IOException {
+        if(!file.isFile() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buf.getInt() != MAGIC || buf.getShort() != VERSION) {
+                return null;
+            }
+            buf.getShort(); // flags, unused
+            long[] sources = new long[2 * SOURCE_FILES];
+            for(int i = 0; i < sources.length; i++) {
+                sources[i] = buf.getLong();
+            }
+            int stringCount = buf.getInt();
+            int userCount = buf.getInt();
+            int carCount = buf.getInt();
+            int saleCount = buf.getInt();
+            int checksum = buf.getInt();
+            if(stringCount < 0 || userCount < 0 || carCount < 0 || saleCount < 0) {
+                return null;
+            }
+
+            ByteBuffer body = buf.slice();
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if((int) crc.getValue() != checksum) {
+                return null;
+            }
+
+            // String table
+            int offsetsStart = 0;
+            int bytesStart = 4 * (stringCount + 1);
+            if(bytesStart > body.limit()) {
+                return null;
+            }
+            int bytesLength = body.getInt(4 * stringCount);
+            long expected = (long) bytesStart + bytesLength + (long) USER_SIZE * userCount
+                    + (long) CAR_SIZE * carCount + (long) SALE_SIZE * saleCount;
+            if(expected != body.limit()) {
+                return null;
+            }
+            // Checked up front, so the records decode without failing
+            int previous = 0;
+            for(int i = 0; i <= stringCount; i++) {
+                int offset = body.getInt(offsetsStart + 4 * i);
+                if(offset < previous || offset > bytesLength) {
+                    return null;
+                }
+                previous = offset;
+            }
+            int usersStart = bytesStart + bytesLength;
+            int carsStart = usersStart + USER_SIZE * userCount;
+            int salesStart = carsStart + CAR_SIZE * carCount;
+            if(!validIds(body, usersStart, userCount, USER_SIZE, new int[]{0, 4, 8, 12, 16, 20, 24, 28}, stringCount)
+                    || !validIds(body, carsStart, carCount, CAR_SIZE, new int[]{0, 4, 8, 12, 16}, stringCount)
+                    || !validIds(body, salesStart, saleCount, SALE_SIZE, new int[]{4, 24, 28}, stringCount)) {
+                return null;
+            }
+
+            ByteBuffer records = body.asReadOnlyBuffer();
+            StringTable strings = new StringTable(records, bytesStart, stringCount);
+            List<User> users = new Records<>(records, strings, usersStart, userCount, USER_SIZE,
+                    BinarySnapshot::decodeUser);
+            List<Car> cars = new Records<>(records, strings, carsStart, carCount, CAR_SIZE, BinarySnapshot::decodeCar);
+            List<Sale> sales = new Records<>(records, strings, salesStart, saleCount, SALE_SIZE,
+                    BinarySnapshot::decodeSale);
+            return new BinarySnapshot(sources, users, cars, sales);
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            return null; // corrupted string ids or offsets
+        }
+    }
+
+    /**
+     * @return true if the string ids at the given offsets of every record are in the string table
+     */
+    private static boolean validIds(ByteBuffer body, int start, int count, int recordSize, int[] idOffsets,
+                                    int stringCount) {
+        for(int i = 0; i < count; i++) {
+            int record = start + i * recordSize;
+            for(int offset : idOffsets) {
+                int id = body.getInt(record + offset);
+                if(id < 0 || id >= stringCount) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static User decodeUser(ByteBuffer body, StringTable strings, int offset) {
+        return new User(strings.get(body.getInt(offset + 12)), strings.get(body.getInt(offset + 16)),
+                strings.get(body.getInt(offset + 20)), strings.get(body.getInt(offset + 24)),
+                strings.get(body.getInt(offset + 28)), strings.get(body.getInt(offset)),
+                strings.get(body.getInt(offset + 4)), Role.of(strings.get(body.getInt(offset + 8))));
+    }
+
+    private static Car decodeCar(ByteBuffer body, StringTable strings, int offset) {
+        String vin = strings.get(body.getInt(offset));
+        String make = strings.get(body.getInt(offset + 4));
+        String model = strings.get(body.getInt(offset + 8));
+        String color = strings.get(body.getInt(offset + 12));
+        String status = strings.get(body.getInt(offset + 16));
+        int year = body.getInt(offset + 20);
+        int mileage = body.getInt(offset + 24);
+        int acquired = body.getInt(offset + 28);
+        LocalDate acquisitionDate = acquired == NO_DATE ? null : LocalDate.ofEpochDay(acquired);
+        double cost = body.getDouble(offset + 32);
+        double price = body.getDouble(offset + 40);
+        return new Car(vin, acquisitionDate, make, model, year, mileage, color, cost, price, status);
+    }
+
+    private static Sale decodeSale(ByteBuffer body, StringTable strings, int offset) {
+        LocalDate date = LocalDate.ofEpochDay(body.getInt(offset));
+        String vin = strings.get(body.getInt(offset + 4));
+        double cost = body.getDouble(offset + 8);
+        double price = body.getDouble(offset + 16);
+        String salesperson = strings.get(body.getInt(offset + 24));
+        String customer = strings.get(body.getInt(offset + 28));
+        return new Sale(date, vin, cost, price, salesperson, customer);
+    }
+
+    /**
+     * Read only the source file lengths and modification times of a snapshot file.
+     *
+     * @param file the snapshot file
+     * @return the length, then the last modification time, of each source file,
+     * or null if the file is missing or not a snapshot of this version
+     * @throws IOException if the file exists but can't be read
+     */
+    public static long[] readSources(File file) throws IOException {
+        if(!file.isFile() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8 + 2 * 8 * SOURCE_FILES);
+            while(header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // Read until the buffer is full
+            }
+            header.flip();
+            if(header.remaining() < header.capacity() || header.getInt() != MAGIC || header.getShort() != VERSION) {
+                return null;
+            }
+            header.getShort();
+            long[] sources = new long[2 * SOURCE_FILES];
+            for(int i = 0; i < sources.length; i++) {
+                sources[i] = header.getLong();
+            }
+            return sources;
+        }
+    }
+
+    private static int id(String value, Map<String, Integer> ids, List<String> strings) {
+        String s = value == null ? "" : value;
+        Integer id = ids.get(s);
+        if(id == null) {
+            id = strings.size();
+            ids.put(s, id);
+            strings.add(s);
+        }
+        return id;
+    }
+}
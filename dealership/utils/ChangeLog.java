@@ -0,0 +1,177 @@
+package dealership.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only change log. Each change is a csv record appended at the end of
+ * the file, so recording a change never rewrites existing data.
+ *
+ * Records are buffered and forced to disk in batches: as soon as batchSize
+ * records are pending, or at the latest maxDelayMillis after the oldest pending
+ * record was appended (by a background thread). {@link #sync()} forces pending
+ * records to disk right away.
+ *
+ * A record interrupted by a crash leaves a truncated last line in the file;
+ * readers should drop records that don't have the expected number of fields.
+ */
+public class ChangeLog implements AutoCloseable {
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final int batchSize;
+    private final FileChannel channel;
+    private final ScheduledExecutorService flusher;
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private int pendingRecords;
+    private long recordCount;
+    private IOException flushFailure;
+
+    /**
+     * Open a change log, creating the file if needed. New records are appended
+     * after the existing ones.
+     *
+     * @param file           the log file
+     * @param batchSize      number of records forced to disk together
+     * @param maxDelayMillis longest time a record may wait before being forced to disk
+     * @throws IOException if the file can't be opened for writing
+     */
+    public ChangeLog(File file, int batchSize, long maxDelayMillis) throws IOException {
+        if(batchSize < 1 || maxDelayMillis < 1) {
+            throw new IllegalArgumentException("Batch size and delay must be positive");
+        }
+        this.file = file;
+        this.batchSize = batchSize;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "change-log-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushInBackground, maxDelayMillis, maxDelayMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the log file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Append a record made of the given fields.
+     *
+     * @param fields values of the record, formatted with {@link Utils#formatCSV(String...)}
+     * @throws IOException if a previous background flush failed, or if the batch can't be written
+     */
+    public synchronized void append(String... fields) throws IOException {
+        if(flushFailure != null) {
+            throw flushFailure;
+        }
+        byte[] record = (Utils.formatCSV(fields) + '\n').getBytes(StandardCharsets.UTF_8);
+        if(buffer.remaining() < record.length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + record.length));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        buffer.put(record);
+        pendingRecords++;
+        recordCount++;
+        if(pendingRecords >= batchSize) {
+            sync();
+        }
+    }
+
+    /**
+     * Write and force all pending records to disk.
+     *
+     * @throws IOException if the records can't be written
+     */
+    public synchronized void sync() throws IOException {
+        if(pendingRecords == 0) {
+            return;
+        }
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        channel.force(false);
+        pendingRecords = 0;
+    }
+
+    /**
+     * @return the number of records appended since the log was opened or last truncated.
+     * Records already in the file when it was opened are not counted.
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the size of the log in bytes, pending records included.
+     * @throws IOException if the size can't be read
+     */
+    public synchronized long size() throws IOException {
+        return channel.size() + buffer.position();
+    }
+
+    /**
+     * Read back every record of the log, pending records included.
+     *
+     * @param handler receives each record
+     * @return the number of records read
+     * @throws IOException if the log can't be read
+     */
+    public synchronized long replay(CsvParser.RowHandler handler) throws IOException {
+        sync();
+        return new CsvParser(false, true).parse(file, handler);
+    }
+
+    /**
+     * Drop every record of the log, typically once they have been compacted
+     * into a snapshot.
+     *
+     * @throws IOException if the log can't be truncated
+     */
+    public synchronized void truncate() throws IOException {
+        buffer.clear();
+        pendingRecords = 0;
+        recordCount = 0;
+        channel.truncate(0);
+        channel.force(true);
+    }
+
+    /**
+     * Force pending records to disk and close the log.
+     *
+     * @throws IOException if pending records can't be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flusher.shutdownNow();
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private synchronized void flushInBackground() {
+        try {
+            sync();
+        } catch (IOException e) {
+            flushFailure = e;
+        }
+    }
+}
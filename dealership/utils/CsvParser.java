@@ -0,0 +1,258 @@
+package dealership.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A streaming CSV parser. Files are memory-mapped and tokenized in place: no
+ * line or field strings are built, each row is handed to a {@link RowHandler}
+ * as a {@link CsvRow} that points into the mapped bytes.
+ *
+ * Fields are separated by commas and surrounding whitespaces are dropped. A
+ * field may be wrapped in double quotes, in which case it can contain commas,
+ * line breaks and doubled quotes ("") standing for a single quote.
+ * Lines whose first non-whitespace character is {@link IOHelper#COMMENT_CHAR}
+ * and lines containing only whitespaces can be skipped.
+ *
+ * Files larger than the mapping window are mapped one window at a time. A row
+ * is never split across two windows.
+ */
+public class CsvParser {
+    public static final char SEPARATOR = ',';
+    private static final long DEFAULT_WINDOW_SIZE = 256L * 1024 * 1024;
+    private static final long MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * Callback receiving each parsed row.
+     */
+    public interface RowHandler {
+        /**
+         * Called once per row. The row is reused by the parser and must not be
+         * retained after this method returns.
+         *
+         * @param row the parsed row
+         */
+        void onRow(CsvRow row);
+    }
+
+    private final boolean dropCommentLines;
+    private final boolean dropEmptyLines;
+    private final long windowSize;
+
+    /**
+     * Instantiate a parser.
+     *
+     * @param dropCommentLines skip lines starting with the comment character
+     * @param dropEmptyLines   skip lines containing only whitespaces
+     */
+    public CsvParser(boolean dropCommentLines, boolean dropEmptyLines) {
+        this(dropCommentLines, dropEmptyLines, DEFAULT_WINDOW_SIZE);
+    }
+
+    CsvParser(boolean dropCommentLines, boolean dropEmptyLines, long windowSize) {
+        if(windowSize <= 0 || windowSize > MAX_WINDOW_SIZE) {
+            throw new IllegalArgumentException("Invalid mapping window size: " + windowSize);
+        }
+        this.dropCommentLines = dropCommentLines;
+        this.dropEmptyLines = dropEmptyLines;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Parse a file, calling the handler for every row.
+     *
+     * @param file    the file to parse
+     * @param handler receives each row
+     * @return the number of rows passed to the handler
+     * @throws IOException if the file can't be read
+     */
+    public long parse(File file, RowHandler handler) throws IOException {
+        return parse(file, 0, file.length(), handler);
+    }
+
+    /**
+     * Parse the byte range [from, to) of a file, calling the handler for every row.
+     * The range is expected to start at the beginning of a line.
+     *
+     * @param file    the file to parse
+     * @param from    offset of the first byte to parse
+     * @param to      offset following the last byte to parse
+     * @param handler receives each row
+     * @return the number of rows passed to the handler
+     * @throws IOException if the file can't be read
+     */
+    public long parse(File file, long from, long to, RowHandler handler) throws IOException {
+        long rows = 0;
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            to = Math.min(to, channel.size());
+            CsvRow row = new CsvRow();
+            long position = from;
+            long window = windowSize;
+            long[] lineNumber = {1};
+            while(position < to) {
+                long length = Math.min(window, to - position);
+                boolean last = position + length == to;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                long[] consumed = {0};
+                rows += parse(buffer, position, last, lineNumber, consumed, row, handler);
+                if(consumed[0] == 0) {
+                    // A single row is larger than the window, retry with a larger one.
+                    if(window == MAX_WINDOW_SIZE) {
+                        throw new IOException("Row at offset " + position + " of " + file + " is too large");
+                    }
+                    window = Math.min(window * 2, MAX_WINDOW_SIZE);
+                    continue;
+                }
+                position += consumed[0];
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Parse all the rows contained in a buffer, from its position to its limit.
+     *
+     * @param buffer  the buffer to parse
+     * @param handler receives each row
+     * @return the number of rows passed to the handler
+     */
+    public long parse(ByteBuffer buffer, RowHandler handler) {
+        ByteBuffer slice = buffer.slice();
+        return parse(slice, 0, true, new long[]{1}, new long[1], new CsvRow(), handler);
+    }
+
+    /**
+     * Parse rows from a buffer. If the buffer is not the last part of the input,
+     * parsing stops before the first incomplete row.
+     *
+     * @return the number of rows passed to the handler. The number of bytes
+     * consumed is stored in consumed[0].
+     */
+    private long parse(ByteBuffer buf, long baseOffset, boolean last, long[] lineNumber,
+                       long[] consumed, CsvRow row, RowHandler handler) {
+        final int limit = buf.limit();
+        long rows = 0;
+        long line = lineNumber[0];
+        int pos = 0;
+        while(pos < limit) {
+            final int rowStart = pos;
+            int p = skipBlanks(buf, pos, limit);
+
+            // Empty and comment lines
+            boolean empty = p >= limit || buf.get(p) == '\n';
+            boolean comment = !empty && buf.get(p) == IOHelper.COMMENT_CHAR;
+            if((empty && dropEmptyLines) || (comment && dropCommentLines)) {
+                int eol = indexOfNewLine(buf, p, limit);
+                if(eol < 0) {
+                    if(!last) {
+                        break;
+                    }
+                    pos = limit;
+                } else {
+                    pos = eol + 1;
+                }
+                line++;
+                continue;
+            }
+
+            row.reset(buf, line, baseOffset + rowStart);
+            int newLines = 0;
+            boolean complete = true;
+            while(true) {
+                p = skipBlanks(buf, p, limit);
+                if(p < limit && buf.get(p) == '"') {
+                    int start = ++p;
+                    boolean hasEscapes = false;
+                    while(true) {
+                        if(p >= limit) {
+                            complete = last; // unterminated quote at the end of the input
+                            break;
+                        }
+                        byte c = buf.get(p);
+                        if(c == '"') {
+                            if(p + 1 < limit && buf.get(p + 1) == '"') {
+                                hasEscapes = true;
+                                p += 2;
+                                continue;
+                            }
+                            if(p + 1 >= limit && !last) {
+                                complete = false;
+                            }
+                            break;
+                        }
+                        if(c == '\n') {
+                            newLines++;
+                        }
+                        p++;
+                    }
+                    if(!complete) {
+                        break;
+                    }
+                    row.addField(start, Math.min(p, limit), hasEscapes);
+                    // Ignore anything between the closing quote and the next separator
+                    while(p < limit && buf.get(p) != SEPARATOR && buf.get(p) != '\n') {
+                        p++;
+                    }
+                } else {
+                    int start = p;
+                    while(p < limit) {
+                        byte c = buf.get(p);
+                        if(c == SEPARATOR || c == '\n') {
+                            break;
+                        }
+                        p++;
+                    }
+                    int end = p;
+                    while(end > start && isBlank(buf.get(end - 1))) {
+                        end--;
+                    }
+                    row.addField(start, end, false);
+                }
+                if(p >= limit) {
+                    complete = last;
+                    break;
+                }
+                if(buf.get(p) == SEPARATOR) {
+                    p++;
+                    continue;
+                }
+                p++; // end of line
+                break;
+            }
+            if(!complete) {
+                break;
+            }
+            pos = p;
+            line += 1 + newLines;
+            handler.onRow(row);
+            rows++;
+        }
+        lineNumber[0] = line;
+        consumed[0] = pos;
+        return rows;
+    }
+
+    private static int skipBlanks(ByteBuffer buf, int pos, int limit) {
+        while(pos < limit && isBlank(buf.get(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int indexOfNewLine(ByteBuffer buf, int pos, int limit) {
+        for(int i = pos; i < limit; i++) {
+            if(buf.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+}
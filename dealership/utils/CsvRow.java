@@ -0,0 +1,328 @@
+package dealership.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * A single row produced by {@link CsvParser}. A row does not copy the bytes of
+ * its fields; it only records where each field starts and ends inside the
+ * buffer being parsed. The same instance is reused for every row of a file, so
+ * a row is only valid inside the {@link CsvParser.RowHandler#onRow(CsvRow)} call
+ * it was passed to. Values that must outlive the callback should be extracted
+ * with {@link #getString(int)} or one of the numeric getters.
+ */
+public class CsvRow {
+    private static final int INITIAL_FIELDS = 16;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private ByteBuffer buffer;
+    private int[] starts = new int[INITIAL_FIELDS];
+    private int[] ends = new int[INITIAL_FIELDS];
+    private boolean[] escaped = new boolean[INITIAL_FIELDS];
+    private int fieldCount;
+    private long lineNumber;
+    private long offset;
+    private byte[] scratch = new byte[64];
+
+    void reset(ByteBuffer buffer, long lineNumber, long offset) {
+        this.buffer = buffer;
+        this.fieldCount = 0;
+        this.lineNumber = lineNumber;
+        this.offset = offset;
+    }
+
+    void addField(int start, int end, boolean hasEscapedQuotes) {
+        if(fieldCount == starts.length) {
+            int newLength = starts.length * 2;
+            starts = Arrays.copyOf(starts, newLength);
+            ends = Arrays.copyOf(ends, newLength);
+            escaped = Arrays.copyOf(escaped, newLength);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        escaped[fieldCount] = hasEscapedQuotes;
+        fieldCount++;
+    }
+
+    /**
+     * @return the number of fields in this row.
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return the 1-based line number in the source at which this row starts.
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return the byte offset in the source at which this row starts.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get the length in bytes of a field, surrounding whitespaces and quotes excluded.
+     *
+     * @param index index of the field
+     * @return the length of the field in bytes
+     */
+    public int getLength(int index) {
+        checkIndex(index);
+        return ends[index] - starts[index];
+    }
+
+    /**
+     * @param index index of the field
+     * @return true if the field has no content after trimming.
+     */
+    public boolean isEmpty(int index) {
+        return getLength(index) == 0;
+    }
+
+    /**
+     * Get the value of a field as a string. Surrounding whitespaces are removed,
+     * and quoted fields are returned without their quotes, with any doubled quote
+     * inside them collapsed into a single one.
+     *
+     * @param index index of the field
+     * @return the value of the field.
+     */
+    public String getString(int index) {
+        checkIndex(index);
+        int start = starts[index];
+        int length = ends[index] - start;
+        byte[] bytes = scratch(length);
+        int n = 0;
+        if(escaped[index]) {
+            for(int i = start; i < start + length; i++) {
+                byte b = buffer.get(i);
+                bytes[n++] = b;
+                if(b == '"') {
+                    i++; // skip the second quote of an escaped pair
+                }
+            }
+        } else {
+            for(int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(start + i);
+            }
+            n = length;
+        }
+        return new String(bytes, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the value of a field as a string shared with every other row holding
+     * the same value, looked up in a pool straight from the bytes of the field.
+     *
+     * @param index index of the field
+     * @param pool  the pool the value is taken from, or added to
+     * @return the value of the field, as returned by {@link #getString(int)}.
+     */
+    public String getString(int index, StringPool pool) {
+        checkIndex(index);
+        if(escaped[index]) {
+            return pool.intern(getString(index));
+        }
+        return pool.get(buffer, starts[index], ends[index] - starts[index]);
+    }
+
+    /**
+     * Compare a field with a value directly on its bytes, without building a string.
+     *
+     * @param index index of the field
+     * @param value the value, encoded in UTF-8
+     * @return true if the field, as returned by {@link #getString(int)}, equals the value.
+     */
+    public boolean fieldEquals(int index, byte[] value) {
+        checkIndex(index);
+        int start = starts[index];
+        int length = ends[index] - start;
+        if(escaped[index]) {
+            return getString(index).equals(new String(value, StandardCharsets.UTF_8));
+        }
+        if(length != value.length) {
+            return false;
+        }
+        for(int i = 0; i < length; i++) {
+            if(buffer.get(start + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse a field as an int directly from its bytes.
+     *
+     * @param index index of the field
+     * @return the parsed value.
+     * @throws NumberFormatException if the field is not a valid int.
+     */
+    public int getInt(int index) {
+        long value = getLong(index);
+        if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Value out of int range: " + getString(index));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parse a field as a long directly from its bytes.
+     *
+     * @param index index of the field
+     * @return the parsed value.
+     * @throws NumberFormatException if the field is not a valid long.
+     */
+    public long getLong(int index) {
+        checkIndex(index);
+        int pos = starts[index];
+        int end = ends[index];
+        if(pos == end) {
+            throw new NumberFormatException("Empty numeric field");
+        }
+        boolean negative = false;
+        byte first = buffer.get(pos);
+        if(first == '-' || first == '+') {
+            negative = first == '-';
+            pos++;
+            if(pos == end) {
+                throw new NumberFormatException("For input string: \"" + getString(index) + "\"");
+            }
+        }
+        long value = 0;
+        for(; pos < end; pos++) {
+            int digit = buffer.get(pos) - '0';
+            if(digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("For input string: \"" + getString(index) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a field as a double. Plain decimal values such as "20981" or
+     * "-12.75" are parsed directly from the bytes; anything else (exponents,
+     * very long mantissas, special values) is handed to {@link Double#parseDouble(String)}.
+     *
+     * @param index index of the field
+     * @return the parsed value.
+     * @throws NumberFormatException if the field is not a valid double.
+     */
+    public double getDouble(int index) {
+        checkIndex(index);
+        int pos = starts[index];
+        int end = ends[index];
+        if(pos == end) {
+            throw new NumberFormatException("Empty numeric field");
+        }
+        boolean negative = false;
+        byte first = buffer.get(pos);
+        if(first == '-' || first == '+') {
+            negative = first == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenDot = false;
+        for(; pos < end; pos++) {
+            byte b = buffer.get(pos);
+            if(b == '.' && !seenDot) {
+                seenDot = true;
+                continue;
+            }
+            int digit = b - '0';
+            if(digit < 0 || digit > 9 || digits >= 15) {
+                return Double.parseDouble(getString(index));
+            }
+            mantissa = mantissa * 10 + digit;
+            digits++;
+            if(seenDot) {
+                fractionDigits++;
+            }
+        }
+        if(digits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(getString(index));
+        }
+        // Both operands are exact doubles, so the division is correctly rounded.
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a field holding an ISO date (e.g., 2025-01-13). Dates in that exact
+     * form are parsed directly from the bytes; other forms are handed to
+     * {@link LocalDate#parse(CharSequence)}.
+     *
+     * @param index index of the field
+     * @return the parsed date.
+     * @throws java.time.DateTimeException if the field is not a valid date.
+     */
+    public LocalDate getDate(int index) {
+        checkIndex(index);
+        int p = starts[index];
+        if(ends[index] - p == 10 && buffer.get(p + 4) == '-' && buffer.get(p + 7) == '-') {
+            int year = digits(p, 4);
+            int month = digits(p + 5, 2);
+            int day = digits(p + 8, 2);
+            if(year >= 0 && month >= 0 && day >= 0) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(getString(index));
+    }
+
+    /**
+     * Get the values of all the fields in this row.
+     *
+     * @return an array containing the value of each field.
+     */
+    public String[] toArray() {
+        String[] values = new String[fieldCount];
+        for(int i = 0; i < fieldCount; i++) {
+            values[i] = getString(i);
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private int digits(int start, int count) {
+        int value = 0;
+        for(int i = start; i < start + count; i++) {
+            int digit = buffer.get(i) - '0';
+            if(digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private byte[] scratch(int length) {
+        if(scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        return scratch;
+    }
+
+    private void checkIndex(int index) {
+        if(index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " out of " + fieldCount + " fields");
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package dealership.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Describes the fields held by a kind of csv file (e.g., the inventory) and
+ * resolves, once per file, the column each field is found in:
+ * - If the first line of the file is a comment naming every required field
+ *   (e.g., "# vin, make, model, ..."), positions are taken from it. Names are
+ *   matched ignoring case, spaces and punctuation, and unknown columns are ignored.
+ * - Otherwise, the default layout having as many columns as the first row of
+ *   the file is used, or the first default layout if none does.
+ *
+ * The resolved {@link Layout} hands out readers for single fields, with the
+ * column position already bound. A row mapper built from these readers parses
+ * every row of the file the same way, without looking at the layout again.
+ * Optional fields missing from a layout are read as a fixed value.
+ */
+public class CsvSchema {
+    private static final int PROBE_SIZE = 64 * 1024;
+
+    /**
+     * Converts a row into an object.
+     *
+     * @param <T> the type of object
+     */
+    public interface RowMapper<T> {
+        /**
+         * @param row a row having at least {@link Layout#getWidth()} fields
+         * @return the object held by the row
+         * @throws NumberFormatException if a numeric field is not a number
+         * @throws java.time.DateTimeException if a date field is not a date
+         */
+        T map(CsvRow row);
+    }
+
+    private final String name;
+    private final Map<String, Integer> fields = new LinkedHashMap<>(); // field -> index
+    private final Map<String, Integer> names = new HashMap<>(); // normalized name or alias -> index
+    private final List<String> required = new ArrayList<>();
+    private final List<Layout> defaultLayouts = new ArrayList<>();
+
+    /**
+     * Instantiate an empty schema.
+     *
+     * @param name name of the kind of file, used in messages
+     */
+    public CsvSchema(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Add a field.
+     *
+     * @param field    name of the field
+     * @param required true if a header must name this field to be used
+     * @param aliases  other names the column may have in a header
+     * @return this schema
+     */
+    public CsvSchema field(String field, boolean required, String... aliases) {
+        if(fields.containsKey(field)) {
+            throw new IllegalArgumentException("Duplicate field " + field + " in schema " + name);
+        }
+        int index = fields.size();
+        fields.put(field, index);
+        names.put(normalize(field), index);
+        for(String alias : aliases) {
+            names.put(normalize(alias), index);
+        }
+        if(required) {
+            this.required.add(field);
+        }
+        return this;
+    }
+
+    /**
+     * Add a default layout, used for files without a header. Layouts are
+     * tried in the order they were added.
+     *
+     * @param columns the field held by each column, or null for ignored columns
+     * @return this schema
+     */
+    public CsvSchema defaultLayout(String... columns) {
+        defaultLayouts.add(layout(columns));
+        return this;
+    }
+
+    /**
+     * Build a fixed layout.
+     *
+     * @param columns the field held by each column, or null for ignored columns
+     * @return the layout
+     * @throws IllegalArgumentException if a column names an unknown field, or
+     *                                  a required field has no column
+     */
+    public Layout layout(String... columns) {
+        int[] positions = new int[fields.size()];
+        Arrays.fill(positions, -1);
+        for(int i = 0; i < columns.length; i++) {
+            if(columns[i] != null) {
+                positions[index(columns[i])] = i;
+            }
+        }
+        for(String field : required) {
+            if(positions[fields.get(field)] < 0) {
+                throw new IllegalArgumentException("Layout of " + name + " has no column for " + field);
+            }
+        }
+        return new Layout(positions, columns.length, "default");
+    }
+
+    /**
+     * Resolve the layout of a file from its first lines.
+     *
+     * @param file the file
+     * @return the layout of the file; the first default layout if the file is
+     * missing or holds no row
+     * @throws IOException if the file can't be read
+     */
+    public Layout resolve(File file) throws IOException {
+        if(file == null || !file.isFile()) {
+            return resolve(null, -1);
+        }
+        Probe probe = new Probe();
+        new CsvParser(false, true).parse(file, 0, Math.min(file.length(), PROBE_SIZE), probe);
+        return resolve(probe.header, probe.fieldCount);
+    }
+
+    /**
+     * Resolve the layout of the content of a file from its first lines.
+     *
+     * @param content the content, from its position to its limit, which are left unchanged
+     * @return the layout of the content; the first default layout if it holds no row
+     */
+    public Layout resolve(ByteBuffer content) {
+        ByteBuffer start = content.duplicate();
+        start.limit(start.position() + Math.min(start.remaining(), PROBE_SIZE));
+        Probe probe = new Probe();
+        new CsvParser(false, true).parse(start, probe);
+        return resolve(probe.header, probe.fieldCount);
+    }
+
+    /**
+     * Resolve a layout.
+     *
+     * @param header     the column names given by a header, or null if there is none
+     * @param fieldCount the number of fields of the first row, or -1 if unknown
+     * @return the layout named by the header if it names every required field,
+     * otherwise the default layout having that number of fields, otherwise the
+     * first default layout
+     */
+    public Layout resolve(String[] header, int fieldCount) {
+        if(header != null) {
+            int[] positions = new int[fields.size()];
+            Arrays.fill(positions, -1);
+            for(int i = 0; i < header.length; i++) {
+                Integer index = names.get(normalize(header[i]));
+                if(index != null && positions[index] < 0) {
+                    positions[index] = i;
+                }
+            }
+            boolean complete = true;
+            for(String field : required) {
+                complete &= positions[fields.get(field)] >= 0;
+            }
+            if(complete) {
+                return new Layout(positions, header.length, "header");
+            }
+        }
+        if(defaultLayouts.isEmpty()) {
+            throw new IllegalStateException("Schema " + name + " has no default layout");
+        }
+        for(Layout layout : defaultLayouts) {
+            if(layout.getColumnCount() == fieldCount) {
+                return layout;
+            }
+        }
+        return defaultLayouts.get(0);
+    }
+
+    /**
+     * Finds the header and the number of fields of the first row of a file.
+     */
+    private static final class Probe implements CsvParser.RowHandler {
+        String[] header; // null if there is none
+        int fieldCount = -1;
+
+        @Override
+        public void onRow(CsvRow row) {
+            if(fieldCount >= 0) {
+                return;
+            }
+            boolean comment = row.getFieldCount() > 0
+                    && row.getString(0).startsWith(String.valueOf(IOHelper.COMMENT_CHAR));
+            if(!comment) {
+                fieldCount = row.getFieldCount();
+            } else if(header == null && row.getLineNumber() == 1) {
+                header = row.toArray();
+                header[0] = header[0].substring(1);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the names of the fields, in the order they were added.
+     */
+    public List<String> getFields() {
+        return Collections.unmodifiableList(new ArrayList<>(fields.keySet()));
+    }
+
+    private int index(String field) {
+        Integer index = fields.get(field);
+        if(index == null) {
+            throw new IllegalArgumentException("Unknown field " + field + " in schema " + name);
+        }
+        return index;
+    }
+
+    private static String normalize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for(int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if(Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The column position of each field of the schema in a given file.
+     */
+    public final class Layout {
+        private final int[] positions;
+        private final int width;
+        private final int columnCount;
+        private final String source;
+
+        private Layout(int[] positions, int columnCount, String source) {
+            this.positions = positions;
+            this.columnCount = columnCount;
+            this.source = source;
+            int max = -1;
+            for(int position : positions) {
+                max = Math.max(max, position);
+            }
+            this.width = max + 1;
+        }
+
+        /**
+         * @param field name of a field of the schema
+         * @return the position of the column holding the field, or -1 if there is none.
+         */
+        public int position(String field) {
+            return positions[index(field)];
+        }
+
+        /**
+         * @param field name of a field of the schema
+         * @return true if a column holds the field.
+         */
+        public boolean has(String field) {
+            return position(field) >= 0;
+        }
+
+        /**
+         * @return the number of fields a row needs to hold every field of this layout.
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * @return the number of columns of the layout, ignored ones included:
+         * the number of fields of every row of a file having this layout.
+         */
+        public int getColumnCount() {
+            return columnCount;
+        }
+
+        /**
+         * @return "header" if the layout was read from a header, "default" otherwise.
+         */
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * @param field name of a field
+         * @return a reader of the field as a string, or of "" if no column holds it
+         */
+        public Function<CsvRow, String> string(String field) {
+            int p = position(field);
+            return p < 0 ? row -> "" : row -> row.getString(p);
+        }
+
+        /**
+         * @param field name of a field
+         * @param pool  the pool the values are shared through
+         * @return a reader of the field as a pooled string, or of "" if no column holds it
+         */
+        public Function<CsvRow, String> string(String field, StringPool pool) {
+            int p = position(field);
+            return p < 0 ? row -> "" : row -> row.getString(p, pool);
+        }
+
+        /**
+         * @param field name of a field
+         * @return a reader of the field as an int, or of 0 if no column holds it
+         */
+        public ToIntFunction<CsvRow> intValue(String field) {
+            int p = position(field);
+            return p < 0 ? row -> 0 : row -> row.getInt(p);
+        }
+
+        /**
+         * @param field name of a field
+         * @return a reader of the field as a double
+         * @throws IllegalArgumentException if no column holds the field
+         */
+        public ToDoubleFunction<CsvRow> doubleValue(String field) {
+            int p = checkedPosition(field);
+            return row -> row.getDouble(p);
+        }
+
+        /**
+         * @param field   name of a field
+         * @param missing the value of empty fields, and of every row if no column holds the field
+         * @return a reader of the field as a double
+         */
+        public ToDoubleFunction<CsvRow> doubleValue(String field, double missing) {
+            int p = position(field);
+            return p < 0 ? row -> missing : row -> row.isEmpty(p) ? missing : row.getDouble(p);
+        }
+
+        /**
+         * @param field name of a field
+         * @return a reader of the field as a date
+         * @throws IllegalArgumentException if no column holds the field
+         */
+        public Function<CsvRow, LocalDate> date(String field) {
+            int p = checkedPosition(field);
+            return row -> row.getDate(p);
+        }
+
+        /**
+         * @param field name of a field
+         * @return a reader of the field as a date, returning null for empty
+         * fields and for every row if no column holds the field
+         */
+        public Function<CsvRow, LocalDate> optionalDate(String field) {
+            int p = position(field);
+            return p < 0 ? row -> null : row -> row.isEmpty(p) ? null : row.getDate(p);
+        }
+
+        private int checkedPosition(String field) {
+            int p = position(field);
+            if(p < 0) {
+                throw new IllegalArgumentException("No column holds " + field + " in " + this);
+            }
+            return p;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(name).append(" layout (").append(source).append("):");
+            for(Map.Entry<String, Integer> e : fields.entrySet()) {
+                sb.append(' ').append(e.getKey()).append('=').append(positions[e.getValue()]);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -1,26 +1,267 @@
 package dealership.utils;
 
 import dealership.Car;
+import dealership.Role;
+import dealership.Sale;
 import dealership.User;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.DateTimeException;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.zip.CRC32;
 
 /**
  * The DealershipDB class handles database operations such as loading users and inventory.
+ *
+ * Changes are persisted in two layers:
+ * - Every change is appended to a change log (`changes.log`), which is forced
+ *   to disk in batches. Recording a change never rewrites a csv file.
+ * - From time to time, the change log is compacted: the whole state is written
+ *   to snapshot files (`*.snapshot.csv`) and the log is emptied. Snapshots are
+ *   written to a temporary file first and then renamed, so a crash never leaves
+ *   a half-written snapshot behind.
+ * - Each log starts with its generation, one more than the previous log. A
+ *   snapshot names the generation of the log it was compacted from and how
+ *   many of its records it holds, so when a crash interrupts a compaction,
+ *   the log left behind isn't applied again to the snapshots already written,
+ *   which would duplicate its sales.
+ * - Once compacted, the users and inventory csv files are no longer loaded,
+ *   but they can still be edited: their content as last read is kept, so
+ *   the rows changed since can be told (see {@link #loadInventoryDifference()})
+ *   and recorded like any other change.
+ *
+ * Loading reads the latest snapshot of a file if there is one (the original csv
+ * file otherwise) and then applies the changes found in the log. The columns of
+ * each file are resolved once, from its header or its number of columns (see
+ * {@link CsvSchema}), so files written with another column order still load.
+ *
+ * To avoid parsing text on every start, the users, inventory and sales read
+ * from those files are also cached in a binary snapshot (`dealership.bin`, see
+ * {@link BinarySnapshot}). The binary snapshot is used as long as each of the
+ * files it was built from has the same length and modification time, and
+ * rebuilt otherwise.
+ *
+ * The version of each file read or written is remembered, so files changed by
+ * another process since can be found with {@link #getChange(String)} and read
+ * again, or only their new rows when rows were appended to the sales.
+ *
+ * The sales of a range of dates can be loaded on their own, through a sparse
+ * index of the sales file kept next to it (`sales.csv.index`, see {@link SalesIndex}).
  */
-public class DealershipDB {
+public class DealershipDB implements AutoCloseable {
     public static final boolean DROP_COMMENT_LINES = true;
     public static final boolean DROP_EMPTY_LINES = true;
 
     public static final String INVENTORY_FILE_NAME = "inventory.csv";
     public static final String USERS_FILE_NAME = "users.csv";
     public static final String SALES_FILE_NAME = "sales.csv";
+    public static final String DEALER_INFO_FILE_NAME = "dealerinfo.csv";
+    public static final String INVENTORY_SNAPSHOT_FILE_NAME = "inventory.snapshot.csv";
+    public static final String USERS_SNAPSHOT_FILE_NAME = "users.snapshot.csv";
+    public static final String SALES_SNAPSHOT_FILE_NAME = "sales.snapshot.csv";
+    public static final String CHANGE_LOG_FILE_NAME = "changes.log";
+    public static final String BINARY_SNAPSHOT_FILE_NAME = "dealership.bin";
+    private static final Map<String, String> SNAPSHOT_FILE_NAMES = Map.of(
+            INVENTORY_FILE_NAME, INVENTORY_SNAPSHOT_FILE_NAME,
+            USERS_FILE_NAME, USERS_SNAPSHOT_FILE_NAME,
+            SALES_FILE_NAME, SALES_SNAPSHOT_FILE_NAME);
+
+    // Change log tuning: records forced to disk together, longest wait before
+    // a record is forced, and number of records that triggers a compaction.
+    public static final int LOG_BATCH_SIZE = 64;
+    public static final long LOG_MAX_DELAY_MILLIS = 200;
+    public static final int COMPACTION_THRESHOLD = 10_000;
+
+    // Change log record types
+    private static final String CAR_PUT = "car+";
+    private static final String CAR_REMOVED = "car-";
+    private static final String USER_PUT = "user+";
+    private static final String USER_REMOVED = "user-";
+    private static final String SALE_ADDED = "sale+";
+    private static final String LOG_GENERATION = "log"; // the first record of a log
+
+    // Second line of a snapshot, naming the generation of the log compacted
+    // into it, then the number of records of that log it holds
+    private static final String SNAPSHOT_LOG_PREFIX = "# compacted log, ";
+
+    private static final String SALES_SNAPSHOT_HEADER = "# date, vin, cost, price, salesperson, customer";
+    private static final String INVENTORY_SNAPSHOT_HEADER =
+            "# vin, acquisition date, make, model, year, mileage, color, cost, price, status";
+    private static final String USERS_SNAPSHOT_HEADER = "# id, first name, last name, email, phone, role, username, password";
+
+    // Fields of the inventory files. Without a header, a file is read with the
+    // layout of inventory.csv, or the 8-column layout of older snapshots and feeds.
+    public static final CsvSchema INVENTORY_SCHEMA = new CsvSchema("inventory")
+            .field("vin", true)
+            .field("acquisition date", false, "acquired", "date")
+            .field("make", true)
+            .field("model", true)
+            .field("year", true)
+            .field("mileage", true, "miles")
+            .field("color", true, "colour")
+            .field("cost", false)
+            .field("price", true)
+            .field("status", true)
+            .defaultLayout("vin", "acquisition date", "make", "model", "year", "mileage", "color", "cost", "price", "status")
+            .defaultLayout("vin", "make", "model", "year", "mileage", "color", "price", "status");
+    public static final CsvSchema USERS_SCHEMA = new CsvSchema("users")
+            .field("username", true)
+            .field("password", true)
+            .field("role", true)
+            .field("id", false)
+            .field("first name", false, "first")
+            .field("last name", false, "last")
+            .field("email", false, "e-mail")
+            .field("phone", false, "telephone")
+            .defaultLayout("id", "first name", "last name", "email", "phone", "role", "username", "password");
+    public static final CsvSchema SALES_SCHEMA = new CsvSchema("sales")
+            .field("date", true)
+            .field("vin", true)
+            .field("cost", true)
+            .field("price", true)
+            .field("salesperson", true)
+            .field("customer", true)
+            .defaultLayout("date", "vin", "cost", "price", "salesperson", "customer");
+
+    // Change log records hold the record type, then the fields in snapshot order,
+    // except user records: username, password, role, then the contact details,
+    // which records written before they were kept don't have.
+    // Car records written before acquisition dates and costs were kept have 9 fields.
+    private static final CsvSchema.Layout LOG_CAR_LAYOUT = INVENTORY_SCHEMA.layout(null,
+            "vin", "acquisition date", "make", "model", "year", "mileage", "color", "cost", "price", "status");
+    private static final CsvSchema.Layout OLD_LOG_CAR_LAYOUT = INVENTORY_SCHEMA.layout(null,
+            "vin", "make", "model", "year", "mileage", "color", "price", "status");
+    private static final CsvSchema.Layout LOG_SALE_LAYOUT = SALES_SCHEMA.layout(null,
+            "date", "vin", "cost", "price", "salesperson", "customer");
+
+    private static final Metrics.Timer LOAD_INVENTORY = Metrics.timer("db.load.inventory");
+    private static final Metrics.Timer LOAD_USERS = Metrics.timer("db.load.users");
+    private static final Metrics.Timer LOAD_SALES = Metrics.timer("db.load.sales");
+    private static final Metrics.Timer LOAD_SALES_RANGE = Metrics.timer("db.load.sales.range");
+    private static final Metrics.Timer COMPACT = Metrics.timer("db.compact");
+    private static final Metrics.Counter CARS_LOADED = Metrics.counter("db.load.inventory.rows");
+    private static final Metrics.Counter USERS_LOADED = Metrics.counter("db.load.users.rows");
+    private static final Metrics.Counter SALES_LOADED = Metrics.counter("db.load.sales.rows");
 
     private final String dataDirPath;
     private final IOHelper ioHelper;
+    private final boolean useBinarySnapshot;
+    private ChangeLog changeLog; // opened on the first change
+    private BinarySnapshot binarySnapshot; // loaded on first use, dropped on compaction
+    private long logGeneration = -1; // read from the log on first use, guarded by this
+    private final Map<String, FileStamp> stamps = new HashMap<>(); // by file name, guarded by this
+    private final Map<String, SalesIndex> salesIndexes = new HashMap<>(); // by file name, guarded by this
+    // Content of the users and inventory csv files as last read, by file name, guarded by this
+    private final Map<String, byte[]> seenContents = new HashMap<>();
+
+    /**
+     * How a file changed since it was last read or written by this database.
+     */
+    public enum FileChange {
+        /** The file is unchanged, or was last changed by this database. */
+        NONE,
+        /** Rows were appended to the file, the rows read before are unchanged. */
+        APPENDED,
+        /** The file was rewritten, replaced, created or removed. */
+        REPLACED
+    }
+
+    /**
+     * The rows of a users or inventory file changed between two versions of
+     * the file: the rows added or changed, and the keys (VINs or usernames) of
+     * the rows removed.
+     *
+     * @param <T> Car or User.
+     */
+    public static final class Difference<T> {
+        private final List<T> put;
+        private final List<String> removed;
+
+        Difference(List<T> put, List<String> removed) {
+            this.put = put;
+            this.removed = removed;
+        }
+
+        /**
+         * @return The rows added or changed, in file order.
+         */
+        public List<T> getPut() { return put; }
+
+        /**
+         * @return The keys of the rows removed.
+         */
+        public List<String> getRemoved() { return removed; }
+
+        public boolean isEmpty() { return put.isEmpty() && removed.isEmpty(); }
+    }
+
+    /**
+     * The version of a file that was read or written: its identity, time of
+     * modification and length, and a checksum of its last bytes, which must
+     * still be there for the file to only have been appended to.
+     */
+    static final class FileStamp {
+        private static final int TAIL_LENGTH = 64;
+
+        final Object fileKey; // null if the file system doesn't have one
+        final long lastModified;
+        final long length;
+        final long tailChecksum;
+
+        private FileStamp(Object fileKey, long lastModified, long length, long tailChecksum) {
+            this.fileKey = fileKey;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.tailChecksum = tailChecksum;
+        }
+
+        /**
+         * Stamps the first length bytes of a file.
+         */
+        static FileStamp of(File file, BasicFileAttributes attributes, long length) throws IOException {
+            return new FileStamp(attributes.fileKey(), attributes.lastModifiedTime().toMillis(), length,
+                    checksum(file, length));
+        }
+
+        static BasicFileAttributes attributes(File file) throws IOException {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        }
+
+        static long checksum(File file, long length) throws IOException {
+            int size = (int) Math.min(TAIL_LENGTH, length);
+            ByteBuffer tail = ByteBuffer.allocate(size);
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                while (tail.hasRemaining() && channel.read(tail, length - size + tail.position()) > 0) {
+                    // Read until the buffer is full
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(tail.array(), 0, tail.position());
+            return crc.getValue();
+        }
+    }
 
     /**
      * Constructs a DealershipDB object.
@@ -28,11 +269,22 @@ public class DealershipDB {
      * @param dataDirPath The file path to the database directory.
      */
     public DealershipDB(String dataDirPath) {
+        this(dataDirPath, true);
+    }
+
+    /**
+     * Constructs a DealershipDB object.
+     *
+     * @param dataDirPath       The file path to the database directory.
+     * @param useBinarySnapshot Whether to load from, and maintain, the binary snapshot.
+     */
+    public DealershipDB(String dataDirPath, boolean useBinarySnapshot) {
         if (dataDirPath == null || dataDirPath.trim().isEmpty()) {
             throw new IllegalArgumentException("Data directory cannot be null or empty.");
         }
         this.dataDirPath = dataDirPath;
         this.ioHelper = new IOHelper(dataDirPath);
+        this.useBinarySnapshot = useBinarySnapshot;
     }
 
     /**
@@ -42,86 +294,1032 @@ public class DealershipDB {
      * @throws IOException If an error occurs while reading the file.
      */
     public List<Car> loadInventory() throws IOException {
-        List<Car> cars = new ArrayList<>();
-        List<String> lines = ioHelper.readFileContent(INVENTORY_FILE_NAME, DROP_COMMENT_LINES, DROP_EMPTY_LINES);
+        stampIfShadowed(INVENTORY_FILE_NAME);
+        Metrics.Sample sample = LOAD_INVENTORY.time();
+        try {
+            List<Car> cars = useBinarySnapshot ? new ArrayList<>(binarySnapshot().getCars()) : parseInventory();
+            cars = replayInventoryChanges(cars, getSourceFileName(INVENTORY_FILE_NAME));
+            CARS_LOADED.add(cars.size());
+            return cars;
+        } finally {
+            sample.close();
+        }
+    }
+
+    /**
+     * Loads users from `users.csv` and converts them into a list of User objects.
+     * The binary snapshot is only used if it is already loaded: the users file
+     * is read alone otherwise, so logging in doesn't wait for the whole snapshot.
+     *
+     * @return A list of User objects.
+     * @throws IOException If an error occurs while reading the file.
+     */
+    public List<User> loadUsers() throws IOException {
+        stampIfShadowed(USERS_FILE_NAME);
+        Metrics.Sample sample = LOAD_USERS.time();
+        try {
+            List<User> users = useBinarySnapshot && isBinarySnapshotLoaded()
+                    ? new ArrayList<>(binarySnapshot().getUsers()) : parseUsers();
+            users = replayUserChanges(users, getSourceFileName(USERS_FILE_NAME));
+            USERS_LOADED.add(users.size());
+            return users;
+        } finally {
+            sample.close();
+        }
+    }
 
-        for (String line : lines) {
-            String[] data = line.split(",");
+    /**
+     * Loads sales from `sales.csv` and converts them into a list of Sale objects.
+     *
+     * @return A list of Sale objects.
+     * @throws IOException If an error occurs while reading the file.
+     */
+    public List<Sale> loadSales() throws IOException {
+        stampIfShadowed(SALES_FILE_NAME);
+        Metrics.Sample sample = LOAD_SALES.time();
+        try {
+            List<Sale> sales = useBinarySnapshot ? new ArrayList<>(binarySnapshot().getSales()) : parseSales();
+            replaySaleChanges(sales, getSourceFileName(SALES_FILE_NAME));
+            SALES_LOADED.add(sales.size());
+            return sales;
+        } finally {
+            sample.close();
+        }
+    }
 
-            // Ensure we have enough fields (extra columns exist)
-            if (data.length >= 12) { // Your CSV has extra date + x1, y1, z1
-                data = new String[]{data[0], data[2], data[3], data[4], data[5], data[6], data[7], data[11]};
+    /**
+     * Loads the sales made between two dates, without reading the whole sales
+     * file: only the parts of the file its index tells may hold sales of those
+     * dates are parsed (see {@link SalesIndex}), then the change log. The binary
+     * snapshot is not used, and the sales are not stamped as loaded.
+     *
+     * @param from The first date, or null to start with the oldest sale.
+     * @param to   The last date, inclusive, or null to end with the latest sale.
+     * @return The sales made between the dates, in the order they were recorded.
+     * @throws IOException If an error occurs while reading the files.
+     */
+    public List<Sale> loadSales(LocalDate from, LocalDate to) throws IOException {
+        long first = from == null ? Long.MIN_VALUE : from.toEpochDay();
+        long last = to == null ? Long.MAX_VALUE : to.toEpochDay();
+        Metrics.Sample sample = LOAD_SALES_RANGE.time();
+        try {
+            List<Sale> sales = new ArrayList<>();
+            String fileName = getSourceFileName(SALES_FILE_NAME);
+            File file = ioHelper.getFileByName(fileName);
+            if (file != null) {
+                CsvSchema.Layout layout = SALES_SCHEMA.resolve(file);
+                CsvSchema.RowMapper<Sale> mapper = saleMapper(layout);
+                int columns = layout.getColumnCount();
+                salesIndex(fileName, file).scan(first, last, row -> {
+                    if (row.getFieldCount() != columns) {
+                        System.err.println("ERROR: Malformed sales data -> " + row);
+                        return;
+                    }
+                    try {
+                        Sale sale = mapper.map(row);
+                        if (isBetween(sale, first, last)) {
+                            sales.add(sale);
+                        }
+                    } catch (NumberFormatException | DateTimeException e) {
+                        System.err.println("ERROR: Invalid date or number format in " + fileName + " -> " + row);
+                    }
+                });
             }
-
-            if (data.length >= 8) {
-                try {
-                    Car car = new Car(
-                            data[0].trim(),                        // VIN
-                            data[1].trim(),                        // Make
-                            data[2].trim(),                        // Model
-                            Integer.parseInt(data[3].trim()),      // Year
-                            Integer.parseInt(data[4].trim()),      // Mileage
-                            data[5].trim(),                        // Color
-                            Double.parseDouble(data[6].trim()),    // Price
-                            data[7].trim()                         // Status
-                    );
-                    cars.add(car);
-                } catch (NumberFormatException e) {
-                    System.err.println("ERROR: Invalid number format in inventory.csv -> " + Arrays.toString(data));
+            List<Sale> logged = new ArrayList<>();
+            replaySaleChanges(logged, fileName);
+            for (Sale sale : logged) {
+                if (isBetween(sale, first, last)) {
+                    sales.add(sale);
                 }
+            }
+            return sales;
+        } finally {
+            sample.close();
+        }
+    }
+
+    private static boolean isBetween(Sale sale, long first, long last) {
+        long day = sale.getDate().toEpochDay();
+        return day >= first && day <= last;
+    }
+
+    private synchronized SalesIndex salesIndex(String fileName, File file) {
+        return salesIndexes.computeIfAbsent(fileName,
+                name -> new SalesIndex(file, new File(dataDirPath, name + SalesIndex.EXTENSION)));
+    }
+
+    /**
+     * Loads the description of the dealership from `dealerinfo.csv`, one
+     * "Key: Value" line per entry (e.g., "Dealership Name: Best Cars Dealer").
+     *
+     * @return The entries, in file order; empty if there is no such file.
+     * @throws IOException If an error occurs while reading the file.
+     */
+    public Map<String, String> loadDealerInfo() throws IOException {
+        Map<String, String> info = new LinkedHashMap<>();
+        for (String line : ioHelper.readFileContent(DEALER_INFO_FILE_NAME, DROP_COMMENT_LINES, DROP_EMPTY_LINES)) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                info.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
             } else {
-                System.err.println("ERROR: Malformed CSV line -> " + line);
+                System.err.println("ERROR: Malformed line in " + DEALER_INFO_FILE_NAME + " -> " + line);
             }
         }
-        return cars;
+        return info;
     }
 
     /**
-     * Loads users from `users.csv` and converts them into a list of User objects.
+     * Retrieves the name of the file the users, inventory or sales are loaded
+     * from: their snapshot once compacted, their csv file before.
      *
-     * @return A list of User objects.
+     * @param fileName {@link #USERS_FILE_NAME}, {@link #INVENTORY_FILE_NAME} or {@link #SALES_FILE_NAME}.
+     * @return The name of the file loaded.
+     */
+    public String getSourceFileName(String fileName) {
+        String snapshotFileName = SNAPSHOT_FILE_NAMES.get(fileName);
+        if (snapshotFileName == null) {
+            throw new IllegalArgumentException("Not a database file: " + fileName);
+        }
+        return latest(fileName, snapshotFileName);
+    }
+
+    /**
+     * Tells how a csv file or snapshot of the users, inventory or sales changed
+     * since it was last read or written by this database, or since it was
+     * loaded for a csv file its snapshot is loaded instead of.
+     *
+     * @param fileName The name of the file, e.g. {@link #SALES_FILE_NAME} or {@link #SALES_SNAPSHOT_FILE_NAME}.
+     * @return The change.
+     * @throws IOException If the file can't be read.
+     */
+    public synchronized FileChange getChange(String fileName) throws IOException {
+        File file = ioHelper.getFileByName(fileName);
+        FileStamp stamp = stamps.get(fileName);
+        if (file == null || stamp == null) {
+            return file == null && stamp == null ? FileChange.NONE : FileChange.REPLACED;
+        }
+        BasicFileAttributes attributes = FileStamp.attributes(file);
+        if ((stamp.fileKey != null && !stamp.fileKey.equals(attributes.fileKey()))
+                || attributes.size() < stamp.length
+                || FileStamp.checksum(file, stamp.length) != stamp.tailChecksum) {
+            return FileChange.REPLACED;
+        }
+        if (attributes.size() > stamp.length) {
+            return FileChange.APPENDED;
+        }
+        return attributes.lastModifiedTime().toMillis() == stamp.lastModified ? FileChange.NONE : FileChange.REPLACED;
+    }
+
+    /**
+     * Takes the current version of a file as seen, so it is no longer reported
+     * as changed, e.g. a csv file whose change is not reloaded.
+     *
+     * @param fileName The name of the file.
+     * @throws IOException If the file can't be read.
+     */
+    public synchronized void markSeen(String fileName) throws IOException {
+        stamp(fileName, ioHelper.getFileByName(fileName));
+    }
+
+    /**
+     * Reads the inventory csv file, changed since it was last read while its
+     * snapshot is loaded instead, and compares it with the version last read
+     * by VIN. The new version is then taken as read. A removed file is taken
+     * as read without any difference, so deleting the file after a compaction
+     * doesn't empty the inventory.
+     *
+     * @return The cars added or changed in the file, and the VINs of the cars removed from it.
      * @throws IOException If an error occurs while reading the file.
      */
-    public List<User> loadUsers() throws IOException {
+    public synchronized Difference<Car> loadInventoryDifference() throws IOException {
+        return difference(INVENTORY_FILE_NAME, INVENTORY_SCHEMA, DealershipDB::carMapper, Car::getVin,
+                DealershipDB::formatCar);
+    }
+
+    /**
+     * Reads the users csv file, changed since it was last read while its
+     * snapshot is loaded instead, and compares it with the version last read
+     * by username, like {@link #loadInventoryDifference()}.
+     *
+     * @return The users added or changed in the file, and the usernames of the users removed from it.
+     * @throws IOException If an error occurs while reading the file.
+     */
+    public synchronized Difference<User> loadUsersDifference() throws IOException {
+        return difference(USERS_FILE_NAME, USERS_SCHEMA, DealershipDB::userMapper, User::getUsername,
+                DealershipDB::formatUser);
+    }
+
+    private <T> Difference<T> difference(String fileName, CsvSchema schema,
+                                         Function<CsvSchema.Layout, CsvSchema.RowMapper<T>> mappers,
+                                         Function<T, String> key, Function<T, String> format) throws IOException {
+        List<T> put = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        File file = ioHelper.getFileByName(fileName);
+        byte[] previous = seenContents.get(fileName);
+        stamp(fileName, file); // keeps the new content
+        if (file == null) {
+            return new Difference<>(put, removed);
+        }
+        // Rows as they were, by key; like on load, the first row having a key wins
+        Map<String, String> before = new HashMap<>();
+        if (previous != null) {
+            for (T item : parseContent(fileName, previous, schema, mappers, false)) {
+                before.putIfAbsent(key.apply(item), format.apply(item));
+            }
+        }
+        Map<String, T> after = new LinkedHashMap<>();
+        for (T item : parseContent(fileName, seenContents.get(fileName), schema, mappers, true)) {
+            after.putIfAbsent(key.apply(item), item);
+        }
+        for (Map.Entry<String, T> e : after.entrySet()) {
+            if (!format.apply(e.getValue()).equals(before.remove(e.getKey()))) {
+                put.add(e.getValue());
+            }
+        }
+        removed.addAll(before.keySet());
+        return new Difference<>(put, removed);
+    }
+
+    /**
+     * Parses the content of a file kept in memory.
+     *
+     * @param report Whether to report the rows that can't be read.
+     */
+    private static <T> List<T> parseContent(String fileName, byte[] content, CsvSchema schema,
+                                            Function<CsvSchema.Layout, CsvSchema.RowMapper<T>> mappers,
+                                            boolean report) {
+        List<T> items = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        CsvSchema.Layout layout = schema.resolve(buffer);
+        CsvSchema.RowMapper<T> mapper = mappers.apply(layout);
+        int columns = layout.getColumnCount();
+        new CsvParser(DROP_COMMENT_LINES, DROP_EMPTY_LINES).parse(buffer, row -> {
+            if (row.getFieldCount() != columns) {
+                if (report) {
+                    System.err.println("ERROR: Malformed CSV line in " + fileName + " -> " + row);
+                }
+                return;
+            }
+            try {
+                items.add(mapper.map(row));
+            } catch (NumberFormatException | DateTimeException e) {
+                if (report) {
+                    System.err.println("ERROR: Invalid date or number format in " + fileName + " -> " + row);
+                }
+            }
+        });
+        return items;
+    }
+
+    /**
+     * Reads the inventory again from one of its files and the change log,
+     * without the binary snapshot.
+     *
+     * @param fileName {@link #INVENTORY_FILE_NAME} or {@link #INVENTORY_SNAPSHOT_FILE_NAME}.
+     * @return The cars.
+     * @throws IOException If an error occurs while reading the files.
+     */
+    public synchronized List<Car> reloadInventory(String fileName) throws IOException {
+        binarySnapshot = null; // out of date
+        return replayInventoryChanges(parseInventory(fileName), fileName);
+    }
+
+    /**
+     * Reads the users again from one of their files and the change log,
+     * without the binary snapshot.
+     *
+     * @param fileName {@link #USERS_FILE_NAME} or {@link #USERS_SNAPSHOT_FILE_NAME}.
+     * @return The users.
+     * @throws IOException If an error occurs while reading the files.
+     */
+    public synchronized List<User> reloadUsers(String fileName) throws IOException {
+        binarySnapshot = null;
+        return replayUserChanges(parseUsers(fileName), fileName);
+    }
+
+    /**
+     * Reads the sales again from one of their files and the change log,
+     * without the binary snapshot.
+     *
+     * @param fileName {@link #SALES_FILE_NAME} or {@link #SALES_SNAPSHOT_FILE_NAME}.
+     * @return The sales.
+     * @throws IOException If an error occurs while reading the files.
+     */
+    public synchronized List<Sale> reloadSales(String fileName) throws IOException {
+        binarySnapshot = null;
+        List<Sale> sales = parseSales(fileName);
+        replaySaleChanges(sales, fileName);
+        return sales;
+    }
+
+    /**
+     * Reads the sales appended to one of their files since it was last read
+     * or loaded (see {@link FileChange#APPENDED}). A last line not ended yet is
+     * left to be read once it is.
+     *
+     * @param fileName {@link #SALES_FILE_NAME} or {@link #SALES_SNAPSHOT_FILE_NAME}.
+     * @return The new sales.
+     * @throws IOException If an error occurs while reading the file.
+     */
+    public synchronized List<Sale> loadAppendedSales(String fileName) throws IOException {
+        List<Sale> sales = new ArrayList<>();
+        File file = ioHelper.getFileByName(fileName);
+        FileStamp stamp = stamps.get(fileName);
+        if (file == null || stamp == null) {
+            return sales;
+        }
+        binarySnapshot = null;
+        long end = endOfLastLine(file, stamp.length);
+        if (end > stamp.length) {
+            parseSales(fileName, file, stamp.length, end, sales);
+        }
+        return sales;
+    }
+
+    private List<Car> parseInventory() throws IOException {
+        return parseInventory(latest(INVENTORY_FILE_NAME, INVENTORY_SNAPSHOT_FILE_NAME));
+    }
+
+    private List<Car> parseInventory(String fileName) throws IOException {
+        List<Car> cars = new ArrayList<>();
+        File file = ioHelper.getFileByName(fileName);
+        long length = stamp(fileName, file);
+        if (file == null) {
+            return cars;
+        }
+        CsvSchema.Layout layout = INVENTORY_SCHEMA.resolve(file);
+        CsvSchema.RowMapper<Car> mapper = carMapper(layout);
+        int columns = layout.getColumnCount();
+        ioHelper.parseFileContent(file, 0, length, DROP_COMMENT_LINES, DROP_EMPTY_LINES, row -> {
+            // Rows with missing or extra fields would be read shifted
+            if (row.getFieldCount() == columns) {
+                try {
+                    cars.add(mapper.map(row));
+                } catch (NumberFormatException | DateTimeException e) {
+                    System.err.println("ERROR: Invalid date or number format in " + fileName + " -> " + row);
+                }
+            } else {
+                System.err.println("ERROR: Malformed CSV line -> " + row);
+            }
+        });
+        return cars;
+    }
+
+    private List<User> parseUsers() throws IOException {
+        return parseUsers(latest(USERS_FILE_NAME, USERS_SNAPSHOT_FILE_NAME));
+    }
+
+    private List<User> parseUsers(String fileName) throws IOException {
         List<User> users = new ArrayList<>();
-        List<String> lines = ioHelper.readFileContent(USERS_FILE_NAME, DROP_COMMENT_LINES, DROP_EMPTY_LINES);
+        File file = ioHelper.getFileByName(fileName);
+        long length = stamp(fileName, file);
+        if (file == null) {
+            return users;
+        }
+        CsvSchema.Layout layout = USERS_SCHEMA.resolve(file);
+        CsvSchema.RowMapper<User> mapper = userMapper(layout);
+        int columns = layout.getColumnCount();
+        ioHelper.parseFileContent(file, 0, length, DROP_COMMENT_LINES, DROP_EMPTY_LINES, row -> {
+            // Ensure that the row has the correct number of columns, as the
+            // fields of rows with missing or extra ones would be read shifted
+            if (row.getFieldCount() != columns) {
+                System.err.println("ERROR: Malformed user data -> " + row);
+                return; // Skip this row
+            }
+
+            // Fields come back without surrounding spaces; unexpected numbers in roles are ignored
+            users.add(mapper.map(row));
+        });
+        return users;
+    }
+
+    private List<Sale> parseSales() throws IOException {
+        return parseSales(latest(SALES_FILE_NAME, SALES_SNAPSHOT_FILE_NAME));
+    }
+
+    private List<Sale> parseSales(String fileName) throws IOException {
+        List<Sale> sales = new ArrayList<>();
+        File file = ioHelper.getFileByName(fileName);
+        if (file == null) {
+            stamp(fileName, null);
+            return sales;
+        }
+        parseSales(fileName, file, 0, file.length(), sales);
+        return sales;
+    }
 
-        for (String line : lines) {
-            String[] data = line.split(",");
+    /**
+     * Parses the sales of a range of a file, and stamps the file as read up
+     * to the end of the range.
+     */
+    private void parseSales(String fileName, File file, long from, long to, List<Sale> sales) throws IOException {
+        long length = stamp(fileName, file, to);
+        CsvSchema.Layout layout = SALES_SCHEMA.resolve(file);
+        CsvSchema.RowMapper<Sale> mapper = saleMapper(layout);
+        int columns = layout.getColumnCount();
+        ioHelper.parseFileContent(file, from, length, DROP_COMMENT_LINES, DROP_EMPTY_LINES, row -> {
+            if (row.getFieldCount() != columns) {
+                System.err.println("ERROR: Malformed sales data -> " + row);
+                return;
+            }
+            try {
+                sales.add(mapper.map(row));
+            } catch (NumberFormatException | DateTimeException e) {
+                System.err.println("ERROR: Invalid date or number format in " + fileName + " -> " + row);
+            }
+        });
+    }
+
+    private synchronized boolean isBinarySnapshotLoaded() {
+        return binarySnapshot != null;
+    }
+
+    /**
+     * Returns the content of the users, inventory and sales files, from the
+     * binary snapshot if it is current, or by parsing the files (and then
+     * rebuilding the binary snapshot) otherwise.
+     */
+    private synchronized BinarySnapshot binarySnapshot() throws IOException {
+        // The length and modification time of each file, as a file can be
+        // replaced by an older one, or changed within the same millisecond
+        long[] sources = new long[2 * BinarySnapshot.SOURCE_FILES];
+        String[] names = {
+                latest(USERS_FILE_NAME, USERS_SNAPSHOT_FILE_NAME),
+                latest(INVENTORY_FILE_NAME, INVENTORY_SNAPSHOT_FILE_NAME),
+                latest(SALES_FILE_NAME, SALES_SNAPSHOT_FILE_NAME)};
+        for (int i = 0; i < names.length; i++) {
+            File f = ioHelper.getFileByName(names[i]);
+            sources[2 * i] = -1;
+            sources[2 * i + 1] = -1;
+            if (f != null) {
+                BasicFileAttributes attributes = FileStamp.attributes(f);
+                sources[2 * i] = attributes.size();
+                sources[2 * i + 1] = attributes.lastModifiedTime().toMillis();
+                stamp(names[i], f); // read below, from the snapshot or the file
+            }
+        }
+        if (binarySnapshot != null && binarySnapshot.isBuiltFrom(sources)) {
+            return binarySnapshot;
+        }
 
-            // Ensure that the row has the correct number of columns
-            if (data.length < 8) {
-                System.err.println("ERROR: Malformed user data -> " + Arrays.toString(data));
-                continue; // Skip this row
+        File file = new File(dataDirPath, BINARY_SNAPSHOT_FILE_NAME);
+        binarySnapshot = null;
+        if (Arrays.equals(BinarySnapshot.readSources(file), sources)) {
+            binarySnapshot = BinarySnapshot.read(file);
+        }
+        if (binarySnapshot == null || !binarySnapshot.isBuiltFrom(sources)) {
+            binarySnapshot = new BinarySnapshot(sources, parseUsers(), parseInventory(), parseSales());
+            try {
+                binarySnapshot.write(file);
+            } catch (IOException e) {
+                // Not fatal: the csv files will be parsed again on the next start
+                System.err.println("WARNING: Can't write " + file + " -> " + e.getMessage());
             }
+        }
+        return binarySnapshot;
+    }
+
+    /**
+     * Records that a car was added or changed.
+     *
+     * @param car The new version of the car.
+     * @throws IOException If the change can't be written to the change log.
+     */
+    public synchronized void logCarPut(Car car) throws IOException {
+        String[] fields = carFields(car);
+        String[] record = new String[fields.length + 1];
+        record[0] = CAR_PUT;
+        System.arraycopy(fields, 0, record, 1, fields.length);
+        changeLog().append(record);
+    }
+
+    /**
+     * Records that a car was removed from the inventory.
+     *
+     * @param vin The VIN of the removed car.
+     * @throws IOException If the change can't be written to the change log.
+     */
+    public synchronized void logCarRemoved(String vin) throws IOException {
+        changeLog().append(CAR_REMOVED, vin);
+    }
+
+    /**
+     * Records that a user was added or changed. The change applies to every
+     * user having the same username.
+     *
+     * @param user The new version of the user.
+     * @throws IOException If the change can't be written to the change log.
+     */
+    public synchronized void logUserPut(User user) throws IOException {
+        changeLog().append(USER_PUT, user.getUsername(), user.getPassword(), Role.labelOf(user.getRole()),
+                user.getId(), user.getFirstName(), user.getLastName(), user.getEmail(), user.getPhone());
+    }
+
+    /**
+     * Records that the users having a username were removed.
+     *
+     * @param username The username of the removed users.
+     * @throws IOException If the change can't be written to the change log.
+     */
+    public synchronized void logUserRemoved(String username) throws IOException {
+        changeLog().append(USER_REMOVED, username);
+    }
+
+    /**
+     * Records a new sale.
+     *
+     * @param sale The sale.
+     * @throws IOException If the change can't be written to the change log.
+     */
+    public synchronized void logSale(Sale sale) throws IOException {
+        changeLog().append(SALE_ADDED, sale.getDate().toString(), sale.getVin(), String.valueOf(sale.getCost()),
+                String.valueOf(sale.getPrice()), sale.getSalesperson(), sale.getCustomer());
+    }
+
+    /**
+     * @return {true} if enough changes were logged since the last compaction
+     * that {@link #compact(Collection, Collection, Collection)} should be called.
+     */
+    public synchronized boolean needsCompaction() {
+        return changeLog != null && changeLog.getRecordCount() >= COMPACTION_THRESHOLD;
+    }
+
+    /**
+     * Writes the given state to snapshot files and empties the change log.
+     * Called with no change in progress.
+     *
+     * @param users The current users.
+     * @param cars  The current inventory.
+     * @param sales The current sales.
+     * @throws IOException If a snapshot can't be written.
+     */
+    public synchronized void compact(Collection<User> users, Collection<Car> cars, Collection<Sale> sales)
+            throws IOException {
+        Metrics.Sample sample = COMPACT.time();
+        try {
+            // Until the log is replaced, its records are skipped when loading the snapshots already written
+            long generation = logGeneration();
+            long records = replayChanges(null, row -> { });
+            saveUsers(users, generation, records);
+            saveInventory(cars, generation, records);
+            saveSales(sales, generation, records);
+            binarySnapshot = null; // rebuilt from the new snapshots on next load
+            startChangeLog(generation + 1);
+        } finally {
+            sample.close();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the inventory. Changes still in the change log are
+     * applied again on load, so this should normally be called through
+     * {@link #compact(Collection, Collection, Collection)}.
+     *
+     * @param cars The cars to save.
+     * @throws IOException If the snapshot can't be written.
+     */
+    public void saveInventory(Collection<Car> cars) throws IOException {
+        saveInventory(cars, -1, 0);
+    }
+
+    private void saveInventory(Collection<Car> cars, long generation, long records) throws IOException {
+        writeSnapshot(INVENTORY_SNAPSHOT_FILE_NAME, INVENTORY_SNAPSHOT_HEADER, generation, records, cars,
+                DealershipDB::formatCar);
+    }
+
+    /**
+     * Writes a snapshot of the users. Changes still in the change log are applied again on load.
+     *
+     * @param users The users to save.
+     * @throws IOException If the snapshot can't be written.
+     */
+    public void saveUsers(Collection<User> users) throws IOException {
+        saveUsers(users, -1, 0);
+    }
+
+    private void saveUsers(Collection<User> users, long generation, long records) throws IOException {
+        writeSnapshot(USERS_SNAPSHOT_FILE_NAME, USERS_SNAPSHOT_HEADER, generation, records, users,
+                DealershipDB::formatUser);
+    }
+
+    private static String formatUser(User user) {
+        return Utils.formatCSV(user.getId(), user.getFirstName(), user.getLastName(), user.getEmail(),
+                user.getPhone(), Role.labelOf(user.getRole()), user.getUsername(), user.getPassword());
+    }
+
+    /**
+     * Writes a snapshot of the sales. Sales still in the change log are
+     * added again on load.
+     *
+     * @param sales The sales to save.
+     * @throws IOException If the snapshot can't be written.
+     */
+    public void saveSales(Collection<Sale> sales) throws IOException {
+        saveSales(sales, -1, 0);
+    }
+
+    private void saveSales(Collection<Sale> sales, long generation, long records) throws IOException {
+        writeSnapshot(SALES_SNAPSHOT_FILE_NAME, SALES_SNAPSHOT_HEADER, generation, records, sales,
+                sale -> Utils.formatCSV(sale.getDate().toString(), sale.getVin(), String.valueOf(sale.getCost()),
+                        String.valueOf(sale.getPrice()), sale.getSalesperson(), sale.getCustomer()));
+    }
+
+    /**
+     * Forces pending changes to disk and closes the change log.
+     *
+     * @throws IOException If pending changes can't be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (changeLog != null) {
+            changeLog.close();
+            changeLog = null;
+        }
+    }
 
-            // Trim all fields to remove any extra spaces
-            String username = data[6].trim();
-            String password = data[7].trim();
-            String role = data[5].trim().replaceAll("[^a-zA-Z]", ""); // Remove unexpected numbers
+    /**
+     * Builds the mapper converting the rows of a users file into users.
+     *
+     * @param layout The layout of the file, resolved by {@link #USERS_SCHEMA}.
+     * @return The mapper, for rows of at least {@link CsvSchema.Layout#getWidth()} fields.
+     */
+    public static CsvSchema.RowMapper<User> userMapper(CsvSchema.Layout layout) {
+        Function<CsvRow, String> username = layout.string("username");
+        Function<CsvRow, String> password = layout.string("password");
+        Function<CsvRow, String> role = layout.string("role", new StringPool());
+        Function<CsvRow, String> id = layout.string("id");
+        Function<CsvRow, String> firstName = layout.string("first name");
+        Function<CsvRow, String> lastName = layout.string("last name");
+        Function<CsvRow, String> email = layout.string("email");
+        Function<CsvRow, String> phone = layout.string("phone");
+        return row -> new User(id.apply(row), firstName.apply(row), lastName.apply(row), email.apply(row),
+                phone.apply(row), username.apply(row), password.apply(row), Role.of(role.apply(row)));
+    }
+
+    /**
+     * Builds the mapper converting the rows of an inventory file into cars.
+     * An empty acquisition date or cost is read as unknown. The cars mapped
+     * share their makes, models, colors and statuses (see {@link StringPool}),
+     * so a mapper must only be used by one thread at a time.
+     *
+     * @param layout The layout of the file, resolved by {@link #INVENTORY_SCHEMA}.
+     * @return The mapper, for rows of at least {@link CsvSchema.Layout#getWidth()} fields.
+     */
+    public static CsvSchema.RowMapper<Car> carMapper(CsvSchema.Layout layout) {
+        StringPool pool = new StringPool();
+        Function<CsvRow, String> vin = layout.string("vin");
+        Function<CsvRow, LocalDate> acquisitionDate = layout.optionalDate("acquisition date");
+        Function<CsvRow, String> make = layout.string("make", pool);
+        Function<CsvRow, String> model = layout.string("model", pool);
+        ToIntFunction<CsvRow> year = layout.intValue("year");
+        ToIntFunction<CsvRow> mileage = layout.intValue("mileage");
+        Function<CsvRow, String> color = layout.string("color", pool);
+        ToDoubleFunction<CsvRow> cost = layout.doubleValue("cost", Double.NaN);
+        ToDoubleFunction<CsvRow> price = layout.doubleValue("price");
+        Function<CsvRow, String> status = layout.string("status", pool);
+        return row -> new Car(vin.apply(row), acquisitionDate.apply(row), make.apply(row), model.apply(row),
+                year.applyAsInt(row), mileage.applyAsInt(row), color.apply(row), cost.applyAsDouble(row),
+                price.applyAsDouble(row), status.apply(row));
+    }
 
-            // Add only valid users
-            users.add(new User(username, password, role));
+    /**
+     * Builds the mapper converting the rows of a sales file into sales. The
+     * sales mapped share the names of their salespersons, so a mapper must
+     * only be used by one thread at a time.
+     *
+     * @param layout The layout of the file, resolved by {@link #SALES_SCHEMA}.
+     * @return The mapper, for rows of at least {@link CsvSchema.Layout#getWidth()} fields.
+     */
+    public static CsvSchema.RowMapper<Sale> saleMapper(CsvSchema.Layout layout) {
+        Function<CsvRow, LocalDate> date = layout.date("date");
+        Function<CsvRow, String> vin = layout.string("vin");
+        ToDoubleFunction<CsvRow> cost = layout.doubleValue("cost");
+        ToDoubleFunction<CsvRow> price = layout.doubleValue("price");
+        Function<CsvRow, String> salesperson = layout.string("salesperson", new StringPool());
+        Function<CsvRow, String> customer = layout.string("customer");
+        return row -> new Sale(date.apply(row), vin.apply(row), cost.applyAsDouble(row), price.applyAsDouble(row),
+                salesperson.apply(row), customer.apply(row));
+    }
+
+    /**
+     * Formats a car as a row of an inventory snapshot. An unknown acquisition
+     * date or cost is written as an empty field.
+     *
+     * @param car The car.
+     * @return The csv line, without line break.
+     */
+    public static String formatCar(Car car) {
+        return Utils.formatCSV(carFields(car));
+    }
+
+    private static String[] carFields(Car car) {
+        return new String[]{car.getVin(),
+                car.getAcquisitionDate() == null ? "" : car.getAcquisitionDate().toString(),
+                car.getMake(), car.getModel(), String.valueOf(car.getYear()), String.valueOf(car.getMileage()),
+                car.getColor(), Double.isNaN(car.getCost()) ? "" : String.valueOf(car.getCost()),
+                String.valueOf(car.getPrice()), car.getStatus()};
+    }
+
+    private List<Car> replayInventoryChanges(List<Car> cars, String sourceFileName) throws IOException {
+        if (!hasChanges()) {
+            return cars;
         }
+        Map<String, Car> byVin = new LinkedHashMap<>();
+        for (Car car : cars) {
+            byVin.putIfAbsent(car.getVin(), car);
+        }
+        // Built for each replay, as their string pools are not shared between threads
+        CsvSchema.RowMapper<Car> logCarMapper = carMapper(LOG_CAR_LAYOUT);
+        CsvSchema.RowMapper<Car> oldLogCarMapper = carMapper(OLD_LOG_CAR_LAYOUT);
+        replayChanges(sourceFileName, row -> {
+            String type = row.getString(0);
+            if (CAR_PUT.equals(type) && (row.getFieldCount() == LOG_CAR_LAYOUT.getWidth()
+                    || row.getFieldCount() == OLD_LOG_CAR_LAYOUT.getWidth())) {
+                try {
+                    Car car = row.getFieldCount() == LOG_CAR_LAYOUT.getWidth()
+                            ? logCarMapper.map(row) : oldLogCarMapper.map(row);
+                    byVin.put(car.getVin(), car);
+                } catch (NumberFormatException | DateTimeException e) {
+                    System.err.println("ERROR: Invalid number format in change log -> " + row);
+                }
+            } else if (CAR_REMOVED.equals(type) && row.getFieldCount() == 2) {
+                byVin.remove(row.getString(1));
+            }
+        });
+        return new ArrayList<>(byVin.values());
+    }
+
+    private List<User> replayUserChanges(List<User> users, String sourceFileName) throws IOException {
+        if (!hasChanges()) {
+            return users;
+        }
+        replayChanges(sourceFileName, row -> {
+            String type = row.getString(0);
+            if (USER_PUT.equals(type) && (row.getFieldCount() == 4 || row.getFieldCount() == 9)) {
+                String username = row.getString(1);
+                users.removeIf(u -> u.getUsername().equals(username));
+                users.add(row.getFieldCount() == 4 ? new User(username, row.getString(2), row.getString(3))
+                        : new User(row.getString(4), row.getString(5), row.getString(6), row.getString(7),
+                        row.getString(8), username, row.getString(2), Role.of(row.getString(3))));
+            } else if (USER_REMOVED.equals(type) && row.getFieldCount() == 2) {
+                String username = row.getString(1);
+                users.removeIf(u -> u.getUsername().equals(username));
+            }
+        });
         return users;
     }
 
+    private void replaySaleChanges(List<Sale> sales, String sourceFileName) throws IOException {
+        if (!hasChanges()) {
+            return;
+        }
+        CsvSchema.RowMapper<Sale> logSaleMapper = saleMapper(LOG_SALE_LAYOUT);
+        replayChanges(sourceFileName, row -> {
+            if (row.getFieldCount() == LOG_SALE_LAYOUT.getWidth() && SALE_ADDED.equals(row.getString(0))) {
+                try {
+                    sales.add(logSaleMapper.map(row));
+                } catch (NumberFormatException | DateTimeException e) {
+                    System.err.println("ERROR: Invalid sale in change log -> " + row);
+                }
+            }
+        });
+    }
+
+    private boolean hasChanges() {
+        File log = changeLog != null ? changeLog.getFile() : new File(dataDirPath, CHANGE_LOG_FILE_NAME);
+        return log.length() > 0 || (changeLog != null && changeLog.getRecordCount() > 0);
+    }
+
     /**
-     * Loads raw sales data from `sales.csv`. (No modification yet.)
+     * Reads back the records of the change log not compacted into a file yet.
      *
-     * @return A list of raw sales records as strings.
-     * @throws IOException If an error occurs while reading the file.
+     * @param sourceFileName The file the records are applied to, or null to read every record.
+     * @return The number of records in the log, skipped ones included.
+     */
+    private synchronized long replayChanges(String sourceFileName, CsvParser.RowHandler handler) throws IOException {
+        long skipped = sourceFileName == null ? 0 : compactedRecords(sourceFileName);
+        long[] read = {0};
+        CsvParser.RowHandler unseen = row -> {
+            if (read[0]++ >= skipped) {
+                handler.onRow(row);
+            }
+        };
+        if (changeLog != null) {
+            changeLog.replay(unseen);
+        } else {
+            ioHelper.parseFileContent(CHANGE_LOG_FILE_NAME, false, DROP_EMPTY_LINES, unseen);
+        }
+        return read[0];
+    }
+
+    /**
+     * @return The generation of the change log, from its first record. Logs
+     * written before generations were recorded are generation 0.
+     */
+    private synchronized long logGeneration() throws IOException {
+        if (logGeneration < 0) {
+            logGeneration = 0;
+            File log = new File(dataDirPath, CHANGE_LOG_FILE_NAME);
+            if (log.isFile()) {
+                try (BufferedReader reader = Files.newBufferedReader(log.toPath(), StandardCharsets.UTF_8)) {
+                    String first = reader.readLine();
+                    String[] fields = first == null ? new String[0] : first.split(",");
+                    if (fields.length == 2 && fields[0].trim().equals(LOG_GENERATION)) {
+                        logGeneration = parseNumber(fields[1]);
+                    }
+                }
+            }
+        }
+        return logGeneration;
+    }
+
+    /**
+     * @return How many of the first records of the change log a file already
+     * holds: none for a csv file or a snapshot written outside a compaction,
+     * and every record for a snapshot compacted from a later log.
      */
-    public List<String> loadSales() throws IOException {
-        return ioHelper.readFileContent(SALES_FILE_NAME, DROP_COMMENT_LINES, DROP_EMPTY_LINES);
+    private long compactedRecords(String fileName) throws IOException {
+        File file = ioHelper.getFileByName(fileName);
+        if (file == null || !SNAPSHOT_FILE_NAMES.containsValue(fileName)) {
+            return 0;
+        }
+        String second;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            reader.readLine(); // the header
+            second = reader.readLine();
+        }
+        if (second == null || !second.startsWith(SNAPSHOT_LOG_PREFIX)) {
+            return 0;
+        }
+        String[] fields = second.substring(SNAPSHOT_LOG_PREFIX.length()).split(",");
+        long generation = parseNumber(fields[0]);
+        long current = logGeneration();
+        if (generation < current) {
+            return 0;
+        }
+        return generation > current || fields.length < 2 ? Long.MAX_VALUE : parseNumber(fields[1]);
     }
 
-    /** Placeholder method to save inventory (To be implemented later). */
-    public void saveInventory() {}
+    private static long parseNumber(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("ERROR: Invalid number in change log generation -> " + value);
+            return 0;
+        }
+    }
 
-    /** Placeholder method to save users (To be implemented later). */
-    public void saveUsers() {}
+    /**
+     * Writes a snapshot file, formatting its rows one at a time as they are written.
+     */
+    private <T> void writeSnapshot(String fileName, String header, long generation, long records,
+                                   Collection<T> rows, Function<T, String> format) throws IOException {
+        writeAtomically(fileName, writer -> {
+            writeLine(writer, header);
+            if (generation >= 0) {
+                writeLine(writer, SNAPSHOT_LOG_PREFIX + generation + ", " + records);
+            }
+            for (T row : rows) {
+                writeLine(writer, format.apply(row));
+            }
+        });
+    }
+
+    private static void writeLine(BufferedWriter writer, String line) throws IOException {
+        writer.write(line);
+        writer.newLine();
+    }
+
+    /**
+     * Replaces the change log by an empty log of the given generation, in one
+     * rename, so a crash leaves either the previous log or the new one.
+     */
+    private synchronized void startChangeLog(long generation) throws IOException {
+        if (changeLog != null) {
+            changeLog.close();
+            changeLog = null; // opened again on the next change
+        }
+        writeAtomically(CHANGE_LOG_FILE_NAME,
+                writer -> writeLine(writer, Utils.formatCSV(LOG_GENERATION, String.valueOf(generation))));
+        logGeneration = generation;
+    }
 
-    /** Placeholder method to write sales data (To be implemented later). */
-    public void writeSalesGrades(List<Integer> sales) {}
+    private synchronized ChangeLog changeLog() throws IOException {
+        if (changeLog == null) {
+            changeLog = new ChangeLog(new File(dataDirPath, CHANGE_LOG_FILE_NAME), LOG_BATCH_SIZE, LOG_MAX_DELAY_MILLIS);
+        }
+        return changeLog;
+    }
+
+    /**
+     * @return the name of the snapshot file if it exists, the name of the csv file otherwise.
+     */
+    private String latest(String fileName, String snapshotFileName) {
+        return ioHelper.getFileByName(snapshotFileName) != null ? snapshotFileName : fileName;
+    }
+
+    /**
+     * Remembers the version of a csv file whose snapshot is loaded instead, so
+     * it can be told whether another process changed it since.
+     */
+    private synchronized void stampIfShadowed(String fileName) throws IOException {
+        if (!getSourceFileName(fileName).equals(fileName)) {
+            stamp(fileName, ioHelper.getFileByName(fileName));
+        }
+    }
+
+    /**
+     * Remembers the version of a file about to be read in full, or that the
+     * file doesn't exist.
+     *
+     * @return The length of the file, where reading must stop for the rows
+     * appended meanwhile to be read as appended.
+     */
+    private synchronized long stamp(String fileName, File file) throws IOException {
+        return stamp(fileName, file, Long.MAX_VALUE);
+    }
+
+    /**
+     * Remembers the version of a file about to be read up to an offset, and
+     * the content of the users and inventory csv files.
+     *
+     * @return The offset, or the length of the file if smaller.
+     */
+    private synchronized long stamp(String fileName, File file, long to) throws IOException {
+        if (file == null) {
+            stamps.remove(fileName);
+            seenContents.remove(fileName);
+            return 0;
+        }
+        BasicFileAttributes attributes = FileStamp.attributes(file);
+        long length = Math.min(to, attributes.size());
+        if (fileName.equals(USERS_FILE_NAME) || fileName.equals(INVENTORY_FILE_NAME)) {
+            seenContents.put(fileName, readContent(file, length));
+        }
+        stamps.put(fileName, FileStamp.of(file, attributes, length));
+        return length;
+    }
+
+    private static byte[] readContent(File file, long length) throws IOException {
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException(file + " is too large");
+        }
+        ByteBuffer content = ByteBuffer.allocate((int) length);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (content.hasRemaining() && channel.read(content, content.position()) > 0) {
+                // Read until the buffer is full
+            }
+        }
+        return content.hasRemaining() ? Arrays.copyOf(content.array(), content.position()) : content.array();
+    }
+
+    /**
+     * @return The offset just after the last line break of a file, or from if
+     * there is none after it.
+     */
+    static long endOfLastLine(File file, long from) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            long end = channel.size();
+            while (end > from) {
+                int size = (int) Math.min(buffer.capacity(), end - from);
+                buffer.clear().limit(size);
+                long start = end - size;
+                while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+                    // Read until the buffer is full
+                }
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        return start + i + 1;
+                    }
+                }
+                end = start;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Writes the content of a file.
+     */
+    private interface Content {
+        void writeTo(BufferedWriter writer) throws IOException;
+    }
+
+    /**
+     * Writes content to a temporary file, forces it to disk, and renames it
+     * over the target file so readers see either the old or the new content.
+     */
+    private void writeAtomically(String fileName, Content content) throws IOException {
+        File target = new File(dataDirPath, fileName);
+        File temp = new File(dataDirPath, fileName + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            content.writeTo(writer);
+            writer.flush();
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        stamp(fileName, target); // written by this database, not changed by another process
+    }
 }
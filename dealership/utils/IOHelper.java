@@ -5,15 +5,16 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class IOHelper {
     public static char COMMENT_CHAR = '#';
+    private static final Metrics.Timer READ = Metrics.timer("io.read");
+    private static final Metrics.Timer PARSE = Metrics.timer("io.parse");
+    private static final Metrics.Counter LINES_READ = Metrics.counter("io.read.lines");
+    private static final Metrics.Counter ROWS_PARSED = Metrics.counter("io.parse.rows");
     private final String rootDirPath;
     private final File rootDir;
-    private final File[] files;
 
     /**
      * Instantiate an object of IOHelper with the specified directory.
@@ -33,10 +34,22 @@ public class IOHelper {
         if(!rootDir.exists() || ! rootDir.isDirectory() || !rootDir.canRead()) {
             throw new IllegalArgumentException("Can't open data directory for read");
         }
-        this.files = this.rootDir.listFiles();
     }
+
+    /**
+     * @return the files currently in the directory. The directory is listed on
+     * every call, so files created or removed by other processes are seen.
+     */
     public File[] getFiles() {
-        return this.files;
+        File[] files = this.rootDir.listFiles();
+        return files != null ? files : new File[0];
+    }
+
+    /**
+     * @return the directory this helper reads from.
+     */
+    public File getRootDir() {
+        return this.rootDir;
     }
 
     /**
@@ -49,10 +62,10 @@ public class IOHelper {
      * is a directory, return null.
      */
     public File getFileByName(String fileName) {
-        List<File> matchedFiles = Arrays.stream(this.files)
-                .filter(f -> f.getName().equals(fileName))
-                .collect(Collectors.toList());
-        return matchedFiles.size() > 0 ? matchedFiles.get(0) : null;
+        // Looked up on every call: the file may have been created, replaced or
+        // removed by another process since this helper was instantiated
+        File f = new File(this.rootDir, fileName);
+        return f.isFile() ? f : null;
     }
 
     public List<String> readFileContent(String fileName, boolean dropCommentLines, boolean dropEmptyLines) throws IOException {
@@ -66,21 +79,79 @@ public class IOHelper {
     public List<String> readFileContent(File file, boolean dropCommentLines, boolean dropEmptyLines) throws IOException {
         List<String> lines = new ArrayList<>();
         if(file.isFile() && file.isFile() && file.canRead()) {
-            BufferedReader br = new BufferedReader(new FileReader(file));
-            String line = null;
-            while((line = br.readLine()) != null) {
-                if(dropEmptyLines && line.trim().length() == 0) {
-                    continue;
-                }
-                if(dropCommentLines) {
-                    String trimmedLine = line.trim();
-                    if(!trimmedLine.isEmpty() && trimmedLine.charAt(0) == COMMENT_CHAR) {
+            Metrics.Sample sample = READ.time();
+            try(BufferedReader br = new BufferedReader(new FileReader(file))) {
+                String line = null;
+                while((line = br.readLine()) != null) {
+                    if(dropEmptyLines && line.trim().length() == 0) {
                         continue;
                     }
+                    if(dropCommentLines) {
+                        String trimmedLine = line.trim();
+                        if(!trimmedLine.isEmpty() && trimmedLine.charAt(0) == COMMENT_CHAR) {
+                            continue;
+                        }
+                    }
+                    lines.add(line);
                 }
-                lines.add(line);
+            } finally {
+                sample.close();
             }
+            LINES_READ.add(lines.size());
         }
         return lines;
     }
+
+    /**
+     * Stream the rows of a csv file in the directory to a handler, without
+     * reading the whole file into memory first. See {@link CsvParser}.
+     *
+     * @param fileName the name of the file
+     * @param dropCommentLines skip lines starting with {@link #COMMENT_CHAR}
+     * @param dropEmptyLines skip lines containing only whitespaces
+     * @param handler receives each row
+     * @return the number of rows passed to the handler, 0 if the file doesn't exist
+     * @throws IOException if the file can't be read
+     */
+    public long parseFileContent(String fileName, boolean dropCommentLines, boolean dropEmptyLines,
+                                 CsvParser.RowHandler handler) throws IOException {
+        File f = getFileByName(fileName);
+        if(f != null) {
+            return parseFileContent(f, dropCommentLines, dropEmptyLines, handler);
+        }
+        return 0;
+    }
+
+    public long parseFileContent(File file, boolean dropCommentLines, boolean dropEmptyLines,
+                                 CsvParser.RowHandler handler) throws IOException {
+        return parseFileContent(file, 0, Long.MAX_VALUE, dropCommentLines, dropEmptyLines, handler);
+    }
+
+    /**
+     * Stream the rows of a range of a csv file to a handler, e.g. the rows
+     * appended to a file since it was last read.
+     *
+     * @param file the file
+     * @param from the offset of the first row, at the start of a line
+     * @param to the offset just after the last row, or the length of the file if larger
+     * @param dropCommentLines skip lines starting with {@link #COMMENT_CHAR}
+     * @param dropEmptyLines skip lines containing only whitespaces
+     * @param handler receives each row
+     * @return the number of rows passed to the handler, 0 if the file doesn't exist
+     * @throws IOException if the file can't be read
+     */
+    public long parseFileContent(File file, long from, long to, boolean dropCommentLines, boolean dropEmptyLines,
+                                 CsvParser.RowHandler handler) throws IOException {
+        if(file.isFile() && file.canRead()) {
+            Metrics.Sample sample = PARSE.time();
+            try {
+                long rows = new CsvParser(dropCommentLines, dropEmptyLines).parse(file, from, to, handler);
+                ROWS_PARSED.add(rows);
+                return rows;
+            } finally {
+                sample.close();
+            }
+        }
+        return 0;
+    }
 }
@@ -0,0 +1,571 @@
+package dealership.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The Metrics class records how often and how long the hot paths of the
+ * dealership run: loading the database, reading files, logging in, querying
+ * the inventory and rendering reports.
+ *
+ * Metrics are registered once by name, usually in a static field of the class
+ * they measure, and are either:
+ * - counters, which count events, or
+ * - timers, which count operations and record the distribution of their
+ *   durations, and of the bytes allocated by the thread running them, in
+ *   histograms.
+ * An operation is timed with
+ * <pre>
+ *     Metrics.Sample sample = LOAD.time();
+ *     try {
+ *         ...
+ *     } finally {
+ *         sample.close();
+ *     }
+ * </pre>
+ *
+ * Recording never locks: counts are kept in {@link LongAdder}s, and the
+ * histograms in arrays of atomic counters, one per bucket. Buckets are
+ * log-linear like those of HdrHistogram: each power of two is split in
+ * {@link Histogram#SUB_BUCKETS} buckets, so a recorded value is known within 3%.
+ *
+ * Metrics are disabled unless the system property dealership.metrics is true.
+ * Disabled metrics record nothing: timing returns a shared sample whose close
+ * does nothing, so the cost is a volatile read. They can be read through JMX
+ * (see {@link MetricsMXBean}) and dumped to a file periodically (see
+ * {@link #startDump(File, long)}).
+ */
+public final class Metrics {
+    public static final String OBJECT_NAME = "dealership:type=Metrics";
+
+    private static volatile boolean enabled = Boolean.getBoolean("dealership.metrics");
+    private static final ConcurrentMap<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final ConcurrentMap<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+    private static final Sample DISABLED = new Sample(null, 0, 0);
+    private static ScheduledExecutorService dumper; // guarded by Metrics.class
+
+    private Metrics() {
+    }
+
+    /**
+     * A count of events.
+     */
+    public static final class Counter {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public String getName() { return name; }
+
+        public void increment() {
+            if(enabled) {
+                count.increment();
+            }
+        }
+
+        public void add(long n) {
+            if(enabled) {
+                count.add(n);
+            }
+        }
+
+        public long get() { return count.sum(); }
+    }
+
+    /**
+     * The distribution of durations and allocations of an operation.
+     */
+    public static final class Timer {
+        private final String name;
+        private final Histogram nanos = new Histogram();
+        private final Histogram allocatedBytes = new Histogram();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        public String getName() { return name; }
+
+        /**
+         * Starts timing an operation, which ends when the sample is closed.
+         *
+         * @return The sample.
+         */
+        public Sample time() {
+            if(!enabled) {
+                return DISABLED;
+            }
+            return new Sample(this, System.nanoTime(), allocatedBytes());
+        }
+
+        /**
+         * Records an operation timed by the caller.
+         *
+         * @param nanos          The duration of the operation.
+         * @param allocatedBytes The bytes allocated by the operation, or a negative number if unknown.
+         */
+        public void record(long nanos, long allocatedBytes) {
+            if(enabled) {
+                this.nanos.record(nanos);
+                if(allocatedBytes >= 0) {
+                    this.allocatedBytes.record(allocatedBytes);
+                }
+            }
+        }
+
+        public long getCount() { return nanos.getCount(); }
+
+        /**
+         * @return The durations of the operations, in nanoseconds.
+         */
+        public Histogram getNanos() { return nanos; }
+
+        /**
+         * @return The bytes allocated by the operations, empty if the JVM can't measure them.
+         */
+        public Histogram getAllocatedBytes() { return allocatedBytes; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "count=%d mean=%s p50=%s p90=%s p99=%s p99.9=%s max=%s alloc/op=%s",
+                    nanos.getCount(), duration(nanos.getMean()), duration(nanos.getPercentile(50)),
+                    duration(nanos.getPercentile(90)), duration(nanos.getPercentile(99)),
+                    duration(nanos.getPercentile(99.9)), duration(nanos.getMax()),
+                    allocatedBytes.getCount() == 0 ? "-" : bytes(allocatedBytes.getMean()));
+        }
+    }
+
+    /**
+     * A timed operation. Closing the sample records it.
+     */
+    public static final class Sample implements AutoCloseable {
+        private final Timer timer; // null when metrics are disabled
+        private final long start;
+        private final long allocatedStart;
+
+        private Sample(Timer timer, long start, long allocatedStart) {
+            this.timer = timer;
+            this.start = start;
+            this.allocatedStart = allocatedStart;
+        }
+
+        @Override
+        public void close() {
+            if(timer != null) {
+                long allocated = allocatedStart < 0 ? -1 : allocatedBytes() - allocatedStart;
+                timer.record(System.nanoTime() - start, allocated);
+            }
+        }
+    }
+
+    /**
+     * A histogram of non-negative values, recorded without locking.
+     */
+    public static final class Histogram {
+        static final int SUB_BUCKET_BITS = 5;
+        static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        // Values below SUB_BUCKETS have a bucket each; above, every power of two has SUB_BUCKETS buckets
+        private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        public void record(long value) {
+            if(value < 0) {
+                value = 0; // e.g. a clock going backwards
+            }
+            buckets.incrementAndGet(bucket(value));
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        public long getCount() { return count.sum(); }
+
+        public long getMax() { return max.get(); }
+
+        public double getMean() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        /**
+         * Computes the value below which a percentage of the recorded values
+         * fall, as the highest value of its bucket.
+         *
+         * @param percentile The percentage, between 0 and 100.
+         * @return The value, 0 if nothing was recorded.
+         */
+        public long getPercentile(double percentile) {
+            long[] counts = new long[buckets.length()];
+            long total = 0;
+            for(int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if(total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if(seen >= rank) {
+                    return Math.min(highestValue(i), getMax());
+                }
+            }
+            return getMax();
+        }
+
+        void reset() {
+            for(int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+            count.reset();
+            sum.reset();
+            max.reset();
+        }
+
+        static int bucket(long value) {
+            if(value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int shift = exponent - SUB_BUCKET_BITS;
+            // The top SUB_BUCKET_BITS + 1 bits of the value, the first being 1
+            int mantissa = (int) (value >>> shift);
+            return (shift + 1) * SUB_BUCKETS + mantissa - SUB_BUCKETS;
+        }
+
+        static long highestValue(int bucket) {
+            if(bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+            return ((mantissa + 1) << shift) - 1;
+        }
+    }
+
+    /**
+     * @return {true} if metrics are recorded.
+     */
+    public static boolean isEnabled() { return enabled; }
+
+    /**
+     * Starts or stops recording. Metrics already recorded are kept.
+     *
+     * @param enabled {true} to record metrics.
+     */
+    public static void setEnabled(boolean enabled) { Metrics.enabled = enabled; }
+
+    /**
+     * Retrieves the counter having a name, registering it on first use.
+     *
+     * @param name The name, e.g. "login.failure".
+     * @return The counter.
+     */
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, Counter::new);
+    }
+
+    /**
+     * Retrieves the timer having a name, registering it on first use.
+     *
+     * @param name The name, e.g. "db.load.inventory".
+     * @return The timer.
+     */
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, Timer::new);
+    }
+
+    /**
+     * @return The counters, by name.
+     */
+    public static Map<String, Counter> getCounters() { return COUNTERS; }
+
+    /**
+     * @return The timers, by name.
+     */
+    public static Map<String, Timer> getTimers() { return TIMERS; }
+
+    /**
+     * Forgets everything recorded. Values recorded while resetting may be
+     * partly kept.
+     */
+    public static void reset() {
+        for(Counter counter : COUNTERS.values()) {
+            counter.count.reset();
+        }
+        for(Timer timer : TIMERS.values()) {
+            timer.nanos.reset();
+            timer.allocatedBytes.reset();
+        }
+    }
+
+    /**
+     * Formats the metrics as text, one metric per line.
+     *
+     * @return The text.
+     */
+    public static String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append("# Dealership metrics at ").append(Instant.now())
+                .append(enabled ? "" : " (disabled)").append(System.lineSeparator());
+        for(Counter counter : COUNTERS.values()) {
+            text.append("counter ").append(counter.getName()).append(' ').append(counter.get())
+                    .append(System.lineSeparator());
+        }
+        for(Timer timer : TIMERS.values()) {
+            text.append("timer ").append(timer.getName()).append(' ').append(timer)
+                    .append(System.lineSeparator());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Formats the metrics as a JSON object. Durations are in nanoseconds and
+     * allocations in bytes.
+     *
+     * @return The JSON text.
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"time\": \"").append(Instant.now()).append("\", \"enabled\": ").append(enabled);
+        json.append(", \"counters\": {");
+        String separator = "";
+        for(Counter counter : COUNTERS.values()) {
+            json.append(separator).append('"').append(counter.getName()).append("\": ").append(counter.get());
+            separator = ", ";
+        }
+        json.append("}, \"timers\": {");
+        separator = "";
+        for(Timer timer : TIMERS.values()) {
+            Histogram nanos = timer.getNanos();
+            Histogram allocated = timer.getAllocatedBytes();
+            json.append(separator).append('"').append(timer.getName()).append("\": {")
+                    .append("\"count\": ").append(nanos.getCount())
+                    .append(String.format(Locale.ROOT, ", \"mean\": %.1f", nanos.getMean()))
+                    .append(", \"p50\": ").append(nanos.getPercentile(50))
+                    .append(", \"p90\": ").append(nanos.getPercentile(90))
+                    .append(", \"p99\": ").append(nanos.getPercentile(99))
+                    .append(", \"p99.9\": ").append(nanos.getPercentile(99.9))
+                    .append(", \"max\": ").append(nanos.getMax())
+                    .append(String.format(Locale.ROOT, ", \"allocatedMean\": %.1f", allocated.getMean()))
+                    .append(", \"allocatedMax\": ").append(allocated.getMax())
+                    .append('}');
+            separator = ", ";
+        }
+        json.append("}}").append(System.lineSeparator());
+        return json.toString();
+    }
+
+    /**
+     * Writes the metrics to a file, replacing it in one step so readers never
+     * see a partly written file. The file is written as JSON if its name ends
+     * with .json, and as text otherwise.
+     *
+     * @param file The file.
+     * @throws IOException If the file can't be written.
+     */
+    public static void dump(File file) throws IOException {
+        String content = file.getName().endsWith(".json") ? toJson() : toText();
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            Files.write(tmp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * Dumps the metrics to a file periodically from a background thread, and
+     * once more when the JVM exits. Replaces any dump started before.
+     *
+     * @param file         The file, see {@link #dump(File)}.
+     * @param periodMillis The time between two dumps.
+     */
+    public static synchronized void startDump(File file, long periodMillis) {
+        if(periodMillis <= 0) {
+            throw new IllegalArgumentException("Dump period must be positive: " + periodMillis);
+        }
+        stopDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runnable dump = () -> {
+            try {
+                dump(file);
+            } catch (IOException e) {
+                System.err.println("ERROR: Unable to dump metrics to " + file + " -> " + e.getMessage());
+            }
+        };
+        dumper.scheduleAtFixedRate(dump, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(dump, "metrics-final-dump"));
+    }
+
+    /**
+     * Stops the periodic dump, if any.
+     */
+    public static synchronized void stopDump() {
+        if(dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, under
+     * {@link #OBJECT_NAME}. Registering twice does nothing.
+     *
+     * @throws JMException If the bean can't be registered.
+     */
+    public static void registerMBean() throws JMException {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Already registered
+        }
+    }
+
+    /**
+     * Sets up the metrics from system properties, when they are enabled:
+     * registers the MBean, and dumps them every dealership.metrics.period
+     * seconds (default 60) to the file named by dealership.metrics.dump, if set.
+     */
+    public static void configure() {
+        if(!enabled) {
+            return;
+        }
+        try {
+            registerMBean();
+        } catch (JMException e) {
+            System.err.println("ERROR: Unable to register the metrics MBean -> " + e.getMessage());
+        }
+        String dumpFile = System.getProperty("dealership.metrics.dump");
+        if(dumpFile != null && !dumpFile.trim().isEmpty()) {
+            long period = Long.getLong("dealership.metrics.period", 60);
+            startDump(new File(dumpFile.trim()), TimeUnit.SECONDS.toMillis(Math.max(1, period)));
+        }
+    }
+
+    /**
+     * @return The bytes allocated so far by the current thread, or -1 if the JVM can't tell.
+     */
+    private static long allocatedBytes() {
+        return Threads.BEAN == null ? -1 : Threads.BEAN.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Holds the thread bean, so the management classes are only loaded once
+     * metrics are recorded.
+     */
+    private static final class Threads {
+        static final com.sun.management.ThreadMXBean BEAN = allocationCounter();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        try {
+            if(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                if(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                    return threads;
+                }
+            }
+        } catch (LinkageError | SecurityException e) {
+            // Not a HotSpot JVM
+        }
+        return null;
+    }
+
+    private static String duration(double nanos) {
+        if(nanos < 1e3) {
+            return String.format(Locale.ROOT, "%.0fns", nanos);
+        } else if(nanos < 1e6) {
+            return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+        } else if(nanos < 1e9) {
+            return String.format(Locale.ROOT, "%.1fms", nanos / 1e6);
+        }
+        return String.format(Locale.ROOT, "%.2fs", nanos / 1e9);
+    }
+
+    private static String bytes(double bytes) {
+        if(bytes < 1024) {
+            return String.format(Locale.ROOT, "%.0fB", bytes);
+        } else if(bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1fKB", bytes / 1024);
+        }
+        return String.format(Locale.ROOT, "%.1fMB", bytes / (1024 * 1024));
+    }
+
+    /**
+     * The metrics as seen through JMX.
+     */
+    private static final class Bean implements MetricsMXBean {
+        @Override
+        public boolean isEnabled() { return Metrics.isEnabled(); }
+
+        @Override
+        public void setEnabled(boolean enabled) { Metrics.setEnabled(enabled); }
+
+        @Override
+        public Map<String, Long> getCounters() {
+            Map<String, Long> counters = new LinkedHashMap<>();
+            for(Counter counter : COUNTERS.values()) {
+                counters.put(counter.getName(), counter.get());
+            }
+            return counters;
+        }
+
+        @Override
+        public Map<String, String> getTimers() {
+            Map<String, String> timers = new LinkedHashMap<>();
+            for(Timer timer : TIMERS.values()) {
+                timers.put(timer.getName(), timer.toString());
+            }
+            return timers;
+        }
+
+        @Override
+        public String getText() { return toText(); }
+
+        @Override
+        public String getJson() { return toJson(); }
+
+        @Override
+        public void reset() { Metrics.reset(); }
+    }
+}
@@ -0,0 +1,40 @@
+package dealership.utils;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link Metrics}, registered under
+ * {@link Metrics#OBJECT_NAME} so the metrics can be read with jconsole or any
+ * JMX client.
+ */
+public interface MetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return The count of each counter, by name.
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return A summary of each timer (count, mean, percentiles, maximum and
+     * allocation per operation), by name.
+     */
+    Map<String, String> getTimers();
+
+    /**
+     * @return The metrics as text, one metric per line.
+     */
+    String getText();
+
+    /**
+     * @return The metrics as JSON.
+     */
+    String getJson();
+
+    /**
+     * Forgets everything recorded.
+     */
+    void reset();
+}
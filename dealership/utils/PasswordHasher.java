@@ -0,0 +1,118 @@
+package dealership.utils;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Hashes passwords with PBKDF2 (HMAC-SHA256) and a random salt per password.
+ * A hash is stored as a single string holding everything needed to verify it:
+ * <pre>
+ *     pbkdf2-sha256$&lt;iterations&gt;$&lt;salt, base64&gt;$&lt;hash, base64&gt;
+ * </pre>
+ * The iteration count sets the cost of each hash. It is read from the system
+ * property dealership.passwordIterations, and is stored with each hash, so it
+ * can be raised without invalidating existing hashes.
+ */
+public class PasswordHasher {
+    public static final String PREFIX = "pbkdf2-sha256$";
+    public static final int DEFAULT_ITERATIONS = Integer.getInteger("dealership.passwordIterations", 100_000);
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Instantiate a hasher using the default iteration count.
+     */
+    public PasswordHasher() {
+        this(DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Instantiate a hasher.
+     *
+     * @param iterations PBKDF2 iteration count of new hashes
+     */
+    public PasswordHasher(int iterations) {
+        if(iterations < 1) {
+            throw new IllegalArgumentException("Iteration count must be positive");
+        }
+        this.iterations = iterations;
+    }
+
+    /**
+     * @return the iteration count of new hashes.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Hash a password with a new random salt.
+     *
+     * @param password the password
+     * @return the encoded hash
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + '$' + base64.encodeToString(salt) + '$'
+                + base64.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    /**
+     * Check a password against an encoded hash. The comparison takes the same
+     * time wherever the hashes differ.
+     *
+     * @param password the password to check
+     * @param encoded  a hash returned by {@link #hash(String)}
+     * @return true if the password matches the hash; false otherwise, or if the hash is malformed.
+     */
+    public static boolean verify(String password, String encoded) {
+        if(!isHash(encoded)) {
+            return false;
+        }
+        String[] parts = encoded.substring(PREFIX.length()).split("\\$");
+        if(parts.length != 3) {
+            return false;
+        }
+        try {
+            int iterations = Integer.parseInt(parts[0]);
+            byte[] salt = Base64.getDecoder().decode(parts[1]);
+            byte[] expected = Base64.getDecoder().decode(parts[2]);
+            if(iterations < 1) {
+                return false;
+            }
+            return MessageDigest.isEqual(pbkdf2(password, salt, iterations), expected);
+        } catch (IllegalArgumentException e) {
+            return false; // bad number or base64
+        }
+    }
+
+    /**
+     * @param value a stored password
+     * @return true if the value is an encoded hash rather than a plain text password.
+     */
+    public static boolean isHash(String value) {
+        return value != null && value.startsWith(PREFIX);
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password == null ? new char[0] : password.toCharArray(), salt,
+                iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package dealership.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * A sparse index of a sales file, so the sales of a range of dates can be read
+ * without parsing the whole file.
+ *
+ * The rows of the file are grouped in chunks of {@link #CHUNK_ROWS} rows, and
+ * the index keeps the offset of each chunk with the first and last date of its
+ * sales. Reading a range of dates only parses the chunks whose dates overlap
+ * it. Sales are mostly appended in date order, so a range usually maps to a
+ * few consecutive chunks; sales out of order only widen the dates of their chunk.
+ *
+ * The index is saved next to the file, with the length and a checksum of the
+ * last bytes of the part of the file it covers. Rows appended to the file since
+ * are indexed on next use; a file rewritten since is indexed again.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * header  magic "DLRI" (int), version (short), indexed length, tail checksum (longs),
+ *         chunk count, rows in the last chunk (ints)
+ * chunks  offset (long), first day, last day (epoch days, ints)
+ * </pre>
+ */
+public class SalesIndex {
+    public static final int MAGIC = 0x444C5249; // "DLRI"
+    public static final short VERSION = 1;
+    public static final String EXTENSION = ".index";
+    public static final int CHUNK_ROWS = 1024;
+
+    private final File file;
+    private final File indexFile;
+    private boolean read; // whether the saved index was read
+
+    private int count;
+    private long[] offsets = new long[16];
+    private int[] firstDays = new int[16];
+    private int[] lastDays = new int[16];
+    private int rowsInLastChunk;
+    private long indexedLength;
+    private long tailChecksum;
+
+    /**
+     * Instantiate the index of a sales file.
+     *
+     * @param file      the sales file
+     * @param indexFile where the index is saved
+     */
+    public SalesIndex(File file, File indexFile) {
+        this.file = file;
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Parse the rows of the chunks that may hold sales made between two dates,
+     * after indexing the rows appended to the file since last used. Rows of
+     * other dates are parsed too when they share a chunk with the range: the
+     * handler must check the date of each row.
+     *
+     * @param from    the first epoch day
+     * @param to      the last epoch day, inclusive
+     * @param handler receives each row
+     * @return the number of rows passed to the handler
+     * @throws IOException if the file can't be read
+     */
+    public synchronized long scan(long from, long to, CsvParser.RowHandler handler) throws IOException {
+        update();
+        CsvParser parser = new CsvParser(DealershipDB.DROP_COMMENT_LINES, DealershipDB.DROP_EMPTY_LINES);
+        long rows = 0;
+        int i = 0;
+        while(i < count) {
+            if(!overlaps(i, from, to)) {
+                i++;
+                continue;
+            }
+            // Consecutive chunks are parsed in one go
+            int last = i;
+            while(last + 1 < count && overlaps(last + 1, from, to)) {
+                last++;
+            }
+            long end = last + 1 < count ? offsets[last + 1] : indexedLength;
+            rows += parser.parse(file, offsets[i], end, handler);
+            i = last + 1;
+        }
+        return rows;
+    }
+
+    /**
+     * @return the number of chunks indexed
+     */
+    public synchronized int getChunkCount() {
+        return count;
+    }
+
+    private boolean overlaps(int chunk, long from, long to) {
+        return firstDays[chunk] <= to && lastDays[chunk] >= from;
+    }
+
+    /**
+     * Bring the index up to date with the file, from the saved index on first use.
+     */
+    private void update() throws IOException {
+        if(!read) {
+            read = true;
+            readIndex();
+        }
+        if(!file.isFile()) {
+            clear();
+            return;
+        }
+        long length = file.length();
+        if(length < indexedLength || DealershipDB.FileStamp.checksum(file, indexedLength) != tailChecksum) {
+            clear(); // rewritten
+        }
+        long end = DealershipDB.endOfLastLine(file, indexedLength);
+        if(end <= indexedLength) {
+            return;
+        }
+        Function<CsvRow, LocalDate> date = DealershipDB.SALES_SCHEMA.resolve(file).date("date");
+        new CsvParser(DealershipDB.DROP_COMMENT_LINES, DealershipDB.DROP_EMPTY_LINES).parse(file, indexedLength, end,
+                row -> add(row, date));
+        indexedLength = end;
+        tailChecksum = DealershipDB.FileStamp.checksum(file, end);
+        writeIndex();
+    }
+
+    private void add(CsvRow row, Function<CsvRow, LocalDate> date) {
+        if(count == 0 || rowsInLastChunk == CHUNK_ROWS) {
+            if(count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                firstDays = Arrays.copyOf(firstDays, count * 2);
+                lastDays = Arrays.copyOf(lastDays, count * 2);
+            }
+            offsets[count] = row.getOffset();
+            firstDays[count] = Integer.MAX_VALUE;
+            lastDays[count] = Integer.MIN_VALUE;
+            count++;
+            rowsInLastChunk = 0;
+        }
+        rowsInLastChunk++;
+        try {
+            int day = (int) date.apply(row).toEpochDay();
+            firstDays[count - 1] = Math.min(firstDays[count - 1], day);
+            lastDays[count - 1] = Math.max(lastDays[count - 1], day);
+        } catch(DateTimeException | NumberFormatException | IndexOutOfBoundsException e) {
+            // Reported when the sales are loaded
+        }
+    }
+
+    private void clear() {
+        count = 0;
+        rowsInLastChunk = 0;
+        indexedLength = 0;
+        tailChecksum = 0;
+    }
+
+    private void readIndex() {
+        if(!indexFile.isFile()) {
+            return;
+        }
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if(in.readInt() != MAGIC || in.readShort() != VERSION) {
+                return;
+            }
+            long length = in.readLong();
+            long checksum = in.readLong();
+            int chunks = in.readInt();
+            int rows = in.readInt();
+            long[] o = new long[Math.max(chunks, 16)];
+            int[] first = new int[o.length];
+            int[] last = new int[o.length];
+            for(int i = 0; i < chunks; i++) {
+                o[i] = in.readLong();
+                first[i] = in.readInt();
+                last[i] = in.readInt();
+            }
+            offsets = o;
+            firstDays = first;
+            lastDays = last;
+            count = chunks;
+            rowsInLastChunk = rows;
+            indexedLength = length;
+            tailChecksum = checksum;
+        } catch(IOException e) {
+            // Built again from the file
+            System.err.println("WARNING: Ignoring unreadable sales index " + indexFile + " -> " + e.getMessage());
+            clear();
+        }
+    }
+
+    private void writeIndex() {
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeLong(indexedLength);
+                out.writeLong(tailChecksum);
+                out.writeInt(count);
+                out.writeInt(rowsInLastChunk);
+                for(int i = 0; i < count; i++) {
+                    out.writeLong(offsets[i]);
+                    out.writeInt(firstDays[i]);
+                    out.writeInt(lastDays[i]);
+                }
+            }
+            Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException e) {
+            // Only costs indexing the file again on next start
+            System.err.println("WARNING: Unable to save sales index " + indexFile + " -> " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package dealership.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dictionary encoding for low-cardinality strings such as makes, colors or
+ * statuses. Each distinct value gets a dense int code, starting at 0, and is
+ * stored only once no matter how many times it is encoded.
+ */
+public class StringDictionary {
+    private final Map<String, Integer> codes = new HashMap<>();
+    private String[] values = new String[16];
+
+    /**
+     * Get the code of a value, assigning a new one if the value hasn't been seen yet.
+     *
+     * @param value the value to encode; null is not allowed
+     * @return the code of the value
+     */
+    public int encode(String value) {
+        Integer code = codes.get(value);
+        if(code == null) {
+            code = codes.size();
+            if(code == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[code] = value;
+            codes.put(value, code);
+        }
+        return code;
+    }
+
+    /**
+     * Get the code of a value without assigning one.
+     *
+     * @param value the value to look up
+     * @return the code of the value, or -1 if it has never been encoded
+     */
+    public int codeOf(String value) {
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * @param code a code returned by {@link #encode(String)}
+     * @return the value having the given code
+     */
+    public String decode(int code) {
+        if(code < 0 || code >= codes.size()) {
+            throw new IndexOutOfBoundsException("Unknown dictionary code: " + code);
+        }
+        return values[code];
+    }
+
+    /**
+     * @return the number of distinct values in the dictionary
+     */
+    public int size() {
+        return codes.size();
+    }
+}
@@ -0,0 +1,147 @@
+package dealership.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Canonical instances of the low-cardinality strings read from csv files,
+ * such as makes, colors, statuses or roles, so every row holding the same
+ * value shares one String. Values are looked up straight from the bytes of a
+ * field (see {@link CsvRow#getString(int, StringPool)}): a value already in
+ * the pool costs no allocation at all.
+ *
+ * The pool stops growing at {@link #MAX_SIZE} values, and values longer than
+ * {@link #MAX_LENGTH} bytes are never pooled: a column holding mostly distinct
+ * values then costs a lookup per row, not a copy of the column.
+ *
+ * A pool is not thread-safe: each load uses its own.
+ */
+public class StringPool {
+    public static final int MAX_SIZE = 4096;
+    public static final int MAX_LENGTH = 64;
+
+    private byte[][] keys = new byte[64][];
+    private String[] values = new String[64];
+    private int[] hashes = new int[64];
+    private int size;
+
+    /**
+     * Get the canonical instance of a string.
+     *
+     * @param value the string
+     * @return the pooled instance equal to the string, or the string itself if
+     * it is new (pooled from now on, unless the pool is full) or too long
+     */
+    public String intern(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length > MAX_LENGTH) {
+            return value;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int hash = hash(buffer, 0, bytes.length);
+        String pooled = find(buffer, 0, bytes.length, hash);
+        return pooled != null ? pooled : add(bytes, value, hash);
+    }
+
+    /**
+     * Get the canonical instance of a string encoded in UTF-8 in a buffer.
+     *
+     * @param buffer holds the bytes of the string
+     * @param start  index of the first byte
+     * @param length number of bytes
+     * @return the pooled instance, or a new string (pooled from now on, unless
+     * the pool is full or the string too long)
+     */
+    String get(ByteBuffer buffer, int start, int length) {
+        if(length > MAX_LENGTH) {
+            return new String(copy(buffer, start, length), StandardCharsets.UTF_8);
+        }
+        int hash = hash(buffer, start, length);
+        String pooled = find(buffer, start, length, hash);
+        if(pooled != null) {
+            return pooled;
+        }
+        byte[] bytes = copy(buffer, start, length); // the key, even if not valid UTF-8
+        return add(bytes, new String(bytes, StandardCharsets.UTF_8), hash);
+    }
+
+    /**
+     * @return the number of distinct values in the pool
+     */
+    public int size() {
+        return size;
+    }
+
+    private String find(ByteBuffer buffer, int start, int length, int hash) {
+        int mask = keys.length - 1;
+        for(int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if(hashes[slot] == hash && matches(keys[slot], buffer, start, length)) {
+                return values[slot];
+            }
+        }
+        return null;
+    }
+
+    private String add(byte[] key, String value, int hash) {
+        if(size == MAX_SIZE) {
+            return value;
+        }
+        if(2 * (size + 1) > keys.length) {
+            grow();
+        }
+        insert(key, value, hash);
+        size++;
+        return value;
+    }
+
+    private void insert(byte[] key, String value, int hash) {
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        while(keys[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        hashes[slot] = hash;
+    }
+
+    private void grow() {
+        byte[][] oldKeys = keys;
+        String[] oldValues = values;
+        int[] oldHashes = hashes;
+        keys = new byte[oldKeys.length * 2][];
+        values = new String[keys.length];
+        hashes = new int[keys.length];
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] != null) {
+                insert(oldKeys[i], oldValues[i], oldHashes[i]);
+            }
+        }
+    }
+
+    private static boolean matches(byte[] key, ByteBuffer buffer, int start, int length) {
+        if(key.length != length) {
+            return false;
+        }
+        for(int i = 0; i < length; i++) {
+            if(key[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(ByteBuffer buffer, int start, int length) {
+        int h = length;
+        for(int i = 0; i < length; i++) {
+            h = 31 * h + buffer.get(start + i);
+        }
+        return h ^ (h >>> 16); // spread the high bits to the slots
+    }
+
+    private static byte[] copy(ByteBuffer buffer, int start, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(start, bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,235 @@
+package dealership.utils;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel, tracking the deadlines of any number of items
+ * at a constant cost per item scheduled, cancelled or expired, whatever the
+ * number of items pending.
+ *
+ * Time is cut in ticks of a fixed length. The wheel has {@link #LEVELS} levels
+ * of {@link #SLOTS} slots: a slot of level 0 holds the items due on one tick,
+ * and a slot of level n holds the items due in a range of SLOTS^n ticks. An
+ * item is placed on the lowest level whose current rotation holds its
+ * deadline. Each time the slot of a higher level comes up, its items are moved
+ * down to the levels below, until they reach level 0 on the tick they are due.
+ * With 64 slots on 4 levels, deadlines up to 64^4 ticks ahead are placed
+ * directly; later ones wait on the last level and are placed again when it
+ * comes around.
+ *
+ * A wheel is not thread-safe: callers synchronize.
+ *
+ * @param <T> the type of the items
+ */
+public class TimingWheel<T> {
+    public static final int SLOTS = 64;
+    public static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6; // SLOTS = 1 << SLOT_BITS
+
+    /**
+     * An item scheduled in the wheel, in the list of its slot.
+     *
+     * @param <T> the type of the item
+     */
+    public static final class Timeout<T> {
+        private final T item;
+        private final long deadline;
+        private final long deadlineTick;
+        private Timeout<T> previous;
+        private Timeout<T> next;
+        private int level;
+        private int slot;
+        private boolean scheduled;
+
+        private Timeout(T item, long deadline, long deadlineTick) {
+            this.item = item;
+            this.deadline = deadline;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * @return the item
+         */
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * @return the deadline of the item, in milliseconds
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * @return true until the item expires or is cancelled
+         */
+        public boolean isScheduled() {
+            return scheduled;
+        }
+    }
+
+    private final long tickMillis;
+    private final Timeout<T>[][] slots; // the first item of each slot, by level
+    private long currentTick; // the last tick expired
+    private int size;
+
+    /**
+     * Instantiate an empty wheel.
+     *
+     * @param tickMillis the length of a tick, in milliseconds
+     * @param nowMillis  the current time, in milliseconds
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(long tickMillis, long nowMillis) {
+        if(tickMillis < 1) {
+            throw new IllegalArgumentException("The tick must last at least one millisecond");
+        }
+        this.tickMillis = tickMillis;
+        this.slots = new Timeout[LEVELS][SLOTS];
+        this.currentTick = Math.floorDiv(nowMillis, tickMillis);
+    }
+
+    /**
+     * Schedule an item. It expires on the first call to {@link #advance(long, Consumer)}
+     * reaching the end of the tick holding its deadline, or on the next call if
+     * the deadline has passed.
+     *
+     * @param item     the item
+     * @param deadline the deadline of the item, in milliseconds
+     * @return the handle cancelling the item
+     */
+    public Timeout<T> schedule(T item, long deadline) {
+        long tick = Math.max(ceilDiv(deadline, tickMillis), currentTick + 1);
+        Timeout<T> timeout = new Timeout<>(item, deadline, tick);
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Cancel an item, if it has not expired yet.
+     *
+     * @param timeout the handle returned when the item was scheduled
+     * @return true if the item was cancelled, false if it had already expired or been cancelled
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if(!timeout.scheduled) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Expire the items whose deadline is over by the end of the last tick
+     * reached at the given time, in deadline order give or take a tick.
+     *
+     * @param nowMillis the current time, in milliseconds
+     * @param expired   receives each expired item
+     * @return the number of items expired
+     */
+    public int advance(long nowMillis, Consumer<T> expired) {
+        long target = Math.floorDiv(nowMillis, tickMillis);
+        int count = 0;
+        while(currentTick < target) {
+            if(size == 0) {
+                currentTick = target; // nothing to move down or expire on the way
+                break;
+            }
+            currentTick++;
+            for(int level = 1; level < LEVELS; level++) {
+                if((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(level, slotOf(currentTick, level));
+            }
+            int slot = slotOf(currentTick, 0);
+            Timeout<T> timeout = slots[0][slot];
+            slots[0][slot] = null;
+            // Every item of a slot of level 0 is due on its tick
+            while(timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.previous = null;
+                timeout.next = null;
+                timeout.scheduled = false;
+                size--;
+                count++;
+                expired.accept(timeout.item);
+                timeout = next;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of items scheduled
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the length of a tick, in milliseconds
+     */
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    private void cascade(int level, int slot) {
+        Timeout<T> timeout = slots[level][slot];
+        slots[level][slot] = null;
+        while(timeout != null) {
+            Timeout<T> next = timeout.next;
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.scheduled = false;
+            place(timeout);
+            timeout = next;
+        }
+    }
+
+    /**
+     * Put an item on the lowest level whose current rotation holds its deadline.
+     */
+    private void place(Timeout<T> timeout) {
+        long tick = timeout.deadlineTick; // not before the tick being expired
+        int level = 0;
+        while(level < LEVELS - 1 && (tick >>> (SLOT_BITS * (level + 1))) != (currentTick >>> (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = slotOf(tick, level);
+        Timeout<T> head = slots[level][slot];
+        timeout.next = head;
+        if(head != null) {
+            head.previous = timeout;
+        }
+        slots[level][slot] = timeout;
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.scheduled = true;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if(timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            slots[timeout.level][timeout.slot] = timeout.next;
+        }
+        if(timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.scheduled = false;
+    }
+
+    private static int slotOf(long tick, int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+}
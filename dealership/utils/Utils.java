@@ -55,4 +55,48 @@ public class Utils {
         }
         return values;
     }
+
+    /**
+     * Format values into a single line of csv content, the reverse of parsing it.
+     * A value is wrapped in double quotes if it contains a separator, a quote or a
+     * line break, or if it starts or ends with a whitespace; quotes inside it are
+     * doubled. Null values are written as empty values.
+     *
+     * @param values the values to format
+     * @return a string containing the csv content, without a line terminator.
+     */
+    public static String formatCSV(String... values) {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < values.length; i++) {
+            if(i > 0) {
+                sb.append(CSV_SEPARATOR);
+            }
+            String value = values[i];
+            if(value == null) {
+                continue;
+            }
+            if(needsQuotes(value)) {
+                sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                sb.append(value);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean needsQuotes(String value) {
+        if(value.isEmpty()) {
+            return false;
+        }
+        if(Character.isWhitespace(value.charAt(0)) || Character.isWhitespace(value.charAt(value.length() - 1))) {
+            return true;
+        }
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
 }
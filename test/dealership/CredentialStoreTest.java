@@ -0,0 +1,97 @@
+package dealership;
+
+import dealership.utils.DealershipDB;
+import dealership.utils.PasswordHasher;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CredentialStoreTest {
+    private static final PasswordHasher HASHER = new PasswordHasher(1_000);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void authenticatesWithTheRightPasswordAndRole() {
+        CredentialStore store = new CredentialStore(List.of(new User("ann", "secret", Role.MANAGER)), HASHER);
+        assertNotNull(store.authenticate("ann", "secret"));
+        assertNotNull(store.authenticate("ann", "secret", Role.MANAGER));
+        assertNull(store.authenticate("ann", "secret", Role.SALESPERSON));
+        assertNull(store.authenticate("ann", "wrong"));
+        assertNull(store.authenticate("bob", "secret"));
+    }
+
+    @Test
+    void throttlesAfterTheFreeAttempts() {
+        CredentialStore store = new CredentialStore(List.of(new User("ann", "secret", Role.MANAGER)), HASHER);
+        for (int i = 0; i < CredentialStore.FREE_ATTEMPTS; i++) {
+            assertEquals(0, store.getRetryDelayMillis("ann"));
+            assertNull(store.authenticate("ann", "wrong"));
+        }
+        long delay = store.getRetryDelayMillis("ann");
+        assertTrue(delay > 0 && delay <= CredentialStore.BASE_DELAY_MILLIS, "delay " + delay);
+        assertNull(store.authenticate("ann", "secret"), "the right password is refused while throttled");
+        assertEquals(0, store.getRetryDelayMillis("bob"));
+    }
+
+    @Test
+    void skipsDuplicateUsernames() {
+        CredentialStore store = new CredentialStore(List.of(new User("ann", "first", Role.MANAGER),
+                new User("ann", "second", Role.SALESPERSON), new User("bob", "third", Role.SALESPERSON)), HASHER);
+        assertEquals(2, store.size());
+        User ann = store.authenticate("ann", "first");
+        assertNotNull(ann);
+        assertEquals(Role.MANAGER, ann.getRole());
+        assertNull(store.authenticate("ann", "second"));
+    }
+
+    @Test
+    void hashesPlainTextPasswordsOnLoad() {
+        String hash = HASHER.hash("hashed");
+        CredentialStore store = new CredentialStore(List.of(new User("ann", "plain", Role.MANAGER),
+                new User("bob", hash, Role.SALESPERSON)), HASHER);
+        List<User> hashed = store.getHashedOnLoad();
+        assertEquals(1, hashed.size());
+        assertEquals("ann", hashed.get(0).getUsername());
+        assertTrue(PasswordHasher.isHash(hashed.get(0).getPassword()));
+        assertNotNull(store.authenticate("ann", "plain"));
+        assertNotNull(store.authenticate("bob", "hashed"));
+    }
+
+    @Test
+    void savesHashedPasswordsWithoutWritingSnapshots() throws IOException {
+        Files.write(dir.resolve(DealershipDB.USERS_FILE_NAME), List.of(
+                "# id, first name, last name, email, phone, role, username, password",
+                "1, Ann, Lee, ann@example.com, 555-0100, manager, ann, plain"), StandardCharsets.UTF_8);
+        Files.write(dir.resolve(DealershipDB.INVENTORY_FILE_NAME), List.of("#"), StandardCharsets.UTF_8);
+        Files.write(dir.resolve(DealershipDB.SALES_FILE_NAME), List.of("#"), StandardCharsets.UTF_8);
+        try (DealershipDB db = new DealershipDB(dir.toString(), false)) {
+            new Dealership(db).getState();
+        }
+        try (DealershipDB db = new DealershipDB(dir.toString(), false)) {
+            assertEquals(DealershipDB.USERS_FILE_NAME, db.getSourceFileName(DealershipDB.USERS_FILE_NAME));
+            assertEquals(DealershipDB.INVENTORY_FILE_NAME, db.getSourceFileName(DealershipDB.INVENTORY_FILE_NAME));
+            assertEquals(DealershipDB.SALES_FILE_NAME, db.getSourceFileName(DealershipDB.SALES_FILE_NAME));
+            List<User> users = db.loadUsers();
+            assertEquals(1, users.size());
+            User ann = users.get(0);
+            assertTrue(PasswordHasher.isHash(ann.getPassword()));
+            assertTrue(ann.authenticate("plain"));
+            assertFalse(ann.authenticate("other"));
+            assertEquals("ann@example.com", ann.getEmail());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package dealership;
+
+import dealership.utils.DealershipDB;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DealershipTest {
+    private static final String USERS_HEADER = "# id, first name, last name, email, phone, role, username, password";
+    private static final int THREADS = 8;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sellsEachCarOnceWhenSessionsSellAtOnce() throws Exception {
+        List<Car> cars = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            cars.add(car("V" + i, CarStatus.AVAILABLE));
+        }
+        Dealership dealership = new Dealership(new ArrayList<>(), cars);
+        List<Integer> sold = runAtOnce(seller -> {
+            int count = 0;
+            for (Car car : cars) {
+                if (dealership.sellCar(new Sale(LocalDate.of(2025, 5, 1), car.getVin(), 10_000, 12_000,
+                        "seller" + seller, "customer" + seller))) {
+                    count++;
+                }
+            }
+            return count;
+        });
+        assertEquals(cars.size(), sold.stream().mapToInt(Integer::intValue).sum());
+        assertEquals(cars.size(), dealership.getState().getSales().size());
+        for (Car car : dealership.getState().getInventoryStore().getCars()) {
+            assertEquals(CarStatus.SOLD, car.getCarStatus());
+        }
+    }
+
+    @Test
+    void changesTheExpectedStatusOnce() throws Exception {
+        Dealership dealership = new Dealership(new ArrayList<>(), List.of(car("V1", CarStatus.AVAILABLE)));
+        List<Integer> held = runAtOnce(seller ->
+                dealership.changeCarStatus("V1", CarStatus.AVAILABLE, CarStatus.ON_HOLD) != null ? 1 : 0);
+        assertEquals(1, held.stream().mapToInt(Integer::intValue).sum());
+        assertEquals(CarStatus.ON_HOLD, dealership.getState().getInventoryStore().getByVin("V1").getCarStatus());
+    }
+
+    @Test
+    void neverSellsASoldCarAgain() throws IOException {
+        Dealership dealership = new Dealership(new ArrayList<>(),
+                List.of(car("V1", CarStatus.ON_HOLD), car("V2", CarStatus.IN_SERVICE)));
+        Sale sale = new Sale(LocalDate.of(2025, 5, 1), "V1", 10_000, 12_000, "ann", "carol");
+        assertTrue(dealership.sellCar(sale)); // on hold cars can be sold
+        assertFalse(dealership.sellCar(sale));
+        assertNull(dealership.changeCarStatus("V1", CarStatus.AVAILABLE));
+        assertFalse(dealership.sellCar(new Sale(LocalDate.of(2025, 5, 1), "V2", 10_000, 12_000, "ann", "dan")));
+        assertFalse(dealership.sellCar(new Sale(LocalDate.of(2025, 5, 1), "V9", 10_000, 12_000, "ann", "dan")));
+        assertEquals(1, dealership.getState().getSales().size());
+    }
+
+    @Test
+    void reloadsCsvChangesMadeAfterACompaction() throws IOException {
+        writeUsers("1, Ann, Lee, ann@example.com, 555-0100, manager, ann, ann-password");
+        writeInventory("V1,2025-01-01,Honda,Civic,2020,1000,Blue,10000,12000,Available",
+                "V2,2025-01-01,Honda,Accord,2021,2000,Red,15000,18000,Available",
+                "V3,2025-01-01,Toyota,Corolla,2019,3000,White,9000,11000,Available",
+                "V4,2025-01-01,Toyota,Camry,2022,4000,Black,20000,24000,Available");
+        Files.write(dir.resolve(DealershipDB.SALES_FILE_NAME), List.of("#"), StandardCharsets.UTF_8);
+
+        try (DealershipDB db = new DealershipDB(dir.toString(), false)) {
+            Dealership dealership = new Dealership(db);
+            assertNotNull(dealership.repriceCar("V1", 11_500)); // compacted
+            dealership.checkpoint();
+            assertEquals(DealershipDB.INVENTORY_SNAPSHOT_FILE_NAME,
+                    db.getSourceFileName(DealershipDB.INVENTORY_FILE_NAME));
+            assertNotNull(dealership.repriceCar("V2", 17_500)); // logged since the compaction
+
+            // Another process edits the csv files: V3 changed, V4 removed, V5 added, Bob added
+            writeInventory("V1,2025-01-01,Honda,Civic,2020,1000,Blue,10000,12000,Available",
+                    "V2,2025-01-01,Honda,Accord,2021,2000,Red,15000,18000,Available",
+                    "V3,2025-01-01,Toyota,Corolla,2019,3000,White,9000,10500,Available",
+                    "V5,2025-02-01,Mazda,3,2023,500,Grey,18000,21000,Available");
+            writeUsers("1, Ann, Lee, ann@example.com, 555-0100, manager, ann, ann-password",
+                    "2, Bob, Ray, bob@example.com, 555-0101, salesperson, bob, bob-password");
+            List<String> reloaded = dealership.reloadChangedFiles();
+            assertTrue(reloaded.contains(DealershipDB.INVENTORY_FILE_NAME), reloaded.toString());
+            assertTrue(reloaded.contains(DealershipDB.USERS_FILE_NAME), reloaded.toString());
+            assertInventory(dealership);
+            assertNotNull(dealership.getState().getUsers().authenticate("bob", "bob-password"));
+            assertTrue(dealership.reloadChangedFiles().isEmpty());
+        }
+
+        // The changes applied were logged like any other
+        try (DealershipDB db = new DealershipDB(dir.toString(), false)) {
+            Dealership dealership = new Dealership(db);
+            assertInventory(dealership);
+            assertNotNull(dealership.getState().getUsers().authenticate("ann", "ann-password"));
+            assertNotNull(dealership.getState().getUsers().authenticate("bob", "bob-password"));
+        }
+    }
+
+    private void assertInventory(Dealership dealership) {
+        InventoryStore inventory = dealership.getState().getInventoryStore();
+        assertEquals(4, inventory.getCars().size());
+        assertEquals(11_500, inventory.getByVin("V1").getPrice());
+        assertEquals(17_500, inventory.getByVin("V2").getPrice());
+        assertEquals(10_500, inventory.getByVin("V3").getPrice());
+        assertNull(inventory.getByVin("V4"));
+        assertEquals("Mazda", inventory.getByVin("V5").getMake());
+    }
+
+    /**
+     * Runs a task in several threads, started together.
+     *
+     * @return The result of each thread.
+     */
+    private static <T> List<T> runAtOnce(Task<T> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                int thread = i;
+                Callable<T> call = () -> {
+                    start.await();
+                    return task.run(thread);
+                };
+                futures.add(executor.submit(call));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get(30, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface Task<T> {
+        T run(int thread) throws Exception;
+    }
+
+    private static Car car(String vin, CarStatus status) {
+        return new Car(vin, LocalDate.of(2025, 1, 1), "Honda", "Civic", 2020, 1000, "Blue", 10_000, 12_000,
+                status.getLabel());
+    }
+
+    private void writeUsers(String... rows) throws IOException {
+        StringBuilder content = new StringBuilder(USERS_HEADER).append('\n');
+        for (String row : rows) {
+            content.append(row).append('\n');
+        }
+        Files.write(dir.resolve(DealershipDB.USERS_FILE_NAME), content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeInventory(String... rows) throws IOException {
+        Files.write(dir.resolve(DealershipDB.INVENTORY_FILE_NAME), List.of(rows), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,155 @@
+package dealership;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HoldManagerTest {
+    private static final Duration RESTORED_TTL = Duration.ofMinutes(5);
+
+    private Dealership dealership;
+
+    @AfterEach
+    void closeHolds() {
+        if (dealership != null) {
+            dealership.closeHolds();
+        }
+    }
+
+    @Test
+    void holdsUntilReleasedByItsSalesperson() throws IOException {
+        HoldManager holds = holds(car("V1", CarStatus.AVAILABLE));
+        HoldManager.Hold hold = holds.hold("V1", "ann", Duration.ofMinutes(10));
+        assertNotNull(hold);
+        assertEquals("ann", hold.getSalesperson());
+        assertEquals(CarStatus.ON_HOLD, status("V1"));
+        assertNull(holds.hold("V1", "bob", Duration.ofMinutes(10)));
+
+        assertFalse(holds.release("V1", "bob"));
+        assertEquals(CarStatus.ON_HOLD, status("V1"));
+        assertTrue(holds.release("V1", "ann"));
+        assertEquals(CarStatus.AVAILABLE, status("V1"));
+        assertNull(holds.getHold("V1"));
+        assertFalse(holds.release("V1", "ann"));
+
+        assertNotNull(holds.hold("V1", "bob", Duration.ofMinutes(10)));
+        assertTrue(holds.release("V1", null)); // by a manager
+        assertEquals(0, holds.size());
+    }
+
+    @Test
+    void onlyHoldsAvailableCars() throws IOException {
+        HoldManager holds = holds(car("V1", CarStatus.IN_SERVICE), car("V2", CarStatus.SOLD));
+        assertNull(holds.hold("V1", "ann", Duration.ofMinutes(10)));
+        assertNull(holds.hold("V2", "ann", Duration.ofMinutes(10)));
+        assertNull(holds.hold("V9", "ann", Duration.ofMinutes(10)));
+        assertEquals(0, holds.size());
+        assertThrows(IllegalArgumentException.class, () -> holds.hold("V1", "ann", Duration.ZERO));
+        assertThrows(IllegalArgumentException.class,
+                () -> holds.hold("V1", "ann", HoldManager.MAX_TTL.plusMinutes(1)));
+    }
+
+    @Test
+    void oneOfSeveralSalespeopleGetsTheHold() throws Exception {
+        HoldManager holds = holds(car("V1", CarStatus.AVAILABLE));
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<HoldManager.Hold>> attempts = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                String salesperson = "seller" + i;
+                attempts.add(executor.submit(() -> {
+                    start.await();
+                    return holds.hold("V1", salesperson, Duration.ofMinutes(10));
+                }));
+            }
+            start.countDown();
+            int held = 0;
+            for (Future<HoldManager.Hold> attempt : attempts) {
+                if (attempt.get(30, TimeUnit.SECONDS) != null) {
+                    held++;
+                }
+            }
+            assertEquals(1, held);
+            assertEquals(1, holds.size());
+            assertEquals(CarStatus.ON_HOLD, status("V1"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void expiredHoldsMakeTheirCarsAvailable() throws IOException {
+        HoldManager holds = holds(car("V1", CarStatus.AVAILABLE), car("V2", CarStatus.AVAILABLE));
+        HoldManager.Hold shortHold = holds.hold("V1", "ann", Duration.ofMinutes(1));
+        HoldManager.Hold longHold = holds.hold("V2", "ann", Duration.ofHours(1));
+        assertNotNull(shortHold);
+        assertNotNull(longHold);
+        assertEquals(List.of(shortHold, longHold), holds.getHolds("ann"));
+
+        assertEquals(0, holds.expireHolds(shortHold.getExpiresAt() - 1_000));
+        assertEquals(1, holds.expireHolds(shortHold.getExpiresAt() + 2_000));
+        assertEquals(CarStatus.AVAILABLE, status("V1"));
+        assertNull(holds.getHold("V1"));
+        assertEquals(CarStatus.ON_HOLD, status("V2"));
+
+        assertEquals(1, holds.expireHolds(longHold.getExpiresAt() + 2_000));
+        assertEquals(CarStatus.AVAILABLE, status("V2"));
+        assertEquals(0, holds.size());
+    }
+
+    @Test
+    void sellingAHeldCarDropsItsHold() throws IOException {
+        HoldManager holds = holds(car("V1", CarStatus.AVAILABLE));
+        HoldManager.Hold hold = holds.hold("V1", "ann", Duration.ofMinutes(1));
+        assertNotNull(hold);
+        assertTrue(dealership.sellCar(new Sale(LocalDate.of(2025, 5, 1), "V1", 10_000, 12_000, "ann", "carol")));
+        assertNull(holds.getHold("V1"));
+        assertEquals(0, holds.expireHolds(hold.getExpiresAt() + 2_000));
+        assertEquals(CarStatus.SOLD, status("V1"));
+    }
+
+    @Test
+    void restoresHoldsOfCarsFoundOnHold() throws IOException {
+        HoldManager holds = holds(car("V1", CarStatus.ON_HOLD));
+        HoldManager.Hold restored = holds.getHold("V1");
+        assertNotNull(restored);
+        assertNull(restored.getSalesperson());
+        assertEquals(RESTORED_TTL.toMillis(), restored.getExpiresAt() - restored.getPlacedAt());
+        assertEquals(1, holds.expireHolds(restored.getExpiresAt() + 2_000));
+        assertEquals(CarStatus.AVAILABLE, status("V1"));
+    }
+
+    private HoldManager holds(Car... cars) {
+        dealership = new Dealership(new ArrayList<>(), List.of(cars));
+        dealership.enableHolds(RESTORED_TTL);
+        return dealership.getHoldManager();
+    }
+
+    private CarStatus status(String vin) {
+        return dealership.getState().getInventoryStore().getByVin(vin).getCarStatus();
+    }
+
+    private static Car car(String vin, CarStatus status) {
+        return new Car(vin, LocalDate.of(2025, 1, 1), "Honda", "Civic", 2020, 1000, "Blue", 10_000, 12_000,
+                status.getLabel());
+    }
+}
@@ -0,0 +1,167 @@
+package dealership.utils;
+
+import dealership.Car;
+import dealership.Role;
+import dealership.Sale;
+import dealership.User;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinarySnapshotTest {
+    private static final long[] SOURCES = {10, 1_000, -1, -1, 30, 3_000};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        File file = dir.resolve("dealership.bin").toFile();
+        snapshot().write(file);
+
+        BinarySnapshot read = BinarySnapshot.read(file);
+        assertNotNull(read);
+        assertArrayEquals(SOURCES, read.getSources());
+        assertArrayEquals(SOURCES, BinarySnapshot.readSources(file));
+        assertTrue(read.isBuiltFrom(SOURCES));
+
+        assertEquals(2, read.getUsers().size());
+        User ann = read.getUsers().get(0);
+        assertEquals("ann", ann.getUsername());
+        assertEquals("secret", ann.getPassword());
+        assertEquals(Role.MANAGER, ann.getRole());
+        assertEquals("7", ann.getId());
+        assertEquals("Ann", ann.getFirstName());
+        assertEquals("Lee", ann.getLastName());
+        assertEquals("ann@example.com", ann.getEmail());
+        assertEquals("555-0100", ann.getPhone());
+        assertNull(read.getUsers().get(1).getRole());
+
+        assertEquals(2, read.getCars().size());
+        Car civic = read.getCars().get(0);
+        assertEquals("V1", civic.getVin());
+        assertEquals(LocalDate.of(2025, 1, 2), civic.getAcquisitionDate());
+        assertEquals("Honda", civic.getMake());
+        assertEquals("Civic", civic.getModel());
+        assertEquals(2020, civic.getYear());
+        assertEquals(12_000, civic.getMileage());
+        assertEquals("Blue", civic.getColor());
+        assertEquals(15_000, civic.getCost());
+        assertEquals(18_500.5, civic.getPrice());
+        assertEquals("Available", civic.getStatus());
+        Car unknown = read.getCars().get(1);
+        assertNull(unknown.getAcquisitionDate());
+        assertTrue(Double.isNaN(unknown.getCost()));
+
+        assertEquals(1, read.getSales().size());
+        Sale sale = read.getSales().get(0);
+        assertEquals(LocalDate.of(2025, 3, 4), sale.getDate());
+        assertEquals("V3", sale.getVin());
+        assertEquals(9_000, sale.getCost());
+        assertEquals(11_000, sale.getPrice());
+        assertEquals("bob", sale.getSalesperson());
+        assertEquals("Carol, Jr.", sale.getCustomer());
+    }
+
+    @Test
+    void recordsAreReadOnly() throws IOException {
+        File file = dir.resolve("dealership.bin").toFile();
+        snapshot().write(file);
+        BinarySnapshot read = BinarySnapshot.read(file);
+        assertNotNull(read);
+        assertThrows(UnsupportedOperationException.class, () -> read.getCars().remove(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> read.getSales().get(1));
+    }
+
+    @Test
+    void rejectsCorruptedFiles() throws IOException {
+        File file = dir.resolve("dealership.bin").toFile();
+        snapshot().write(file);
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long last = raf.length() - 1;
+            raf.seek(last);
+            int b = raf.read();
+            raf.seek(last);
+            raf.write(b ^ 0x01);
+        }
+        assertNull(BinarySnapshot.read(file));
+    }
+
+    @Test
+    void rejectsTruncatedFiles() throws IOException {
+        File file = dir.resolve("dealership.bin").toFile();
+        snapshot().write(file);
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 8);
+        }
+        assertNull(BinarySnapshot.read(file));
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(10);
+        }
+        assertNull(BinarySnapshot.read(file));
+        assertNull(BinarySnapshot.readSources(file));
+    }
+
+    @Test
+    void rejectsFilesOfAnotherVersion() throws IOException {
+        File file = dir.resolve("dealership.bin").toFile();
+        snapshot().write(file);
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(4); // after the magic number
+            raf.writeShort(BinarySnapshot.VERSION - 1);
+        }
+        assertNull(BinarySnapshot.read(file));
+        assertNull(BinarySnapshot.readSources(file));
+        assertNull(BinarySnapshot.read(dir.resolve("missing.bin").toFile()));
+    }
+
+    @Test
+    void isRebuiltWhenASourceChangesWithTheSameTimestamp() throws IOException {
+        Files.write(dir.resolve(DealershipDB.USERS_FILE_NAME), "#\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve(DealershipDB.SALES_FILE_NAME), "#\n".getBytes(StandardCharsets.UTF_8));
+        Path inventory = dir.resolve(DealershipDB.INVENTORY_FILE_NAME);
+        Files.write(inventory, List.of("V1,2025-01-02,Honda,Civic,2020,12000,Blue,15000,18500,Available"),
+                StandardCharsets.UTF_8);
+        FileTime time = Files.getLastModifiedTime(inventory);
+        try(DealershipDB db = new DealershipDB(dir.toString(), true)) {
+            assertEquals(1, db.loadInventory().size());
+        }
+        assertNotNull(BinarySnapshot.read(dir.resolve(DealershipDB.BINARY_SNAPSHOT_FILE_NAME).toFile()));
+
+        Files.write(inventory, List.of("V1,2025-01-02,Honda,Civic,2020,12000,Blue,15000,18500,Available",
+                "V2,2025-01-03,Honda,Accord,2021,8000,Red,19000,23000,Available"), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(inventory, time);
+        try(DealershipDB db = new DealershipDB(dir.toString(), true)) {
+            assertEquals(2, db.loadInventory().size());
+        }
+    }
+
+    private static BinarySnapshot snapshot() {
+        List<User> users = List.of(
+                new User("7", "Ann", "Lee", "ann@example.com", "555-0100", "ann", "secret", Role.MANAGER),
+                new User("bob", "hunter2", (Role) null));
+        List<Car> cars = List.of(
+                new Car("V1", LocalDate.of(2025, 1, 2), "Honda", "Civic", 2020, 12_000, "Blue", 15_000, 18_500.5,
+                        "Available"),
+                new Car("V2", "Honda", "Civic", 2019, 30_000, "Blue", 14_000, "Sold"));
+        List<Sale> sales = List.of(new Sale(LocalDate.of(2025, 3, 4), "V3", 9_000, 11_000, "bob", "Carol, Jr."));
+        return new BinarySnapshot(SOURCES, users, cars, sales);
+    }
+}
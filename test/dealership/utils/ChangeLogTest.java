@@ -0,0 +1,150 @@
+package dealership.utils;
+
+import dealership.Car;
+import dealership.Sale;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeLogTest {
+    private static final long NO_BACKGROUND_FLUSH = 60_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysRecordsInOrderPendingIncluded() throws IOException {
+        File file = dir.resolve("changes.log").toFile();
+        try(ChangeLog log = new ChangeLog(file, 100, NO_BACKGROUND_FLUSH)) {
+            log.append("put", "a", "1");
+            log.append("put", "b, with a comma", "2");
+            log.append("remove", "a");
+            assertEquals(3, log.getRecordCount());
+            assertEquals(List.of(List.of("put", "a", "1"), List.of("put", "b, with a comma", "2"),
+                    List.of("remove", "a")), replay(log));
+        }
+    }
+
+    @Test
+    void appendsAfterTheRecordsOfAReopenedLog() throws IOException {
+        File file = dir.resolve("changes.log").toFile();
+        try(ChangeLog log = new ChangeLog(file, 1, NO_BACKGROUND_FLUSH)) {
+            log.append("first");
+        }
+        try(ChangeLog log = new ChangeLog(file, 1, NO_BACKGROUND_FLUSH)) {
+            assertEquals(0, log.getRecordCount()); // counts the records appended since opened
+            log.append("second");
+            assertEquals(List.of(List.of("first"), List.of("second")), replay(log));
+        }
+    }
+
+    @Test
+    void truncateDropsEveryRecord() throws IOException {
+        File file = dir.resolve("changes.log").toFile();
+        try(ChangeLog log = new ChangeLog(file, 2, NO_BACKGROUND_FLUSH)) {
+            log.append("a");
+            log.append("b");
+            log.append("c");
+            log.truncate();
+            assertEquals(0, log.size());
+            log.append("d");
+            assertEquals(List.of(List.of("d")), replay(log));
+        }
+    }
+
+    @Test
+    void aRecordCutByACrashIsReplayedShort() throws IOException {
+        File file = dir.resolve("changes.log").toFile();
+        try(ChangeLog log = new ChangeLog(file, 1, NO_BACKGROUND_FLUSH)) {
+            log.append("put", "a", "1");
+        }
+        Files.write(file.toPath(), "put,b".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try(ChangeLog log = new ChangeLog(file, 1, NO_BACKGROUND_FLUSH)) {
+            assertEquals(List.of(List.of("put", "a", "1"), List.of("put", "b")), replay(log));
+        }
+    }
+
+    @Test
+    void databaseReplaysTheChangesSinceTheLastCompaction() throws IOException {
+        writeEmptyDatabase();
+        try(DealershipDB db = new DealershipDB(dir.toString(), false)) {
+            db.logCarPut(car("V1", 1000));
+            db.logCarPut(car("V2", 2000));
+            db.logSale(sale("V2"));
+        }
+        try(DealershipDB db = new DealershipDB(dir.toString(), false)) {
+            assertEquals(2, db.loadInventory().size());
+            assertEquals(1, db.loadSales().size());
+            db.compact(db.loadUsers(), db.loadInventory(), db.loadSales());
+            db.logCarPut(car("V1", 1500));
+            db.logCarRemoved("V2");
+        }
+        try(DealershipDB db = new DealershipDB(dir.toString(), false)) {
+            List<Car> cars = db.loadInventory();
+            assertEquals(1, cars.size());
+            assertEquals(1500, cars.get(0).getPrice());
+            assertEquals(1, db.loadSales().size());
+        }
+    }
+
+    @Test
+    void changesCompactedBeforeACrashAreNotReplayedTwice() throws IOException {
+        writeEmptyDatabase();
+        try(DealershipDB db = new DealershipDB(dir.toString(), false)) {
+            db.logSale(sale("V1"));
+            db.logSale(sale("V2"));
+        }
+        Files.copy(dir.resolve(DealershipDB.CHANGE_LOG_FILE_NAME), dir.resolve("saved.log"));
+        try(DealershipDB db = new DealershipDB(dir.toString(), false)) {
+            db.compact(db.loadUsers(), db.loadInventory(), db.loadSales());
+        }
+        // A crash after the snapshots were written, before the log was replaced
+        Files.move(dir.resolve("saved.log"), dir.resolve(DealershipDB.CHANGE_LOG_FILE_NAME),
+                StandardCopyOption.REPLACE_EXISTING);
+        try(DealershipDB db = new DealershipDB(dir.toString(), false)) {
+            assertEquals(2, db.loadSales().size());
+            db.logSale(sale("V3")); // appended after the records compacted
+        }
+        try(DealershipDB db = new DealershipDB(dir.toString(), false)) {
+            assertEquals(3, db.loadSales().size());
+            assertTrue(db.loadInventory().isEmpty());
+        }
+    }
+
+    private void writeEmptyDatabase() throws IOException {
+        for(String fileName : new String[]{DealershipDB.USERS_FILE_NAME, DealershipDB.INVENTORY_FILE_NAME,
+                DealershipDB.SALES_FILE_NAME}) {
+            Files.write(dir.resolve(fileName), "#\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Car car(String vin, double price) {
+        return new Car(vin, LocalDate.of(2025, 1, 1), "Honda", "Civic", 2020, 1000, "Blue", price / 2, price,
+                "Available");
+    }
+
+    private static Sale sale(String vin) {
+        return new Sale(LocalDate.of(2025, 2, 1), vin, 1000, 2000, "jjones", "A Customer");
+    }
+
+    private static List<List<String>> replay(ChangeLog log) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        log.replay(row -> records.add(Arrays.asList(row.toArray())));
+        return records;
+    }
+}
@@ -0,0 +1,115 @@
+package dealership.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvParserTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void splitsAndTrimsFields() {
+        List<List<String>> rows = parse(new CsvParser(false, false), " a , b,c \n1,,3\n");
+        assertEquals(List.of(List.of("a", "b", "c"), List.of("1", "", "3")), rows);
+    }
+
+    @Test
+    void quotedFieldsKeepSeparatorsQuotesAndLineBreaks() {
+        List<List<String>> rows = parse(new CsvParser(false, false),
+                "\"Smith, John\",\"say \"\"hi\"\"\"\n\"two\nlines\",x\n");
+        assertEquals(List.of(List.of("Smith, John", "say \"hi\""), List.of("two\nlines", "x")), rows);
+    }
+
+    @Test
+    void dropsCommentAndEmptyLines() {
+        String csv = "# header\n\n  \na,b\n  # indented comment\nc,d";
+        assertEquals(List.of(List.of("a", "b"), List.of("c", "d")), parse(new CsvParser(true, true), csv));
+        assertEquals(6, parse(new CsvParser(false, false), csv).size());
+    }
+
+    @Test
+    void countsLinesAcrossQuotedLineBreaks() {
+        List<Long> lines = new ArrayList<>();
+        new CsvParser(true, true).parse(buffer("# c\n\"a\nb\",1\n\nx,2\r\n"), row -> lines.add(row.getLineNumber()));
+        assertEquals(List.of(2L, 5L), lines);
+    }
+
+    @Test
+    void parsesTypedFields() {
+        new CsvParser(false, false).parse(buffer("2025-01-10, -42, 9000000000, 1.5e3\n"), row -> {
+            assertEquals(LocalDate.of(2025, 1, 10), row.getDate(0));
+            assertEquals(-42, row.getInt(1));
+            assertEquals(9_000_000_000L, row.getLong(2));
+            assertEquals(1500.0, row.getDouble(3));
+        });
+    }
+
+    @Test
+    void rowsAreNeverSplitAcrossWindows() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for(int i = 0; i < 500; i++) {
+            csv.append(i).append(",\"quoted, ").append(i).append("\",").append("x".repeat(i % 40)).append('\n');
+        }
+        File file = write(csv.toString());
+        List<List<String>> expected = new ArrayList<>();
+        new CsvParser(false, false).parse(file, row -> expected.add(Arrays.asList(row.toArray())));
+        assertEquals(500, expected.size());
+        // Windows smaller than a row are grown
+        for(long window : new long[]{7, 64, 1000}) {
+            List<List<String>> rows = new ArrayList<>();
+            new CsvParser(false, false, window).parse(file, row -> rows.add(Arrays.asList(row.toArray())));
+            assertEquals(expected, rows, "window of " + window + " bytes");
+        }
+    }
+
+    @Test
+    void parsesAByteRange() throws IOException {
+        File file = write("a,1\nb,2\nc,3\n");
+        List<String> names = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        long rows = new CsvParser(false, false).parse(file, 4, 8, row -> {
+            names.add(row.getString(0));
+            offsets.add(row.getOffset());
+        });
+        assertEquals(1, rows);
+        assertEquals(List.of("b"), names);
+        assertEquals(List.of(4L), offsets);
+    }
+
+    @Test
+    void keepsAnIncompleteLastRow() {
+        List<List<String>> rows = parse(new CsvParser(false, false), "a,b\nc");
+        assertEquals(List.of(List.of("a", "b"), List.of("c")), rows);
+        assertTrue(parse(new CsvParser(false, true), "").isEmpty());
+    }
+
+    private static List<List<String>> parse(CsvParser parser, String csv) {
+        List<List<String>> rows = new ArrayList<>();
+        parser.parse(buffer(csv), row -> rows.add(Arrays.asList(row.toArray())));
+        return rows;
+    }
+
+    private static ByteBuffer buffer(String csv) {
+        return ByteBuffer.wrap(csv.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private File write(String csv) throws IOException {
+        Path file = dir.resolve("test.csv");
+        Files.write(file, csv.getBytes(StandardCharsets.UTF_8));
+        return file.toFile();
+    }
+}
@@ -0,0 +1,64 @@
+package dealership.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsTest {
+    private static final int SUB_BUCKETS = Metrics.Histogram.SUB_BUCKETS;
+
+    @Test
+    void smallValuesHaveABucketEach() {
+        for(int value = 0; value < SUB_BUCKETS; value++) {
+            assertEquals(value, Metrics.Histogram.bucket(value));
+            assertEquals(value, Metrics.Histogram.highestValue(value));
+        }
+    }
+
+    @Test
+    void bucketsAreContiguous() {
+        int last = Metrics.Histogram.bucket(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, Metrics.Histogram.highestValue(last));
+        for(int bucket = 0; bucket < last; bucket++) {
+            long highest = Metrics.Histogram.highestValue(bucket);
+            assertEquals(bucket, Metrics.Histogram.bucket(highest));
+            assertEquals(bucket + 1, Metrics.Histogram.bucket(highest + 1), "after bucket " + bucket);
+        }
+    }
+
+    @Test
+    void bucketsAreWithinThreePercent() {
+        for(long value = SUB_BUCKETS; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            long highest = Metrics.Histogram.highestValue(Metrics.Histogram.bucket(value));
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value / SUB_BUCKETS, value + " reported as " + highest);
+        }
+    }
+
+    @Test
+    void percentilesAreHighestValuesOfTheirBuckets() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for(long value = 1; value <= 1_000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1_000, histogram.getCount());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 500 && p50 <= 500 + 500 / SUB_BUCKETS, "p50 " + p50);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p99 >= 990 && p99 <= 1_000, "p99 " + p99);
+        assertEquals(1_000, histogram.getPercentile(100)); // capped by the max
+    }
+
+    @Test
+    void negativeValuesAreRecordedAsZero() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(100));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+}
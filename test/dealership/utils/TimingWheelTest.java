@@ -0,0 +1,101 @@
+package dealership.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+    private static final long TICK = 10;
+
+    @Test
+    void expiresAtTheEndOfTheTickHoldingTheDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        wheel.schedule("a", 25);
+        List<String> expired = new ArrayList<>();
+        assertEquals(0, wheel.advance(29, expired::add));
+        assertEquals(1, wheel.advance(30, expired::add));
+        assertEquals(List.of("a"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void passedDeadlinesExpireOnTheNextTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 1_000);
+        TimingWheel.Timeout<String> timeout = wheel.schedule("late", 500);
+        List<String> expired = new ArrayList<>();
+        wheel.advance(1_010, expired::add);
+        assertEquals(List.of("late"), expired);
+        assertFalse(timeout.isScheduled());
+    }
+
+    @Test
+    void cancelledItemsDontExpire() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        TimingWheel.Timeout<String> a = wheel.schedule("a", 50);
+        wheel.schedule("b", 50);
+        assertTrue(wheel.cancel(a));
+        assertFalse(wheel.cancel(a));
+        List<String> expired = new ArrayList<>();
+        wheel.advance(100, expired::add);
+        assertEquals(List.of("b"), expired);
+        assertFalse(wheel.cancel(a));
+    }
+
+    @Test
+    void itemsCascadeDownEveryLevelOnTime() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, 0);
+        Random random = new Random(42);
+        List<TimingWheel.Timeout<Long>> timeouts = new ArrayList<>();
+        // Beyond the range of the last level too
+        long range = TICK * (1L << (6 * TimingWheel.LEVELS)) * 2;
+        for(int i = 0; i < 2_000; i++) {
+            long deadline = 1 + (long) (random.nextDouble() * range);
+            timeouts.add(wheel.schedule(deadline, deadline));
+        }
+        long now = 0;
+        long step = range / 500;
+        int expiredCount = 0;
+        while(wheel.size() > 0) {
+            now += step;
+            long reached = now;
+            expiredCount += wheel.advance(now, deadline -> {
+                // Never early, and never after the end of the tick holding the deadline
+                assertTrue(deadline <= reached, deadline + " expired early at " + reached);
+                assertTrue(deadline > reached - step - TICK, deadline + " expired late at " + reached);
+            });
+        }
+        assertEquals(timeouts.size(), expiredCount);
+        for(TimingWheel.Timeout<Long> timeout : timeouts) {
+            assertFalse(timeout.isScheduled());
+        }
+    }
+
+    @Test
+    void expiresInDeadlineOrderTickByTick() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, 0);
+        for(long deadline = 5_000; deadline > 0; deadline -= 7) {
+            wheel.schedule(deadline, deadline);
+        }
+        List<Long> expired = new ArrayList<>();
+        for(long now = 0; now <= 5_000 + TICK; now += TICK) {
+            wheel.advance(now, expired::add);
+        }
+        assertEquals(715, expired.size());
+        for(int i = 1; i < expired.size(); i++) {
+            // In deadline order, give or take a tick
+            assertTrue(expired.get(i) > expired.get(i - 1) - TICK);
+        }
+    }
+
+    @Test
+    void rejectsEmptyTicks() {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel<String>(0, 0));
+    }
+}